@@ -5,17 +5,21 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.SerializationFeature;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
 import it.gov.pagopa.tpp.model.Tpp;
-import org.redisson.api.RMapReactive;
+import it.gov.pagopa.tpp.service.cache.TppBinaryCodec;
+import it.gov.pagopa.tpp.service.cache.TppShardedMap;
 import org.redisson.api.RedissonReactiveClient;
 import org.redisson.codec.JsonJacksonCodec;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
 /**
  * Redis configuration for reactive TPP caching via Redisson.
  * <p>
- * Provides an {@link RMapReactive} bean backed by a Redis Hash, using Jackson JSON
- * serialization (with Java Time support) for {@link Tpp} objects.
+ * Provides a {@link TppShardedMap} bean backed by {@code tpp.cache.shards} Redis Hashes, storing {@link Tpp} objects with
+ * the {@link TppBinaryCodec} when {@code tpp.cache.codec} is {@code binary}, or with Jackson JSON
+ * serialization (with Java Time support) otherwise. Both formats are always readable, so the
+ * property can be switched during a rollout.
  * Uses the same {@code redisson-spring-boot-starter} as emd-citizen for ecosystem consistency.
  * </p>
  */
@@ -25,12 +29,15 @@ public class RedisConfig {
     public static final String TPP_CACHE_MAP_KEY = "emd:tpp:cache";
 
     @Bean
-    public RMapReactive<String, Tpp> tppMapReactive(RedissonReactiveClient redissonReactiveClient) {
+    public TppShardedMap tppShardedMap(RedissonReactiveClient redissonReactiveClient,
+                                       @Value("${tpp.cache.codec:json}") String codec,
+                                       @Value("${tpp.cache.shards:1}") int shards) {
         ObjectMapper redisObjectMapper = new ObjectMapper()
                 .registerModule(new JavaTimeModule())
                 .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
                 .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
 
-        return redissonReactiveClient.getMap(TPP_CACHE_MAP_KEY, new JsonJacksonCodec(redisObjectMapper));
+        JsonJacksonCodec jsonCodec = new JsonJacksonCodec(redisObjectMapper);
+        return TppShardedMap.create(redissonReactiveClient, new TppBinaryCodec(jsonCodec, "binary".equalsIgnoreCase(codec)), shards);
     }
 }
@@ -0,0 +1,120 @@
+package it.gov.pagopa.common.utils;
+
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongSupplier;
+import java.util.function.Predicate;
+
+/**
+ * Bounded, TTL-based in-process cache backed by a {@link ConcurrentHashMap}.
+ * <p>
+ * Entries expire {@code ttl} after they are written. When the cache is full, expired entries are
+ * purged first and, if that is not enough, an arbitrary entry is evicted. It is meant for small
+ * and hot key sets (e.g. the TPP registry) where a full LRU policy would not pay for itself.
+ *
+ * @param <K> the key type
+ * @param <V> the value type
+ */
+public class LocalCache<K, V> {
+
+    private final Map<K, Entry<V>> entries = new ConcurrentHashMap<>();
+    private final int maxSize;
+    private final long ttlNanos;
+    private final LongSupplier nanoClock;
+
+    /**
+     * @param maxSize maximum number of entries kept in memory
+     * @param ttl     time to live of every entry, measured from the write
+     */
+    public LocalCache(int maxSize, Duration ttl) {
+        this(maxSize, ttl, System::nanoTime);
+    }
+
+    /** Package-private constructor — used by unit tests to inject a controllable clock. */
+    LocalCache(int maxSize, Duration ttl, LongSupplier nanoClock) {
+        this.maxSize = maxSize;
+        this.ttlNanos = ttl.toNanos();
+        this.nanoClock = nanoClock;
+    }
+
+    /**
+     * Returns the value associated with the key, or {@code null} if absent or expired.
+     *
+     * @param key the key to look up
+     * @return the cached value or {@code null}
+     */
+    public V get(K key) {
+        Entry<V> entry = entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (isExpired(entry, nanoClock.getAsLong())) {
+            entries.remove(key, entry);
+            return null;
+        }
+        return entry.value();
+    }
+
+    /**
+     * Stores the value, evicting other entries if the cache is full.
+     *
+     * @param key   the key
+     * @param value the value, must not be {@code null}
+     */
+    public void put(K key, V value) {
+        if (entries.size() >= maxSize && !entries.containsKey(key)) {
+            evict();
+        }
+        entries.put(key, new Entry<>(value, nanoClock.getAsLong() + ttlNanos));
+    }
+
+    /**
+     * Removes the entry associated with the key, if any.
+     *
+     * @param key the key to remove
+     */
+    public void invalidate(K key) {
+        entries.remove(key);
+    }
+
+    /**
+     * Removes every entry whose key matches the predicate.
+     *
+     * @param keyPredicate the predicate selecting the keys to remove
+     */
+    public void invalidateIf(Predicate<K> keyPredicate) {
+        entries.keySet().removeIf(keyPredicate);
+    }
+
+    /**
+     * Removes every entry.
+     */
+    public void invalidateAll() {
+        entries.clear();
+    }
+
+    /**
+     * @return the number of entries currently held, expired ones included
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    private void evict() {
+        long now = nanoClock.getAsLong();
+        entries.values().removeIf(entry -> isExpired(entry, now));
+        Iterator<K> keys = entries.keySet().iterator();
+        while (entries.size() >= maxSize && keys.hasNext()) {
+            keys.next();
+            keys.remove();
+        }
+    }
+
+    private boolean isExpired(Entry<V> entry, long now) {
+        return now - entry.expiresAt() >= 0;
+    }
+
+    private record Entry<V>(V value, long expiresAt) {}
+}
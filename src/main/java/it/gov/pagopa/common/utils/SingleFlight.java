@@ -0,0 +1,88 @@
+package it.gov.pagopa.common.utils;
+
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Coalesces concurrent loads of the same key into a single in-flight {@link Mono}.
+ * <p>
+ * The first caller for a key starts the load; callers arriving while it is in flight subscribe to the
+ * same result instead of starting their own. The load runs detached from its callers, so a caller that
+ * cancels does not abort it for the others, and it is bounded by {@code timeout} so that a stuck load
+ * cannot pin its key. Every caller is bounded by the same timeout. The key is released as soon as the
+ * load terminates: later callers start a fresh load.
+ *
+ * @param <K> the key type
+ * @param <V> the value type
+ */
+public class SingleFlight<K, V> {
+
+    private final Map<K, Mono<V>> inFlight = new ConcurrentHashMap<>();
+    private final Duration timeout;
+    private final AtomicLong loads = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+
+    /**
+     * @param timeout maximum time a load may take, and a caller may wait for it
+     */
+    public SingleFlight(Duration timeout) {
+        this.timeout = timeout;
+    }
+
+    /**
+     * Returns the result of the load in flight for the key, starting it with {@code loader} if there is none.
+     *
+     * @param key    the key
+     * @param loader supplies the load, invoked only when no load is in flight for the key
+     * @return a Mono emitting the shared result of the load
+     */
+    public Mono<V> execute(K key, Supplier<Mono<V>> loader) {
+        return Mono.defer(() -> {
+            Mono<V> running = inFlight.get(key);
+            if (running != null) {
+                coalesced.incrementAndGet();
+                return running;
+            }
+            Sinks.One<V> sink = Sinks.one();
+            Mono<V> shared = sink.asMono();
+            running = inFlight.putIfAbsent(key, shared);
+            if (running != null) {
+                coalesced.incrementAndGet();
+                return running;
+            }
+            loads.incrementAndGet();
+            Mono.defer(loader)
+                    .timeout(timeout)
+                    .doFinally(signal -> inFlight.remove(key, shared))
+                    .subscribe(sink::tryEmitValue, sink::tryEmitError, sink::tryEmitEmpty);
+            return shared;
+        }).timeout(timeout);
+    }
+
+    /**
+     * @return the number of loads started
+     */
+    public long loadCount() {
+        return loads.get();
+    }
+
+    /**
+     * @return the number of callers that joined a load already in flight
+     */
+    public long coalescedCount() {
+        return coalesced.get();
+    }
+
+    /**
+     * @return the number of loads currently in flight
+     */
+    public int inFlightCount() {
+        return inFlight.size();
+    }
+}
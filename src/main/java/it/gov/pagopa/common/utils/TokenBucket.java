@@ -0,0 +1,75 @@
+package it.gov.pagopa.common.utils;
+
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.function.LongSupplier;
+
+/**
+ * Non-blocking token-bucket rate limiter.
+ * <p>
+ * Tokens are refilled at {@code permitsPerSecond}, up to {@code burst} tokens. Callers reserve their
+ * permits up front and are delayed, never rejected, until the bucket has paid them back, so that the
+ * permits are granted in arrival order and the long-term rate never exceeds the configured one.
+ * {@link #pause(Duration)} makes every caller wait, for instance when the remote service asks to back off.
+ */
+public class TokenBucket {
+
+    private static final long NANOS_PER_SECOND = Duration.ofSeconds(1).toNanos();
+
+    private final double nanosPerPermit;
+    private final long toleranceNanos;
+    private final LongSupplier nanoClock;
+    private long nextFreeNanos;
+
+    /**
+     * @param permitsPerSecond the sustained rate
+     * @param burst            the number of permits that can be granted at once after an idle period
+     */
+    public TokenBucket(double permitsPerSecond, int burst) {
+        this(permitsPerSecond, burst, System::nanoTime);
+    }
+
+    TokenBucket(double permitsPerSecond, int burst, LongSupplier nanoClock) {
+        if (permitsPerSecond <= 0 || burst < 1) {
+            throw new IllegalArgumentException("permitsPerSecond and burst must be positive");
+        }
+        this.nanosPerPermit = NANOS_PER_SECOND / permitsPerSecond;
+        this.toleranceNanos = (long) (nanosPerPermit * (burst - 1));
+        this.nanoClock = nanoClock;
+        this.nextFreeNanos = nanoClock.getAsLong();
+    }
+
+    /**
+     * Returns a Mono completing once the permits are granted.
+     *
+     * @param permits the number of permits to acquire
+     * @return a Mono completing after the required delay, immediately if the bucket holds enough tokens
+     */
+    public Mono<Void> acquire(int permits) {
+        return Mono.defer(() -> {
+            long waitNanos = reserve(permits);
+            return waitNanos <= 0 ? Mono.empty() : Mono.delay(Duration.ofNanos(waitNanos)).then();
+        });
+    }
+
+    /**
+     * Stops granting permits for the given time, dropping the tokens stored so far.
+     *
+     * @param duration how long to back off
+     */
+    public synchronized void pause(Duration duration) {
+        nextFreeNanos = Math.max(nextFreeNanos, nanoClock.getAsLong() + duration.toNanos() + toleranceNanos);
+    }
+
+    /**
+     * Reserves the permits and returns how long the caller must wait before using them.
+     */
+    synchronized long reserve(int permits) {
+        long now = nanoClock.getAsLong();
+        // an idle bucket does not bank time: at most burst permits are granted without waiting
+        long start = Math.max(nextFreeNanos, now);
+        nextFreeNanos = start + (long) (nanosPerPermit * Math.max(permits, 1));
+        return start - now - toleranceNanos;
+    }
+}
@@ -0,0 +1,23 @@
+package it.gov.pagopa.common.web.exception;
+
+
+import lombok.Getter;
+
+import java.time.Duration;
+
+/**
+ * Specialized encryption exception raised when the key store rejects a request because of throttling.
+ * <p>
+ * It carries the back-off requested by the key store, so that bulk operations can slow down and retry
+ * instead of dropping the request.
+ */
+@Getter
+public class EmdThrottledException extends EmdEncryptionException {
+
+  private final Duration retryAfter;
+
+  public EmdThrottledException(String message, Duration retryAfter, Throwable ex) {
+    super(message, false, ex);
+    this.retryAfter = retryAfter;
+  }
+}
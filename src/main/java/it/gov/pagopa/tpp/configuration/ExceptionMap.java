@@ -48,6 +48,8 @@ public class ExceptionMap {
      *   <li>TPP_ALREADY_ONBOARDED - HTTP 403 with FORBIDDEN status for duplicate onboarding</li>
      *   <li>RECIPIENT_NOT_FOUND - HTTP 404 with NOT_FOUND status for missing recipient</li>
      *   <li>RECIPIENT_ALREADY_PRESENT - HTTP 409 with CONFLICT status for recipient already present</li>
+     *   <li>MESSAGE_TEMPLATE_NOT_FOUND - HTTP 404 with NOT_FOUND status for unknown message template versions</li>
+     *   <li>MESSAGE_RENDERING_FAILED - HTTP 400 with BAD_REQUEST status for messages the TPP template cannot render</li>
      * </ul>
      */
     public ExceptionMap() {
@@ -83,6 +85,22 @@ public class ExceptionMap {
             )
         );
 
+        exceptions.put(ExceptionName.MESSAGE_TEMPLATE_NOT_FOUND, message ->
+            new ClientExceptionWithBody(
+                HttpStatus.NOT_FOUND,
+                ExceptionCode.MESSAGE_TEMPLATE_NOT_FOUND,
+                message
+            )
+        );
+
+        exceptions.put(ExceptionName.MESSAGE_RENDERING_FAILED, message ->
+            new ClientExceptionWithBody(
+                HttpStatus.BAD_REQUEST,
+                ExceptionCode.MESSAGE_RENDERING_FAILED,
+                message
+            )
+        );
+
     }
     /**
      * Creates and returns a runtime exception based on the specified exception key and message.
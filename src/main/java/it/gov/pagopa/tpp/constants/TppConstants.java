@@ -16,6 +16,9 @@ public class TppConstants {
         public static final String RECIPIENT_NOT_FOUND = "RECIPIENT_NOT_FOUND";
         public static final String RECIPIENT_ALREADY_PRESENT = "RECIPIENT_ALREADY_PRESENT";
 
+        public static final String MESSAGE_TEMPLATE_NOT_FOUND = "MESSAGE_TEMPLATE_NOT_FOUND";
+        public static final String MESSAGE_RENDERING_FAILED = "MESSAGE_RENDERING_FAILED";
+
         public static final String GENERIC_ERROR = "GENERIC_ERROR";
         private ExceptionCode() {}
     }
@@ -32,6 +35,9 @@ public class TppConstants {
         public static final String RECIPIENT_NOT_FOUND = "RECIPIENT_NOT_FOUND";
         public static final String RECIPIENT_ALREADY_PRESENT = "RECIPIENT_ALREADY_PRESENT";
 
+        public static final String MESSAGE_TEMPLATE_NOT_FOUND = "Message template not found for the given id and hash";
+        public static final String MESSAGE_RENDERING_FAILED = "Message could not be rendered with the TPP message template";
+
         public static final String GENERIC_ERROR = "GENERIC_ERROR";
         private ExceptionMessage() {}
     }
@@ -47,6 +53,9 @@ public class TppConstants {
         public static final String RECIPIENT_NOT_FOUND = "RECIPIENT_NOT_FOUND";
         public static final String RECIPIENT_ALREADY_PRESENT = "RECIPIENT_ALREADY_PRESENT";
 
+        public static final String MESSAGE_TEMPLATE_NOT_FOUND = "MESSAGE_TEMPLATE_NOT_FOUND";
+        public static final String MESSAGE_RENDERING_FAILED = "MESSAGE_RENDERING_FAILED";
+
         public static final String GENERIC_ERROR = "GENERIC_ERROR";
         private ExceptionName() {}
     }
@@ -13,6 +13,17 @@ import java.util.List;
  * REST Controller interface for managing TPP operations. 
  * It provides comprehensive CRUD operations with specialized endpoints
  * <p>
+ * The read endpoints on the hot path ({@code /list}, {@code /{tppId}}, {@code /{tppId}/token} and
+ * {@code /entityId/{entityId}}) return the JSON already encoded by the service, which caches it per TPP.
+ * The single-TPP ones also return a strong {@code ETag}, the hash of the body: a request whose
+ * {@code If-None-Match} matches it is answered with {@code 304 Not Modified} and no body.
+ * <p>
+ * Message templates can be left out of {@code /list} with {@code templateRef=true}: each TPP then only
+ * carries the identifier and hash of its template, served by {@code /message-templates/{templateId}/{hash}}
+ * with long-lived caching headers, since the content behind a given hash never changes. Messages can
+ * also be rendered here with the template of a TPP ({@code /{tppId}/messages/render} and its batch variant
+ * {@code /{tppId}/messages/render-batch}), which is then parsed once per change for the whole platform.
+ * <p>
  * Base Path: {@code /emd/tpp}
  */
 @RestController
@@ -24,11 +35,46 @@ public interface TppController {
      * based on the provided tpp ids.
      *
      * @param tppIdList whose data is to be retrieved
+     * @param templateRef whether to return the message templates by reference only: each TPP then carries
+     *                    {@code messageTemplateId} and {@code messageTemplateHash} instead of {@code messageTemplate}
      * @return a {@link Mono} containing a {@link ResponseEntity} with 
-     *          a list of {@link TppDTO} objects for found enabled TPPs
+     *          the JSON list of {@link TppDTO} objects for found enabled TPPs
      */
     @PostMapping("/list")
-    Mono<ResponseEntity<List<TppDTO>>> filterEnabledList(@Valid @RequestBody TppIdList tppIdList);
+    Mono<ResponseEntity<byte[]>> filterEnabledList(@Valid @RequestBody TppIdList tppIdList,
+                                                   @RequestParam(name = "templateRef", defaultValue = "false") boolean templateRef);
+
+    /**
+     * Get a message template by the identifier and hash advertised in {@link TppDTO} by
+     * {@code POST /emd/tpp/list?templateRef=true}
+     *
+     * @param templateId of the template, {@code default} or a tppId
+     * @param hash       SHA-256 of the template
+     * @return a {@link Mono} containing a {@link ResponseEntity} with
+     *          the template, cacheable for a year, if found
+     */
+    @GetMapping("/message-templates/{templateId}/{hash}")
+    Mono<ResponseEntity<String>> getMessageTemplate(@PathVariable String templateId, @PathVariable String hash);
+
+    /**
+     * Render a message with the message template of a TPP.
+     *
+     * @param tppId   whose template is to be used
+     * @param message to render
+     * @return a {@link Mono} containing a {@link ResponseEntity} with the rendered message
+     */
+    @PostMapping("/{tppId}/messages/render")
+    Mono<ResponseEntity<String>> renderMessage(@PathVariable String tppId, @Valid @RequestBody MessageDTO message);
+
+    /**
+     * Render many messages with the message template of a TPP.
+     *
+     * @param tppId       whose template is to be used
+     * @param messageList to render, at most {@value MessageList#MAX_MESSAGES} messages
+     * @return a {@link Mono} containing a {@link ResponseEntity} with the rendered messages, in the given order
+     */
+    @PostMapping("/{tppId}/messages/render-batch")
+    Mono<ResponseEntity<List<String>>> renderMessages(@PathVariable String tppId, @Valid @RequestBody MessageList messageList);
 
     /**
      * Update the state of an existing TPP.
@@ -99,30 +145,30 @@ public interface TppController {
      *
      * @param tppId to get
      * @return a {@link Mono} containing a {@link ResponseEntity} with 
-     *          {@link TppDTOWithoutTokenSection} if found
+     *          the JSON {@link TppDTOWithoutTokenSection} and its ETag if found
      */
     @GetMapping("/{tppId}")
-    Mono<ResponseEntity<TppDTOWithoutTokenSection>> getTppDetails(@Valid @PathVariable String tppId);
+    Mono<ResponseEntity<byte[]>> getTppDetails(@Valid @PathVariable String tppId);
 
     /**
      * Get TokenSection of a TPP
      *
      * @param tppId to get token section
      * @return a {@link Mono} containing a {@link ResponseEntity} with
-     *          {@link TokenSectionDTO} containing credentials if found
+     *          the JSON {@link TokenSectionDTO} containing credentials and its ETag if found
      */
     @GetMapping("/{tppId}/token")
-    Mono<ResponseEntity<TokenSectionDTO>> getTokenSection(@Valid @PathVariable String tppId);
+    Mono<ResponseEntity<byte[]>> getTokenSection(@Valid @PathVariable String tppId);
 
     /**
      * Get a tpp (without token section) by entity id
      *
      * @param entityId to get
      * @return a {@link Mono} containing a {@link ResponseEntity} with
-     *          {@link TppDTOWithoutTokenSection} if found
+     *          the JSON {@link TppDTOWithoutTokenSection} and its ETag if found
      */
     @GetMapping("/entityId/{entityId}")
-    Mono<ResponseEntity<TppDTOWithoutTokenSection>> getTppByEntityId(@Valid @PathVariable String entityId);
+    Mono<ResponseEntity<byte[]>> getTppByEntityId(@Valid @PathVariable String entityId);
 
     /**
      * Tests the network connection to a specific TPP
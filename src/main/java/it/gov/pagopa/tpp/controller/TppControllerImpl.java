@@ -2,9 +2,14 @@ package it.gov.pagopa.tpp.controller;
 
 import it.gov.pagopa.tpp.dto.*;
 import it.gov.pagopa.tpp.service.TppServiceImpl;
+import it.gov.pagopa.tpp.service.cache.TppResponseCache;
 
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.util.Map;
+import org.springframework.http.CacheControl;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.RestController;
 import reactor.core.publisher.Mono;
@@ -23,6 +28,9 @@ import static it.gov.pagopa.common.utils.Utils.inputSanitization;
 @RestController
 public class TppControllerImpl implements TppController {
 
+    private static final MediaType TEMPLATE_CONTENT_TYPE = new MediaType(MediaType.TEXT_PLAIN, StandardCharsets.UTF_8);
+    private static final CacheControl TEMPLATE_CACHE_CONTROL = CacheControl.maxAge(Duration.ofDays(365)).cachePublic().immutable();
+
     private final TppServiceImpl tppService;
 
     public TppControllerImpl(TppServiceImpl tppService) {
@@ -33,8 +41,41 @@ public class TppControllerImpl implements TppController {
      * {@inheritDoc}
      */
     @Override
-    public Mono<ResponseEntity<List<TppDTO>>> filterEnabledList(TppIdList tppIdList) {
-        return tppService.filterEnabledList(inputSanitization(tppIdList.getIds()), tppIdList.getRecipientId())
+    public Mono<ResponseEntity<byte[]>> filterEnabledList(TppIdList tppIdList, boolean templateRef) {
+        return tppService.filterEnabledListJson(inputSanitization(tppIdList.getIds()), tppIdList.getRecipientId(), templateRef)
+                .map(TppControllerImpl::json);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Mono<ResponseEntity<String>> getMessageTemplate(String templateId, String hash) {
+        return tppService.getMessageTemplate(inputSanitization(templateId), inputSanitization(hash))
+                .map(template -> ResponseEntity.ok()
+                        .contentType(TEMPLATE_CONTENT_TYPE)
+                        .cacheControl(TEMPLATE_CACHE_CONTROL)
+                        .eTag(hash)
+                        .body(template));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Mono<ResponseEntity<String>> renderMessage(String tppId, MessageDTO message) {
+        return tppService.renderMessage(inputSanitization(tppId), message)
+                .map(rendered -> ResponseEntity.ok()
+                        .contentType(TEMPLATE_CONTENT_TYPE)
+                        .body(rendered));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Mono<ResponseEntity<List<String>>> renderMessages(String tppId, MessageList messageList) {
+        return tppService.renderMessages(inputSanitization(tppId), messageList.getMessages())
                 .map(ResponseEntity::ok);
     }
 
@@ -96,27 +137,27 @@ public class TppControllerImpl implements TppController {
      * {@inheritDoc}
      */
     @Override
-    public Mono<ResponseEntity<TppDTOWithoutTokenSection>> getTppDetails(String tppId) {
-        return tppService.getTppDetails(inputSanitization(tppId))
-                .map(ResponseEntity::ok);
+    public Mono<ResponseEntity<byte[]>> getTppDetails(String tppId) {
+        return tppService.getTppDetailsJson(inputSanitization(tppId))
+                .map(TppControllerImpl::tagged);
     }
     
     /**
      * {@inheritDoc}
      */
     @Override
-    public Mono<ResponseEntity<TokenSectionDTO>> getTokenSection(String tppId) {
-        return tppService.getTokenSection(inputSanitization(tppId))
-                .map(ResponseEntity::ok);
+    public Mono<ResponseEntity<byte[]>> getTokenSection(String tppId) {
+        return tppService.getTokenSectionJson(inputSanitization(tppId))
+                .map(TppControllerImpl::tagged);
     }
     
     /**
      * {@inheritDoc}
      */
     @Override
-    public Mono<ResponseEntity<TppDTOWithoutTokenSection>> getTppByEntityId(String entityId) {
-        return tppService.getTppByEntityId(inputSanitization(entityId))
-                .map(ResponseEntity::ok);
+    public Mono<ResponseEntity<byte[]>> getTppByEntityId(String entityId) {
+        return tppService.getTppByEntityIdJson(inputSanitization(entityId))
+                .map(TppControllerImpl::tagged);
     }
 
     /**
@@ -181,4 +222,24 @@ public class TppControllerImpl implements TppController {
         return tppService.updateRecipientIdOnWhitelist(inputSanitization(tppId), recipientIds)
                 .then(Mono.just(ResponseEntity.noContent().build()));
     }
+
+    /**
+     * Wraps JSON already encoded by the service, which is written as is.
+     */
+    private static ResponseEntity<byte[]> json(byte[] body) {
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(body);
+    }
+
+    /**
+     * Wraps JSON already encoded by the service together with its ETag. WebFlux answers
+     * {@code 304 Not Modified}, without body, when the request's {@code If-None-Match} matches it.
+     */
+    private static ResponseEntity<byte[]> tagged(TppResponseCache.Json json) {
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .eTag(json.etag())
+                .body(json.body());
+    }
 }
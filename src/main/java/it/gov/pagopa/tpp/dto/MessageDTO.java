@@ -0,0 +1,32 @@
+package it.gov.pagopa.tpp.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.experimental.SuperBuilder;
+
+/**
+ * Data Transfer Object representing a message to be rendered with the message template of a TPP.
+ * <p>
+ * Its fields are the variables available to the templates.
+ */
+@Data
+@SuperBuilder(toBuilder = true)
+@NoArgsConstructor
+@AllArgsConstructor
+public class MessageDTO {
+    private String messageId;
+    private String recipientId;
+    private String triggerDateTime;
+    private String triggerDateTimeUTC;
+    private String senderDescription;
+    private String messageUrl;
+    private String originId;
+    private String title;
+    private String content;
+    private String notes;
+    private String analogSchedulingDate;
+    private String workflowType;
+    private Boolean associatedPayment;
+    private String idPsp;
+}
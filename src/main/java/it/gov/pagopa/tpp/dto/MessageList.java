@@ -0,0 +1,24 @@
+package it.gov.pagopa.tpp.dto;
+
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.Size;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import java.util.List;
+
+/**
+ * Data Transfer Object representing a batch of messages to be rendered with the same TPP template.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class MessageList {
+
+    public static final int MAX_MESSAGES = 100;
+
+    @NotEmpty
+    @Size(max = MAX_MESSAGES)
+    private List<MessageDTO> messages;
+
+}
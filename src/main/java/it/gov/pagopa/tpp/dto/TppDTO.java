@@ -1,5 +1,6 @@
 package it.gov.pagopa.tpp.dto;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import it.gov.pagopa.tpp.enums.AuthenticationType;
 import it.gov.pagopa.tpp.model.AgentLink;
 import it.gov.pagopa.tpp.model.Contact;
@@ -19,7 +20,7 @@ import java.util.HashMap;
  * Data Transfer Object representing a complete TPP entity with full configuration.
  */ 
 @Data
-@SuperBuilder
+@SuperBuilder(toBuilder = true)
 @NoArgsConstructor
 public class TppDTO {
 
@@ -67,5 +68,22 @@ public class TppDTO {
 
     private String messageTemplate;
 
+    /**
+     * Identifies the message template: {@code default} for the shared one, the tppId for a custom one.
+     * Only set, in place of {@link #messageTemplate}, by {@code POST /emd/tpp/list?templateRef=true}.
+     */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private String messageTemplateId;
+
+    /**
+     * SHA-256 of the message template, in hex: together with {@link #messageTemplateId} it addresses
+     * the template on {@code GET /emd/tpp/message-templates/{messageTemplateId}/{messageTemplateHash}}.
+     * The pair changes whenever the template does, so consumers can key their compiled templates on it
+     * and parse each template once per change instead of once per message. Set along with
+     * {@link #messageTemplateId} only.
+     */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private String messageTemplateHash;
+
     private List<String> whitelistRecipient;
 }
@@ -1,11 +1,14 @@
 package it.gov.pagopa.tpp.dto.mapper;
 
 
+import it.gov.pagopa.common.utils.LocalCache;
+import it.gov.pagopa.common.utils.Utils;
 import it.gov.pagopa.tpp.dto.TppDTO;
 import it.gov.pagopa.tpp.model.Tpp;
 import jakarta.annotation.PostConstruct;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.core.io.Resource;
@@ -16,15 +19,48 @@ import org.springframework.util.StringUtils;
 /**
  * Service class responsible for mapping {@link Tpp} domain objects to 
  * {@link TppDTO} data transfer objects.
+ * <p>
+ * It also resolves the reference (identifier and hash) of the message template used by a TPP, so that
+ * clients can fetch it once and cache it. The hash of a custom template is computed once per template
+ * and kept in memory, the hash of the default one once at startup.
  */ 
 @Service
 @Slf4j
 public class TppObjectToDTOMapper {
+
+    /**
+     * Identifier of the default message template, shared by the TPPs without a custom one.
+     */
+    public static final String DEFAULT_TEMPLATE_ID = "default";
+
     @Value("classpath:templates/default_message.ftl")
     private Resource defaultTemplateResource;
 
+    @Value("${tpp.cache.template-ref.max-size:1000}")
+    private int templateRefCacheMaxSize;
+
+    @Value("${tpp.cache.template-ref.ttl:PT1H}")
+    private Duration templateRefCacheTtl;
+
     private String defaultTemplateContent;
 
+    private TemplateRef defaultTemplateRef;
+
+    /**
+     * References of the custom templates, by tppId. An entry is reused only while it describes the
+     * same template the TPP currently has.
+     */
+    private LocalCache<String, TemplateRef> customTemplateRefs;
+
+    /**
+     * Reference to a message template.
+     *
+     * @param id       {@code default} for the shared template, the tppId for a custom one
+     * @param hash     SHA-256 of the template, in hex
+     * @param template the template itself
+     */
+    public record TemplateRef(String id, String hash, String template) {}
+
     @PostConstruct
     public void init() {
         try {
@@ -33,6 +69,8 @@ public class TppObjectToDTOMapper {
                 defaultTemplateResource.getInputStream(),
                 StandardCharsets.UTF_8
             );
+            this.defaultTemplateRef = new TemplateRef(DEFAULT_TEMPLATE_ID, Utils.createSHA256(defaultTemplateContent), defaultTemplateContent);
+            this.customTemplateRefs = new LocalCache<>(templateRefCacheMaxSize, templateRefCacheTtl);
         } catch (IOException e) {
             throw new RuntimeException("[TPP-MAPPER] Error while loading message template default file", e);
         }
@@ -48,9 +86,7 @@ public class TppObjectToDTOMapper {
     public TppDTO map(Tpp tpp){
         boolean hasCustomTemplate = StringUtils.hasText(tpp.getMessageTemplate());
 
-        String templateToUse = hasCustomTemplate
-            ? tpp.getMessageTemplate()
-            : defaultTemplateContent;
+        String templateToUse = templateOf(tpp);
 
         log.debug("[TPP-MAPPER][MAP] EntityId: {} - TppId: {}. Template Source: {}",
             tpp.getEntityId(),
@@ -80,4 +116,67 @@ public class TppObjectToDTOMapper {
             .whitelistRecipient(tpp.getWhitelistRecipient())
             .build();
     }
+
+    /**
+     * Returns the message template used by a TPP: its custom one, or else the default one.
+     *
+     * @param tpp the TPP
+     * @return the message template
+     */
+    public String templateOf(Tpp tpp) {
+        return StringUtils.hasText(tpp.getMessageTemplate()) ? tpp.getMessageTemplate() : defaultTemplateContent;
+    }
+
+    /**
+     * @return the default message template, loaded from file
+     */
+    public String getDefaultTemplate() {
+        return defaultTemplateContent;
+    }
+
+    /**
+     * @return the reference to the default message template
+     */
+    public TemplateRef getDefaultTemplateRef() {
+        return defaultTemplateRef;
+    }
+
+    /**
+     * Returns the reference to the message template used by a TPP.
+     *
+     * @param tpp the TPP
+     * @return the reference to its template
+     */
+    public TemplateRef templateRefOf(Tpp tpp) {
+        return templateRefOf(tpp.getTppId(), templateOf(tpp));
+    }
+
+    /**
+     * Returns a copy of the {@link TppDTO} that references its message template by identifier and hash
+     * instead of carrying it.
+     *
+     * @param tppDTO a TPP mapped by {@link #map(Tpp)}
+     * @return the copy, with {@code messageTemplateId} and {@code messageTemplateHash} set
+     */
+    public TppDTO withTemplateRef(TppDTO tppDTO) {
+        TemplateRef templateRef = templateRefOf(tppDTO.getTppId(), tppDTO.getMessageTemplate());
+        return tppDTO.toBuilder()
+            .messageTemplate(null)
+            .messageTemplateId(templateRef.id())
+            .messageTemplateHash(templateRef.hash())
+            .build();
+    }
+
+    private TemplateRef templateRefOf(String tppId, String template) {
+        if (!StringUtils.hasText(template) || template.equals(defaultTemplateContent)) {
+            return defaultTemplateRef;
+        }
+        TemplateRef cached = customTemplateRefs.get(tppId);
+        if (cached != null && template.equals(cached.template())) {
+            return cached;
+        }
+        TemplateRef templateRef = new TemplateRef(tppId, Utils.createSHA256(template), template);
+        customTemplateRefs.put(tppId, templateRef);
+        return templateRef;
+    }
 }
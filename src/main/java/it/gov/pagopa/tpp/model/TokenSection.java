@@ -1,5 +1,6 @@
 package it.gov.pagopa.tpp.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
@@ -9,6 +10,10 @@ import java.util.Map;
 
 /**
  * Represents a token section. It serves as a data model for storing token section information.
+ * <p>
+ * When {@code wrappedDataKey} is set, the property values are envelope-encrypted: they were encrypted
+ * locally with a data key, and only that data key was wrapped by the TPP's Key Vault key. When it is
+ * {@code null}, the values are either plain text or in the legacy per-property RSA format.
  */
 @Data
 @NoArgsConstructor
@@ -18,4 +23,11 @@ public class TokenSection {
     private String contentType;
     private Map<String, String> pathAdditionalProperties;
     private Map<String, String> bodyAdditionalProperties;
-}
\ No newline at end of file
+
+    @JsonIgnore
+    private String wrappedDataKey;
+
+    public TokenSection(String contentType, Map<String, String> pathAdditionalProperties, Map<String, String> bodyAdditionalProperties) {
+        this(contentType, pathAdditionalProperties, bodyAdditionalProperties, null);
+    }
+}
@@ -6,6 +6,8 @@ import java.util.List;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 import lombok.experimental.SuperBuilder;
+import org.springframework.data.annotation.Transient;
+import org.springframework.data.mongodb.core.index.Indexed;
 import org.springframework.data.mongodb.core.mapping.Document;
 
 import java.time.LocalDateTime;
@@ -17,7 +19,7 @@ import java.util.HashMap;
 @Document(collection = "tpp")
 @Data
 @NoArgsConstructor
-@SuperBuilder
+@SuperBuilder(toBuilder = true)
 public class Tpp {
 
     private String id;
@@ -34,10 +36,18 @@ public class Tpp {
     private Contact contact;
     private TokenSection tokenSection;
     private LocalDateTime creationDate;
+    @Indexed
     private LocalDateTime lastUpdateDate;
     private String pspDenomination;
     private HashMap<String, AgentLink> agentLinks;
     private Boolean isPaymentEnabled;
     private String messageTemplate;
     private List<String> whitelistRecipient;
+
+    /**
+     * Fingerprint of the encrypted token section a cached entry was decrypted from, see
+     * {@code TokenSectionCryptService#fingerprintOf}. Only set on cached entries, never stored in the database.
+     */
+    @Transient
+    private String tokenSectionFingerprint;
 }
\ No newline at end of file
@@ -0,0 +1,36 @@
+package it.gov.pagopa.tpp.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.experimental.SuperBuilder;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.CompoundIndexes;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.LocalDateTime;
+
+/**
+ * Represents a single whitelisted recipient of a TPP stored in MongoDB, one document per
+ * (tppId, recipientId) pair.
+ * <p>
+ * The unique {@code tppId_recipientId} index backs the per-TPP listing and guarantees each pair is
+ * stored once; the {@code recipientId_tppId} index serves the lookup of the TPPs that whitelist a
+ * given recipient.
+ */
+@Document(collection = "tpp_whitelist")
+@CompoundIndexes({
+        @CompoundIndex(name = "tppId_recipientId", def = "{'tppId': 1, 'recipientId': 1}", unique = true),
+        @CompoundIndex(name = "recipientId_tppId", def = "{'recipientId': 1, 'tppId': 1}")
+})
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@SuperBuilder
+public class TppWhitelistEntry {
+
+    private String id;
+    private String tppId;
+    private String recipientId;
+    private LocalDateTime creationDate;
+}
@@ -8,6 +8,8 @@ import org.springframework.stereotype.Repository;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 
 /**
@@ -16,7 +18,7 @@ import java.util.List;
  * Collection name: {@code tpp}
  */
 @Repository
-public interface TppRepository extends ReactiveMongoRepository<Tpp,String> {
+public interface TppRepository extends ReactiveMongoRepository<Tpp,String>, TppRepositoryCustom {
 
     /**
      * Finds multiple TPP records by their IDs, filtering only active ones.
@@ -28,16 +30,21 @@ public interface TppRepository extends ReactiveMongoRepository<Tpp,String> {
     Flux<Tpp> findByTppIdInAndStateTrue(List<String> tppIds);
 
     /**
-     * Custom query to retrieve active TPPs or those with recipientId in the whitelist field
+     * Custom query to retrieve, among the given TPPs, the active ones and those that whitelist the recipient.
+     *
+     * @param tppIds list of TPP identifiers to search for
+     * @param whitelistedTppIds the TPP identifiers whose whitelist contains the recipient, as returned by
+     *                          {@link TppWhitelistRepository#findByRecipientIdAndTppIdIn}
+     * @return {@link Flux} containing the enabled Tpp entities
      */
     @Query(    "{ " +
                 "  'tppId': { $in: ?0 },  " +
                 "  $or: [  " +
                 "    { 'state': true }, " +
-                "    { 'whitelistRecipient': ?1 }" +
+                "    { 'tppId': { $in: ?1 } }" +
                 "  ]" +
                 "}")
-    Flux<Tpp> findEnabledForRecipient(List<String> tppIds, String recipientId);
+    Flux<Tpp> findEnabledOrWhitelisted(List<String> tppIds, List<String> whitelistedTppIds);
 
     /**
      * Finds a single TPP record by its unique TPP identifier.
@@ -47,6 +54,31 @@ public interface TppRepository extends ReactiveMongoRepository<Tpp,String> {
      */
     Mono<Tpp> findByTppId(String tppId);
 
+    /**
+     * Checks whether a TPP exists without reading the document.
+     *
+     * @param tppId the TPP identifier
+     * @return {@link Mono} emitting {@code true} if a TPP with the given identifier exists
+     */
+    Mono<Boolean> existsByTppId(String tppId);
+
+    /**
+     * Finds the TPPs updated at or after the given instant.
+     *
+     * @param lastUpdateDate the lower bound, inclusive
+     * @return {@link Flux} containing the TPP entities updated since {@code lastUpdateDate}
+     */
+    Flux<Tpp> findByLastUpdateDateGreaterThanEqual(LocalDateTime lastUpdateDate);
+
+    /**
+     * Finds, among the given TPPs, those that still exist and returns only their IDs and state.
+     *
+     * @param tppIds the TPP identifiers to look up
+     * @return {@link Flux} of the existing TPP entities with only tppId and state fields
+     */
+    @Query(value = "{ 'tppId': { $in: ?0 } }", fields = "{ 'tppId': 1, 'state': 1 }")
+    Flux<Tpp> findStatesByTppIdIn(Collection<String> tppIds);
+
     /**
      * Finds a single TPP record by its entity identifier.
      * 
@@ -56,7 +88,9 @@ public interface TppRepository extends ReactiveMongoRepository<Tpp,String> {
     Mono<Tpp> findByEntityId(String entityId);
 
     /**
-     * Finds all TPPs and returns only their IDs and whitelist recipients.
+     * Finds all TPPs that still embed a whitelist and returns only their IDs and whitelist recipients.
+     * Whitelists now live in the {@code tpp_whitelist} collection: this query only serves the migration
+     * of the legacy embedded arrays.
      *
      * @return Flux of all TPP entities with only tppId and whitelistRecipient fields
      */
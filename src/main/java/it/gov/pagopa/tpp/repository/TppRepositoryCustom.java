@@ -0,0 +1,41 @@
+package it.gov.pagopa.tpp.repository;
+
+import it.gov.pagopa.tpp.model.Tpp;
+import reactor.core.publisher.Mono;
+
+import java.time.LocalDateTime;
+import java.util.Map;
+
+/**
+ * TPP update operations that target single fields instead of saving the whole document.
+ */
+public interface TppRepositoryCustom {
+
+    /**
+     * Sets the given fields and the last update date of a TPP with a single {@code findAndModify}
+     * ({@code $set}), leaving every other field untouched.
+     *
+     * @param tppId the TPP identifier
+     * @param fields the new field values keyed by field name
+     * @param lastUpdateDate the new last update date
+     * @return {@link Mono} containing the updated Tpp entity, or empty if not found
+     */
+    Mono<Tpp> updateFields(String tppId, Map<String, Object> fields, LocalDateTime lastUpdateDate);
+
+    /**
+     * Sets the last update date of a TPP with a single {@code findAndModify}.
+     *
+     * @param tppId the TPP identifier
+     * @param lastUpdateDate the new last update date
+     * @return {@link Mono} containing the updated Tpp entity, or empty if not found
+     */
+    Mono<Tpp> updateLastUpdateDate(String tppId, LocalDateTime lastUpdateDate);
+
+    /**
+     * Removes the legacy embedded whitelist from a TPP document.
+     *
+     * @param tppId the TPP identifier
+     * @return {@link Mono} that completes when the field has been removed
+     */
+    Mono<Void> unsetWhitelistRecipient(String tppId);
+}
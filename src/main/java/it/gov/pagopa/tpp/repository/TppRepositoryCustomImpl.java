@@ -0,0 +1,59 @@
+package it.gov.pagopa.tpp.repository;
+
+import it.gov.pagopa.tpp.model.Tpp;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import reactor.core.publisher.Mono;
+
+import java.time.LocalDateTime;
+import java.util.Map;
+
+/**
+ * {@link ReactiveMongoTemplate}-based implementation of {@link TppRepositoryCustom}.
+ */
+public class TppRepositoryCustomImpl implements TppRepositoryCustom {
+
+    private final ReactiveMongoTemplate mongoTemplate;
+
+    public TppRepositoryCustomImpl(ReactiveMongoTemplate mongoTemplate) {
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Mono<Tpp> updateFields(String tppId, Map<String, Object> fields, LocalDateTime lastUpdateDate) {
+        Update update = new Update().set("lastUpdateDate", lastUpdateDate);
+        fields.forEach(update::set);
+        return mongoTemplate.findAndModify(
+                byTppId(tppId),
+                update,
+                FindAndModifyOptions.options().returnNew(true),
+                Tpp.class);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Mono<Tpp> updateLastUpdateDate(String tppId, LocalDateTime lastUpdateDate) {
+        return updateFields(tppId, Map.of(), lastUpdateDate);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Mono<Void> unsetWhitelistRecipient(String tppId) {
+        return mongoTemplate.updateFirst(byTppId(tppId), new Update().unset("whitelistRecipient"), Tpp.class)
+                .then();
+    }
+
+    private static Query byTppId(String tppId) {
+        return Query.query(Criteria.where("tppId").is(tppId));
+    }
+}
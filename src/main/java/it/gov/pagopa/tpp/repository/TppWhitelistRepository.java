@@ -0,0 +1,69 @@
+package it.gov.pagopa.tpp.repository;
+
+import it.gov.pagopa.tpp.model.TppWhitelistEntry;
+import org.springframework.data.mongodb.repository.ReactiveMongoRepository;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.Collection;
+
+/**
+ * Repository interface for managing TPP whitelist entries in MongoDB.
+ * <p>
+ * Collection name: {@code tpp_whitelist}
+ */
+@Repository
+public interface TppWhitelistRepository extends ReactiveMongoRepository<TppWhitelistEntry, String>, TppWhitelistRepositoryCustom {
+
+    /**
+     * Finds the whitelist entries of a TPP.
+     *
+     * @param tppId the TPP identifier
+     * @return {@link Flux} containing the whitelist entries of the TPP
+     */
+    Flux<TppWhitelistEntry> findByTppId(String tppId);
+
+    /**
+     * Finds the whitelist entries of the given TPPs.
+     *
+     * @param tppIds the TPP identifiers
+     * @return {@link Flux} containing the whitelist entries of the TPPs
+     */
+    Flux<TppWhitelistEntry> findByTppIdIn(Collection<String> tppIds);
+
+    /**
+     * Finds, among the given TPPs, the entries whitelisting a recipient.
+     *
+     * @param recipientId the recipient identifier
+     * @param tppIds the TPP identifiers to check
+     * @return {@link Flux} containing one entry for each TPP whitelisting the recipient
+     */
+    Flux<TppWhitelistEntry> findByRecipientIdAndTppIdIn(String recipientId, Collection<String> tppIds);
+
+    /**
+     * Deletes the entry of a (tppId, recipientId) pair.
+     *
+     * @param tppId the TPP identifier
+     * @param recipientId the recipient identifier
+     * @return {@link Mono} containing the number of deleted entries, 0 or 1
+     */
+    Mono<Long> deleteByTppIdAndRecipientId(String tppId, String recipientId);
+
+    /**
+     * Deletes the entries of a TPP whose recipient is not among the given ones.
+     *
+     * @param tppId the TPP identifier
+     * @param recipientIds the recipients to keep, empty to delete the whole whitelist
+     * @return {@link Mono} containing the number of deleted entries
+     */
+    Mono<Long> deleteByTppIdAndRecipientIdNotIn(String tppId, Collection<String> recipientIds);
+
+    /**
+     * Deletes the whole whitelist of a TPP.
+     *
+     * @param tppId the TPP identifier
+     * @return {@link Mono} containing the number of deleted entries
+     */
+    Mono<Long> deleteByTppId(String tppId);
+}
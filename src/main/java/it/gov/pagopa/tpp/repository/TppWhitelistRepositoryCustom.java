@@ -0,0 +1,30 @@
+package it.gov.pagopa.tpp.repository;
+
+import reactor.core.publisher.Mono;
+
+import java.util.Collection;
+
+/**
+ * Whitelist write operations that go beyond derived queries.
+ */
+public interface TppWhitelistRepositoryCustom {
+
+    /**
+     * Stores a (tppId, recipientId) pair with a single upsert, unless already present. Safe under concurrent
+     * inserts of the same pair: exactly one of them reports the insertion.
+     *
+     * @param tppId the TPP identifier
+     * @param recipientId the recipient identifier
+     * @return {@link Mono} emitting {@code true} if the pair was inserted, {@code false} if it was already present
+     */
+    Mono<Boolean> insertIfAbsent(String tppId, String recipientId);
+
+    /**
+     * Stores several recipients of a TPP with unordered bulk upserts, skipping duplicates and those already present.
+     *
+     * @param tppId the TPP identifier
+     * @param recipientIds the recipient identifiers
+     * @return {@link Mono} that completes when every pair has been stored
+     */
+    Mono<Void> insertAll(String tppId, Collection<String> recipientIds);
+}
@@ -0,0 +1,66 @@
+package it.gov.pagopa.tpp.repository;
+
+import it.gov.pagopa.tpp.model.TppWhitelistEntry;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+
+/**
+ * {@link ReactiveMongoTemplate}-based implementation of {@link TppWhitelistRepositoryCustom}.
+ */
+public class TppWhitelistRepositoryCustomImpl implements TppWhitelistRepositoryCustom {
+
+    private static final int BULK_SIZE = 1000;
+
+    private final ReactiveMongoTemplate mongoTemplate;
+
+    public TppWhitelistRepositoryCustomImpl(ReactiveMongoTemplate mongoTemplate) {
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Mono<Boolean> insertIfAbsent(String tppId, String recipientId) {
+        return mongoTemplate.upsert(pairQuery(tppId, recipientId), insertOnly(), TppWhitelistEntry.class)
+                .map(result -> result.getUpsertedId() != null)
+                // two concurrent upserts of the same pair: the unique index lets only one insert
+                .onErrorResume(DuplicateKeyException.class, e -> Mono.just(false));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Mono<Void> insertAll(String tppId, Collection<String> recipientIds) {
+        if (recipientIds == null || recipientIds.isEmpty()) {
+            return Mono.empty();
+        }
+        return Flux.fromIterable(new LinkedHashSet<>(recipientIds))
+                .buffer(BULK_SIZE)
+                .concatMap(chunk -> {
+                    var bulkOps = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, TppWhitelistEntry.class);
+                    chunk.forEach(recipientId -> bulkOps.upsert(pairQuery(tppId, recipientId), insertOnly()));
+                    return bulkOps.execute();
+                })
+                .then();
+    }
+
+    private static Query pairQuery(String tppId, String recipientId) {
+        return Query.query(Criteria.where("tppId").is(tppId).and("recipientId").is(recipientId));
+    }
+
+    private static Update insertOnly() {
+        return new Update().setOnInsert("creationDate", LocalDateTime.now());
+    }
+}
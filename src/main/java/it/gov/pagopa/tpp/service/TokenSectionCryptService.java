@@ -1,87 +1,272 @@
 package it.gov.pagopa.tpp.service;
 
-import com.azure.security.keyvault.keys.cryptography.CryptographyAsyncClient;
-import com.azure.security.keyvault.keys.cryptography.models.EncryptionAlgorithm;
-import com.azure.security.keyvault.keys.models.KeyVaultKey;
+import it.gov.pagopa.common.utils.Utils;
+import it.gov.pagopa.common.web.exception.EmdEncryptionException;
 import it.gov.pagopa.tpp.model.TokenSection;
-import it.gov.pagopa.tpp.service.keyvault.AzureKeyService;
+import it.gov.pagopa.tpp.service.keyvault.KeyProvider;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.Base64;
 import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
- * Service class for encrypting and decrypting TokenSection properties using Azure Key Vault.
+ * Service class for encrypting and decrypting TokenSection properties with the TPP keys held by the
+ * configured {@link KeyProvider} (Azure Key Vault by default).
+ * <p>
+ * TokenSections are envelope-encrypted: a fresh AES-256-GCM data key encrypts every property locally,
+ * and only the data key is wrapped (RSA-OAEP-256) by the TPP's key and stored in
+ * {@link TokenSection#getWrappedDataKey()} as {@code v2:<key version>:<wrapped key>}. The key version
+ * is the one that wrapped the data key, and unwrapping uses it, so TokenSections written before a
+ * rotation of the TPP's key stay readable; envelopes written without it ({@code v2:<wrapped key>}) are
+ * unwrapped with the current key version. The data key is zeroed once used. Decrypting a
+ * whole TokenSection therefore costs a single {@code unwrapKey} call, while encrypting it needs no
+ * Key Vault call at all since the data key is wrapped locally with the public key. TokenSections
+ * without a wrapped data key are in the legacy format, where every property was encrypted by Key
+ * Vault, and are still decrypted property by property.
  */
 @Service
 @Slf4j
 public class TokenSectionCryptService {
 
-    private final AzureKeyService azureKeyService;
+    /** Version marker prefixed to the wrapped data key of envelope-encrypted TokenSections. */
+    public static final String ENVELOPE_VERSION = "v2:";
+
+    private static final char KEY_VERSION_SEPARATOR = ':';
+    private static final String DATA_KEY_ALGORITHM = "AES";
+    private static final String CIPHER_TRANSFORMATION = "AES/GCM/NoPadding";
+    private static final int DATA_KEY_BYTES = 32;
+    private static final int IV_BYTES = 12;
+    private static final int TAG_BITS = 128;
+    private static final String PATH_SECTION = "path:";
+    private static final String BODY_SECTION = "body:";
+    private static final SecureRandom SECURE_RANDOM = new SecureRandom();
+
+    private final KeyProvider keyProvider;
 
     /**
-     * Constructs a TokenSectionCryptService with the specified AzureKeyService.
-     * 
-     * @param azureKeyService the Azure Key Vault service for cryptographic operations
+     * Constructs a TokenSectionCryptService with the specified KeyProvider.
+     *
+     * @param keyProvider the provider of the TPP keys used for cryptographic operations
      */
-    public TokenSectionCryptService(AzureKeyService azureKeyService) {
-        this.azureKeyService = azureKeyService;
+    public TokenSectionCryptService(KeyProvider keyProvider) {
+        this.keyProvider = keyProvider;
     }
 
     /**
      * Encrypts all values in the TokenSection's path and body additional properties
-     * using the provided KeyVaultKey and RSA-OAEP-256 encryption algorithm. 
-     * The encryption is performed in-place, modifying the original map values.
-     * 
+     * with a new AES-256-GCM data key, which is then wrapped with the TPP's key.
+     * The encryption is performed in-place, modifying the original map values and
+     * setting the wrapped data key on the TokenSection.
+     *
      * @param tokenSection the TokenSection containing properties to encrypt
-     * @param keyVaultKey the Azure Key Vault key to use for encryption
-     * @return a Mono<Boolean> that emits true when all encryption operations complete successfully
+     * @param tppId the TPP identifier whose key wraps the data key
+     * @return a Mono<Boolean> that emits true when the encryption completes successfully
+     */
+    public Mono<Boolean> keyEncrypt(TokenSection tokenSection, String tppId) {
+        return Mono.defer(() -> {
+            byte[] dataKey = new byte[DATA_KEY_BYTES];
+            SECURE_RANDOM.nextBytes(dataKey);
+
+            return keyProvider.wrapKey(tppId, dataKey)
+                    .map(wrappedDataKey -> {
+                        SecretKey secretKey = new SecretKeySpec(dataKey, DATA_KEY_ALGORITHM);
+                        encryptValues(tokenSection.getPathAdditionalProperties(), PATH_SECTION, secretKey);
+                        encryptValues(tokenSection.getBodyAdditionalProperties(), BODY_SECTION, secretKey);
+                        tokenSection.setWrappedDataKey(ENVELOPE_VERSION + wrappedDataKey.keyVersion()
+                                + KEY_VERSION_SEPARATOR + wrappedDataKey.value());
+                        return true;
+                    })
+                    .doFinally(signal -> Arrays.fill(dataKey, (byte) 0));
+        });
+    }
+
+    /**
+     * Decrypts all values in the TokenSection's path and body additional properties.
+     * <p>
+     * Envelope-encrypted TokenSections are decrypted locally after a single
+     * {@code unwrapKey} of their data key with the TPP's key; legacy ones are decrypted
+     * property by property with RSA-OAEP-256. The decryption is performed in-place,
+     * modifying the original map values and clearing the wrapped data key.
+     *
+     * @param tokenSection the TokenSection containing encrypted properties to decrypt
+     * @param tppId the TPP identifier whose key is used for decryption
+     * @return a Mono<Boolean> that emits true when all decryption operations complete successfully
+     */
+    public Mono<Boolean> keyDecrypt(TokenSection tokenSection, String tppId) {
+        String wrappedDataKey = tokenSection.getWrappedDataKey();
+        if (wrappedDataKey != null && !wrappedDataKey.startsWith(ENVELOPE_VERSION)) {
+            return Mono.error(new EmdEncryptionException("Unsupported TokenSection encryption version", true, null));
+        }
+        if (wrappedDataKey == null) {
+            return legacyDecrypt(tokenSection, tppId);
+        }
+        String envelope = wrappedDataKey.substring(ENVELOPE_VERSION.length());
+        int separator = envelope.indexOf(KEY_VERSION_SEPARATOR);
+        String keyVersion = separator < 0 ? null : envelope.substring(0, separator);
+        String wrappedKey = envelope.substring(separator + 1);
+
+        return Mono.defer(() -> {
+            AtomicReference<byte[]> unwrapped = new AtomicReference<>();
+            return keyProvider.unwrapKey(tppId, keyVersion, wrappedKey)
+                    .map(dataKey -> {
+                        unwrapped.set(dataKey);
+                        SecretKey secretKey = new SecretKeySpec(dataKey, DATA_KEY_ALGORITHM);
+                        decryptValues(tokenSection.getPathAdditionalProperties(), PATH_SECTION, secretKey);
+                        decryptValues(tokenSection.getBodyAdditionalProperties(), BODY_SECTION, secretKey);
+                        tokenSection.setWrappedDataKey(null);
+                        return true;
+                    })
+                    .doFinally(signal -> {
+                        byte[] dataKey = unwrapped.get();
+                        if (dataKey != null) {
+                            Arrays.fill(dataKey, (byte) 0);
+                        }
+                    });
+        });
+    }
+
+    /**
+     * Counts the {@link KeyProvider} calls that {@link #keyDecrypt(TokenSection, String)} makes: one unwrap for
+     * an envelope-encrypted TokenSection, one decrypt per property for a legacy one, plus the read of the
+     * TPP's current key when it is needed and not cached. Envelopes carrying a key version never read it.
+     *
+     * @param tokenSection the encrypted TokenSection
+     * @param tppId the TPP identifier whose key is used for decryption
+     * @return the number of calls, at least one
+     */
+    public int keyProviderCallsFor(TokenSection tokenSection, String tppId) {
+        if (tokenSection == null) {
+            return 1;
+        }
+        String wrappedDataKey = tokenSection.getWrappedDataKey();
+        boolean versioned = wrappedDataKey != null && wrappedDataKey.startsWith(ENVELOPE_VERSION)
+                && wrappedDataKey.indexOf(KEY_VERSION_SEPARATOR, ENVELOPE_VERSION.length()) >= 0;
+        int calls = wrappedDataKey != null
+                ? 1
+                : Math.max(size(tokenSection.getPathAdditionalProperties()) + size(tokenSection.getBodyAdditionalProperties()), 1);
+        return versioned || keyProvider.isCurrentKeyCached(tppId) ? calls : calls + 1;
+    }
+
+    /**
+     * Computes a fingerprint of an encrypted TokenSection: the SHA-256 of its content type, wrapped data key
+     * and properties, sorted by name. Every encryption uses a fresh data key and IVs, so two different
+     * encrypted TokenSections never share a fingerprint.
+     *
+     * @param tokenSection the encrypted TokenSection, before {@link #keyDecrypt(TokenSection, String)}
+     * @return the hex fingerprint, or {@code null} when there is no TokenSection
      */
-    public Mono<Boolean> keyEncrypt(TokenSection tokenSection, KeyVaultKey keyVaultKey) {
-        CryptographyAsyncClient cryptographyClient = azureKeyService.buildCryptographyClient(keyVaultKey);
+    public static String fingerprintOf(TokenSection tokenSection) {
+        if (tokenSection == null) {
+            return null;
+        }
+        StringBuilder canonical = new StringBuilder();
+        appendField(canonical, tokenSection.getContentType());
+        appendField(canonical, tokenSection.getWrappedDataKey());
+        appendProperties(canonical, PATH_SECTION, tokenSection.getPathAdditionalProperties());
+        appendProperties(canonical, BODY_SECTION, tokenSection.getBodyAdditionalProperties());
+        return Utils.createSHA256(canonical.toString());
+    }
+
+    private static void appendProperties(StringBuilder canonical, String section, Map<String, String> properties) {
+        canonical.append(section);
+        if (properties == null) {
+            canonical.append('-');
+            return;
+        }
+        new TreeMap<>(properties).forEach((name, value) -> {
+            appendField(canonical, name);
+            appendField(canonical, value);
+        });
+    }
+
+    /**
+     * Appends a length-prefixed value, so that no two field sequences map to the same string.
+     */
+    private static void appendField(StringBuilder canonical, String value) {
+        if (value == null) {
+            canonical.append('-');
+        } else {
+            canonical.append(value.length()).append(KEY_VERSION_SEPARATOR).append(value);
+        }
+    }
+
+    /**
+     * Decrypts a TokenSection in the legacy format, with one Key Vault call per property.
+     */
+    private Mono<Boolean> legacyDecrypt(TokenSection tokenSection, String tppId) {
         Map<String, String> pathProps = tokenSection.getPathAdditionalProperties();
         Map<String, String> bodyProps = tokenSection.getBodyAdditionalProperties();
 
         return Flux.concat(
                 pathProps != null ? Flux.fromIterable(pathProps.entrySet())
-                        .flatMap(entry -> azureKeyService.encrypt(entry.getValue().getBytes(), EncryptionAlgorithm.RSA_OAEP_256, cryptographyClient)
+                        .flatMap(entry -> keyProvider.decrypt(tppId, entry.getValue())
                                 .map(entry::setValue)) : Flux.empty(),
                 bodyProps != null ? Flux.fromIterable(bodyProps.entrySet())
-                        .flatMap(entry ->azureKeyService.encrypt(entry.getValue().getBytes(), EncryptionAlgorithm.RSA_OAEP_256, cryptographyClient)
+                        .flatMap(entry -> keyProvider.decrypt(tppId, entry.getValue())
                                 .map(entry::setValue)) : Flux.empty()
         ).then(Mono.just(true));
     }
 
+    private static int size(Map<String, String> properties) {
+        return properties == null ? 0 : properties.size();
+    }
+
     /**
-     * Decrypts all values in the TokenSection's path and body additional properties.
-     * <p>
-     * This method retrieves the encryption key from Azure Key Vault using the provided
-     * TPP ID, then decrypts all string values in both pathAdditionalProperties and
-     * bodyAdditionalProperties maps using RSA-OAEP-256 decryption algorithm.
-     * The decryption is performed in-place, modifying the original map values.
-     * 
-     * @param tokenSection the TokenSection containing encrypted properties to decrypt
-     * @param tppId the TPP identifier used to retrieve the decryption key from Azure Key Vault
-     * @return a Mono<Boolean> that emits true when all decryption operations complete successfully
+     * Encrypts every value in place as Base64({@code iv || ciphertext || tag}). The section and
+     * property name are bound as additional authenticated data, so values cannot be swapped.
      */
-    public Mono<Boolean> keyDecrypt(TokenSection tokenSection, String tppId) {
-        //Recupera KeyVaultKey da azure
-        return azureKeyService.getKey(tppId)
-                .flatMap(keyVaultKey -> {
-                    CryptographyAsyncClient cryptographyClient = azureKeyService.buildCryptographyClient(keyVaultKey);
-                    Map<String, String> pathProps = tokenSection.getPathAdditionalProperties();
-                    Map<String, String> bodyProps = tokenSection.getBodyAdditionalProperties();
-
-                    return Flux.concat(
-                            pathProps != null ? Flux.fromIterable(pathProps.entrySet())
-                                    .flatMap(entry -> azureKeyService.decrypt(entry.getValue(), EncryptionAlgorithm.RSA_OAEP_256, cryptographyClient)
-                                            .map(entry::setValue)) : Flux.empty(),
-                            bodyProps != null ? Flux.fromIterable(bodyProps.entrySet())
-                                    .flatMap(entry -> azureKeyService.decrypt(entry.getValue(), EncryptionAlgorithm.RSA_OAEP_256, cryptographyClient)
-                                            .map(entry::setValue)) : Flux.empty()
-                    ).then(Mono.just(true));
-                });
+    private static void encryptValues(Map<String, String> props, String section, SecretKey secretKey) {
+        if (props == null) {
+            return;
+        }
+        props.replaceAll((name, value) -> {
+            try {
+                byte[] iv = new byte[IV_BYTES];
+                SECURE_RANDOM.nextBytes(iv);
+                Cipher cipher = Cipher.getInstance(CIPHER_TRANSFORMATION);
+                cipher.init(Cipher.ENCRYPT_MODE, secretKey, new GCMParameterSpec(TAG_BITS, iv));
+                cipher.updateAAD((section + name).getBytes(StandardCharsets.UTF_8));
+                byte[] cipherText = cipher.doFinal(value.getBytes(StandardCharsets.UTF_8));
+                return Base64.getEncoder().encodeToString(
+                        ByteBuffer.allocate(IV_BYTES + cipherText.length).put(iv).put(cipherText).array());
+            } catch (GeneralSecurityException e) {
+                throw new EmdEncryptionException("Error encrypting TokenSection property", true, e);
+            }
+        });
+    }
+
+    /**
+     * Decrypts in place every value produced by {@link #encryptValues(Map, String, SecretKey)}.
+     */
+    private static void decryptValues(Map<String, String> props, String section, SecretKey secretKey) {
+        if (props == null) {
+            return;
+        }
+        props.replaceAll((name, value) -> {
+            try {
+                byte[] payload = Base64.getDecoder().decode(value);
+                Cipher cipher = Cipher.getInstance(CIPHER_TRANSFORMATION);
+                cipher.init(Cipher.DECRYPT_MODE, secretKey, new GCMParameterSpec(TAG_BITS, payload, 0, IV_BYTES));
+                cipher.updateAAD((section + name).getBytes(StandardCharsets.UTF_8));
+                byte[] plainText = cipher.doFinal(payload, IV_BYTES, payload.length - IV_BYTES);
+                return new String(plainText, StandardCharsets.UTF_8);
+            } catch (GeneralSecurityException e) {
+                throw new EmdEncryptionException("Error decrypting TokenSection property", true, e);
+            }
+        });
     }
 }
@@ -0,0 +1,223 @@
+package it.gov.pagopa.tpp.service;
+
+import com.mongodb.client.model.changestream.OperationType;
+import it.gov.pagopa.common.configuration.RedisConfig;
+import it.gov.pagopa.tpp.model.Tpp;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.BsonDocument;
+import org.bson.BsonValue;
+import org.redisson.api.RBucketReactive;
+import org.redisson.api.RScript;
+import org.redisson.api.RedissonReactiveClient;
+import org.redisson.client.codec.StringCodec;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.ChangeStreamEvent;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.function.LongSupplier;
+
+/**
+ * Keeps the TPP cache in step with the {@code tpp} collection by following its MongoDB change stream.
+ *
+ * <p>Only one pod follows the stream at a time: the leader holds the {@value #LEADER_KEY} lease, renewed
+ * on every {@link #heartbeat()} by a script that extends it only while it still names this pod, and stops
+ * following the stream as soon as a renewal fails. Events arriving once the lease may have expired without a
+ * successful renewal are not applied, so a stalled pod never keeps consuming alongside a new leader. Each event is applied
+ * through {@link TppMapService#reconcileInMap(Tpp)}, so the writes already cached by the service are
+ * recognised by their {@code lastUpdateDate} and cost nothing, while writes made directly in the database
+ * are cached within moments. Delete events only carry the document {@code _id}, so they trigger
+ * {@link TppMapService#sweepRemoved()} instead.</p>
+ *
+ * <p>The resume token of the last applied event is kept in {@value #RESUME_TOKEN_KEY}, so that a new leader
+ * resumes where the previous one stopped. If the stream fails, for instance because the token has fallen
+ * out of the oplog, the token is dropped and the stream restarts from the current time on the next heartbeat;
+ * the gap is covered by {@link TppMapService#reconcile()}.</p>
+ *
+ * <p>Change streams require a replica set, so the stream is only followed when
+ * {@code tpp.cache.change-stream.enabled} is set.</p>
+ */
+@Component
+@Slf4j
+public class TppCacheChangeStream {
+
+    static final String LEADER_KEY = RedisConfig.TPP_CACHE_MAP_KEY + ":change-stream:leader";
+    static final String RESUME_TOKEN_KEY = RedisConfig.TPP_CACHE_MAP_KEY + ":change-stream:resume-token";
+    private static final String COLLECTION_NAME = "tpp";
+    /** Extends the lease only if this pod still holds it: a separate GET and PEXPIRE could extend another pod's lease. */
+    private static final String RENEW_LEASE_SCRIPT =
+            "if redis.call('get', KEYS[1]) == ARGV[1] then return redis.call('pexpire', KEYS[1], ARGV[2]) else return 0 end";
+
+    private final ReactiveMongoTemplate mongoTemplate;
+    private final RedissonReactiveClient redissonClient;
+    private final TppMapService tppMapService;
+    private final boolean enabled;
+    private final Duration leaseTime;
+    private final LongSupplier nanoClock;
+    private final String instanceId = UUID.randomUUID().toString();
+    private volatile Disposable subscription;
+    private volatile long leaseDeadline;
+
+    @Autowired
+    public TppCacheChangeStream(ReactiveMongoTemplate mongoTemplate,
+                                RedissonReactiveClient redissonClient,
+                                TppMapService tppMapService,
+                                @Value("${tpp.cache.change-stream.enabled:false}") boolean enabled,
+                                @Value("${tpp.cache.change-stream.lease-time:PT30S}") Duration leaseTime) {
+        this(mongoTemplate, redissonClient, tppMapService, enabled, leaseTime, System::nanoTime);
+    }
+
+    /** Package-private constructor — used by unit tests to inject a controllable clock. */
+    TppCacheChangeStream(ReactiveMongoTemplate mongoTemplate,
+                         RedissonReactiveClient redissonClient,
+                         TppMapService tppMapService,
+                         boolean enabled,
+                         Duration leaseTime,
+                         LongSupplier nanoClock) {
+        this.mongoTemplate = mongoTemplate;
+        this.redissonClient = redissonClient;
+        this.tppMapService = tppMapService;
+        this.enabled = enabled;
+        this.leaseTime = leaseTime;
+        this.nanoClock = nanoClock;
+    }
+
+    /**
+     * Acquires or renews the leader lease, following the change stream while it is held.
+     */
+    @Scheduled(fixedDelayString = "${tpp.cache.change-stream.heartbeat:PT10S}")
+    public void heartbeat() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            long renewedAt = nanoClock.getAsLong();
+            boolean leader = Boolean.TRUE.equals(holdLease().block(Duration.ofSeconds(10)));
+            if (leader) {
+                leaseDeadline = renewedAt + leaseTime.toNanos();
+            }
+            if (leader && !isFollowing()) {
+                follow();
+            } else if (!leader && isFollowing()) {
+                log.info("[TPP-CHANGE-STREAM] Leader lease lost, stopping");
+                stop();
+            }
+        } catch (Exception e) {
+            log.error("[TPP-CHANGE-STREAM] Heartbeat failed: {}", e.getMessage(), e);
+            stop();
+        }
+    }
+
+    boolean isFollowing() {
+        Disposable current = subscription;
+        return current != null && !current.isDisposed();
+    }
+
+    @PreDestroy
+    void shutdown() {
+        if (!enabled) {
+            return;
+        }
+        stop();
+        lease().compareAndSet(instanceId, null)
+                .onErrorResume(e -> Mono.just(false))
+                .block(Duration.ofSeconds(5));
+    }
+
+    private void follow() {
+        subscription = resumeToken().get()
+                .map(BsonDocument::parse)
+                .map(Optional::<BsonValue>of)
+                .defaultIfEmpty(Optional.empty())
+                .flatMapMany(token -> {
+                    log.info("[TPP-CHANGE-STREAM] Following the {} change stream {}", COLLECTION_NAME,
+                            token.isPresent() ? "from the stored resume token" : "from now");
+                    return mongoTemplate.changeStream(Tpp.class)
+                            .watchCollection(COLLECTION_NAME)
+                            .withOptions(options -> {
+                                options.returnFullDocumentOnUpdate();
+                                token.ifPresent(options::resumeAfter);
+                            })
+                            .listen();
+                })
+                .takeWhile(event -> {
+                    boolean held = nanoClock.getAsLong() - leaseDeadline < 0;
+                    if (!held) {
+                        log.warn("[TPP-CHANGE-STREAM] Leader lease not renewed in time, stopping");
+                    }
+                    return held;
+                })
+                .concatMap(event -> apply(event)
+                        .then(Mono.defer(() -> storeResumeToken(event.getResumeToken()))))
+                .subscribe(
+                        v -> {},
+                        e -> {
+                            log.error("[TPP-CHANGE-STREAM] Change stream failed, restarting from now: {}", e.getMessage(), e);
+                            resumeToken().delete().subscribe();
+                        },
+                        () -> log.info("[TPP-CHANGE-STREAM] Change stream closed"));
+    }
+
+    private Mono<Void> apply(ChangeStreamEvent<Tpp> event) {
+        OperationType operation = event.getOperationType();
+        if (operation == null) {
+            return Mono.empty();
+        }
+        return switch (operation) {
+            case INSERT, UPDATE, REPLACE -> {
+                Tpp tpp = event.getBody();
+                yield tpp == null || tpp.getTppId() == null
+                        ? Mono.empty()
+                        : tppMapService.reconcileInMap(tpp)
+                                .doOnNext(changed -> {
+                                    if (Boolean.TRUE.equals(changed)) {
+                                        log.info("[TPP-CHANGE-STREAM] Applied {} of TPP {}", operation, tpp.getTppId());
+                                    }
+                                })
+                                .then();
+            }
+            case DELETE, DROP, INVALIDATE -> tppMapService.sweepRemoved();
+            default -> Mono.empty();
+        };
+    }
+
+    private Mono<Void> storeResumeToken(BsonValue token) {
+        return token == null || !token.isDocument()
+                ? Mono.empty()
+                : resumeToken().set(token.asDocument().toJson());
+    }
+
+    private Mono<Boolean> holdLease() {
+        return lease().setIfAbsent(instanceId, leaseTime)
+                .flatMap(acquired -> Boolean.TRUE.equals(acquired)
+                        ? Mono.just(true)
+                        : redissonClient.getScript(StringCodec.INSTANCE)
+                                .<Boolean>eval(RScript.Mode.READ_WRITE, RENEW_LEASE_SCRIPT, RScript.ReturnType.BOOLEAN,
+                                        List.<Object>of(LEADER_KEY), instanceId, String.valueOf(leaseTime.toMillis()))
+                                .defaultIfEmpty(false));
+    }
+
+    private void stop() {
+        Disposable current = subscription;
+        if (current != null) {
+            current.dispose();
+        }
+    }
+
+    private RBucketReactive<String> lease() {
+        return redissonClient.getBucket(LEADER_KEY, StringCodec.INSTANCE);
+    }
+
+    private RBucketReactive<String> resumeToken() {
+        return redissonClient.getBucket(RESUME_TOKEN_KEY, StringCodec.INSTANCE);
+    }
+}
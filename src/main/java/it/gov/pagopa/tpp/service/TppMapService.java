@@ -1,87 +1,181 @@
 package it.gov.pagopa.tpp.service;
 
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import it.gov.pagopa.common.configuration.RedisConfig;
+import it.gov.pagopa.common.utils.SingleFlight;
 import it.gov.pagopa.tpp.model.Tpp;
 import it.gov.pagopa.tpp.repository.TppRepository;
+import it.gov.pagopa.tpp.repository.TppWhitelistRepository;
+import it.gov.pagopa.tpp.service.cache.TppCacheHealthIndicator;
+import it.gov.pagopa.tpp.service.cache.TppNearCache;
+import it.gov.pagopa.tpp.service.cache.TppShardedMap;
+import it.gov.pagopa.tpp.service.cache.TppWhitelistCache;
 import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.RBucketReactive;
 import org.redisson.api.RLockReactive;
-import org.redisson.api.RMapReactive;
+import org.redisson.api.RTopicReactive;
 import org.redisson.api.RedissonReactiveClient;
-import org.springframework.beans.factory.annotation.Autowired;
+import org.redisson.client.codec.StringCodec;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
 
-import javax.annotation.PostConstruct;
 import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
 import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
-import java.util.stream.Collectors;
 
 /**
  * Service component for managing TPP entities in a distributed Redis cache via Redisson.
  *
- * <p>Uses {@link RMapReactive} (Redis Hash) for distributed caching shared across all pods,
+ * <p>Uses a {@link TppShardedMap} (Redis Hashes, sharded by tppId) for distributed caching shared across all pods,
  * and {@link RLockReactive} (distributed lock) to ensure that only <em>one</em> pod at a time
  * performs cache initialization or reset — the same pattern adopted by emd-citizen's
  * {@code BloomFilterInitializer}.</p>
+ *
+ * <p>Reads go through a {@link TppNearCache} first; every write made here is mirrored into it
+ * and published so that the other pods drop their local copy.</p>
+ *
+ * <p>Cached entries hold TPP metadata only: whitelists are written to the {@link TppWhitelistCache}
+ * sets before the entry itself, and are stripped from the cached {@link Tpp}. On population and
+ * reset the sets are rebuilt from the {@code tpp_whitelist} collection, after migrating any whitelist
+ * still embedded in a TPP document into it. In between, a set found missing is rebuilt from the collection
+ * when its TPP is loaded from the database, reconciled or swept.</p>
+ *
+ * <p>Population and reset never write into the live hashes: the snapshot is written in chunks to the
+ * staging hash of each shard, which is then {@code RENAME}d over the live one. Readers therefore always see
+ * a complete generation of every shard, and no single command carries the whole snapshot. The TPPs updated while the
+ * snapshot was being built are then cached again from the database, so that the swap does not bring back
+ * values older than their last write.</p>
+ *
+ * <p>Between rebuilds the cache is kept in step with MongoDB by {@link #reconcile()}, which only looks at the
+ * TPPs updated since the {@value #WATERMARK_KEY} watermark: changed TPPs are cached again, disabled ones are
+ * evicted. Key Vault load therefore follows the rate of change rather than the number of TPPs. Deleted documents
+ * leave no trace for the watermark to find: the TPPs deleted through this service are evicted on the spot, and
+ * those deleted directly in the database are found by {@link #sweep()}, which compares every cached tppId with
+ * the database and therefore runs on its own, much longer, {@code tpp.cache.sweep.interval}. When enabled, the
+ * {@link TppCacheChangeStream} applies the same reconciliation to every change event as it happens, and the
+ * scheduled runs only cover what the stream may have missed.</p>
+ *
+ * <p>Stale entries and lost whitelist sets are thus repaired without a full rebuild, which only adds a Key
+ * Vault call per TPP: it is scheduled only when {@code tpp.cache.reset.cron} is set, for instance to recover
+ * from a cache edited by hand, such as a whitelist set whose members differ from the database.</p>
+ *
+ * <p>Cache misses are loaded through a per-tppId {@link SingleFlight}: concurrent misses for the same TPP share
+ * one database read and one decryption instead of each running their own. Exported meters:
+ * {@code tpp.cache.load.loads}, {@code tpp.cache.load.coalesced} and {@code tpp.cache.load.inflight}.</p>
  */
 @Component
 @Slf4j
 public class TppMapService {
 
     private static final String LOCK_KEY = "emd:tpp:cache-reset-lock";
+    static final String WATERMARK_KEY = RedisConfig.TPP_CACHE_MAP_KEY + ":watermark";
+    static final String READY_TOPIC = RedisConfig.TPP_CACHE_MAP_KEY + ":ready";
+    static final int WRITE_CHUNK_SIZE = 500;
+    /** Margin applied to the rebuild start and to the watermark when looking for updated TPPs, to absorb clock skew between pods. */
+    private static final Duration CATCH_UP_MARGIN = Duration.ofMinutes(1);
 
     private final TppRepository tppRepository;
+    private final TppWhitelistRepository whitelistRepository;
     private final TokenSectionCryptService tokenSectionCryptService;
     private final RedissonReactiveClient redissonClient;
-    private final RMapReactive<String, Tpp> tppMap;
-    private final Duration pollInterval;
+    private final TppShardedMap tppMap;
+    private final TppNearCache nearCache;
+    private final TppWhitelistCache whitelistCache;
+    private final TppCacheHealthIndicator healthIndicator;
+    private final TppSnapshotDecryptor snapshotDecryptor;
+    private final SingleFlight<String, Tpp> loads;
+    private final Duration warmUpTimeout;
 
-    @Autowired
     public TppMapService(TppRepository tppRepository,
+                         TppWhitelistRepository whitelistRepository,
                          TokenSectionCryptService tokenSectionCryptService,
                          RedissonReactiveClient redissonClient,
-                         RMapReactive<String, Tpp> tppMap) {
-        this(tppRepository, tokenSectionCryptService, redissonClient, tppMap, Duration.ofSeconds(5));
-    }
-
-    /** Package-private constructor — used by unit tests to inject a short poll interval. */
-    TppMapService(TppRepository tppRepository,
-                  TokenSectionCryptService tokenSectionCryptService,
-                  RedissonReactiveClient redissonClient,
-                  RMapReactive<String, Tpp> tppMap,
-                  Duration pollInterval) {
+                         TppShardedMap tppMap,
+                         TppNearCache nearCache,
+                         TppWhitelistCache whitelistCache,
+                         TppCacheHealthIndicator healthIndicator,
+                         TppSnapshotDecryptor snapshotDecryptor,
+                         MeterRegistry meterRegistry,
+                         @Value("${tpp.cache.load.timeout:PT10S}") Duration loadTimeout,
+                         @Value("${tpp.cache.warm-up.timeout:PT2M}") Duration warmUpTimeout) {
         this.tppRepository = tppRepository;
+        this.whitelistRepository = whitelistRepository;
         this.tokenSectionCryptService = tokenSectionCryptService;
         this.redissonClient = redissonClient;
         this.tppMap = tppMap;
-        this.pollInterval = pollInterval;
+        this.nearCache = nearCache;
+        this.whitelistCache = whitelistCache;
+        this.healthIndicator = healthIndicator;
+        this.snapshotDecryptor = snapshotDecryptor;
+        this.loads = new SingleFlight<>(loadTimeout);
+        this.warmUpTimeout = warmUpTimeout;
+        FunctionCounter.builder("tpp.cache.load.loads", loads, SingleFlight::loadCount).register(meterRegistry);
+        FunctionCounter.builder("tpp.cache.load.coalesced", loads, SingleFlight::coalescedCount).register(meterRegistry);
+        Gauge.builder("tpp.cache.load.inflight", loads, SingleFlight::inFlightCount).register(meterRegistry);
     }
 
     /**
-     * Populates the Redis cache with active TPP entities from the database at application startup.
+     * Warms up the cache once the application has started, without holding up the startup thread.
+     *
+     * <p>The {@link TppCacheHealthIndicator} keeps the pod out of service until the warm-up ends,
+     * bounded by {@code tpp.cache.warm-up.timeout}.</p>
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUp() {
+        Mono.defer(this::populateMap)
+                .then(Mono.defer(tppMap::isExists))
+                .timeout(warmUpTimeout)
+                .subscribe(
+                        populated -> healthIndicator.warmUpEnded(Boolean.TRUE.equals(populated)),
+                        e -> {
+                            log.error("[TPP-MAP][MAP-INITIALIZER] Warm-up failed, serving from the database until the cache fills: {}",
+                                    e.getMessage(), e);
+                            healthIndicator.warmUpEnded(false);
+                        });
+    }
+
+    /**
+     * Populates the Redis cache with active TPP entities from the database.
      *
      * <p>Uses {@link Mono#usingWhen} to guarantee that the distributed lock is always released
-     * (success, error, or cancellation) and that {@code block()} returns only <em>after</em>
-     * the unlock command has completed on Redis — no fire-and-forget race.</p>
+     * (success, error, or cancellation), and that the pods waiting for it are woken only
+     * <em>after</em> the unlock command has completed on Redis.</p>
      *
-     * <p>Uses {@code .block()} because {@code @PostConstruct} runs on a non-Reactor thread;
-     * this guarantees the pod is NOT marked Ready until the cache is fully populated.</p>
+     * <p>The lock is shared with reconciliation, sweep and reset, so a pod that finds it taken may be
+     * waiting on a run that does not populate the cache: once the lock is released, the pod populates the
+     * cache itself if it is still missing.</p>
      */
-    @PostConstruct
-    void populateMap() {
-        Mono.usingWhen(
+    Mono<Void> populateMap() {
+        return Mono.usingWhen(
                 acquireLock(),
                 locked -> {
                     if (Boolean.FALSE.equals(locked)) {
-                        log.info("[TPP-MAP][MAP-INITIALIZER] Another pod is initializing — waiting for cache to be ready...");
-                        return waitForCachePopulated();
+                        log.info("[TPP-MAP][MAP-INITIALIZER] Another pod holds the cache lock — waiting for its release...");
+                        return waitForLockRelease()
+                                .then(Mono.defer(tppMap::isExists))
+                                .flatMap(exists -> Boolean.TRUE.equals(exists)
+                                        ? Mono.<Void>empty()
+                                        : Mono.defer(this::populateMap));
                     }
-                    return tppMap.isExists()
+                    return migrateLegacyWhitelists()
+                            .then(tppMap.isExists())
                             .flatMap(exists -> {
                                 if (Boolean.TRUE.equals(exists)) {
                                     log.info("[TPP-MAP][MAP-INITIALIZER] Cache already populated by another pod — skipping.");
@@ -92,19 +186,20 @@ public class TppMapService {
                 },
                 // asyncCleanup: called on complete, error AND cancel — properly chained, not fire-and-forget
                 locked -> Boolean.TRUE.equals(locked) ? doReleaseLock() : Mono.empty()
-        ).block(Duration.ofSeconds(120));
+        );
     }
 
     /**
-     * Scheduled task that resets the Redis cache daily at 5 AM.
+     * Scheduled task that fully rebuilds the Redis cache, on the {@code tpp.cache.reset.cron} schedule
+     * (disabled by default: {@link #reconcile()} keeps the cache in step with the database).
      *
      * <p>Uses {@link Mono#usingWhen} to guarantee that the distributed lock is always released
      * even if {@code performReset()} throws, and that {@code block()} returns only after the
      * unlock is confirmed by Redis.</p>
      */
-    @Scheduled(cron = "0 0 5 * * ?")
+    @Scheduled(cron = "${tpp.cache.reset.cron:-}")
     public void resetCache() {
-        log.info("[TPP-MAP][CACHE-RESET] Starting Redis cache reset at 5 AM");
+        log.info("[TPP-MAP][CACHE-RESET] Starting Redis cache reset");
         try {
             Mono.usingWhen(
                     acquireLock(),
@@ -122,6 +217,47 @@ public class TppMapService {
         }
     }
 
+    /**
+     * Scheduled task that reconciles the Redis cache with MongoDB, every {@code tpp.cache.reconcile.interval}.
+     *
+     * <p>Runs under the same distributed lock as population and reset, so that a single pod reconciles at a
+     * time and never while the cache is being rebuilt; pods that don't get the lock skip the run.</p>
+     */
+    @Scheduled(fixedDelayString = "${tpp.cache.reconcile.interval:PT30S}",
+            initialDelayString = "${tpp.cache.reconcile.interval:PT30S}")
+    public void reconcile() {
+        try {
+            Mono.usingWhen(
+                    acquireLock(),
+                    locked -> Boolean.TRUE.equals(locked) ? doReconcile() : Mono.empty(),
+                    locked -> Boolean.TRUE.equals(locked) ? doReleaseLock() : Mono.empty()
+            ).block(Duration.ofSeconds(120));
+        } catch (Exception e) {
+            log.error("[TPP-MAP][RECONCILE] Reconciliation failed: {}", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Scheduled task that evicts the cached TPPs deleted or disabled directly in the database, every
+     * {@code tpp.cache.sweep.interval}. Unlike {@link #reconcile()} it reads every cached tppId, so it runs
+     * far less often.
+     *
+     * <p>Runs under the same distributed lock as population and reset; pods that don't get the lock skip the run.</p>
+     */
+    @Scheduled(fixedDelayString = "${tpp.cache.sweep.interval:PT1H}",
+            initialDelayString = "${tpp.cache.sweep.interval:PT1H}")
+    public void sweep() {
+        try {
+            Mono.usingWhen(
+                    acquireLock(),
+                    locked -> Boolean.TRUE.equals(locked) ? sweepRemoved() : Mono.empty(),
+                    locked -> Boolean.TRUE.equals(locked) ? doReleaseLock() : Mono.empty()
+            ).block(Duration.ofSeconds(120));
+        } catch (Exception e) {
+            log.error("[TPP-MAP][SWEEP] Sweep failed: {}", e.getMessage(), e);
+        }
+    }
+
     /**
      * Adds or updates a single TPP entity in the Redis cache with decrypted token section.
      *
@@ -130,11 +266,13 @@ public class TppMapService {
      */
     public Mono<Boolean> addToMap(Tpp tpp) {
         String tppId = tpp.getTppId();
-        return tokenSectionCryptService.keyDecrypt(tpp.getTokenSection(), tppId)
-                .flatMap(decryptionResult ->
-                        tppMap.put(tppId, tpp)
-                                .doOnSuccess(old -> log.info("[TPP-MAP][ADD] Updated/Added TPP ID in cache: {}", tppId))
-                                .thenReturn(true)
+        return Mono.defer(() -> {
+                    tpp.setTokenSectionFingerprint(TokenSectionCryptService.fingerprintOf(tpp.getTokenSection()));
+                    return tokenSectionCryptService.keyDecrypt(tpp.getTokenSection(), tppId);
+                })
+                .flatMap(decryptionResult -> store(tpp)
+                        .doOnSuccess(v -> log.info("[TPP-MAP][ADD] Updated/Added TPP ID in cache: {}", tppId))
+                        .thenReturn(true)
                 )
                 .onErrorResume(e -> {
                     log.error("[TPP-MAP][ADD] Decryption failed for TPP ID: {}", tppId, e);
@@ -152,8 +290,8 @@ public class TppMapService {
      */
     public Mono<Boolean> addDecryptedToMap(Tpp tpp) {
         String tppId = tpp.getTppId();
-        return tppMap.put(tppId, tpp)
-                .doOnSuccess(old -> log.info("[TPP-MAP][ADD] Updated/Added decrypted TPP ID in cache: {}", tppId))
+        return store(tpp)
+                .doOnSuccess(v -> log.info("[TPP-MAP][ADD] Updated/Added decrypted TPP ID in cache: {}", tppId))
                 .thenReturn(true)
                 .onErrorResume(e -> {
                     log.error("[TPP-MAP][ADD] Failed to cache already-decrypted TPP ID: {}", tppId, e);
@@ -162,49 +300,473 @@ public class TppMapService {
     }
 
     /**
-     * Retrieves a TPP entity from the Redis cache by its identifier.
+     * Loads a TPP missing from the cache from the database and caches it with its token section decrypted,
+     * as {@link #addToMap(Tpp)} does. Its whitelist set is first rebuilt from the {@code tpp_whitelist}
+     * collection if it is missing too, e.g. after Redis was flushed. Concurrent calls for the same tppId
+     * share a single load.
+     *
+     * @param tppId the TPP identifier
+     * @return a Mono containing the loaded {@link Tpp}, or {@code Mono.empty()} if it does not exist
+     */
+    public Mono<Tpp> loadIntoMap(String tppId) {
+        return loads.execute(tppId, () -> tppRepository.findByTppId(tppId)
+                .flatMap(dbTpp -> restoreWhitelists(List.of(tppId))
+                        .then(Mono.defer(() -> addToMap(dbTpp)))
+                        .thenReturn(dbTpp)));
+    }
+
+    /**
+     * Decrypts the token section of a TPP just read from the database and caches it, rebuilding its whitelist
+     * set first if it is missing, as {@link #loadIntoMap(String)} does. Concurrent calls for the
+     * same tppId, including {@link #loadIntoMap(String)}, share a single decryption: the caller may therefore
+     * receive another instance of the same TPP.
+     *
+     * @param tpp the TPP entity read from the database (tokenSection ENCRYPTED)
+     * @return a Mono containing the decrypted {@link Tpp}, or an error if the decryption fails
+     */
+    public Mono<Tpp> decryptIntoMap(Tpp tpp) {
+        String tppId = tpp.getTppId();
+        return loads.execute(tppId, () -> restoreWhitelists(List.of(tppId))
+                .then(Mono.defer(() -> {
+                    tpp.setTokenSectionFingerprint(TokenSectionCryptService.fingerprintOf(tpp.getTokenSection()));
+                    return tokenSectionCryptService.keyDecrypt(tpp.getTokenSection(), tppId);
+                }))
+                .flatMap(decryptionResult -> addDecryptedToMap(tpp))
+                .thenReturn(tpp));
+    }
+
+    /**
+     * Refreshes the cached entry of a TPP after a write that did not change its token section.
+     *
+     * <p>The token section of the updated TPP is still the encrypted one read back from MongoDB, while the
+     * cached entry already holds it decrypted: when the entry was decrypted from that very ciphertext, as
+     * its {@link Tpp#getTokenSectionFingerprint() fingerprint} tells, the plaintext is carried over to the
+     * TPP, which is then stored as is, so no Key Vault call is made. The entry is read from Redis rather than
+     * from the near-cache, which may lag behind a token section written by another pod. When the TPP is not
+     * cached, or its entry was decrypted from another token section, this falls back to
+     * {@link #addToMap(Tpp)}. Either way the TPP ends up with a decrypted token section, as after
+     * {@link #addToMap(Tpp)}.</p>
+     *
+     * @param tpp the updated TPP entity (tokenSection ENCRYPTED)
+     * @return a Mono&lt;Boolean&gt; emitting {@code true} on success, {@code false} on failure
+     */
+    public Mono<Boolean> refreshInMap(Tpp tpp) {
+        String tppId = tpp.getTppId();
+        return Mono.defer(() -> {
+                    String fingerprint = TokenSectionCryptService.fingerprintOf(tpp.getTokenSection());
+                    return tppMap.get(tppId)
+                            .filter(cached -> cached.getTokenSection() != null && fingerprint != null
+                                    && fingerprint.equals(cached.getTokenSectionFingerprint()));
+                })
+                .onErrorResume(e -> {
+                    log.warn("[TPP-MAP][REFRESH] Cache lookup failed for TPP ID: {}, decrypting from DB", tppId, e);
+                    return Mono.empty();
+                })
+                .flatMap(cached -> {
+                    tpp.setTokenSection(cached.getTokenSection());
+                    tpp.setTokenSectionFingerprint(cached.getTokenSectionFingerprint());
+                    return addDecryptedToMap(tpp);
+                })
+                .switchIfEmpty(Mono.defer(() -> addToMap(tpp)));
+    }
+
+    /**
+     * Retrieves a TPP entity by its identifier, from the near-cache or else from Redis.
+     * The whitelist is not part of the cached entry: use {@link #getWhitelistFromMap(String)}.
      *
      * @param tppId the TPP identifier to look up
      * @return a Mono containing the cached {@link Tpp}, or {@code Mono.empty()} if absent
      */
     public Mono<Tpp> getFromMap(String tppId) {
-        return tppMap.get(tppId);
+        return Mono.defer(() -> {
+            Tpp local = nearCache.get(tppId);
+            if (local != null) {
+                return Mono.just(local);
+            }
+            long stamp = nearCache.stamp();
+            return tppMap.get(tppId)
+                    .doOnNext(tpp -> nearCache.putIfNotInvalidated(tppId, tpp, stamp));
+        });
+    }
+
+    /**
+     * Retrieves several TPP entities, serving what it can from the near-cache and fetching the
+     * rest from Redis in a single round trip ({@code HMGET}).
+     *
+     * <p>Duplicate identifiers are collapsed. The returned {@link CacheLookup} carries both the
+     * cached entries and the identifiers that were not found, so callers don't need to rebuild
+     * the missing set themselves.</p>
+     *
+     * @param tppIds the TPP identifiers to look up
+     * @return a Mono containing the {@link CacheLookup} for the requested identifiers
+     */
+    public Mono<CacheLookup> getAllFromMap(Collection<String> tppIds) {
+        Set<String> requested = new LinkedHashSet<>(tppIds);
+        if (requested.isEmpty()) {
+            return Mono.just(new CacheLookup(Map.of(), Set.of()));
+        }
+        return Mono.defer(() -> {
+            Map<String, Tpp> hits = new HashMap<>();
+            Set<String> remote = new LinkedHashSet<>();
+            for (String tppId : requested) {
+                Tpp local = nearCache.get(tppId);
+                if (local != null) {
+                    hits.put(tppId, local);
+                } else {
+                    remote.add(tppId);
+                }
+            }
+            if (remote.isEmpty()) {
+                return Mono.just(new CacheLookup(hits, Set.of()));
+            }
+            long stamp = nearCache.stamp();
+            return tppMap.getAll(remote)
+                    .defaultIfEmpty(Map.of())
+                    .map(found -> {
+                        nearCache.putAllIfNotInvalidated(found, stamp);
+                        hits.putAll(found);
+                        Set<String> missing = new LinkedHashSet<>(remote);
+                        missing.removeAll(found.keySet());
+                        return new CacheLookup(hits, missing);
+                    });
+        });
+    }
+
+    /**
+     * Retrieves the cached whitelist of a TPP.
+     *
+     * @param tppId the TPP identifier
+     * @return a Mono containing the whitelisted recipients, empty list if there are none
+     */
+    public Mono<List<String>> getWhitelistFromMap(String tppId) {
+        return whitelistCache.members(tppId);
     }
 
     /**
-     * Removes a TPP entity from the Redis cache by its identifier.
+     * Returns the TPPs, among the given ones, whose cached whitelist contains the recipient,
+     * with a single pipelined round trip.
+     *
+     * @param tppIds      the TPP identifiers to check
+     * @param recipientId the recipient to look for
+     * @return a Mono containing the identifiers of the TPPs that whitelist the recipient
+     */
+    public Mono<Set<String>> getWhitelistingFromMap(Collection<String> tppIds, String recipientId) {
+        return whitelistCache.whitelisting(tppIds, recipientId);
+    }
+
+    /**
+     * Adds a recipient to the cached whitelist of a TPP.
+     *
+     * @param tppId       the TPP identifier
+     * @param recipientId the recipient to add
+     * @return a Mono&lt;Void&gt; that completes when the recipient has been added
+     */
+    public Mono<Void> addToWhitelistMap(String tppId, String recipientId) {
+        return whitelistCache.add(tppId, recipientId);
+    }
+
+    /**
+     * Removes a recipient from the cached whitelist of a TPP.
+     *
+     * @param tppId       the TPP identifier
+     * @param recipientId the recipient to remove
+     * @return a Mono&lt;Void&gt; that completes when the recipient has been removed
+     */
+    public Mono<Void> removeFromWhitelistMap(String tppId, String recipientId) {
+        return whitelistCache.remove(tppId, recipientId);
+    }
+
+    /**
+     * Removes a TPP entity, and its whitelist, from the Redis cache by its identifier.
      *
      * @param tppId the TPP identifier to remove
      * @return a Mono&lt;Void&gt; that completes when the entry has been deleted
      */
     public Mono<Void> removeFromMap(String tppId) {
         return tppMap.remove(tppId)
-                .doOnSuccess(removed -> log.info("[TPP-MAP][REMOVE] Removed TPP ID from cache: {}", tppId))
-                .then();
+                .then(Mono.defer(() -> whitelistCache.deleteAll(List.of(tppId))))
+                .doOnSuccess(v -> log.info("[TPP-MAP][REMOVE] Removed TPP ID from cache: {}", tppId))
+                .then(Mono.defer(() -> nearCache.evict(tppId)));
     }
 
+    /**
+     * Outcome of {@link #getAllFromMap(Collection)}.
+     *
+     * @param hits    cached TPPs keyed by tppId
+     * @param missing requested tppIds that are not in the cache, in request order
+     */
+    public record CacheLookup(Map<String, Tpp> hits, Set<String> missing) {}
+
     // -------------------------------------------------------------------------
     // Private helpers
     // -------------------------------------------------------------------------
 
     /**
-     * Polls Redis every 5 seconds until the TPP cache key exists, meaning another pod has
-     * finished populating it. Called by {@link #populateMap()} when the distributed lock
-     * could not be acquired (another pod is initializing).
+     * Writes the whitelist set of a TPP, when the caller carries one, then its metadata-only entry,
+     * and mirrors the entry into the near-cache. The set goes first so that a cached entry is never
+     * paired with a whitelist older than itself; a TPP without whitelist leaves the set untouched.
+     */
+    private Mono<Void> store(Tpp tpp) {
+        String tppId = tpp.getTppId();
+        Tpp entry = withoutWhitelist(tpp);
+        Mono<Void> whitelist = tpp.getWhitelistRecipient() == null
+                ? Mono.empty()
+                : whitelistCache.replace(tppId, tpp.getWhitelistRecipient());
+        return whitelist
+                .then(Mono.defer(() -> tppMap.put(tppId, entry)))
+                .then(Mono.defer(() -> nearCache.update(tppId, entry)));
+    }
+
+    /**
+     * Makes the snapshot the live generation: its metadata-only entries are written to the staging hash of
+     * their shard in chunks of {@value #WRITE_CHUNK_SIZE}, then each staging hash is renamed over the live one.
+     * An empty snapshot drops the live hashes.
+     */
+    private Mono<Void> swapIn(Map<String, Tpp> snapshot) {
+        if (snapshot.isEmpty()) {
+            return tppMap.delete();
+        }
+        Map<String, Tpp> entries = new HashMap<>();
+        snapshot.values().forEach(tpp -> entries.put(tpp.getTppId(), withoutWhitelist(tpp)));
+        return tppMap.replaceAll(entries, WRITE_CHUNK_SIZE);
+    }
+
+    /**
+     * Caches again, from the database, the TPPs updated since the rebuild started: their write may have
+     * reached the live hash before the swap replaced it with an older value.
+     */
+    private Mono<Void> catchUp(LocalDateTime rebuildStart) {
+        return tppRepository.findByLastUpdateDateGreaterThanEqual(rebuildStart.minus(CATCH_UP_MARGIN))
+                .concatMap(this::addToMap)
+                .count()
+                .doOnSuccess(updated -> {
+                    if (updated > 0) {
+                        log.info("[TPP-MAP][CATCH-UP] Cached again {} TPPs updated during the rebuild", updated);
+                    }
+                })
+                .then();
+    }
+
+    /**
+     * Refreshes the entries of the TPPs updated since the watermark, evicting those that have been disabled,
+     * and moves the watermark to the latest update seen. Without a watermark, only the
+     * current time is recorded: the cache is assumed to be as recent as its last population.
+     */
+    private Mono<Void> doReconcile() {
+        return watermark().get()
+                .map(LocalDateTime::parse)
+                .map(Optional::of)
+                .defaultIfEmpty(Optional.empty())
+                .flatMap(current -> {
+                    if (current.isEmpty()) {
+                        return setWatermark(LocalDateTime.now());
+                    }
+                    LocalDateTime since = current.get();
+                    return tppRepository.findByLastUpdateDateGreaterThanEqual(since.minus(CATCH_UP_MARGIN))
+                            .collectList()
+                            .flatMap(updated -> refreshUpdated(updated)
+                                    .then(Mono.defer(() -> setWatermark(updated.stream()
+                                            .map(Tpp::getLastUpdateDate)
+                                            .filter(Objects::nonNull)
+                                            .reduce(since, (a, b) -> a.isAfter(b) ? a : b)))));
+                });
+    }
+
+    /**
+     * Caches again the updated TPPs whose cached entry is older than the database, and evicts those that have
+     * been disabled. Entries already carrying the same {@code lastUpdateDate} are left alone, so the overlap
+     * introduced by the clock-skew margin does not cost any decryption. The missing whitelist sets of the
+     * active ones are rebuilt first.
+     */
+    private Mono<Void> refreshUpdated(List<Tpp> updated) {
+        if (updated.isEmpty()) {
+            return Mono.empty();
+        }
+        return restoreWhitelists(activeIds(updated))
+                .then(Mono.defer(() -> getAllFromMap(updated.stream().map(Tpp::getTppId).toList())))
+                .flatMap(lookup -> Flux.fromIterable(updated)
+                        .concatMap(tpp -> reconcileEntry(tpp, lookup.hits().get(tpp.getTppId())))
+                        .filter(Boolean::booleanValue)
+                        .count()
+                        .doOnSuccess(reconciled -> {
+                            if (reconciled > 0) {
+                                log.info("[TPP-MAP][RECONCILE] Reconciled {} updated TPPs", reconciled);
+                            }
+                        }))
+                .then();
+    }
+
+    /**
+     * Brings the cached entry of a TPP in line with its database document: the entry is evicted if the TPP is
+     * not active, written again if it is older than the document, and left alone if it already carries the
+     * document's {@code lastUpdateDate}. The whitelist set of an active TPP is rebuilt first if it is missing.
      *
-     * <p>The outer {@code block(Duration.ofSeconds(120))} in {@link #populateMap()} acts
-     * as the overall timeout, so this pod will NOT be marked Ready until the cache is
-     * available — preventing it from serving stale/empty data during rolling updates.</p>
-     */
-    private Mono<Void> waitForCachePopulated() {
-        return Flux.interval(pollInterval)
-                .flatMap(tick -> tppMap.isExists())
-                .filter(Boolean.TRUE::equals)
-                .next()
-                .doOnSuccess(v -> log.info("[TPP-MAP][MAP-INITIALIZER] Cache is now ready — proceeding."))
+     * @param tpp the TPP as read from the database
+     * @return a Mono emitting {@code true} if the cache was changed
+     */
+    public Mono<Boolean> reconcileInMap(Tpp tpp) {
+        return restoreWhitelists(activeIds(List.of(tpp)))
+                .then(Mono.defer(() -> getFromMap(tpp.getTppId())))
+                .map(Optional::of)
+                .defaultIfEmpty(Optional.empty())
+                .flatMap(cached -> reconcileEntry(tpp, cached.orElse(null)));
+    }
+
+    /**
+     * Evicts the cached TPPs that no longer exist or are no longer active, which neither the watermark nor a
+     * change event can reveal (a deleted document leaves no trace of its tppId). Deleted TPPs also lose their
+     * whitelist set, while the active ones get theirs back if it is missing. The cached tppIds are checked
+     * against the database in chunks of {@value #WRITE_CHUNK_SIZE}.
+     *
+     * @return a Mono completing once the stale entries are evicted and the missing whitelist sets rebuilt
+     */
+    public Mono<Void> sweepRemoved() {
+        return tppMap.readAllKeySet()
+                .flatMapMany(keys -> Flux.fromIterable(keys).buffer(WRITE_CHUNK_SIZE))
+                .concatMap(chunk -> tppRepository.findStatesByTppIdIn(chunk)
+                        .collectMap(Tpp::getTppId, tpp -> Boolean.TRUE.equals(tpp.getState()))
+                        .flatMap(states -> {
+                            List<String> deleted = chunk.stream().filter(tppId -> !states.containsKey(tppId)).toList();
+                            List<String> disabled = chunk.stream().filter(tppId -> Boolean.FALSE.equals(states.get(tppId))).toList();
+                            List<String> active = chunk.stream().filter(tppId -> Boolean.TRUE.equals(states.get(tppId))).toList();
+                            if (deleted.isEmpty() && disabled.isEmpty()) {
+                                return restoreWhitelists(active);
+                            }
+                            log.info("[TPP-MAP][SWEEP] Evicting {} deleted and {} disabled TPPs", deleted.size(), disabled.size());
+                            return evictEntries(disabled)
+                                    .then(Mono.defer(() -> evictEntries(deleted)))
+                                    .then(Mono.defer(() -> whitelistCache.deleteAll(deleted)))
+                                    .then(Mono.defer(() -> restoreWhitelists(active)));
+                        }))
+                .then();
+    }
+
+    private Mono<Boolean> reconcileEntry(Tpp tpp, Tpp cached) {
+        if (!Boolean.TRUE.equals(tpp.getState())) {
+            return cached == null ? Mono.just(false) : evictEntries(List.of(tpp.getTppId())).thenReturn(true);
+        }
+        if (cached != null && sameUpdateDate(cached.getLastUpdateDate(), tpp.getLastUpdateDate())) {
+            return Mono.just(false);
+        }
+        return addToMap(tpp).thenReturn(true);
+    }
+
+    /**
+     * Compares two update dates at the millisecond precision of the database: an entry cached right after
+     * a write may carry the finer precision of the clock.
+     */
+    private static boolean sameUpdateDate(LocalDateTime cached, LocalDateTime stored) {
+        if (cached == null || stored == null) {
+            return cached == stored;
+        }
+        return cached.truncatedTo(ChronoUnit.MILLIS).equals(stored.truncatedTo(ChronoUnit.MILLIS));
+    }
+
+    /**
+     * Removes the given entries from the Redis hash and from the near-cache of every pod. Whitelist sets are
+     * left untouched.
+     */
+    private Mono<Void> evictEntries(List<String> tppIds) {
+        if (tppIds.isEmpty()) {
+            return Mono.empty();
+        }
+        return tppMap.fastRemove(tppIds)
+                .thenMany(Flux.fromIterable(tppIds))
+                .concatMap(nearCache::evict)
                 .then();
     }
 
+    private RBucketReactive<String> watermark() {
+        return redissonClient.getBucket(WATERMARK_KEY, StringCodec.INSTANCE);
+    }
+
+    private Mono<Void> setWatermark(LocalDateTime watermark) {
+        return watermark().set(watermark.toString());
+    }
+
+    /**
+     * Rebuilds from the {@code tpp_whitelist} collection the whitelist sets missing for the given TPPs. A TPP
+     * with an empty whitelist has no set either and costs a lookup that finds nothing. Failures are only
+     * logged: a missing set is retried on the next load, reconciliation or sweep.
+     */
+    private Mono<Void> restoreWhitelists(List<String> tppIds) {
+        return whitelistCache.missing(tppIds)
+                .filter(missing -> !missing.isEmpty())
+                .flatMap(missing -> whitelistCache.rebuild(whitelistRepository.findByTppIdIn(missing)))
+                .onErrorResume(e -> {
+                    log.warn("[TPP-MAP][WHITELIST] Could not restore the whitelist sets of {} TPPs", tppIds.size(), e);
+                    return Mono.empty();
+                });
+    }
+
+    private static List<String> activeIds(List<Tpp> tpps) {
+        return tpps.stream()
+                .filter(tpp -> Boolean.TRUE.equals(tpp.getState()))
+                .map(Tpp::getTppId)
+                .toList();
+    }
+
+    /**
+     * Rebuilds the whitelist sets from the {@code tpp_whitelist} collection.
+     */
+    private Mono<Void> rebuildWhitelists() {
+        return whitelistCache.rebuild(whitelistRepository.findAll());
+    }
+
+    /**
+     * Moves the whitelists still embedded in TPP documents into the {@code tpp_whitelist} collection,
+     * then removes the embedded array. Idempotent: the entries are upserted, so a migration interrupted
+     * before the array is removed is simply completed on the next run.
+     */
+    private Mono<Void> migrateLegacyWhitelists() {
+        return tppRepository.findAllWhitelistOfTPPs()
+                .concatMap(tpp -> whitelistRepository.insertAll(tpp.getTppId(), tpp.getWhitelistRecipient())
+                        .then(Mono.defer(() -> tppRepository.unsetWhitelistRecipient(tpp.getTppId())))
+                        .thenReturn(tpp.getTppId()))
+                .count()
+                .doOnSuccess(migrated -> {
+                    if (migrated > 0) {
+                        log.info("[TPP-MAP][WHITELIST-MIGRATION] Migrated embedded whitelist of {} TPPs", migrated);
+                    }
+                })
+                .then();
+    }
+
+    /**
+     * Returns a shallow copy of the TPP without its whitelist, leaving the caller's instance untouched.
+     */
+    private static Tpp withoutWhitelist(Tpp tpp) {
+        return tpp.getWhitelistRecipient() == null ? tpp : tpp.toBuilder().whitelistRecipient(null).build();
+    }
+
+    /**
+     * Waits until the pod holding the lock has finished populating the cache, which it announces
+     * on the {@value #READY_TOPIC} topic once the lock is released. Called by {@link #populateMap()}
+     * when the distributed lock could not be acquired (another pod is initializing).
+     *
+     * <p>The cache key is checked only once the listener is registered, so an announcement cannot
+     * be missed; the warm-up timeout in {@link #warmUp()} bounds the wait.</p>
+     */
+    private Mono<Void> waitForLockRelease() {
+        RTopicReactive topic = redissonClient.getTopic(READY_TOPIC, StringCodec.INSTANCE);
+        Sinks.Empty<Void> released = Sinks.empty();
+        return topic.addListener(String.class, (channel, message) -> released.tryEmitEmpty())
+                .flatMap(listenerId -> tppMap.isExists()
+                        .flatMap(exists -> Boolean.TRUE.equals(exists)
+                                ? Mono.just(false)
+                                : redissonClient.getLock(LOCK_KEY).isLocked())
+                        .flatMap(held -> Boolean.TRUE.equals(held) ? released.asMono() : Mono.<Void>empty())
+                        .doFinally(signal -> topic.removeListener(listenerId).subscribe()))
+                .doOnSuccess(v -> log.info("[TPP-MAP][MAP-INITIALIZER] Cache lock released — proceeding."));
+    }
+
+    /**
+     * Wakes the pods waiting in {@link #waitForLockRelease()}.
+     */
+    private Mono<Void> publishReady() {
+        return redissonClient.getTopic(READY_TOPIC, StringCodec.INSTANCE).publish("ready").then();
+    }
+
     /**
      * Attempts to acquire the distributed lock with watchdog-based TTL management.
      *
@@ -232,79 +794,70 @@ public class TppMapService {
      * <p>Returns {@code Mono<Void>} so it can be properly chained inside
      * {@link Mono#usingWhen} — the caller blocks until the Redis DEL has actually
      * completed, with no fire-and-forget race.</p>
+     *
+     * <p>Every release is announced on {@value #READY_TOPIC}, whatever the holder was doing, so that the
+     * pods waiting in {@link #populateMap()} never outwait a reconciliation, sweep or reset.</p>
      */
     private Mono<Void> doReleaseLock() {
         return redissonClient.getLock(LOCK_KEY).forceUnlock()
                 .doOnSuccess(released -> log.info("[TPP-MAP] Lock released: {}", released))
                 .doOnError(e -> log.error("[TPP-MAP] Failed to release lock: {}", e.getMessage()))
-                .then();
+                .then(Mono.defer(this::publishReady));
     }
 
     private Mono<Void> doPopulate() {
+        LocalDateTime rebuildStart = LocalDateTime.now();
         return buildSnapshotFromDb()
                 .flatMap(snapshot -> {
                     if (snapshot.isEmpty()) {
                         log.info("[TPP-MAP][MAP-INITIALIZER] No active TPPs found in DB — cache stays empty.");
-                        return Mono.empty();
+                        return rebuildWhitelists();
                     }
-                    return tppMap.putAll(snapshot)
-                            .doOnSuccess(v -> log.info("[TPP-MAP][MAP-INITIALIZER] Population complete. Size: {}", snapshot.size()));
+                    return rebuildWhitelists()
+                            .then(Mono.defer(() -> swapIn(snapshot)))
+                            .then(Mono.defer(() -> catchUp(rebuildStart)))
+                            .then(Mono.defer(() -> setWatermark(rebuildStart)))
+                            .doOnSuccess(v -> log.info("[TPP-MAP][MAP-INITIALIZER] Population complete. Size: {}", snapshot.size()))
+                            .then(Mono.defer(nearCache::evictAll));
                 });
     }
 
     private Mono<Void> performReset() {
-        // Step 1: read the current keys BEFORE making any changes (source of truth for eviction)
-        return tppMap.readAllKeySet()
-                .zipWith(buildSnapshotFromDb())
-                .flatMap(tuple -> {
-                    Set<String> currentKeys = tuple.getT1();
-                    Map<String, Tpp> newSnapshot = tuple.getT2();
-
-                    // Step 2: upsert active TPPs — overwrites existing entries, NO empty-cache window
-                    Mono<Void> upsert = newSnapshot.isEmpty()
-                            ? Mono.empty()
-                            : tppMap.putAll(newSnapshot);
-
-                    // Step 3: evict entries that are no longer active (in Redis but missing from new snapshot)
-                    List<String> staleKeys = currentKeys.stream()
-                            .filter(k -> !newSnapshot.containsKey(k))
-                            .collect(Collectors.toList());
-                    Mono<Void> evict = staleKeys.isEmpty()
-                            ? Mono.empty()
-                            : tppMap.fastRemove(staleKeys.toArray(new String[0])).then();
-
-                    return upsert.then(evict)
-                            .doOnSuccess(v -> log.info("[TPP-MAP][CACHE-RESET] Cache reset complete. New size: {}, evicted: {}",
-                                    newSnapshot.size(), staleKeys.size()));
-                });
+        // Step 0: move any whitelist still embedded in a TPP document into its own collection
+        return migrateLegacyWhitelists()
+                .then(Mono.defer(() -> {
+                    LocalDateTime rebuildStart = LocalDateTime.now();
+                    return buildSnapshotFromDb()
+                            // Step 1: write the new generation aside and swap it in — entries no longer
+                            // active simply are not part of it, and the live hash is never half-written
+                            .flatMap(newSnapshot -> swapIn(newSnapshot)
+                                    // Step 2: re-cache the TPPs written while the snapshot was being built
+                                    .then(Mono.defer(() -> catchUp(rebuildStart)))
+                                    .then(Mono.defer(() -> setWatermark(rebuildStart)))
+                                    // Step 3: rebuild the whitelist sets from the whitelist collection
+                                    .then(Mono.defer(this::rebuildWhitelists))
+                                    .then(Mono.defer(nearCache::evictAll))
+                                    .doOnSuccess(v -> log.info("[TPP-MAP][CACHE-RESET] Cache reset complete. New size: {}",
+                                            newSnapshot.size())));
+                }));
     }
 
     /**
      * Builds an in-memory snapshot of all active TPPs from MongoDB, decrypting each
      * TokenSection via Azure Key Vault.
      *
-     * <p>Filters out TPPs with {@code state == null} or {@code state == false} and skips
-     * any TPP whose decryption fails (logging the error). The returned snapshot can then
-     * be written atomically to Redis via {@code putAll()}.</p>
+     * <p>Filters out TPPs with {@code state == null} or {@code state == false}. Decryption goes
+     * through the {@link TppSnapshotDecryptor}, which bounds concurrency, paces the Key Vault calls
+     * and retries throttled ones; any TPP whose decryption still fails is skipped (logging the
+     * error). The returned snapshot can then be swapped in as the new cache generation.</p>
      *
-     * <p>⚠ Note: {@link TokenSectionCryptService#keyDecrypt} mutates the {@code TokenSection}
-     * in-place; the {@code Tpp} instances stored in the snapshot therefore contain the
-     * <em>decrypted</em> token section, ready to be served from cache.</p>
+     * <p>The {@code Tpp} instances stored in the snapshot contain the <em>decrypted</em> token
+     * section, ready to be served from cache.</p>
      */
     private Mono<Map<String, Tpp>> buildSnapshotFromDb() {
-        Map<String, Tpp> snapshot = new ConcurrentHashMap<>();
-        return tppRepository.findAll()
-                .filter(tpp -> Boolean.TRUE.equals(tpp.getState()))
-                .buffer(100)
-                .flatMap(batch -> Flux.fromIterable(batch)
-                        .flatMap(tpp -> tokenSectionCryptService.keyDecrypt(tpp.getTokenSection(), tpp.getTppId())
-                                .doOnSuccess(ignored -> snapshot.put(tpp.getTppId(), tpp))
-                                .onErrorResume(e -> {
-                                    log.error("[TPP-MAP][SNAPSHOT] Decrypt failed for TPP ID: {}", tpp.getTppId(), e);
-                                    return Mono.empty();
-                                }))
-                        .then())
-                .then(Mono.fromSupplier(() -> snapshot));
+        return snapshotDecryptor.decryptAll(tppRepository.findAll()
+                        .filter(tpp -> Boolean.TRUE.equals(tpp.getState())))
+                .collectMap(Tpp::getTppId, tpp -> tpp);
     }
 
 }
\ No newline at end of file
@@ -3,9 +3,11 @@ package it.gov.pagopa.tpp.service;
 import it.gov.pagopa.tpp.constants.TppConstants.ExceptionName;
 import it.gov.pagopa.tpp.dto.NetworkResponseDTO;
 import it.gov.pagopa.tpp.dto.TokenSectionDTO;
+import it.gov.pagopa.tpp.dto.MessageDTO;
 import it.gov.pagopa.tpp.dto.TppDTO;
 import it.gov.pagopa.tpp.dto.TppDTOPatch;
 import it.gov.pagopa.tpp.dto.TppDTOWithoutTokenSection;
+import it.gov.pagopa.tpp.service.cache.TppResponseCache;
 import java.util.Map;
 import reactor.core.publisher.Mono;
 
@@ -24,6 +26,45 @@ public interface TppService {
      */
     Mono<List<TppDTO>> filterEnabledList(List<String> tppIdList, String recipientId);
 
+    /**
+     * Retrieves the same TPPs as {@link #filterEnabledList(List, String)}, already encoded as a JSON array.
+     *
+     * @param tppIdList the list of TPP identifiers to retrieve
+     * @param recipientId the recipientId to check against the TPPs' whitelist
+     * @param templateByReference whether to leave the message template out of each TPP, which then only
+     *                            carries its identifier and hash (see {@link #getMessageTemplate(String, String)})
+     * @return a {@link Mono} containing the UTF-8 JSON array of the enabled {@link TppDTO} entities
+     */
+    Mono<byte[]> filterEnabledListJson(List<String> tppIdList, String recipientId, boolean templateByReference);
+
+    /**
+     * Retrieves a message template by the identifier and hash advertised in {@link TppDTO}.
+     * The content of a given identifier and hash never changes.
+     *
+     * @param templateId the template identifier, {@code default} or a tppId
+     * @param hash the SHA-256 of the template, in hex
+     * @return a {@link Mono} containing the template, or an error if no template has that identifier and hash
+     */
+    Mono<String> getMessageTemplate(String templateId, String hash);
+
+    /**
+     * Renders a message with the message template of a TPP.
+     *
+     * @param tppId the TPP identifier
+     * @param message the message to render
+     * @return a {@link Mono} containing the rendered message
+     */
+    Mono<String> renderMessage(String tppId, MessageDTO message);
+
+    /**
+     * Renders many messages with the message template of a TPP.
+     *
+     * @param tppId the TPP identifier
+     * @param messages the messages to render
+     * @return a {@link Mono} containing the rendered messages, in the given order
+     */
+    Mono<List<String>> renderMessages(String tppId, List<MessageDTO> messages);
+
     /**
      * Creates a new TPP entity with the specified configuration.
      * 
@@ -87,6 +128,14 @@ public interface TppService {
      */
     Mono<TppDTOWithoutTokenSection> getTppDetails(String tppId);
 
+    /**
+     * Retrieves TPP details excluding the token section, already encoded as JSON.
+     *
+     * @param tppId the TPP identifier
+     * @return a {@link Mono} containing the JSON of the {@link TppDTOWithoutTokenSection} and its ETag
+     */
+    Mono<TppResponseCache.Json> getTppDetailsJson(String tppId);
+
     /**
      * Retrieves the token section configuration for a specific TPP.
      * 
@@ -95,6 +144,14 @@ public interface TppService {
      */
     Mono<TokenSectionDTO> getTokenSection(String tppId);
 
+    /**
+     * Retrieves the token section configuration for a specific TPP, already encoded as JSON.
+     *
+     * @param tppId the TPP identifier
+     * @return a {@link Mono} containing the JSON of the {@link TokenSectionDTO} and its ETag
+     */
+    Mono<TppResponseCache.Json> getTokenSectionJson(String tppId);
+
     /**
      * Retrieves TPP details by entity identifier.
      * 
@@ -103,6 +160,14 @@ public interface TppService {
      */
     Mono<TppDTOWithoutTokenSection> getTppByEntityId(String entityId);
 
+    /**
+     * Retrieves TPP details by entity identifier, already encoded as JSON.
+     *
+     * @param entityId the entity identifier
+     * @return a {@link Mono} containing the JSON of the {@link TppDTOWithoutTokenSection} and its ETag
+     */
+    Mono<TppResponseCache.Json> getTppByEntityIdJson(String entityId);
+
     /**
      * Tests the network connectivity to a specific TPP.
      * 
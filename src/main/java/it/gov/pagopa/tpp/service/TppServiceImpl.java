@@ -1,9 +1,12 @@
 package it.gov.pagopa.tpp.service;
 
+import freemarker.template.Template;
+import freemarker.template.TemplateException;
 import it.gov.pagopa.common.utils.Utils;
 import it.gov.pagopa.tpp.configuration.ExceptionMap;
 import it.gov.pagopa.tpp.constants.TppConstants.ExceptionMessage;
 import it.gov.pagopa.tpp.constants.TppConstants.ExceptionName;
+import it.gov.pagopa.tpp.dto.MessageDTO;
 import it.gov.pagopa.tpp.dto.NetworkResponseDTO;
 import it.gov.pagopa.tpp.dto.TokenSectionDTO;
 import it.gov.pagopa.tpp.dto.TppDTO;
@@ -14,23 +17,34 @@ import it.gov.pagopa.tpp.dto.mapper.TppObjectToDTOMapper;
 import it.gov.pagopa.tpp.dto.mapper.TppWithoutTokenSectionObjectToDTOMapper;
 import it.gov.pagopa.tpp.model.TokenSection;
 import it.gov.pagopa.tpp.model.Tpp;
+import it.gov.pagopa.tpp.model.TppWhitelistEntry;
 import it.gov.pagopa.tpp.model.mapper.TokenSectionDTOToObjectMapper;
 import it.gov.pagopa.tpp.model.mapper.TppDTOToObjectMapper;
 import it.gov.pagopa.tpp.repository.TppRepository;
-import it.gov.pagopa.tpp.service.keyvault.AzureKeyService;
+import it.gov.pagopa.tpp.repository.TppWhitelistRepository;
+import it.gov.pagopa.tpp.service.cache.TppNegativeCache;
+import it.gov.pagopa.tpp.service.cache.TppRegistry;
+import it.gov.pagopa.tpp.service.cache.TppResponseCache;
+import it.gov.pagopa.tpp.service.cache.TppResponseCache.View;
+import it.gov.pagopa.tpp.service.cache.TppTemplateCache;
+import it.gov.pagopa.tpp.service.keyvault.KeyProvider;
+import java.io.IOException;
+import java.io.StringWriter;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
 
 import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
 import java.util.List;
-import java.util.Set;
-import java.util.stream.Collectors;
 
 /**
  * Implementation of the TppService interface providing comprehensive TPP management functionality.
@@ -46,6 +60,7 @@ import java.util.stream.Collectors;
 public class TppServiceImpl implements TppService {
 
     private final TppRepository tppRepository;
+    private final TppWhitelistRepository whitelistRepository;
     private final TppObjectToDTOMapper mapperToDTO;
     private final TppWithoutTokenSectionObjectToDTOMapper tppWithoutTokenSectionMapperToDTO;
     private final TokenSectionObjectToDTOMapper tokenSectionMapperToDTO;
@@ -54,11 +69,17 @@ public class TppServiceImpl implements TppService {
     private final ExceptionMap exceptionMap;
     private final TppMapService tppMapService;
     private final TokenSectionCryptService tokenSectionCryptService;
-    private final AzureKeyService azureKeyService;
-
-    public TppServiceImpl(TppRepository tppRepository, TppObjectToDTOMapper mapperToDTO, TppWithoutTokenSectionObjectToDTOMapper tppWithoutTokenSectionMapperToDTO, TokenSectionObjectToDTOMapper tokenSectionMapperToDTO,
-                          TppDTOToObjectMapper mapperToObject, TokenSectionDTOToObjectMapper tokenSectionMapperToObject, ExceptionMap exceptionMap, AzureKeyService azureKeyService, TppMapService tppMapService, TokenSectionCryptService tokenSectionCryptService) {
+    private final KeyProvider keyProvider;
+    private final TppRegistry tppRegistry;
+    private final TppNegativeCache negativeCache;
+    private final TppResponseCache responseCache;
+    private final TppTemplateCache templateCache;
+
+    public TppServiceImpl(TppRepository tppRepository, TppWhitelistRepository whitelistRepository, TppObjectToDTOMapper mapperToDTO, TppWithoutTokenSectionObjectToDTOMapper tppWithoutTokenSectionMapperToDTO, TokenSectionObjectToDTOMapper tokenSectionMapperToDTO,
+                          TppDTOToObjectMapper mapperToObject, TokenSectionDTOToObjectMapper tokenSectionMapperToObject, ExceptionMap exceptionMap, KeyProvider keyProvider, TppMapService tppMapService, TokenSectionCryptService tokenSectionCryptService,
+                          TppRegistry tppRegistry, TppNegativeCache negativeCache, TppResponseCache responseCache, TppTemplateCache templateCache) {
         this.tppRepository = tppRepository;
+        this.whitelistRepository = whitelistRepository;
         this.mapperToDTO = mapperToDTO;
         this.tppWithoutTokenSectionMapperToDTO = tppWithoutTokenSectionMapperToDTO;
         this.tokenSectionMapperToDTO = tokenSectionMapperToDTO;
@@ -67,7 +88,11 @@ public class TppServiceImpl implements TppService {
         this.exceptionMap = exceptionMap;
         this.tppMapService = tppMapService;
         this.tokenSectionCryptService = tokenSectionCryptService;
-        this.azureKeyService = azureKeyService;
+        this.keyProvider = keyProvider;
+        this.tppRegistry = tppRegistry;
+        this.negativeCache = negativeCache;
+        this.responseCache = responseCache;
+        this.templateCache = templateCache;
     }
 
 
@@ -75,87 +100,278 @@ public class TppServiceImpl implements TppService {
      * {@inheritDoc}
      *
      * <p>
-     * This method first checks the cache for requested TPP IDs, filtering only those with state=true,
-     * then fetches any missing entries from the database. Missing entries are automatically cached
-     * after retrieval with their token sections decrypted for immediate use.
+     * This method first resolves the requested TPP IDs against the in-memory {@link TppRegistry}, whose
+     * precomputed DTOs make the common case a lock-free lookup. Only the IDs the registry does not hold are
+     * checked in the cache in a single round trip, and those still missing are fetched from the database.
+     * Disabled TPPs found in memory or in the cache are enabled only for the recipients in their whitelist,
+     * which is checked against the cached whitelist sets with one pipelined {@code SISMEMBER} per TPP.
+     * The TPPs still missing are resolved with an indexed point lookup on the {@code tpp_whitelist} collection
+     * followed by a single query on the {@code tpp} collection, skipping those that a recent query already
+     * found not enabled for the recipient: such results are kept for a short time in the {@link TppNegativeCache}.
+     * Missing entries are automatically cached after retrieval with their token sections decrypted for
+     * immediate use. Whitelists are not part of the returned TPPs.
      */
     @Override
     public Mono<List<TppDTO>> filterEnabledList(List<String> tppIdList, String recipientId) {
         String hashedRecipientId = Utils.createSHA256(recipientId);
         log.info("[TPP-SERVICE][GET-ENABLED] Received tppIdList: {}, recipientId: {}", tppIdList, hashedRecipientId);
 
-        return checkMapForTppIds(tppIdList)
-                .flatMap(cacheResult -> {
-                    List<String> missingTppIds = getMissingTppIds(tppIdList, cacheResult);
-                    List<TppDTO> enabledTppsInCache = cacheResult.stream()
-                            .filter(tpp -> isEnabledForRecipient(tpp, recipientId))
-                            .collect(Collectors.toList());
-                    if (missingTppIds.isEmpty()) {
-                        return Mono.just(enabledTppsInCache);
+        return Mono.defer(() -> {
+                    TppRegistry.Lookup registryLookup = tppRegistry.filterEnabled(tppIdList);
+                    if (registryLookup.missing().isEmpty() && registryLookup.disabled().isEmpty()) {
+                        log.info("[TPP-SERVICE][CHECK-REGISTRY] All TPPs resolved from registry");
+                        return Mono.just(registryLookup.enabled());
                     }
-                    log.info("[TPP-SERVICE][GET-ENABLED] TPPs not in cache: {}",missingTppIds);
-                    return tppRepository.findEnabledForRecipient(missingTppIds, recipientId)
-                            .flatMap(tpp -> tokenSectionCryptService.keyDecrypt(tpp.getTokenSection(), tpp.getTppId())
-                                    .flatMap(decryptionResult -> tppMapService.addDecryptedToMap(tpp).map(cachingResult -> mapperToDTO.map(tpp)))
-                            )
-                            .collectList()
-                            .flatMap(tppDTOList -> {
-                                enabledTppsInCache.addAll(tppDTOList);
-                                return Mono.just(enabledTppsInCache);
-                            });
+                    return filterEnabledFromCache(registryLookup, recipientId, hashedRecipientId);
                 })
                 .doOnSuccess(tppDTOList -> log.info("[TPP-SERVICE][GET-ENABLED] Retrival ended"))
                 .doOnError(error -> log.error("[TPP-SERVICE][GET-ENABLED] Error retrieving enabled TPPs: {}", error.getMessage()));
     }
 
     /**
-     * Checks the cache for TPP entities corresponding to the provided IDs.
-     * 
-     * @param tppIdList the list of TPP identifiers to check in cache
-     * @return a {@link Mono} containing a list of cached {@link TppDTO} entities
+     * {@inheritDoc}
+     *
+     * The array is joined from the fragments cached in the {@link TppResponseCache}, so a TPP is only
+     * encoded again once it changes. Fragments with and without the message template are cached as
+     * separate views.
      */
-    private Mono<List<TppDTO>> checkMapForTppIds(List<String> tppIdList) {
-        return Flux.fromIterable(tppIdList)
-            .flatMap(tppId -> tppMapService.getFromMap(tppId)
-                    .doOnNext(tpp -> log.info("[TPP-SERVICE][CHECK-MAP] Found TPP in MAP: {}", tpp.getTppId()))
-                    .map(mapperToDTO::map)
-            )
-            .collectList();
+    @Override
+    public Mono<byte[]> filterEnabledListJson(List<String> tppIdList, String recipientId, boolean templateByReference) {
+        View view = templateByReference ? View.TPP_TEMPLATE_REF : View.TPP;
+        return filterEnabledList(tppIdList, recipientId)
+                .map(tppDTOList -> {
+                    List<byte[]> fragments = new ArrayList<>(tppDTOList.size());
+                    tppDTOList.forEach(tppDTO -> fragments.add(responseCache.encode(view, tppDTO.getTppId(),
+                            TppResponseCache.versionOf(tppDTO.getLastUpdateDate(), tppDTO.getWhitelistRecipient()),
+                            () -> templateByReference ? mapperToDTO.withTemplateRef(tppDTO) : tppDTO).body()));
+                    return TppResponseCache.asArray(fragments);
+                });
     }
 
     /**
-     * Identifies TPP IDs that are not present in the cache result.
-     * 
-     * @param tppIdList the original list of requested TPP IDs
-     * @param cacheResult the list of TPP DTOs found in cache
-     * @return a list of TPP IDs that were not found in cache
+     * {@inheritDoc}
+     *
+     * The default template is served from memory, a custom one from the TPP in the cache or else in
+     * the database. The template is returned only if the hash of its reference matches the requested
+     * one, so a stale reference is never answered with the content of a newer template.
      */
-    private List<String> getMissingTppIds(List<String> tppIdList, List<TppDTO> cacheResult) {
-        Set<String> cachedIds = cacheResult.stream()
-                .map(TppDTO::getTppId)
-                .collect(Collectors.toSet());
-        return tppIdList.stream()
-                .filter(tppId -> !cachedIds.contains(tppId))
-                .toList();
+    @Override
+    public Mono<String> getMessageTemplate(String templateId, String hash) {
+        log.info("[TPP-SERVICE][GET-TEMPLATE] Received request to get message template: {} with hash: {}", templateId, hash);
+
+        Mono<TppObjectToDTOMapper.TemplateRef> templateRef = TppObjectToDTOMapper.DEFAULT_TEMPLATE_ID.equals(templateId)
+            ? Mono.fromSupplier(mapperToDTO::getDefaultTemplateRef)
+            : findTpp(templateId).map(mapperToDTO::templateRefOf);
+        return templateRef
+            .filter(ref -> hash.equals(ref.hash()))
+            .map(TppObjectToDTOMapper.TemplateRef::template)
+            .switchIfEmpty(Mono.defer(() -> Mono.error(exceptionMap.throwException(ExceptionName.MESSAGE_TEMPLATE_NOT_FOUND,
+                ExceptionMessage.MESSAGE_TEMPLATE_NOT_FOUND))))
+            .doOnSuccess(content -> log.info("[TPP-SERVICE][GET-TEMPLATE] Found message template: {}", templateId))
+            .doOnError(error -> log.error("[TPP-SERVICE][GET-TEMPLATE] Error retrieving message template {}: {}", templateId, error.getMessage()));
     }
 
     /**
-     * Determines if a TPP is enabled or if contains the recipientId in the whitelist
-     * 
-     * @param tpp the TPP entity to evaluate
-     * @param recipientId the recipientId to check against the TPP's whitelist
+     * {@inheritDoc}
+     */
+    @Override
+    public Mono<String> renderMessage(String tppId, MessageDTO message) {
+        return renderMessages(tppId, List.of(message))
+            .map(List::getFirst);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * The template is parsed once per change and kept in the {@link TppTemplateCache}, so a batch pays
+     * at most one parse and a single TPP lookup. The token section of the TPP is never decrypted, and
+     * parsing and rendering run on the bounded elastic scheduler, off the event loop.
+     */
+    @Override
+    public Mono<List<String>> renderMessages(String tppId, List<MessageDTO> messages) {
+        log.info("[TPP-SERVICE][RENDER] Received request to render {} messages for tppId: {}", messages.size(), tppId);
+
+        return findTppConfiguration(tppId)
+            .switchIfEmpty(Mono.defer(() -> Mono.error(exceptionMap.throwException(ExceptionName.TPP_NOT_ONBOARDED,
+                ExceptionMessage.TPP_NOT_FOUND))))
+            .map(mapperToDTO::templateRefOf)
+            .publishOn(Schedulers.boundedElastic())
+            .map(templateRef -> {
+                Template template = parseTemplate(templateRef);
+                List<String> rendered = new ArrayList<>(messages.size());
+                messages.forEach(message -> rendered.add(render(template, message)));
+                return rendered;
+            })
+            .doOnSuccess(rendered -> log.info("[TPP-SERVICE][RENDER] Rendered {} messages for tppId: {}", messages.size(), tppId))
+            .doOnError(error -> log.error("[TPP-SERVICE][RENDER] Error rendering messages for tppId {}: {}", tppId, error.getMessage()));
+    }
+
+    private Template parseTemplate(TppObjectToDTOMapper.TemplateRef templateRef) {
+        try {
+            return templateCache.get(templateRef);
+        } catch (IOException e) {
+            log.error("[TPP-SERVICE][RENDER] Invalid message template {}: {}", templateRef.id(), e.getMessage());
+            throw exceptionMap.throwException(ExceptionName.MESSAGE_RENDERING_FAILED, ExceptionMessage.MESSAGE_RENDERING_FAILED);
+        }
+    }
+
+    private String render(Template template, MessageDTO message) {
+        StringWriter writer = new StringWriter();
+        try {
+            template.process(message, writer);
+        } catch (TemplateException | IOException e) {
+            log.error("[TPP-SERVICE][RENDER] Error rendering message {}: {}", message.getMessageId(), e.getMessage());
+            throw exceptionMap.throwException(ExceptionName.MESSAGE_RENDERING_FAILED, ExceptionMessage.MESSAGE_RENDERING_FAILED);
+        }
+        return writer.toString();
+    }
+
+    /**
+     * Resolves the TPP IDs the registry does not hold, first from the cache and then from the database,
+     * and checks the whitelist of the disabled ones, appending the enabled TPPs to those already found
+     * in the registry.
+     *
+     * @param registryLookup the outcome of the registry lookup
+     * @param recipientId the recipientId to check against the TPPs' whitelist
+     * @param hashedRecipientId the hashed recipientId, keying the {@link TppNegativeCache}
+     **/
+    private Mono<List<TppDTO>> filterEnabledFromCache(TppRegistry.Lookup registryLookup, String recipientId, String hashedRecipientId) {
+        Mono<TppMapService.CacheLookup> cacheLookup = registryLookup.missing().isEmpty()
+                ? Mono.just(new TppMapService.CacheLookup(Map.of(), Set.of()))
+                : tppMapService.getAllFromMap(registryLookup.missing());
+        return cacheLookup
+                .flatMap(cacheResult -> {
+                    List<TppDTO> enabledTppsInCache = new ArrayList<>(registryLookup.enabled());
+                    List<TppDTO> disabledTpps = new ArrayList<>(registryLookup.disabled());
+                    cacheResult.hits().values().forEach(tpp -> {
+                        log.info("[TPP-SERVICE][CHECK-MAP] Found TPP in MAP: {}", tpp.getTppId());
+                        TppDTO tppDTO = mapperToDTO.map(tpp);
+                        if (Boolean.TRUE.equals(tppDTO.getState())) {
+                            enabledTppsInCache.add(tppDTO);
+                        } else {
+                            disabledTpps.add(tppDTO);
+                        }
+                    });
+                    return filterWhitelisted(disabledTpps, recipientId)
+                            .flatMap(whitelistedTpps -> {
+                                enabledTppsInCache.addAll(whitelistedTpps);
+                                if (cacheResult.missing().isEmpty()) {
+                                    return Mono.just(enabledTppsInCache);
+                                }
+                                List<String> missingTppIds = negativeCache.filterUnknown(cacheResult.missing(), hashedRecipientId);
+                                if (missingTppIds.isEmpty()) {
+                                    log.info("[TPP-SERVICE][GET-ENABLED] TPPs not in cache already known as not enabled: {}", cacheResult.missing());
+                                    return Mono.just(enabledTppsInCache);
+                                }
+                                log.info("[TPP-SERVICE][GET-ENABLED] TPPs not in cache: {}",missingTppIds);
+                                long negativeStamp = negativeCache.stamp();
+                                return findWhitelisting(missingTppIds, recipientId)
+                                        .flatMapMany(whitelistingTppIds -> tppRepository.findEnabledOrWhitelisted(missingTppIds, whitelistingTppIds))
+                                        .collectList()
+                                        .doOnNext(foundTpps -> negativeCache.putAllIfNotInvalidated(
+                                                notFound(missingTppIds, foundTpps), hashedRecipientId, negativeStamp))
+                                        .flatMapMany(Flux::fromIterable)
+                                        .flatMap(tpp -> tppMapService.decryptIntoMap(tpp).map(decryptedTpp -> {
+                                            TppDTO tppDTO = mapperToDTO.map(decryptedTpp);
+                                            tppDTO.setWhitelistRecipient(null);
+                                            return tppDTO;
+                                        }))
+                                        .collectList()
+                                        .flatMap(tppDTOList -> {
+                                            enabledTppsInCache.addAll(tppDTOList);
+                                            return Mono.just(enabledTppsInCache);
+                                        });
+                            });
+                });
+    }
+
+    /**
+     * Returns the requested TPP IDs the database did not return.
+     *
+     * @param tppIds the requested TPP identifiers
+     * @param foundTpps the TPPs returned by the database
+     **/
+    private static List<String> notFound(List<String> tppIds, List<Tpp> foundTpps) {
+        Set<String> found = new HashSet<>();
+        foundTpps.forEach(tpp -> found.add(tpp.getTppId()));
+        return tppIds.stream().filter(tppId -> !found.contains(tppId)).toList();
+    }
+
+    /**
+     * Returns the TPPs, among the given ones, whose persisted whitelist contains the recipientId.
+     *
+     * @param tppIds the TPP identifiers to check
+     * @param recipientId the recipientId to look for
+     **/
+    private Mono<List<String>> findWhitelisting(List<String> tppIds, String recipientId) {
+        if (recipientId == null) {
+            return Mono.just(List.of());
+        }
+        return whitelistRepository.findByRecipientIdAndTppIdIn(recipientId, tppIds)
+                .map(TppWhitelistEntry::getTppId)
+                .collectList();
+    }
+
+    /**
+     * Replaces the persisted whitelist of a TPP: the deduplicated recipients are bulk-upserted (those
+     * already present are left untouched), then the entries no longer listed are deleted. Recipients kept
+     * across the update are whitelisted throughout; until the delete completes, readers may still see the
+     * removed ones.
+     *
+     * @param tppId the TPP identifier
+     * @param recipientIds the new whitelist, {@code null} to clear it
+     * @return the deduplicated whitelist that has been stored
+     **/
+    private Mono<List<String>> replaceWhitelist(String tppId, List<String> recipientIds) {
+        List<String> whitelist = recipientIds != null ? new ArrayList<>(new HashSet<>(recipientIds)) : new ArrayList<>();
+        return whitelistRepository.insertAll(tppId, whitelist)
+                .then(Mono.defer(() -> whitelistRepository.deleteByTppIdAndRecipientIdNotIn(tppId, whitelist)))
+                .thenReturn(whitelist);
+    }
+
+    /**
+     * Reads the persisted whitelist of a TPP.
+     *
+     * @param tppId the TPP identifier
+     **/
+    private Mono<List<String>> findWhitelist(String tppId) {
+        return whitelistRepository.findByTppId(tppId)
+                .map(TppWhitelistEntry::getRecipientId)
+                .collectList();
+    }
+
+    /**
+     * Keeps the disabled TPPs whose whitelist contains the recipientId. Whitelists are checked against the
+     * cached whitelist sets in a single round trip; entries cached before whitelists were moved out of the
+     * TPP entry still carry theirs, and are checked in place.
+     *
+     * @param disabledTpps the disabled TPPs to check
+     * @param recipientId the recipientId to check against the TPPs' whitelist
      **/
-    private boolean isEnabledForRecipient(TppDTO tpp, String recipientId) {
-        Boolean state = tpp.getState();
-        
-        // TPP state is true
-        if (Boolean.TRUE.equals(state)) {
-            return true;
+    private Mono<List<TppDTO>> filterWhitelisted(List<TppDTO> disabledTpps, String recipientId) {
+        if (disabledTpps.isEmpty() || recipientId == null) {
+            return Mono.just(List.of());
+        }
+        List<TppDTO> whitelistedTpps = new ArrayList<>();
+        List<TppDTO> toCheck = new ArrayList<>();
+        for (TppDTO tppDTO : disabledTpps) {
+            List<String> whitelist = tppDTO.getWhitelistRecipient();
+            if (whitelist == null) {
+                toCheck.add(tppDTO);
+            } else if (whitelist.contains(recipientId)) {
+                whitelistedTpps.add(tppDTO);
+            }
         }
-        
-        // or if recipientId is inside the whitelist
-        List<String> whitelist = tpp.getWhitelistRecipient();
-        return whitelist != null && whitelist.contains(recipientId);
+        if (toCheck.isEmpty()) {
+            return Mono.just(whitelistedTpps);
+        }
+        return tppMapService.getWhitelistingFromMap(toCheck.stream().map(TppDTO::getTppId).toList(), recipientId)
+                .map(whitelisting -> {
+                    toCheck.stream()
+                            .filter(tppDTO -> whitelisting.contains(tppDTO.getTppId()))
+                            .forEach(whitelistedTpps::add);
+                    return whitelistedTpps;
+                });
     }
 
     /**
@@ -170,7 +386,7 @@ public class TppServiceImpl implements TppService {
         return tppRepository.findByTppId(tppDTOWithoutTokenSection.getTppId())
                 .flatMap(existingTpp -> {
                     log.info("[TPP-SERVICE][UPSERT] TPP with tppId {} already exists. Updating...", existingTpp.getTppId());
-                    existingTpp.setLastUpdateDate(LocalDateTime.now());
+                    existingTpp.setLastUpdateDate(now());
                     existingTpp.setMessageUrl(tppDTOWithoutTokenSection.getMessageUrl());
                     existingTpp.setAuthenticationUrl(tppDTOWithoutTokenSection.getAuthenticationUrl());
                     existingTpp.setContact(tppDTOWithoutTokenSection.getContact());
@@ -180,10 +396,15 @@ public class TppServiceImpl implements TppService {
                     existingTpp.setAgentLinks(tppDTOWithoutTokenSection.getAgentLinks());
                     existingTpp.setMessageTemplate(tppDTOWithoutTokenSection.getMessageTemplate());
                     existingTpp.setIsPaymentEnabled(tppDTOWithoutTokenSection.getIsPaymentEnabled());
-                    existingTpp.setWhitelistRecipient(tppDTOWithoutTokenSection.getWhitelistRecipient());
+                    existingTpp.setWhitelistRecipient(null);
                     existingTpp.setClientId(tppDTOWithoutTokenSection.getClientId());
                     return tppRepository.save(existingTpp)
-                            .flatMap(savedTpp -> tppMapService.addToMap(savedTpp).thenReturn(savedTpp))
+                            .flatMap(savedTpp -> replaceWhitelist(savedTpp.getTppId(), tppDTOWithoutTokenSection.getWhitelistRecipient())
+                                    .flatMap(whitelist -> tppMapService.refreshInMap(savedTpp.toBuilder().whitelistRecipient(whitelist).build()))
+                                    .then(Mono.fromSupplier(() -> {
+                                        savedTpp.setWhitelistRecipient(tppDTOWithoutTokenSection.getWhitelistRecipient());
+                                        return savedTpp;
+                                    })))
                             .map(tppWithoutTokenSectionMapperToDTO::map)
                             .doOnSuccess(savedTpp -> log.info("[TPP-SERVICE][UPSERT] Updated existing TPP with tppId: {}" ,savedTpp.getTppId()))
                             .doOnError(error -> log.error("[TPP-SERVICE][SAVE] Error saving TPP with tppId {}: {}" , existingTpp.getTppId(), error.getMessage()));
@@ -194,34 +415,41 @@ public class TppServiceImpl implements TppService {
 
     /**
      * {@inheritDoc}
+     *
+     * <p>
+     * Only the provided fields are written, with a single {@code findAndModify} ({@code $set}) that returns the
+     * updated TPP: the document is neither read beforehand nor rewritten as a whole.
      */
     @Override
     public Mono<TppDTOWithoutTokenSection> patchTppDetails(String tppId, TppDTOPatch tppDTOPatch) {
         log.info("[TPP-SERVICE][PATCH] Received request to partially update TPP with tppId: {}", tppId);
 
-        return tppRepository.findByTppId(tppId)
-                .flatMap(existingTpp -> {
-                    log.info("[TPP-SERVICE][PATCH] TPP with tppId {} found. Applying partial update...", existingTpp.getTppId());
-                    existingTpp.setLastUpdateDate(LocalDateTime.now());
-                    if (tppDTOPatch.getMessageUrl() != null)         existingTpp.setMessageUrl(tppDTOPatch.getMessageUrl());
-                    if (tppDTOPatch.getAuthenticationUrl() != null)  existingTpp.setAuthenticationUrl(tppDTOPatch.getAuthenticationUrl());
-                    if (tppDTOPatch.getContact() != null)            existingTpp.setContact(tppDTOPatch.getContact());
-                    if (tppDTOPatch.getBusinessName() != null)       existingTpp.setBusinessName(tppDTOPatch.getBusinessName());
-                    if (tppDTOPatch.getLegalAddress() != null)       existingTpp.setLegalAddress(tppDTOPatch.getLegalAddress());
-                    if (tppDTOPatch.getPspDenomination() != null)    existingTpp.setPspDenomination(tppDTOPatch.getPspDenomination());
-                    if (tppDTOPatch.getAgentLinks() != null)         existingTpp.setAgentLinks(tppDTOPatch.getAgentLinks());
-                    if (tppDTOPatch.getMessageTemplate() != null)    existingTpp.setMessageTemplate(tppDTOPatch.getMessageTemplate());
-                    if (tppDTOPatch.getIsPaymentEnabled() != null)   existingTpp.setIsPaymentEnabled(tppDTOPatch.getIsPaymentEnabled());
-                    if (tppDTOPatch.getWhitelistRecipient() != null) existingTpp.setWhitelistRecipient(tppDTOPatch.getWhitelistRecipient());
-                    if (tppDTOPatch.getClientId() != null)           existingTpp.setClientId(tppDTOPatch.getClientId());
-                    return tppRepository.save(existingTpp)
-                            .flatMap(savedTpp -> tppMapService.addToMap(savedTpp).thenReturn(savedTpp))
-                            .map(tppWithoutTokenSectionMapperToDTO::map)
-                            .doOnSuccess(savedTpp -> log.info("[TPP-SERVICE][PATCH] Partially updated TPP with tppId: {}", savedTpp.getTppId()))
-                            .doOnError(error -> log.error("[TPP-SERVICE][PATCH] Error updating TPP with tppId {}: {}", existingTpp.getTppId(), error.getMessage()));
-                })
+        Map<String, Object> fields = new HashMap<>();
+        if (tppDTOPatch.getMessageUrl() != null)         fields.put("messageUrl", tppDTOPatch.getMessageUrl());
+        if (tppDTOPatch.getAuthenticationUrl() != null)  fields.put("authenticationUrl", tppDTOPatch.getAuthenticationUrl());
+        if (tppDTOPatch.getContact() != null)            fields.put("contact", tppDTOPatch.getContact());
+        if (tppDTOPatch.getBusinessName() != null)       fields.put("businessName", tppDTOPatch.getBusinessName());
+        if (tppDTOPatch.getLegalAddress() != null)       fields.put("legalAddress", tppDTOPatch.getLegalAddress());
+        if (tppDTOPatch.getPspDenomination() != null)    fields.put("pspDenomination", tppDTOPatch.getPspDenomination());
+        if (tppDTOPatch.getAgentLinks() != null)         fields.put("agentLinks", tppDTOPatch.getAgentLinks());
+        if (tppDTOPatch.getMessageTemplate() != null)    fields.put("messageTemplate", tppDTOPatch.getMessageTemplate());
+        if (tppDTOPatch.getIsPaymentEnabled() != null)   fields.put("isPaymentEnabled", tppDTOPatch.getIsPaymentEnabled());
+        if (tppDTOPatch.getClientId() != null)           fields.put("clientId", tppDTOPatch.getClientId());
+
+        return tppRepository.updateFields(tppId, fields, now())
                 .switchIfEmpty(Mono.error(exceptionMap.throwException(ExceptionName.TPP_NOT_ONBOARDED,
-                        ExceptionMessage.TPP_NOT_ONBOARDED)));
+                        ExceptionMessage.TPP_NOT_ONBOARDED)))
+                .flatMap(updatedTpp -> tppDTOPatch.getWhitelistRecipient() == null
+                        ? Mono.just(updatedTpp)
+                        : replaceWhitelist(tppId, tppDTOPatch.getWhitelistRecipient())
+                                .map(whitelist -> {
+                                    updatedTpp.setWhitelistRecipient(whitelist);
+                                    return updatedTpp;
+                                }))
+                .flatMap(updatedTpp -> tppMapService.refreshInMap(updatedTpp).then(withStoredWhitelist(updatedTpp)))
+                .map(tppWithoutTokenSectionMapperToDTO::map)
+                .doOnSuccess(updatedTpp -> log.info("[TPP-SERVICE][PATCH] Partially updated TPP with tppId: {}", tppId))
+                .doOnError(error -> log.error("[TPP-SERVICE][PATCH] Error updating TPP with tppId {}: {}", tppId, error.getMessage()));
     }
 
     /**
@@ -230,6 +458,7 @@ public class TppServiceImpl implements TppService {
      * <p>
      * Encrypts the new token section data using Azure Key Vault before storing
      * it in the database. The encryption uses the TPP's specific RSA key.
+     * The cache is written with the plaintext received, so it is not decrypted back.
      */
     @Override
     public Mono<TokenSectionDTO> updateTokenSection(String tppId, TokenSectionDTO tokenSectionDTO) {
@@ -242,14 +471,14 @@ public class TppServiceImpl implements TppService {
                     log.info("[TPP-SERVICE][UPDATE] Updating TokenSection for TPP with tppId: {}", existingTpp.getTppId());
 
                     TokenSection tokenSection = tokenSectionMapperToObject.map(tokenSectionDTO);
-                    return azureKeyService.getKey(tppId)
-                            .flatMap(keyVaultKey -> tokenSectionCryptService.keyEncrypt(tokenSection, keyVaultKey))
+                    TokenSection plainTokenSection = plainCopy(tokenSection);
+                    return tokenSectionCryptService.keyEncrypt(tokenSection, tppId)
                             .flatMap(encryptionResult -> {
-                                existingTpp.setLastUpdateDate(LocalDateTime.now());
+                                existingTpp.setLastUpdateDate(now());
                                 existingTpp.setTokenSection(tokenSection);
 
                                 return tppRepository.save(existingTpp)
-                                        .flatMap(savedTpp -> tppMapService.addToMap(savedTpp).thenReturn(savedTpp))
+                                        .flatMap(savedTpp -> cachePlain(savedTpp, plainTokenSection))
                                         .map(tpp -> tokenSectionMapperToDTO.map(tpp.getTokenSection()))
                                         .doOnSuccess(updatedTokenSection -> log.info("[TPP-SERVICE][UPDATE] Updated TokenSection for tppId: {}", existingTpp.getTppId()))
                                         .doOnError(error -> log.error("[TPP-SERVICE][UPDATE] Error updating TokenSection for tppId {}: {}",  existingTpp.getTppId(), error.getMessage()));
@@ -289,15 +518,25 @@ public class TppServiceImpl implements TppService {
      */
     private Mono<Tpp> createAndSaveNewTpp(TppDTO tppDTO, String tppId) {
         log.info("[TPP-SERVICE][UPSERT] Creating new entry with generated tppId: {}", tppId);
-        return azureKeyService.createRsaKey(tppId)
-                .flatMap(keyVaultKey -> tokenSectionCryptService.keyEncrypt(tppDTO.getTokenSection(), keyVaultKey))
+        TokenSection plainTokenSection = plainCopy(tppDTO.getTokenSection());
+        return keyProvider.createKey(tppId)
+                .then(Mono.defer(() -> tokenSectionCryptService.keyEncrypt(tppDTO.getTokenSection(), tppId)))
                 .flatMap(encryptionResult -> {
                     Tpp tppToSave = mapperToObject.map(tppDTO);
                     tppToSave.setTppId(tppId);
-                    tppToSave.setLastUpdateDate(LocalDateTime.now());
-                    tppToSave.setCreationDate(LocalDateTime.now());
+                    tppToSave.setLastUpdateDate(now());
+                    tppToSave.setCreationDate(now());
+                    List<String> whitelist = tppToSave.getWhitelistRecipient();
+                    tppToSave.setWhitelistRecipient(null);
                     return tppRepository.save(tppToSave)
-                            .flatMap(savedTpp -> tppMapService.addToMap(savedTpp).thenReturn(savedTpp))
+                            .flatMap(savedTpp -> whitelist == null
+                                    ? Mono.just(savedTpp)
+                                    : replaceWhitelist(tppId, whitelist)
+                                            .map(storedWhitelist -> {
+                                                savedTpp.setWhitelistRecipient(storedWhitelist);
+                                                return savedTpp;
+                                            }))
+                            .flatMap(savedTpp -> cachePlain(savedTpp, plainTokenSection))
                             .doOnSuccess(savedTpp -> log.info("[TPP-SERVICE][UPSERT] Created new TPP with tppId: {}", tppToSave.getTppId()))
                             .doOnError(error -> log.error("[TPP-SERVICE][SAVE] Error saving TPP with tppId {}: {}", tppToSave.getTppId(), error.getMessage()));
                 });
@@ -306,21 +545,18 @@ public class TppServiceImpl implements TppService {
     /**
      * {@inheritDoc}
      *
-     * The operation also updates the last modification timestamp.
+     * The operation also updates the last modification timestamp, in the same {@code findAndModify}.
      */
     @Override
     public Mono<TppDTO> updateState(String tppId, Boolean state) {
         log.info("[TPP-SERVICE][UPDATE-STATE] Received request to update state for tppId: {}", tppId);
 
-        return tppRepository.findByTppId(tppId)
+        Map<String, Object> fields = new HashMap<>();
+        fields.put("state", state);
+        return tppRepository.updateFields(tppId, fields, now())
                 .switchIfEmpty(Mono.error(exceptionMap.throwException(ExceptionName.TPP_NOT_ONBOARDED,
                         "Tpp not found during state update process")))
-                .flatMap(tpp -> {
-                    tpp.setState(state);
-                    tpp.setLastUpdateDate(LocalDateTime.now());
-                    return tppRepository.save(tpp);
-                })
-                .flatMap(savedTpp -> tppMapService.addToMap(savedTpp).thenReturn(savedTpp))
+                .flatMap(savedTpp -> tppMapService.refreshInMap(savedTpp).then(withStoredWhitelist(savedTpp)))
                 .map(mapperToDTO::map)
                 .doOnSuccess(updatedTpp -> log.info("[TPP-SERVICE][UPDATE-STATE] State updated for tppId: {}", updatedTpp.getTppId()))
                 .doOnError(error -> log.error("[TPP-SERVICE][UPDATE-STATE] Error updating state for tppId {}: {}", tppId, error.getMessage()));
@@ -329,21 +565,18 @@ public class TppServiceImpl implements TppService {
     /**
      * {@inheritDoc}
      *
-     * The operation also updates the last modification timestamp.
+     * The operation also updates the last modification timestamp, in the same {@code findAndModify}.
      */
     @Override
     public Mono<TppDTO> updateIsPaymentEnabled(String tppId, Boolean isPaymentEnabled) {
         log.info("[TPP-SERVICE][UPDATE-IS-PAYMENT-ENABLED] Received request to update isPaymentEnabled for tppId: {}", tppId);
 
-        return tppRepository.findByTppId(tppId)
+        Map<String, Object> fields = new HashMap<>();
+        fields.put("isPaymentEnabled", isPaymentEnabled);
+        return tppRepository.updateFields(tppId, fields, now())
                 .switchIfEmpty(Mono.error(exceptionMap.throwException(ExceptionName.TPP_NOT_ONBOARDED,
                         "Tpp not found during isPaymentEnabled update process")))
-                .flatMap(tpp -> {
-                    tpp.setIsPaymentEnabled(isPaymentEnabled);
-                    tpp.setLastUpdateDate(LocalDateTime.now());
-                    return tppRepository.save(tpp);
-                })
-                .flatMap(savedTpp -> tppMapService.addToMap(savedTpp).thenReturn(savedTpp))
+                .flatMap(savedTpp -> tppMapService.refreshInMap(savedTpp).then(withStoredWhitelist(savedTpp)))
                 .map(mapperToDTO::map)
                 .doOnSuccess(updatedTpp -> log.info("[TPP-SERVICE][UPDATE-IS-PAYMENT-ENABLED] isPaymentEnabled updated for tppId: {}", updatedTpp.getTppId()))
                 .doOnError(error -> log.error("[TPP-SERVICE][UPDATE-IS-PAYMENT-ENABLED] Error updating isPaymentEnabled for tppId {}: {}", tppId, error.getMessage()));
@@ -356,21 +589,93 @@ public class TppServiceImpl implements TppService {
     public Mono<TppDTOWithoutTokenSection> getTppDetails(String tppId) {
         log.info("[TPP-SERVICE][GET] Received request to get TPP for tppId: {}", tppId);
 
+        return findTppDetails(tppId)
+            .map(details -> toDetailsDTO(details.tpp(), details.whitelist()))
+            .doOnSuccess(tppDTO -> log.info("[TPP-SERVICE][GET] Found TPP with tppId: {}", tppDTO.getTppId()))
+            .doOnError(error -> log.error("[TPP-SERVICE][GET] Error retrieving TPP for tppId {}: {}", tppId, error.getMessage()));
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * The JSON is cached in the {@link TppResponseCache} for the TPP version and whitelist it was built from,
+     * so an unchanged TPP is neither mapped nor encoded again.
+     */
+    @Override
+    public Mono<TppResponseCache.Json> getTppDetailsJson(String tppId) {
+        log.info("[TPP-SERVICE][GET] Received request to get TPP for tppId: {}", tppId);
+
+        return findTppDetails(tppId)
+            .map(details -> responseCache.encode(View.TPP_WITHOUT_TOKEN_SECTION, tppId,
+                TppResponseCache.versionOf(details.tpp().getLastUpdateDate(), details.whitelist()),
+                () -> toDetailsDTO(details.tpp(), details.whitelist())))
+            .doOnSuccess(json -> log.info("[TPP-SERVICE][GET] Found TPP with tppId: {}", tppId))
+            .doOnError(error -> log.error("[TPP-SERVICE][GET] Error retrieving TPP for tppId {}: {}", tppId, error.getMessage()));
+    }
+
+    /**
+     * Returns the TPP and its whitelist, from the cache or else from the database. The whitelist carried by
+     * the TPP, if any, is used as is; otherwise it is read from the whitelist set, or from the whitelist
+     * collection when the TPP comes from the database.
+     *
+     * @param tppId the TPP identifier
+     * @return a {@link Mono} containing the {@link TppDetails}, or an error if the TPP is not onboarded
+     */
+    private Mono<TppDetails> findTppDetails(String tppId) {
         return tppMapService.getFromMap(tppId)
-            .map(tpp -> {
+            .flatMap(tpp -> {
                 log.info("[TPP-SERVICE][GET] Found TPP in MAP for tppId: {}", tppId);
-                return tppWithoutTokenSectionMapperToDTO.map(tpp);
+                return withWhitelist(tpp, tppMapService.getWhitelistFromMap(tppId));
             })
             .switchIfEmpty(Mono.defer(() ->
-                tppRepository.findByTppId(tppId)
+                tppMapService.loadIntoMap(tppId)
                     .switchIfEmpty(Mono.error(exceptionMap.throwException(ExceptionName.TPP_NOT_ONBOARDED, ExceptionMessage.TPP_NOT_FOUND)))
-                    .flatMap(dbTpp -> tppMapService.addToMap(dbTpp).thenReturn(dbTpp))
-                    .map(tppWithoutTokenSectionMapperToDTO::map)
-            ))
-            .doOnSuccess(tppDTO -> log.info("[TPP-SERVICE][GET] Found TPP with tppId: {}", tppDTO.getTppId()))
-            .doOnError(error -> log.error("[TPP-SERVICE][GET] Error retrieving TPP for tppId {}: {}", tppId, error.getMessage()));
+                    .flatMap(tpp -> withWhitelist(tpp, findWhitelist(tppId)))
+            ));
+    }
+
+    /**
+     * Pairs the TPP with its whitelist, sorted: the whitelist set and the collection return the recipients in
+     * different orders, and the response version and body must not depend on where they were read from.
+     */
+    private static Mono<TppDetails> withWhitelist(Tpp tpp, Mono<List<String>> whitelist) {
+        return tpp.getWhitelistRecipient() != null
+            ? Mono.just(new TppDetails(tpp, sorted(tpp.getWhitelistRecipient())))
+            : whitelist.map(found -> new TppDetails(tpp, sorted(found)));
+    }
+
+    /**
+     * Sets the whitelist on a TPP returned by a write that did not replace it: documents no longer carry the
+     * whitelist, so it is read from the whitelist collection, as {@link #findTppDetails(String)} does.
+     *
+     * @param tpp the TPP returned by the write
+     * @return a {@link Mono} containing the same TPP, with its whitelist sorted
+     */
+    private Mono<Tpp> withStoredWhitelist(Tpp tpp) {
+        return Mono.defer(() -> withWhitelist(tpp, findWhitelist(tpp.getTppId())))
+            .map(details -> {
+                tpp.setWhitelistRecipient(details.whitelist());
+                return tpp;
+            });
+    }
+
+    private static List<String> sorted(List<String> whitelist) {
+        List<String> sorted = new ArrayList<>(whitelist);
+        Collections.sort(sorted);
+        return sorted;
+    }
+
+    private TppDTOWithoutTokenSection toDetailsDTO(Tpp tpp, List<String> whitelist) {
+        TppDTOWithoutTokenSection tppDTO = tppWithoutTokenSectionMapperToDTO.map(tpp);
+        tppDTO.setWhitelistRecipient(whitelist);
+        return tppDTO;
     }
 
+    /**
+     * A TPP together with its whitelist.
+     */
+    private record TppDetails(Tpp tpp, List<String> whitelist) {}
+
     /**
      * {@inheritDoc}
      *
@@ -389,11 +694,34 @@ public class TppServiceImpl implements TppService {
         return tppRepository.findByEntityId(entityId)
                 .switchIfEmpty(Mono.error(exceptionMap.throwException(ExceptionName.TPP_NOT_ONBOARDED,
                     ExceptionMessage.TPP_NOT_FOUND)))
-                .map(tppWithoutTokenSectionMapperToDTO::map)
+                .flatMap(tpp -> withWhitelist(tpp, findWhitelist(tpp.getTppId())))
+                .map(details -> toDetailsDTO(details.tpp(), details.whitelist()))
                 .doOnSuccess(tppDTO -> log.info("[TPP-SERVICE][GET] Found TPP with entityId: {}",tppDTO.getEntityId()))
                 .doOnError(error -> log.error("[TPP-SERVICE][GET] Error retrieving TPP for entityId {}: {}", entityId, error.getMessage()));
     }
 
+    /**
+     * {@inheritDoc}
+     *
+     * The TPP and its whitelist are still read from the database, but the JSON is cached in the
+     * {@link TppResponseCache} for the TPP version and whitelist it was built from, so an unchanged TPP is
+     * neither mapped nor encoded again.
+     */
+    @Override
+    public Mono<TppResponseCache.Json> getTppByEntityIdJson(String entityId) {
+        log.info("[TPP-SERVICE][GET] Received request to get TPP for entityId: {}",  entityId);
+
+        return tppRepository.findByEntityId(entityId)
+                .switchIfEmpty(Mono.error(exceptionMap.throwException(ExceptionName.TPP_NOT_ONBOARDED,
+                    ExceptionMessage.TPP_NOT_FOUND)))
+                .flatMap(tpp -> withWhitelist(tpp, findWhitelist(tpp.getTppId())))
+                .map(details -> responseCache.encode(View.TPP_BY_ENTITY_ID, details.tpp().getTppId(),
+                    TppResponseCache.versionOf(details.tpp().getLastUpdateDate(), details.whitelist()),
+                    () -> toDetailsDTO(details.tpp(), details.whitelist())))
+                .doOnSuccess(json -> log.info("[TPP-SERVICE][GET] Found TPP with entityId: {}", entityId))
+                .doOnError(error -> log.error("[TPP-SERVICE][GET] Error retrieving TPP for entityId {}: {}", entityId, error.getMessage()));
+    }
+
     /**
      * {@inheritDoc}
      * 
@@ -405,22 +733,65 @@ public class TppServiceImpl implements TppService {
     public Mono<TokenSectionDTO> getTokenSection(String tppId) {
         log.info("[TPP-SERVICE][GET] Received request to get TokenSection for tppId: {}", tppId);
 
-        return tppMapService.getFromMap(tppId)
-            .map(tpp -> {
-                log.info("[TPP-SERVICE][GET] Found TokenSection in MAP for tppId: {}", tppId);
-                return tokenSectionMapperToDTO.map(tpp.getTokenSection());
-            })
-            .switchIfEmpty(Mono.defer(() ->
-                tppRepository.findByTppId(tppId)
-                    .switchIfEmpty(Mono.error(exceptionMap.throwException(ExceptionName.TPP_NOT_ONBOARDED,
-                        ExceptionMessage.TPP_NOT_FOUND)))
-                    .flatMap(dbTpp -> tppMapService.addToMap(dbTpp).thenReturn(dbTpp))
-                    .map(tpp -> tokenSectionMapperToDTO.map(tpp.getTokenSection()))
-            ))
+        return findTppWithTokenSection(tppId)
+            .map(tpp -> tokenSectionMapperToDTO.map(tpp.getTokenSection()))
             .doOnSuccess(tokenSectionDTO -> log.info("[TPP-SERVICE][GET] Found TokenSection for tppId: {}", tppId))
             .doOnError(error -> log.error("[TPP-SERVICE][GET] Error retrieving TokenSection for tppId {}: {}", tppId, error.getMessage()));
     }
 
+    /**
+     * {@inheritDoc}
+     *
+     * The JSON is cached in the {@link TppResponseCache} for the TPP version it was built from, so the
+     * token section is neither mapped nor encoded again until the TPP changes.
+     */
+    @Override
+    public Mono<TppResponseCache.Json> getTokenSectionJson(String tppId) {
+        log.info("[TPP-SERVICE][GET] Received request to get TokenSection for tppId: {}", tppId);
+
+        return findTppWithTokenSection(tppId)
+            .map(tpp -> responseCache.encode(View.TOKEN_SECTION, tppId, TppResponseCache.versionOf(tpp.getLastUpdateDate()),
+                () -> tokenSectionMapperToDTO.map(tpp.getTokenSection())))
+            .doOnSuccess(json -> log.info("[TPP-SERVICE][GET] Found TokenSection for tppId: {}", tppId))
+            .doOnError(error -> log.error("[TPP-SERVICE][GET] Error retrieving TokenSection for tppId {}: {}", tppId, error.getMessage()));
+    }
+
+    /**
+     * Returns the decrypted TPP, from the cache or else from the database.
+     *
+     * @param tppId the TPP identifier
+     * @return a {@link Mono} containing the {@link Tpp}, or an error if it is not onboarded
+     */
+    private Mono<Tpp> findTppWithTokenSection(String tppId) {
+        return findTpp(tppId)
+            .switchIfEmpty(Mono.defer(() -> Mono.error(exceptionMap.throwException(ExceptionName.TPP_NOT_ONBOARDED,
+                ExceptionMessage.TPP_NOT_FOUND))));
+    }
+
+    /**
+     * Returns the decrypted TPP, from the cache or else from the database.
+     *
+     * @param tppId the TPP identifier
+     * @return a {@link Mono} containing the {@link Tpp}, empty if it is not onboarded
+     */
+    private Mono<Tpp> findTpp(String tppId) {
+        return tppMapService.getFromMap(tppId)
+            .doOnNext(tpp -> log.info("[TPP-SERVICE][GET] Found TPP in MAP for tppId: {}", tppId))
+            .switchIfEmpty(Mono.defer(() -> tppMapService.loadIntoMap(tppId)));
+    }
+
+    /**
+     * Returns the TPP from the cache or else from the database, without decrypting its token section:
+     * for the callers that only need its configuration. A TPP read from the database is not cached.
+     *
+     * @param tppId the TPP identifier
+     * @return a {@link Mono} containing the {@link Tpp}, empty if it is not onboarded
+     */
+    private Mono<Tpp> findTppConfiguration(String tppId) {
+        return tppMapService.getFromMap(tppId)
+            .switchIfEmpty(Mono.defer(() -> tppRepository.findByTppId(tppId)));
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -432,6 +803,7 @@ public class TppServiceImpl implements TppService {
                 .switchIfEmpty(Mono.error(exceptionMap.throwException(ExceptionName.TPP_NOT_ONBOARDED,
                     ExceptionMessage.TPP_NOT_FOUND)))
                 .flatMap(tpp -> tppRepository.delete(tpp)
+                    .then(whitelistRepository.deleteByTppId(tppId))
                     .then(tppMapService.removeFromMap(tppId))
                     .thenReturn(mapperToDTO.map(tpp))
                 )
@@ -469,13 +841,13 @@ public class TppServiceImpl implements TppService {
   public Mono<Map<String, List<String>>> getAllWhitelistRecipientId() {
     log.info("[TPP-SERVICE][WHITELIST-GET-ALL] Retrieving all whitelist recipientIds");
 
-
-    return tppRepository.findAllWhitelistOfTPPs()
-        .collectMap(
-            Tpp::getTppId,
-            tpp -> tpp.getWhitelistRecipient() != null ? tpp.getWhitelistRecipient() : new ArrayList<String>()
-        )
-        .defaultIfEmpty(new HashMap<>())
+    return whitelistRepository.findAll()
+        .collectMultimap(TppWhitelistEntry::getTppId, TppWhitelistEntry::getRecipientId)
+        .<Map<String, List<String>>>map(whitelists -> {
+          Map<String, List<String>> result = new HashMap<>();
+          whitelists.forEach((tppId, recipientIds) -> result.put(tppId, new ArrayList<>(recipientIds)));
+          return result;
+        })
         .doOnSuccess(map -> log.info("[TPP-SERVICE][WHITELIST-GET-ALL] Retrieved whitelist for {} TPPs", map.size()))
         .doOnError(error -> log.error("[TPP-SERVICE][WHITELIST-GET-ALL] Error retrieving all whitelists: {}", error.getMessage()));
   }
@@ -489,95 +861,151 @@ public class TppServiceImpl implements TppService {
 
     return tppRepository.findByTppId(tppId)
         .switchIfEmpty(Mono.error(exceptionMap.throwException(ExceptionName.TPP_NOT_ONBOARDED, ExceptionMessage.TPP_NOT_FOUND)))
-        .map(tpp -> tpp.getWhitelistRecipient() != null ? tpp.getWhitelistRecipient() : new ArrayList<String>())
+        .flatMap(tpp -> findWhitelist(tppId))
         .doOnSuccess(list -> log.info("[TPP-SERVICE][WHITELIST-GET] Found {} recipientIds for tppId: {}", list.size(), tppId))
         .doOnError(error -> log.error("[TPP-SERVICE][WHITELIST-GET] Error retrieving whitelist for tppId {}: {}", tppId, error.getMessage()));
   }
 
   /**
    * {@inheritDoc}
+   *
+   * <p>
+   * The recipientId is stored with a single upsert on the {@code tpp_whitelist} collection, whose outcome tells
+   * whether it was already present, and the TPP's last modification timestamp is then set with a single
+   * {@code findAndModify}: no read precedes the writes. If the TPP turns out not to exist, the entry just
+   * inserted is deleted again.
    */
   @Override
   public Mono<TppDTO> insertRecipientIdOnWhitelist(String tppId, String recipientId) {
     String hashedRecipientId = Utils.createSHA256(recipientId);
     log.info("[TPP-SERVICE][WHITELIST-INSERT] Inserting recipientId {} for tppId: {}", hashedRecipientId, tppId);
 
-    return tppRepository.findByTppId(tppId)
-        .switchIfEmpty(Mono.error(exceptionMap.throwException(ExceptionName.TPP_NOT_ONBOARDED, ExceptionMessage.TPP_NOT_FOUND)))
-        .flatMap(tpp -> {
-          List<String> whitelist = tpp.getWhitelistRecipient() != null
-              ? new ArrayList<>(tpp.getWhitelistRecipient())
-              : new ArrayList<>();
-
-          if (whitelist.contains(recipientId)) {
+    return whitelistRepository.insertIfAbsent(tppId, recipientId)
+        .flatMap(inserted -> {
+          if (Boolean.FALSE.equals(inserted)) {
             return Mono.error(exceptionMap.throwException(
                 ExceptionName.RECIPIENT_ALREADY_PRESENT,
                 ExceptionMessage.RECIPIENT_ALREADY_PRESENT));
           }
-
-          whitelist.add(recipientId);
-          tpp.setWhitelistRecipient(whitelist);
-          tpp.setLastUpdateDate(LocalDateTime.now());
-
-          return tppRepository.save(tpp)
-              .flatMap(savedTpp -> tppMapService.addToMap(savedTpp).thenReturn(savedTpp))
-              .map(mapperToDTO::map);
+          return tppRepository.updateLastUpdateDate(tppId, now())
+              .switchIfEmpty(Mono.defer(() -> whitelistRepository.deleteByTppIdAndRecipientId(tppId, recipientId)
+                  .then(Mono.<Tpp>error(exceptionMap.throwException(ExceptionName.TPP_NOT_ONBOARDED, ExceptionMessage.TPP_NOT_FOUND)))));
         })
+        .flatMap(updatedTpp -> tppMapService.addToWhitelistMap(tppId, recipientId)
+            .then(refreshCache(updatedTpp)))
         .doOnSuccess(tppDto -> log.info("[TPP-SERVICE][WHITELIST-INSERT] Inserted recipientId {} for tppId: {}", hashedRecipientId, tppId))
         .doOnError(error -> log.error("[TPP-SERVICE][WHITELIST-INSERT] Error inserting recipientId {} for tppId {}: {}", hashedRecipientId, tppId, error.getMessage()));
   }
 
   /**
    * {@inheritDoc}
+   *
+   * <p>
+   * The recipientId is removed with a single delete on the {@code tpp_whitelist} collection, whose deleted count
+   * tells whether it was present, and the TPP's last modification timestamp is then set with a single
+   * {@code findAndModify}. The TPP is only read when nothing was deleted, to tell a missing TPP from a
+   * missing recipientId.
    */
   @Override
   public Mono<TppDTO> removeRecipientIdOnWhitelist(String tppId, String recipientId) {
     String hashedRecipientId = Utils.createSHA256(recipientId);
     log.info("[TPP-SERVICE][WHITELIST-REMOVE] Removing recipientId {} for tppId: {}", hashedRecipientId, tppId);
 
-    return tppRepository.findByTppId(tppId)
-        .switchIfEmpty(Mono.error(exceptionMap.throwException(ExceptionName.TPP_NOT_ONBOARDED, ExceptionMessage.TPP_NOT_FOUND)))
-        .flatMap(tpp -> {
-          List<String> whitelist = tpp.getWhitelistRecipient() != null
-              ? new ArrayList<>(tpp.getWhitelistRecipient())
-              : new ArrayList<>();
-
-          if (!whitelist.contains(recipientId)) {
-            return Mono.error(exceptionMap.throwException(
-                ExceptionName.RECIPIENT_NOT_FOUND,
-                ExceptionMessage.RECIPIENT_NOT_FOUND));
+    return whitelistRepository.deleteByTppIdAndRecipientId(tppId, recipientId)
+        .flatMap(deleted -> {
+          if (deleted == 0) {
+            return tppRepository.existsByTppId(tppId)
+                .flatMap(exists -> Mono.<Tpp>error(Boolean.TRUE.equals(exists)
+                    ? exceptionMap.throwException(ExceptionName.RECIPIENT_NOT_FOUND, ExceptionMessage.RECIPIENT_NOT_FOUND)
+                    : exceptionMap.throwException(ExceptionName.TPP_NOT_ONBOARDED, ExceptionMessage.TPP_NOT_FOUND)));
           }
-
-          whitelist.remove(recipientId);
-          tpp.setWhitelistRecipient(whitelist);
-          tpp.setLastUpdateDate(LocalDateTime.now());
-
-          return tppRepository.save(tpp)
-              .flatMap(savedTpp -> tppMapService.addToMap(savedTpp).thenReturn(savedTpp))
-              .map(mapperToDTO::map);
+          return touch(tppId);
         })
+        .flatMap(updatedTpp -> tppMapService.removeFromWhitelistMap(tppId, recipientId)
+            .then(refreshCache(updatedTpp)))
         .doOnSuccess(tppDto -> log.info("[TPP-SERVICE][WHITELIST-REMOVE] Removed recipientId {} for tppId: {}", hashedRecipientId, tppId))
         .doOnError(error -> log.error("[TPP-SERVICE][WHITELIST-REMOVE] Error removing recipientId {} for tppId {}: {}", hashedRecipientId, tppId, error.getMessage()));
   }
 
   /**
    * {@inheritDoc}
+   *
+   * <p>
+   * The TPP's last modification timestamp is set first with a single {@code findAndModify}, which also tells
+   * whether the TPP exists, then its whitelist entries are replaced.
    */
   @Override
   public Mono<TppDTO> updateRecipientIdOnWhitelist(String tppId, List<String> recipientIds) {
     log.info("[TPP-SERVICE][WHITELIST-UPDATE] Replacing whitelist for tppId: {}", tppId);
 
-    return tppRepository.findByTppId(tppId)
-        .switchIfEmpty(Mono.error(exceptionMap.throwException(ExceptionName.TPP_NOT_ONBOARDED, ExceptionMessage.TPP_NOT_FOUND)))
-        .flatMap(tpp -> {
-          tpp.setWhitelistRecipient(recipientIds != null ? new ArrayList<>(new HashSet<>(recipientIds)) : new ArrayList<>());
-          tpp.setLastUpdateDate(LocalDateTime.now());
-
-          return tppRepository.save(tpp)
-              .flatMap(savedTpp -> tppMapService.addToMap(savedTpp).thenReturn(savedTpp))
-              .map(mapperToDTO::map);
-        })
+    return touch(tppId)
+        .flatMap(updatedTpp -> replaceWhitelist(tppId, recipientIds)
+            .flatMap(whitelist -> {
+              updatedTpp.setWhitelistRecipient(whitelist);
+              return refreshCache(updatedTpp);
+            }))
         .doOnSuccess(tppDto -> log.info("[TPP-SERVICE][WHITELIST-UPDATE] Replaced whitelist for tppId: {}", tppId))
         .doOnError(error -> log.error("[TPP-SERVICE][WHITELIST-UPDATE] Error replacing whitelist for tppId {}: {}", tppId, error.getMessage()));
   }
-}
\ No newline at end of file
+
+  /**
+   * Updates the last modification timestamp of a TPP after a whitelist change.
+   *
+   * @param tppId the TPP identifier
+   * @return a {@link Mono} containing the updated TPP, or a TPP_NOT_ONBOARDED error if it does not exist
+   */
+  private Mono<Tpp> touch(String tppId) {
+    return tppRepository.updateLastUpdateDate(tppId, now())
+        .switchIfEmpty(Mono.error(exceptionMap.throwException(ExceptionName.TPP_NOT_ONBOARDED, ExceptionMessage.TPP_NOT_FOUND)));
+  }
+
+  /**
+   * Refreshes the cached entry of a TPP after a whitelist change, reusing its cached token section. The
+   * whitelist set is only written when the TPP carries one; otherwise the response reads it back from the
+   * whitelist collection.
+   *
+   * @param tpp the updated TPP
+   * @return a {@link Mono} containing the updated TPP
+   */
+  private Mono<TppDTO> refreshCache(Tpp tpp) {
+    return tppMapService.refreshInMap(tpp).then(withStoredWhitelist(tpp)).map(mapperToDTO::map);
+  }
+
+  /**
+   * Caches a TPP just saved with a new token section, using the plaintext it was encrypted from instead of
+   * decrypting the stored one. The plaintext is also set on the returned TPP, as a decryption would have.
+   *
+   * @param savedTpp          the saved TPP
+   * @param plainTokenSection the token section before encryption
+   * @return a {@link Mono} containing the saved TPP
+   */
+  private Mono<Tpp> cachePlain(Tpp savedTpp, TokenSection plainTokenSection) {
+    savedTpp.setTokenSectionFingerprint(TokenSectionCryptService.fingerprintOf(savedTpp.getTokenSection()));
+    savedTpp.setTokenSection(plainTokenSection);
+    return tppMapService.addDecryptedToMap(savedTpp).thenReturn(savedTpp);
+  }
+
+  /**
+   * Copies a token section before it is encrypted in place, with its own property maps.
+   *
+   * @param tokenSection the plaintext token section
+   * @return the copy, or {@code null} if the token section is {@code null}
+   */
+  private static TokenSection plainCopy(TokenSection tokenSection) {
+    if (tokenSection == null) {
+      return null;
+    }
+    return new TokenSection(
+        tokenSection.getContentType(),
+        tokenSection.getPathAdditionalProperties() == null ? null : new HashMap<>(tokenSection.getPathAdditionalProperties()),
+        tokenSection.getBodyAdditionalProperties() == null ? null : new HashMap<>(tokenSection.getBodyAdditionalProperties()));
+  }
+
+    /**
+     * Returns the current time at the millisecond precision the database stores, so that a TPP cached
+     * right after a write carries the same {@code lastUpdateDate} it has once read back.
+     */
+    private static LocalDateTime now() {
+        return LocalDateTime.now().truncatedTo(ChronoUnit.MILLIS);
+    }
+}
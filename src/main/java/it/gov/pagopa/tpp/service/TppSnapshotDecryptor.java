@@ -0,0 +1,137 @@
+package it.gov.pagopa.tpp.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import it.gov.pagopa.common.utils.TokenBucket;
+import it.gov.pagopa.common.web.exception.EmdThrottledException;
+import it.gov.pagopa.tpp.model.TokenSection;
+import it.gov.pagopa.tpp.model.Tpp;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Decrypts the token sections of a whole TPP fleet when the cache is rebuilt, without overrunning Key Vault.
+ *
+ * <p>At most {@code tpp.cache.snapshot.concurrency} TPPs are decrypted at a time, and the Key Vault calls
+ * they make are paced by a {@link TokenBucket} at {@code tpp.cache.snapshot.rate} calls per second (one
+ * per TPP with an envelope-encrypted token section, one per property with a legacy one, plus one to read
+ * a TPP key that is not cached yet). A throttled
+ * decryption pauses the bucket for the {@code Retry-After} requested by Key Vault and is retried, up to
+ * {@code tpp.cache.snapshot.max-retries} times, so that large fleets are decrypted completely instead of
+ * losing entries to throttling.</p>
+ *
+ * <p>Exported meters: {@code tpp.cache.snapshot.processed}, {@code tpp.cache.snapshot.decrypted},
+ * {@code tpp.cache.snapshot.failed}, {@code tpp.cache.snapshot.throttled} and
+ * {@code tpp.cache.snapshot.duration}.</p>
+ */
+@Component
+@Slf4j
+public class TppSnapshotDecryptor {
+
+    private final TokenSectionCryptService tokenSectionCryptService;
+    private final TokenBucket keyVaultCalls;
+    private final int concurrency;
+    private final int maxRetries;
+    private final Counter processed;
+    private final Counter decrypted;
+    private final Counter failed;
+    private final Counter throttled;
+    private final Timer duration;
+
+    public TppSnapshotDecryptor(TokenSectionCryptService tokenSectionCryptService,
+                                MeterRegistry meterRegistry,
+                                @Value("${tpp.cache.snapshot.concurrency:8}") int concurrency,
+                                @Value("${tpp.cache.snapshot.rate:100}") double rate,
+                                @Value("${tpp.cache.snapshot.max-retries:5}") int maxRetries) {
+        this.tokenSectionCryptService = tokenSectionCryptService;
+        this.keyVaultCalls = new TokenBucket(rate, concurrency);
+        this.concurrency = concurrency;
+        this.maxRetries = maxRetries;
+        this.processed = Counter.builder("tpp.cache.snapshot.processed").register(meterRegistry);
+        this.decrypted = Counter.builder("tpp.cache.snapshot.decrypted").register(meterRegistry);
+        this.failed = Counter.builder("tpp.cache.snapshot.failed").register(meterRegistry);
+        this.throttled = Counter.builder("tpp.cache.snapshot.throttled").register(meterRegistry);
+        this.duration = Timer.builder("tpp.cache.snapshot.duration").register(meterRegistry);
+    }
+
+    /**
+     * Decrypts the token section of every TPP in place.
+     *
+     * @param tpps the TPPs read from the database
+     * @return the TPPs whose token section was decrypted; the others are logged, counted and left out
+     */
+    public Flux<Tpp> decryptAll(Flux<Tpp> tpps) {
+        return Flux.defer(() -> {
+            Timer.Sample sample = Timer.start();
+            AtomicLong ok = new AtomicLong();
+            AtomicLong ko = new AtomicLong();
+            return tpps
+                    .doOnNext(tpp -> processed.increment())
+                    .flatMap(tpp -> decrypt(tpp)
+                            .doOnNext(decryptedTpp -> {
+                                ok.incrementAndGet();
+                                decrypted.increment();
+                            })
+                            .onErrorResume(e -> {
+                                ko.incrementAndGet();
+                                failed.increment();
+                                log.error("[TPP-MAP][SNAPSHOT] Decrypt failed for TPP ID: {}", tpp.getTppId(), e);
+                                return Mono.empty();
+                            }), concurrency)
+                    .doOnComplete(() -> {
+                        long nanos = sample.stop(duration);
+                        log.info("[TPP-MAP][SNAPSHOT] Decrypted {} TPPs, {} failed, in {} ms",
+                                ok.get(), ko.get(), Duration.ofNanos(nanos).toMillis());
+                    });
+        });
+    }
+
+    /**
+     * Decrypts a copy of the token section, so that a retry never sees values already decrypted by a
+     * partially failed attempt, and sets it on the TPP once decrypted.
+     */
+    private Mono<Tpp> decrypt(Tpp tpp) {
+        TokenSection encrypted = tpp.getTokenSection();
+        return Mono.defer(() -> {
+                    TokenSection copy = copyOf(encrypted);
+                    return keyVaultCalls.acquire(tokenSectionCryptService.keyProviderCallsFor(encrypted, tpp.getTppId()))
+                            .then(Mono.defer(() -> tokenSectionCryptService.keyDecrypt(copy, tpp.getTppId())))
+                            .thenReturn(copy);
+                })
+                .retryWhen(Retry.from(signals -> signals.concatMap(signal -> {
+                    if (signal.failure() instanceof EmdThrottledException throttledException && signal.totalRetries() < maxRetries) {
+                        throttled.increment();
+                        log.warn("[TPP-MAP][SNAPSHOT] Key Vault throttled TPP ID: {}, backing off for {}",
+                                tpp.getTppId(), throttledException.getRetryAfter());
+                        keyVaultCalls.pause(throttledException.getRetryAfter());
+                        return Mono.just(signal);
+                    }
+                    return Mono.error(signal.failure());
+                })))
+                .map(plain -> {
+                    tpp.setTokenSectionFingerprint(TokenSectionCryptService.fingerprintOf(encrypted));
+                    tpp.setTokenSection(plain);
+                    return tpp;
+                });
+    }
+
+    private static TokenSection copyOf(TokenSection tokenSection) {
+        if (tokenSection == null) {
+            return null;
+        }
+        return new TokenSection(
+                tokenSection.getContentType(),
+                tokenSection.getPathAdditionalProperties() == null ? null : new HashMap<>(tokenSection.getPathAdditionalProperties()),
+                tokenSection.getBodyAdditionalProperties() == null ? null : new HashMap<>(tokenSection.getBodyAdditionalProperties()),
+                tokenSection.getWrappedDataKey());
+    }
+}
@@ -0,0 +1,397 @@
+package it.gov.pagopa.tpp.service.cache;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import it.gov.pagopa.tpp.enums.AuthenticationType;
+import it.gov.pagopa.tpp.model.AgentLink;
+import it.gov.pagopa.tpp.model.Contact;
+import it.gov.pagopa.tpp.model.TokenSection;
+import it.gov.pagopa.tpp.model.Tpp;
+import it.gov.pagopa.tpp.model.VersionDetails;
+import org.redisson.client.codec.BaseCodec;
+import org.redisson.client.codec.Codec;
+import org.redisson.client.handler.State;
+import org.redisson.client.protocol.Decoder;
+import org.redisson.client.protocol.Encoder;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Redisson codec storing cached {@link Tpp} values in a compact, schema-based binary format.
+ *
+ * <p>Each binary value starts with {@value #MAGIC} and a format version, followed by the TPP fields in a
+ * fixed order: strings as length-prefixed UTF-8, dates as epoch second and nanos, nullable values behind a
+ * one-byte presence flag. There is no field name nor type metadata, and dates need no text parsing.</p>
+ *
+ * <p>Values that do not start with {@value #MAGIC}, such as the JSON written by the delegate codec, are
+ * handed over to it, so that readers understand both formats during a rollout. Whether values are written
+ * in binary or through the delegate is chosen with {@code writeBinary}: deploy the reading side first,
+ * then switch writers over. Map keys are always encoded by the delegate, so that existing entries keep
+ * their keys.</p>
+ *
+ * <p>Adding a field to the cached model requires a new {@link #VERSION}, appending the field; values in the
+ * previous version are still read, without it. A value that cannot be read, because
+ * its version is unknown, it is truncated or the delegate rejects it, fails with an
+ * {@link UnreadableEntryException}: {@link TppShardedMap} treats the entry as a cache miss and evicts it.</p>
+ */
+public class TppBinaryCodec extends BaseCodec {
+
+    static final byte MAGIC = 0;
+    static final byte VERSION = 2;
+    /** The format before {@link Tpp#getTokenSectionFingerprint()}, still read. */
+    static final byte VERSION_WITHOUT_FINGERPRINT = 1;
+
+    private static final int NULL_LENGTH = 0;
+    private static final byte ABSENT = 0;
+    private static final byte PRESENT = 1;
+    private static final byte FALSE = 1;
+    private static final byte TRUE = 2;
+
+    private final Codec delegate;
+    private final boolean writeBinary;
+
+    private final Encoder encoder = new Encoder() {
+        @Override
+        public ByteBuf encode(Object in) throws IOException {
+            if (!writeBinary || !(in instanceof Tpp tpp)) {
+                return delegate.getValueEncoder().encode(in);
+            }
+            ByteBuf out = ByteBufAllocator.DEFAULT.buffer();
+            try {
+                out.writeByte(MAGIC);
+                out.writeByte(VERSION);
+                writeTpp(out, tpp);
+                return out;
+            } catch (RuntimeException e) {
+                out.release();
+                throw e;
+            }
+        }
+    };
+
+    private final Decoder<Object> decoder = new Decoder<>() {
+        @Override
+        public Object decode(ByteBuf buf, State state) throws IOException {
+            if (!buf.isReadable() || buf.getByte(buf.readerIndex()) != MAGIC) {
+                try {
+                    return delegate.getValueDecoder().decode(buf, state);
+                } catch (IOException | RuntimeException e) {
+                    throw new UnreadableEntryException("Unreadable TPP cache entry", e);
+                }
+            }
+            buf.skipBytes(1);
+            if (!buf.isReadable()) {
+                throw new UnreadableEntryException("Truncated TPP cache entry", null);
+            }
+            byte version = buf.readByte();
+            if (version != VERSION && version != VERSION_WITHOUT_FINGERPRINT) {
+                throw new UnreadableEntryException("Unsupported TPP cache entry version: " + version, null);
+            }
+            try {
+                return readTpp(buf, version);
+            } catch (RuntimeException e) {
+                throw new UnreadableEntryException("Malformed TPP cache entry", e);
+            }
+        }
+    };
+
+    /**
+     * A cached value that cannot be decoded, to be treated as a cache miss.
+     */
+    public static class UnreadableEntryException extends IOException {
+
+        public UnreadableEntryException(String message, Throwable cause) {
+            super(message, cause);
+        }
+
+        /**
+         * @return whether the error, or one of its causes, is an {@link UnreadableEntryException}
+         */
+        public static boolean isCauseOf(Throwable e) {
+            for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+                if (cause instanceof UnreadableEntryException) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * @param delegate    the codec used for map keys, for non-TPP values and for values not in binary format
+     * @param writeBinary whether TPP values are written in binary format rather than through the delegate
+     */
+    public TppBinaryCodec(Codec delegate, boolean writeBinary) {
+        this.delegate = delegate;
+        this.writeBinary = writeBinary;
+    }
+
+    @Override
+    public Decoder<Object> getValueDecoder() {
+        return decoder;
+    }
+
+    @Override
+    public Encoder getValueEncoder() {
+        return encoder;
+    }
+
+    @Override
+    public Decoder<Object> getMapKeyDecoder() {
+        return delegate.getMapKeyDecoder();
+    }
+
+    @Override
+    public Encoder getMapKeyEncoder() {
+        return delegate.getMapKeyEncoder();
+    }
+
+    @Override
+    public ClassLoader getClassLoader() {
+        return delegate.getClassLoader();
+    }
+
+    // -------------------------------------------------------------------------
+    // Model
+    // -------------------------------------------------------------------------
+
+    private static void writeTpp(ByteBuf out, Tpp tpp) {
+        writeString(out, tpp.getId());
+        writeString(out, tpp.getTppId());
+        writeString(out, tpp.getClientId());
+        writeString(out, tpp.getEntityId());
+        writeString(out, tpp.getIdPsp());
+        writeString(out, tpp.getBusinessName());
+        writeString(out, tpp.getLegalAddress());
+        writeString(out, tpp.getMessageUrl());
+        writeString(out, tpp.getAuthenticationUrl());
+        writeString(out, tpp.getAuthenticationType() == null ? null : tpp.getAuthenticationType().name());
+        writeBoolean(out, tpp.getState());
+        writeContact(out, tpp.getContact());
+        writeTokenSection(out, tpp.getTokenSection());
+        writeDate(out, tpp.getCreationDate());
+        writeDate(out, tpp.getLastUpdateDate());
+        writeString(out, tpp.getPspDenomination());
+        writeMap(out, tpp.getAgentLinks(), TppBinaryCodec::writeAgentLink);
+        writeBoolean(out, tpp.getIsPaymentEnabled());
+        writeString(out, tpp.getMessageTemplate());
+        writeList(out, tpp.getWhitelistRecipient());
+        writeString(out, tpp.getTokenSectionFingerprint());
+    }
+
+    private static Tpp readTpp(ByteBuf in, byte version) {
+        Tpp tpp = new Tpp();
+        tpp.setId(readString(in));
+        tpp.setTppId(readString(in));
+        tpp.setClientId(readString(in));
+        tpp.setEntityId(readString(in));
+        tpp.setIdPsp(readString(in));
+        tpp.setBusinessName(readString(in));
+        tpp.setLegalAddress(readString(in));
+        tpp.setMessageUrl(readString(in));
+        tpp.setAuthenticationUrl(readString(in));
+        String authenticationType = readString(in);
+        tpp.setAuthenticationType(authenticationType == null ? null : AuthenticationType.valueOf(authenticationType));
+        tpp.setState(readBoolean(in));
+        tpp.setContact(readContact(in));
+        tpp.setTokenSection(readTokenSection(in));
+        tpp.setCreationDate(readDate(in));
+        tpp.setLastUpdateDate(readDate(in));
+        tpp.setPspDenomination(readString(in));
+        tpp.setAgentLinks(readMap(in, TppBinaryCodec::readAgentLink));
+        tpp.setIsPaymentEnabled(readBoolean(in));
+        tpp.setMessageTemplate(readString(in));
+        tpp.setWhitelistRecipient(readList(in));
+        if (version != VERSION_WITHOUT_FINGERPRINT) {
+            tpp.setTokenSectionFingerprint(readString(in));
+        }
+        return tpp;
+    }
+
+    private static void writeContact(ByteBuf out, Contact contact) {
+        if (writePresence(out, contact)) {
+            writeString(out, contact.getName());
+            writeString(out, contact.getNumber());
+            writeString(out, contact.getEmail());
+        }
+    }
+
+    private static Contact readContact(ByteBuf in) {
+        return readPresence(in) ? new Contact(readString(in), readString(in), readString(in)) : null;
+    }
+
+    /**
+     * The wrapped data key is not written, as with the JSON format: cached sections are always decrypted.
+     */
+    private static void writeTokenSection(ByteBuf out, TokenSection tokenSection) {
+        if (writePresence(out, tokenSection)) {
+            writeString(out, tokenSection.getContentType());
+            writeMap(out, tokenSection.getPathAdditionalProperties(), TppBinaryCodec::writeString);
+            writeMap(out, tokenSection.getBodyAdditionalProperties(), TppBinaryCodec::writeString);
+        }
+    }
+
+    private static TokenSection readTokenSection(ByteBuf in) {
+        if (!readPresence(in)) {
+            return null;
+        }
+        String contentType = readString(in);
+        Map<String, String> path = readMap(in, TppBinaryCodec::readString);
+        Map<String, String> body = readMap(in, TppBinaryCodec::readString);
+        return new TokenSection(contentType, path, body);
+    }
+
+    private static void writeAgentLink(ByteBuf out, AgentLink agentLink) {
+        if (writePresence(out, agentLink)) {
+            writeString(out, agentLink.getFallBackLink());
+            writeMap(out, agentLink.getVersions(), (buf, details) -> {
+                if (writePresence(buf, details)) {
+                    writeString(buf, details.getLink());
+                }
+            });
+        }
+    }
+
+    private static AgentLink readAgentLink(ByteBuf in) {
+        if (!readPresence(in)) {
+            return null;
+        }
+        String fallBackLink = readString(in);
+        HashMap<String, VersionDetails> versions = readMap(in, buf -> readPresence(buf) ? new VersionDetails(readString(buf)) : null);
+        return new AgentLink(fallBackLink, versions);
+    }
+
+    // -------------------------------------------------------------------------
+    // Primitives
+    // -------------------------------------------------------------------------
+
+    private interface ValueWriter<V> {
+        void write(ByteBuf out, V value);
+    }
+
+    private static boolean writePresence(ByteBuf out, Object value) {
+        out.writeByte(value == null ? ABSENT : PRESENT);
+        return value != null;
+    }
+
+    private static boolean readPresence(ByteBuf in) {
+        return in.readByte() == PRESENT;
+    }
+
+    private static void writeBoolean(ByteBuf out, Boolean value) {
+        out.writeByte(value == null ? ABSENT : (value ? TRUE : FALSE));
+    }
+
+    private static Boolean readBoolean(ByteBuf in) {
+        byte value = in.readByte();
+        return value == ABSENT ? null : value == TRUE;
+    }
+
+    private static void writeDate(ByteBuf out, LocalDateTime date) {
+        if (writePresence(out, date)) {
+            out.writeLong(date.toEpochSecond(ZoneOffset.UTC));
+            out.writeInt(date.getNano());
+        }
+    }
+
+    private static LocalDateTime readDate(ByteBuf in) {
+        if (!readPresence(in)) {
+            return null;
+        }
+        long epochSecond = in.readLong();
+        return LocalDateTime.ofEpochSecond(epochSecond, in.readInt(), ZoneOffset.UTC);
+    }
+
+    /**
+     * Writes the UTF-8 bytes prefixed by their length plus one, so that {@code 0} stands for {@code null}.
+     */
+    private static void writeString(ByteBuf out, String value) {
+        if (value == null) {
+            writeVarInt(out, NULL_LENGTH);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarInt(out, bytes.length + 1);
+        out.writeBytes(bytes);
+    }
+
+    private static String readString(ByteBuf in) {
+        int length = readVarInt(in);
+        if (length == NULL_LENGTH) {
+            return null;
+        }
+        String value = in.toString(in.readerIndex(), length - 1, StandardCharsets.UTF_8);
+        in.skipBytes(length - 1);
+        return value;
+    }
+
+    private static <V> void writeMap(ByteBuf out, Map<String, V> map, ValueWriter<V> valueWriter) {
+        writeVarInt(out, map == null ? NULL_LENGTH : map.size() + 1);
+        if (map != null) {
+            map.forEach((key, value) -> {
+                writeString(out, key);
+                valueWriter.write(out, value);
+            });
+        }
+    }
+
+    private static <V> HashMap<String, V> readMap(ByteBuf in, Function<ByteBuf, V> valueReader) {
+        int size = readVarInt(in);
+        if (size == NULL_LENGTH) {
+            return null;
+        }
+        HashMap<String, V> map = HashMap.newHashMap(size - 1);
+        for (int i = 1; i < size; i++) {
+            String key = readString(in);
+            map.put(key, valueReader.apply(in));
+        }
+        return map;
+    }
+
+    private static void writeList(ByteBuf out, List<String> list) {
+        writeVarInt(out, list == null ? NULL_LENGTH : list.size() + 1);
+        if (list != null) {
+            list.forEach(value -> writeString(out, value));
+        }
+    }
+
+    private static List<String> readList(ByteBuf in) {
+        int size = readVarInt(in);
+        if (size == NULL_LENGTH) {
+            return null;
+        }
+        List<String> list = new ArrayList<>(size - 1);
+        for (int i = 1; i < size; i++) {
+            list.add(readString(in));
+        }
+        return list;
+    }
+
+    private static void writeVarInt(ByteBuf out, int value) {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    private static int readVarInt(ByteBuf in) {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            byte b = in.readByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IllegalStateException("Malformed varint in TPP cache entry");
+    }
+}
@@ -0,0 +1,39 @@
+package it.gov.pagopa.tpp.service.cache;
+
+import org.springframework.boot.health.contributor.Health;
+import org.springframework.boot.health.contributor.ReactiveHealthIndicator;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+/**
+ * Reports the TPP cache warm-up to the readiness probe.
+ *
+ * <p>The cache is warmed up after the application has started, off the startup thread: until the
+ * warm-up ends this indicator is {@code OUT_OF_SERVICE}, so the readiness group keeps the pod out of
+ * the load balancer while liveness is unaffected. A warm-up that fails or times out still ends it:
+ * cache misses fall back to the database, so the pod can serve, only more slowly.</p>
+ */
+@Component
+public class TppCacheHealthIndicator implements ReactiveHealthIndicator {
+
+    private volatile boolean warm;
+    private volatile boolean populated;
+
+    /**
+     * Marks the warm-up as ended.
+     *
+     * @param populated whether the cache is known to be populated
+     */
+    public void warmUpEnded(boolean populated) {
+        this.populated = populated;
+        this.warm = true;
+    }
+
+    @Override
+    public Mono<Health> health() {
+        if (!warm) {
+            return Mono.just(Health.outOfService().withDetail("tppCache", "warming").build());
+        }
+        return Mono.just(Health.up().withDetail("tppCache", populated ? "warm" : "cold").build());
+    }
+}
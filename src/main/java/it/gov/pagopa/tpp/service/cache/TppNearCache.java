@@ -0,0 +1,240 @@
+package it.gov.pagopa.tpp.service.cache;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import it.gov.pagopa.common.utils.LocalCache;
+import it.gov.pagopa.tpp.model.Tpp;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.RTopicReactive;
+import org.redisson.api.RedissonReactiveClient;
+import org.redisson.client.codec.StringCodec;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-process near-cache sitting in front of the {@code emd:tpp:cache} Redis hash.
+ *
+ * <p>Entries live in a bounded {@link LocalCache} and are invalidated across pods through the
+ * {@value #INVALIDATION_TOPIC} Redis topic: every cache write made by a pod is published, and all
+ * the other pods drop their local copy. Steady-state reads therefore never touch the network.
+ * Redis pub/sub is at-most-once, so the TTL bounds staleness if an invalidation is ever lost.</p>
+ *
+ * <p>Entries read from Redis are stored with {@link #putIfNotInvalidated(String, Tpp, long)}: if an
+ * invalidation arrives while the read is in flight the (possibly stale) value is discarded.</p>
+ *
+ * <p>Every change is mirrored into the {@link TppRegistry}, which serves the list-filtering path, and
+ * drops the {@link TppNegativeCache}, {@link TppResponseCache} and {@link TppTemplateCache} entries of
+ * the TPP.</p>
+ *
+ * <p>Exported meters: {@code tpp.cache.near.hits}, {@code tpp.cache.near.misses},
+ * {@code tpp.cache.near.invalidations} and {@code tpp.cache.near.size}.</p>
+ */
+@Component
+@Slf4j
+public class TppNearCache {
+
+    public static final String INVALIDATION_TOPIC = "emd:tpp:cache:invalidation";
+
+    static final String ALL_KEYS = "*";
+    private static final String SEPARATOR = "|";
+
+    private final String instanceId = UUID.randomUUID().toString();
+    private final LocalCache<String, Tpp> cache;
+    private final TppRegistry registry;
+    private final TppNegativeCache negativeCache;
+    private final TppResponseCache responseCache;
+    private final TppTemplateCache templateCache;
+    private final RTopicReactive topic;
+    private final AtomicLong invalidationSequence = new AtomicLong();
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter invalidations;
+    private Disposable subscription;
+
+    public TppNearCache(RedissonReactiveClient redissonClient,
+                        TppRegistry registry,
+                        TppNegativeCache negativeCache,
+                        TppResponseCache responseCache,
+                        TppTemplateCache templateCache,
+                        MeterRegistry meterRegistry,
+                        @Value("${tpp.cache.near.max-size:1000}") int maxSize,
+                        @Value("${tpp.cache.near.ttl:PT1M}") Duration ttl) {
+        this.cache = new LocalCache<>(maxSize, ttl);
+        this.registry = registry;
+        this.negativeCache = negativeCache;
+        this.responseCache = responseCache;
+        this.templateCache = templateCache;
+        this.topic = redissonClient.getTopic(INVALIDATION_TOPIC, StringCodec.INSTANCE);
+        this.hits = Counter.builder("tpp.cache.near.hits").register(meterRegistry);
+        this.misses = Counter.builder("tpp.cache.near.misses").register(meterRegistry);
+        this.invalidations = Counter.builder("tpp.cache.near.invalidations").register(meterRegistry);
+        Gauge.builder("tpp.cache.near.size", cache, LocalCache::size).register(meterRegistry);
+    }
+
+    /**
+     * Subscribes to the invalidation topic. Redisson re-subscribes automatically after a reconnection.
+     */
+    @PostConstruct
+    void subscribe() {
+        subscription = topic.getMessages(String.class)
+                .subscribe(this::onInvalidation,
+                        e -> log.error("[TPP-NEAR-CACHE] Invalidation subscription failed: {}", e.getMessage()));
+    }
+
+    @PreDestroy
+    void unsubscribe() {
+        if (subscription != null) {
+            subscription.dispose();
+        }
+    }
+
+    /**
+     * Returns the locally cached TPP, or {@code null} on a miss.
+     *
+     * @param tppId the TPP identifier
+     * @return the cached {@link Tpp} or {@code null}
+     */
+    public Tpp get(String tppId) {
+        Tpp tpp = cache.get(tppId);
+        if (tpp == null) {
+            misses.increment();
+        } else {
+            hits.increment();
+        }
+        return tpp;
+    }
+
+    /**
+     * Captures the invalidation sequence before a Redis read, to be passed to
+     * {@link #putIfNotInvalidated(String, Tpp, long)} once the read completes.
+     *
+     * @return the current invalidation sequence
+     */
+    public long stamp() {
+        return invalidationSequence.get();
+    }
+
+    /**
+     * Stores a value read from Redis unless an invalidation happened since {@code stamp} was taken.
+     *
+     * @param tppId the TPP identifier
+     * @param tpp   the value read from Redis
+     * @param stamp the sequence returned by {@link #stamp()} before the read
+     */
+    public void putIfNotInvalidated(String tppId, Tpp tpp, long stamp) {
+        putAllIfNotInvalidated(Map.of(tppId, tpp), stamp);
+    }
+
+    /**
+     * Bulk variant of {@link #putIfNotInvalidated(String, Tpp, long)}, copying the registry once.
+     *
+     * @param tpps  the values read from Redis, keyed by tppId
+     * @param stamp the sequence returned by {@link #stamp()} before the read
+     */
+    public void putAllIfNotInvalidated(Map<String, Tpp> tpps, long stamp) {
+        if (tpps.isEmpty()) {
+            return;
+        }
+        tpps.forEach(cache::put);
+        registry.putAll(tpps.values());
+        // checked after the put: an invalidation racing with it either bumps the sequence first
+        // (caught here) or removes the entries afterwards
+        if (invalidationSequence.get() != stamp) {
+            tpps.keySet().forEach(this::invalidateLocal);
+        }
+    }
+
+    /**
+     * Stores the value just written to Redis by this pod and tells the other pods to drop theirs.
+     *
+     * @param tppId the TPP identifier
+     * @param tpp   the value written to Redis
+     * @return a Mono completing when the invalidation has been published
+     */
+    public Mono<Void> update(String tppId, Tpp tpp) {
+        invalidationSequence.incrementAndGet();
+        cache.put(tppId, tpp);
+        registry.put(tpp);
+        negativeCache.invalidate(tppId);
+        responseCache.invalidate(tppId);
+        templateCache.invalidate(tppId);
+        return publish(tppId);
+    }
+
+    /**
+     * Drops the local entry and tells the other pods to do the same.
+     *
+     * @param tppId the TPP identifier
+     * @return a Mono completing when the invalidation has been published
+     */
+    public Mono<Void> evict(String tppId) {
+        invalidationSequence.incrementAndGet();
+        invalidateLocal(tppId);
+        return publish(tppId);
+    }
+
+    /**
+     * Drops every local entry and tells the other pods to do the same (used after a bulk rebuild).
+     *
+     * @return a Mono completing when the invalidation has been published
+     */
+    public Mono<Void> evictAll() {
+        invalidationSequence.incrementAndGet();
+        invalidateAllLocal();
+        return publish(ALL_KEYS);
+    }
+
+    /**
+     * Applies an invalidation published by another pod; messages published by this pod are ignored.
+     *
+     * @param message the {@code <instanceId>|<tppId>} invalidation message
+     */
+    void onInvalidation(String message) {
+        int separator = message.indexOf(SEPARATOR);
+        if (separator < 0 || message.startsWith(instanceId + SEPARATOR)) {
+            return;
+        }
+        String key = message.substring(separator + 1);
+        invalidationSequence.incrementAndGet();
+        if (ALL_KEYS.equals(key)) {
+            invalidateAllLocal();
+        } else {
+            invalidateLocal(key);
+        }
+        invalidations.increment();
+        log.debug("[TPP-NEAR-CACHE] Invalidated key: {}", key);
+    }
+
+    private void invalidateLocal(String tppId) {
+        cache.invalidate(tppId);
+        registry.remove(tppId);
+        negativeCache.invalidate(tppId);
+        responseCache.invalidate(tppId);
+        templateCache.invalidate(tppId);
+    }
+
+    private void invalidateAllLocal() {
+        cache.invalidateAll();
+        registry.clear();
+        negativeCache.invalidateAll();
+        responseCache.invalidateAll();
+        templateCache.invalidateAll();
+    }
+
+    private Mono<Void> publish(String key) {
+        return topic.publish(instanceId + SEPARATOR + key)
+                .doOnError(e -> log.error("[TPP-NEAR-CACHE] Failed to publish invalidation for key {}: {}", key, e.getMessage()))
+                .onErrorResume(e -> Mono.empty())
+                .then();
+    }
+}
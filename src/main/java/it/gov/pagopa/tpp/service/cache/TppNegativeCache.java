@@ -0,0 +1,107 @@
+package it.gov.pagopa.tpp.service.cache;
+
+import it.gov.pagopa.common.utils.LocalCache;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Short-lived, in-process record of the TPPs that the database reported as not enabled for a recipient,
+ * either because they are not onboarded or because they are disabled and do not whitelist the recipient.
+ *
+ * <p>It lets {@code filterEnabledList} skip the database for TPP identifiers it has just failed to resolve.
+ * Entries are keyed by TPP and hashed recipientId, and are dropped by the {@link TppNearCache} on every
+ * local write and remote invalidation of their TPP, so onboarding, enabling or whitelisting a TPP is seen
+ * at once; the TTL bounds staleness if an invalidation is ever lost.</p>
+ *
+ * <p>Entries computed from a database read are stored with {@link #putAllIfNotInvalidated}: if an
+ * invalidation arrives while the read is in flight the results are discarded.</p>
+ */
+@Component
+public class TppNegativeCache {
+
+    private static final String SEPARATOR = "|";
+
+    private final LocalCache<String, Boolean> cache;
+    private final AtomicLong invalidationSequence = new AtomicLong();
+
+    public TppNegativeCache(@Value("${tpp.cache.negative.max-size:10000}") int maxSize,
+                            @Value("${tpp.cache.negative.ttl:PT30S}") Duration ttl) {
+        this.cache = new LocalCache<>(maxSize, ttl);
+    }
+
+    /**
+     * Returns the TPPs, among the given ones, that are not known to be not enabled for the recipient.
+     *
+     * @param tppIds            the TPP identifiers to check
+     * @param hashedRecipientId the hashed recipientId
+     * @return the TPP identifiers that must still be looked up, in the given order
+     */
+    public List<String> filterUnknown(Collection<String> tppIds, String hashedRecipientId) {
+        List<String> unknown = new ArrayList<>(tppIds.size());
+        for (String tppId : tppIds) {
+            if (cache.get(key(tppId, hashedRecipientId)) == null) {
+                unknown.add(tppId);
+            }
+        }
+        return unknown;
+    }
+
+    /**
+     * Captures the invalidation sequence before a database read, to be passed to
+     * {@link #putAllIfNotInvalidated(Collection, String, long)} once the read completes.
+     *
+     * @return the current invalidation sequence
+     */
+    public long stamp() {
+        return invalidationSequence.get();
+    }
+
+    /**
+     * Records the TPPs as not enabled for the recipient unless an invalidation happened since
+     * {@code stamp} was taken.
+     *
+     * @param tppIds            the TPP identifiers the database did not return
+     * @param hashedRecipientId the hashed recipientId
+     * @param stamp             the sequence returned by {@link #stamp()} before the read
+     */
+    public void putAllIfNotInvalidated(Collection<String> tppIds, String hashedRecipientId, long stamp) {
+        if (tppIds.isEmpty() || invalidationSequence.get() != stamp) {
+            return;
+        }
+        tppIds.forEach(tppId -> cache.put(key(tppId, hashedRecipientId), Boolean.TRUE));
+        // checked after the put: an invalidation racing with it either bumps the sequence first
+        // (caught here) or removes the entries afterwards
+        if (invalidationSequence.get() != stamp) {
+            tppIds.forEach(this::invalidate);
+        }
+    }
+
+    /**
+     * Drops every entry of a TPP, whatever the recipient.
+     *
+     * @param tppId the TPP identifier
+     */
+    public void invalidate(String tppId) {
+        invalidationSequence.incrementAndGet();
+        String prefix = tppId + SEPARATOR;
+        cache.invalidateIf(key -> key.startsWith(prefix));
+    }
+
+    /**
+     * Drops every entry.
+     */
+    public void invalidateAll() {
+        invalidationSequence.incrementAndGet();
+        cache.invalidateAll();
+    }
+
+    private static String key(String tppId, String hashedRecipientId) {
+        return tppId + SEPARATOR + hashedRecipientId;
+    }
+}
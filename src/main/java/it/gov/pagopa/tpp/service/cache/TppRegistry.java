@@ -0,0 +1,184 @@
+package it.gov.pagopa.tpp.service.cache;
+
+import it.gov.pagopa.tpp.dto.TppDTO;
+import it.gov.pagopa.tpp.dto.mapper.TppObjectToDTOMapper;
+import it.gov.pagopa.tpp.model.Tpp;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.function.LongSupplier;
+
+/**
+ * Immutable, copy-on-write snapshot of the TPPs held by the {@link TppNearCache}, used to serve
+ * {@code filterEnabledList} without mapping or allocating per cached TPP.
+ *
+ * <p>Every entry carries the {@link TppDTO} precomputed once at write time. Whitelists are not held
+ * here: disabled TPPs are handed back to the caller, which checks them against the
+ * {@link TppWhitelistCache}. Writers (rare) copy the whole map under a lock and publish it through a volatile
+ * reference; readers (hot path) only dereference it, so filtering is lock-free.</p>
+ *
+ * <p>The registry is kept in step with the near-cache, which applies every local write and remote
+ * invalidation to both. Entries older than the near-cache TTL are treated as missing, and the registry
+ * is bounded by the near-cache maximum size: a write that would exceed it drops the expired entries
+ * first, then the oldest ones.</p>
+ *
+ * <p>Lookups hand out shallow copies of the precomputed DTOs, so a caller setting a field of its result
+ * does not change what other callers see. Nested objects are shared and must not be modified.</p>
+ */
+@Component
+public class TppRegistry {
+
+    private final TppObjectToDTOMapper mapperToDTO;
+    private final int maxSize;
+    private final long ttlNanos;
+    private final LongSupplier nanoClock;
+    private volatile Map<String, Entry> entries = Map.of();
+
+    @Autowired
+    public TppRegistry(TppObjectToDTOMapper mapperToDTO,
+                       @Value("${tpp.cache.near.max-size:1000}") int maxSize,
+                       @Value("${tpp.cache.near.ttl:PT1M}") Duration ttl) {
+        this(mapperToDTO, maxSize, ttl, System::nanoTime);
+    }
+
+    /** Package-private constructor — used by unit tests to inject a controllable clock. */
+    TppRegistry(TppObjectToDTOMapper mapperToDTO, int maxSize, Duration ttl, LongSupplier nanoClock) {
+        this.mapperToDTO = mapperToDTO;
+        this.maxSize = maxSize;
+        this.ttlNanos = ttl.toNanos();
+        this.nanoClock = nanoClock;
+    }
+
+    /**
+     * Splits the requested TPPs between the enabled ones, the disabled ones (which are enabled only
+     * for the recipients in their whitelist) and those the registry does not hold.
+     *
+     * @param tppIds the requested TPP identifiers, duplicates allowed
+     * @return the enabled and disabled TPPs found in the registry and the identifiers it does not hold
+     */
+    public Lookup filterEnabled(Collection<String> tppIds) {
+        Map<String, Entry> current = entries;
+        long now = nanoClock.getAsLong();
+        List<TppDTO> enabled = new ArrayList<>(tppIds.size());
+        List<TppDTO> disabled = null;
+        List<String> missing = null;
+        for (String tppId : new LinkedHashSet<>(tppIds)) {
+            Entry entry = current.get(tppId);
+            if (entry == null || now - entry.expiresAt() >= 0) {
+                if (missing == null) {
+                    missing = new ArrayList<>();
+                }
+                missing.add(tppId);
+            } else if (entry.active()) {
+                enabled.add(entry.dto().toBuilder().build());
+            } else {
+                if (disabled == null) {
+                    disabled = new ArrayList<>();
+                }
+                disabled.add(entry.dto().toBuilder().build());
+            }
+        }
+        return new Lookup(enabled,
+                disabled == null ? List.of() : disabled,
+                missing == null ? List.of() : missing);
+    }
+
+    /**
+     * Adds or replaces the entry of a (decrypted) TPP.
+     *
+     * @param tpp the TPP entity
+     */
+    public synchronized void put(Tpp tpp) {
+        Map<String, Entry> next = new HashMap<>(entries);
+        next.put(tpp.getTppId(), toEntry(tpp));
+        entries = Map.copyOf(bounded(next));
+    }
+
+    /**
+     * Adds or replaces the entries of several (decrypted) TPPs with a single copy.
+     *
+     * @param tpps the TPP entities
+     */
+    public synchronized void putAll(Collection<Tpp> tpps) {
+        if (tpps.isEmpty()) {
+            return;
+        }
+        Map<String, Entry> next = new HashMap<>(entries);
+        for (Tpp tpp : tpps) {
+            next.put(tpp.getTppId(), toEntry(tpp));
+        }
+        entries = Map.copyOf(bounded(next));
+    }
+
+    /**
+     * Removes the entry of a TPP, if present.
+     *
+     * @param tppId the TPP identifier
+     */
+    public synchronized void remove(String tppId) {
+        if (!entries.containsKey(tppId)) {
+            return;
+        }
+        Map<String, Entry> next = new HashMap<>(entries);
+        next.remove(tppId);
+        entries = Map.copyOf(next);
+    }
+
+    /**
+     * Removes every entry.
+     */
+    public synchronized void clear() {
+        entries = Map.of();
+    }
+
+    /**
+     * @return the number of entries in the current snapshot, expired ones included
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Drops the expired entries, then the oldest ones, while the map exceeds the maximum size.
+     */
+    private Map<String, Entry> bounded(Map<String, Entry> next) {
+        if (next.size() <= maxSize) {
+            return next;
+        }
+        long now = nanoClock.getAsLong();
+        next.values().removeIf(entry -> now - entry.expiresAt() >= 0);
+        if (next.size() > maxSize) {
+            List<Map.Entry<String, Entry>> oldestFirst = new ArrayList<>(next.entrySet());
+            oldestFirst.sort(Comparator.comparingLong(entry -> entry.getValue().expiresAt() - now));
+            oldestFirst.subList(0, next.size() - maxSize).forEach(entry -> next.remove(entry.getKey()));
+        }
+        return next;
+    }
+
+    private Entry toEntry(Tpp tpp) {
+        return new Entry(
+                mapperToDTO.map(tpp),
+                Boolean.TRUE.equals(tpp.getState()),
+                nanoClock.getAsLong() + ttlNanos);
+    }
+
+    /**
+     * Outcome of {@link #filterEnabled(Collection)}.
+     *
+     * @param enabled  TPPs held by the registry whose state is enabled, in request order
+     * @param disabled TPPs held by the registry whose state is disabled, in request order
+     * @param missing  requested TPP identifiers the registry does not hold, in request order
+     */
+    public record Lookup(List<TppDTO> enabled, List<TppDTO> disabled, List<String> missing) {}
+
+    private record Entry(TppDTO dto, boolean active, long expiresAt) {}
+}
@@ -0,0 +1,186 @@
+package it.gov.pagopa.tpp.service.cache;
+
+import it.gov.pagopa.common.utils.LocalCache;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.codec.Encoder;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.EncoderHttpMessageWriter;
+import org.springframework.http.codec.ServerCodecConfigurer;
+import org.springframework.stereotype.Component;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * In-process cache of the JSON responses served for each TPP, already encoded as UTF-8 bytes.
+ *
+ * <p>Fragments are encoded once with the JSON encoder configured for WebFlux, so they are byte for byte
+ * what the controller would have written, and are kept per TPP and per {@link View}. Each fragment records
+ * the version of the TPP it was encoded from (its {@code lastUpdateDate}, plus the whitelist where the view
+ * carries it) and is only served for that same version, so a fragment encoded from a stale read is never
+ * returned for a newer TPP. Entries are also dropped by the {@link TppNearCache} on every local write and
+ * remote invalidation of their TPP, together with the {@link TppRegistry} ones.</p>
+ *
+ * <p>Every fragment carries a strong ETag, the hash of its bytes, computed once with the fragment: a
+ * conditional request for an unchanged TPP is answered without mapping, encoding or hashing anything.</p>
+ *
+ * <p>List responses are assembled with {@link #asArray(List)}, which joins the fragments with a single copy.</p>
+ */
+@Component
+public class TppResponseCache {
+
+    /**
+     * The cached representations of a TPP. {@code TPP_TEMPLATE_REF} is the {@code TPP} one without the
+     * message template, which is referenced by its identifier and hash only.
+     */
+    public enum View { TPP, TPP_TEMPLATE_REF, TPP_WITHOUT_TOKEN_SECTION, TPP_BY_ENTITY_ID, TOKEN_SECTION }
+
+    /**
+     * An encoded view.
+     *
+     * @param body the UTF-8 JSON bytes, not to be modified
+     * @param etag the strong ETag of the body, quoted
+     */
+    public record Json(byte[] body, String etag) {}
+
+    private static final byte[] EMPTY_ARRAY = {'[', ']'};
+
+    private final LocalCache<Key, Fragment> cache;
+    private final Encoder<Object> encoder;
+
+    @SuppressWarnings("unchecked")
+    public TppResponseCache(ServerCodecConfigurer codecConfigurer,
+                            @Value("${tpp.cache.response.max-size:3000}") int maxSize,
+                            @Value("${tpp.cache.response.ttl:PT10M}") Duration ttl) {
+        this.cache = new LocalCache<>(maxSize, ttl);
+        this.encoder = (Encoder<Object>) codecConfigurer.getWriters().stream()
+                .filter(EncoderHttpMessageWriter.class::isInstance)
+                .map(writer -> ((EncoderHttpMessageWriter<?>) writer).getEncoder())
+                .filter(candidate -> candidate.canEncode(ResolvableType.forClass(Object.class), MediaType.APPLICATION_JSON))
+                .findFirst()
+                .orElseThrow(() -> new IllegalStateException("No JSON encoder configured"));
+    }
+
+    /**
+     * Returns the JSON of a TPP view, encoding and caching it unless a fragment of the same version is cached.
+     *
+     * @param view    the view to return
+     * @param tppId   the TPP identifier
+     * @param version the version of the TPP the view is built from, {@code null} if unknown (never cached)
+     * @param dto     builds the DTO to encode, only called on a miss
+     * @return the encoded view
+     */
+    public Json encode(View view, String tppId, Object version, Supplier<?> dto) {
+        if (version == null) {
+            return toJson(dto.get());
+        }
+        Key key = new Key(view, tppId);
+        Fragment cached = cache.get(key);
+        if (cached != null && cached.version().equals(version)) {
+            return cached.json();
+        }
+        Json json = toJson(dto.get());
+        cache.put(key, new Fragment(version, json));
+        return json;
+    }
+
+    /**
+     * Drops every view of a TPP.
+     *
+     * @param tppId the TPP identifier
+     */
+    public void invalidate(String tppId) {
+        for (View view : View.values()) {
+            cache.invalidate(new Key(view, tppId));
+        }
+    }
+
+    /**
+     * Drops every entry.
+     */
+    public void invalidateAll() {
+        cache.invalidateAll();
+    }
+
+    /**
+     * Joins JSON fragments into a JSON array.
+     *
+     * @param fragments the encoded elements
+     * @return the UTF-8 JSON bytes of the array
+     */
+    public static byte[] asArray(List<byte[]> fragments) {
+        if (fragments.isEmpty()) {
+            return EMPTY_ARRAY.clone();
+        }
+        int length = fragments.size() + 1;
+        for (byte[] fragment : fragments) {
+            length += fragment.length;
+        }
+        byte[] json = new byte[length];
+        json[0] = '[';
+        int position = 1;
+        for (byte[] fragment : fragments) {
+            System.arraycopy(fragment, 0, json, position, fragment.length);
+            position += fragment.length;
+            json[position++] = ',';
+        }
+        json[length - 1] = ']';
+        return json;
+    }
+
+    /**
+     * Builds the version of a TPP view from the values it depends on.
+     *
+     * @param lastUpdateDate the last update date of the TPP, {@code null} if unknown
+     * @param others         the other values the view depends on
+     * @return the version, or {@code null} if the last update date is unknown
+     */
+    public static Object versionOf(Object lastUpdateDate, Object... others) {
+        if (lastUpdateDate == null) {
+            return null;
+        }
+        if (others.length == 0) {
+            return lastUpdateDate;
+        }
+        List<Object> version = new ArrayList<>(others.length + 1);
+        version.add(lastUpdateDate);
+        version.addAll(Arrays.asList(others));
+        return version;
+    }
+
+    private Json toJson(Object dto) {
+        DataBuffer buffer = encoder.encodeValue(dto, DefaultDataBufferFactory.sharedInstance,
+                ResolvableType.forInstance(dto), MediaType.APPLICATION_JSON, Map.of());
+        try {
+            byte[] body = new byte[buffer.readableByteCount()];
+            buffer.read(body);
+            return new Json(body, etagOf(body));
+        } finally {
+            DataBufferUtils.release(buffer);
+        }
+    }
+
+    private static String etagOf(byte[] body) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(body);
+            return "\"" + Base64.getUrlEncoder().withoutPadding().encodeToString(hash) + "\"";
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    private record Key(View view, String tppId) {}
+
+    private record Fragment(Object version, Json json) {}
+}
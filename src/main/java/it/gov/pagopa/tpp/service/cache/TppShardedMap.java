@@ -0,0 +1,217 @@
+package it.gov.pagopa.tpp.service.cache;
+
+import it.gov.pagopa.common.configuration.RedisConfig;
+import it.gov.pagopa.tpp.model.Tpp;
+import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.RMapReactive;
+import org.redisson.api.RedissonReactiveClient;
+import org.redisson.client.codec.Codec;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The Redis hashes holding the cached TPP entries, split into shards selected by a hash of the tppId.
+ *
+ * <p>With a single shard the layout is the historical one: the {@value RedisConfig#TPP_CACHE_MAP_KEY} hash
+ * and its {@code :staging} twin. With several shards, shard {@code i} lives in
+ * {@code emd:tpp:cache:{i}} and its staging hash in {@code emd:tpp:cache:{i}:staging}: the hash tag keeps
+ * each pair in the same cluster slot, so that {@code RENAME} is allowed, while the shards themselves spread
+ * over the cluster nodes. Reads and writes of several entries are grouped by shard, and the shards are
+ * queried in parallel.</p>
+ *
+ * <p>An entry that cannot be decoded ({@link TppBinaryCodec.UnreadableEntryException}) is read as a miss and
+ * evicted, so that callers fall back to the database and cache a fresh value. A multi-entry read failing on
+ * such an entry is retried entry by entry for the shard involved.</p>
+ *
+ * <p>Changing the shard count changes the layout: the new hashes start empty and are populated on startup,
+ * and the old ones can be dropped once no pod reads them any more.</p>
+ */
+@Slf4j
+public class TppShardedMap {
+
+    private static final String STAGING_SUFFIX = ":staging";
+
+    private final List<RMapReactive<String, Tpp>> shards;
+    private final List<RMapReactive<String, Tpp>> stagings;
+
+    /**
+     * @param shards   the live hashes, indexed by shard
+     * @param stagings the staging hash of each shard, renamed over the live one by {@link #replaceAll}
+     */
+    public TppShardedMap(List<RMapReactive<String, Tpp>> shards, List<RMapReactive<String, Tpp>> stagings) {
+        if (shards.isEmpty() || shards.size() != stagings.size()) {
+            throw new IllegalArgumentException("Every shard needs its own staging hash");
+        }
+        this.shards = List.copyOf(shards);
+        this.stagings = List.copyOf(stagings);
+    }
+
+    /**
+     * Builds the shards of the TPP cache.
+     *
+     * @param redissonClient the Redisson client
+     * @param codec          the codec of the cached entries
+     * @param shardCount     the number of shards, {@code 1} for the historical single-hash layout
+     * @return the sharded map
+     */
+    public static TppShardedMap create(RedissonReactiveClient redissonClient, Codec codec, int shardCount) {
+        List<RMapReactive<String, Tpp>> shards = new ArrayList<>();
+        List<RMapReactive<String, Tpp>> stagings = new ArrayList<>();
+        for (int shard = 0; shard < Math.max(shardCount, 1); shard++) {
+            String key = shardCount <= 1 ? RedisConfig.TPP_CACHE_MAP_KEY : RedisConfig.TPP_CACHE_MAP_KEY + ":{" + shard + "}";
+            shards.add(redissonClient.getMap(key, codec));
+            stagings.add(redissonClient.getMap(key + STAGING_SUFFIX, codec));
+        }
+        return new TppShardedMap(shards, stagings);
+    }
+
+    public int shardCount() {
+        return shards.size();
+    }
+
+    public Mono<Tpp> get(String tppId) {
+        RMapReactive<String, Tpp> shard = shardOf(tppId);
+        return shard.get(tppId)
+                .onErrorResume(TppBinaryCodec.UnreadableEntryException::isCauseOf, e -> evictUnreadable(shard, tppId, e));
+    }
+
+    /**
+     * Reads several entries, with one {@code HMGET} per shard involved.
+     *
+     * @param tppIds the TPP identifiers
+     * @return the entries found, keyed by tppId
+     */
+    public Mono<Map<String, Tpp>> getAll(Set<String> tppIds) {
+        Map<Integer, Set<String>> byShard = groupByShard(tppIds);
+        if (byShard.size() == 1) {
+            Map.Entry<Integer, Set<String>> only = byShard.entrySet().iterator().next();
+            return getAll(only.getKey(), only.getValue()).defaultIfEmpty(Map.of());
+        }
+        return Flux.fromIterable(byShard.entrySet())
+                .flatMap(entry -> getAll(entry.getKey(), entry.getValue()))
+                .collect(HashMap<String, Tpp>::new, Map::putAll)
+                .map(found -> (Map<String, Tpp>) found);
+    }
+
+    /**
+     * Reads several entries of a shard with one {@code HMGET}, or one {@code HGET} per entry if an entry
+     * cannot be decoded.
+     */
+    private Mono<Map<String, Tpp>> getAll(int index, Set<String> tppIds) {
+        RMapReactive<String, Tpp> shard = shards.get(index);
+        return shard.getAll(tppIds)
+                .onErrorResume(TppBinaryCodec.UnreadableEntryException::isCauseOf, e -> Flux.fromIterable(tppIds)
+                        .flatMap(tppId -> shard.get(tppId)
+                                .onErrorResume(TppBinaryCodec.UnreadableEntryException::isCauseOf,
+                                        error -> evictUnreadable(shard, tppId, error))
+                                .map(tpp -> Map.entry(tppId, tpp)))
+                        .collectMap(Map.Entry::getKey, Map.Entry::getValue));
+    }
+
+    public Mono<Void> put(String tppId, Tpp tpp) {
+        return shardOf(tppId).put(tppId, tpp).then();
+    }
+
+    public Mono<Void> remove(String tppId) {
+        return shardOf(tppId).remove(tppId).then();
+    }
+
+    /**
+     * Removes several entries, with one {@code HDEL} per shard involved.
+     *
+     * @param tppIds the TPP identifiers
+     * @return a Mono completing once the entries are removed
+     */
+    public Mono<Void> fastRemove(Collection<String> tppIds) {
+        return Flux.fromIterable(groupByShard(tppIds).entrySet())
+                .flatMap(entry -> shards.get(entry.getKey()).fastRemove(entry.getValue().toArray(new String[0])))
+                .then();
+    }
+
+    /**
+     * @return the tppIds cached in every shard
+     */
+    public Mono<Set<String>> readAllKeySet() {
+        return Flux.fromIterable(shards)
+                .flatMap(RMapReactive::readAllKeySet)
+                .collect(HashSet<String>::new, Set::addAll)
+                .map(keys -> (Set<String>) keys);
+    }
+
+    /**
+     * @return whether any shard exists, that is whether the cache has been populated
+     */
+    public Mono<Boolean> isExists() {
+        return Flux.fromIterable(shards)
+                .flatMap(RMapReactive::isExists)
+                .any(Boolean.TRUE::equals);
+    }
+
+    public Mono<Void> delete() {
+        return Flux.fromIterable(shards)
+                .flatMap(RMapReactive::delete)
+                .then();
+    }
+
+    /**
+     * Replaces the content of every shard: the entries of each shard are written to its staging hash in
+     * chunks, then the staging hash is renamed over the live one. Shards left without entries are dropped.
+     *
+     * @param entries   the new content, keyed by tppId
+     * @param chunkSize the maximum number of entries written by a single command
+     * @return a Mono completing once every shard has been swapped
+     */
+    public Mono<Void> replaceAll(Map<String, Tpp> entries, int chunkSize) {
+        List<Map<String, Tpp>> byShard = new ArrayList<>();
+        shards.forEach(shard -> byShard.add(new HashMap<>()));
+        entries.forEach((tppId, tpp) -> byShard.get(indexOf(tppId)).put(tppId, tpp));
+        return Flux.range(0, shards.size())
+                .concatMap(shard -> swap(shard, byShard.get(shard), chunkSize))
+                .then();
+    }
+
+    private Mono<Void> swap(int shard, Map<String, Tpp> entries, int chunkSize) {
+        RMapReactive<String, Tpp> live = shards.get(shard);
+        if (entries.isEmpty()) {
+            return live.delete().then();
+        }
+        RMapReactive<String, Tpp> staging = stagings.get(shard);
+        return staging.delete()
+                .thenMany(Flux.fromIterable(entries.entrySet()).buffer(chunkSize))
+                .concatMap(chunk -> {
+                    Map<String, Tpp> part = new HashMap<>();
+                    chunk.forEach(entry -> part.put(entry.getKey(), entry.getValue()));
+                    return staging.putAll(part);
+                })
+                .then(Mono.defer(() -> staging.rename(live.getName())));
+    }
+
+    private static Mono<Tpp> evictUnreadable(RMapReactive<String, Tpp> shard, String tppId, Throwable e) {
+        log.warn("[TPP-MAP][DECODE] Evicting unreadable cache entry of TPP ID: {}: {}", tppId, e.getMessage());
+        return shard.fastRemove(tppId)
+                .onErrorResume(removeError -> Mono.just(0L))
+                .then(Mono.empty());
+    }
+
+    private RMapReactive<String, Tpp> shardOf(String tppId) {
+        return shards.get(indexOf(tppId));
+    }
+
+    private int indexOf(String tppId) {
+        return shards.size() == 1 ? 0 : Math.floorMod(tppId.hashCode(), shards.size());
+    }
+
+    private Map<Integer, Set<String>> groupByShard(Collection<String> tppIds) {
+        Map<Integer, Set<String>> byShard = new HashMap<>();
+        tppIds.forEach(tppId -> byShard.computeIfAbsent(indexOf(tppId), shard -> new HashSet<>()).add(tppId));
+        return byShard;
+    }
+}
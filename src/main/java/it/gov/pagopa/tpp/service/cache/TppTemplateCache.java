@@ -0,0 +1,103 @@
+package it.gov.pagopa.tpp.service.cache;
+
+import freemarker.core.TemplateClassResolver;
+import freemarker.template.Configuration;
+import freemarker.template.Template;
+import freemarker.template.TemplateExceptionHandler;
+import it.gov.pagopa.common.utils.LocalCache;
+import it.gov.pagopa.tpp.dto.mapper.TppObjectToDTOMapper.TemplateRef;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.time.Duration;
+
+/**
+ * In-process cache of the parsed FreeMarker message templates, keyed by template identifier and hash.
+ *
+ * <p>A template is parsed on its first use and reused until it changes: a changed template has a new
+ * hash, so a stale entry is never served. Entries of a TPP are dropped by the {@link TppNearCache} on
+ * every local write and remote invalidation of the TPP, so they do not linger until the TTL.</p>
+ *
+ * <p>Templates come from the TPPs' configuration, so they are parsed with the {@code new} and {@code ?api}
+ * built-ins disabled.</p>
+ */
+@Component
+@Slf4j
+public class TppTemplateCache {
+
+    private final LocalCache<Key, Template> cache;
+    private final Parser parser;
+
+    /**
+     * Parses a message template.
+     */
+    @FunctionalInterface
+    interface Parser {
+        Template parse(TemplateRef templateRef) throws IOException;
+    }
+
+    @Autowired
+    public TppTemplateCache(@Value("${tpp.cache.template.max-size:1000}") int maxSize,
+                            @Value("${tpp.cache.template.ttl:PT1H}") Duration ttl) {
+        this(maxSize, ttl, parser(configuration()));
+    }
+
+    /** Package-private constructor — used by unit tests to observe the parsing. */
+    TppTemplateCache(int maxSize, Duration ttl, Parser parser) {
+        this.cache = new LocalCache<>(maxSize, ttl);
+        this.parser = parser;
+    }
+
+    /**
+     * Returns the parsed template, parsing and caching it on a miss.
+     *
+     * @param templateRef the reference to the template
+     * @return the parsed template
+     * @throws IOException if the template is not valid
+     */
+    public Template get(TemplateRef templateRef) throws IOException {
+        Key key = new Key(templateRef.id(), templateRef.hash());
+        Template template = cache.get(key);
+        if (template == null) {
+            log.info("[TPP-TEMPLATE-CACHE] Parsing message template: {} with hash: {}", templateRef.id(), templateRef.hash());
+            template = parser.parse(templateRef);
+            cache.put(key, template);
+        }
+        return template;
+    }
+
+    /**
+     * Drops the templates of a TPP.
+     *
+     * @param tppId the TPP identifier
+     */
+    public void invalidate(String tppId) {
+        cache.invalidateIf(key -> key.id().equals(tppId));
+    }
+
+    /**
+     * Drops every template.
+     */
+    public void invalidateAll() {
+        cache.invalidateAll();
+    }
+
+    private static Configuration configuration() {
+        Configuration configuration = new Configuration(Configuration.VERSION_2_3_32);
+        configuration.setDefaultEncoding("UTF-8");
+        configuration.setTemplateExceptionHandler(TemplateExceptionHandler.RETHROW_HANDLER);
+        configuration.setLogTemplateExceptions(false);
+        configuration.setNewBuiltinClassResolver(TemplateClassResolver.ALLOWS_NOTHING_RESOLVER);
+        configuration.setAPIBuiltinEnabled(false);
+        return configuration;
+    }
+
+    private static Parser parser(Configuration configuration) {
+        return templateRef -> new Template(templateRef.id(), templateRef.template(), configuration);
+    }
+
+    private record Key(String id, String hash) {}
+}
@@ -0,0 +1,216 @@
+package it.gov.pagopa.tpp.service.cache;
+
+import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.BatchOptions;
+import org.redisson.api.RBatchReactive;
+import org.redisson.api.RSetReactive;
+import org.redisson.api.RedissonReactiveClient;
+import org.redisson.client.codec.StringCodec;
+import it.gov.pagopa.tpp.model.TppWhitelistEntry;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Redis-backed store of the TPP whitelists, one set per TPP under {@value #KEY_PREFIX}{@code <tppId>}.
+ *
+ * <p>Whitelists are kept out of the {@code emd:tpp:cache} hash so that the cached TPP entries only hold
+ * metadata and their size does not grow with the number of whitelisted recipients. Membership is checked
+ * with {@code SISMEMBER}, pipelined in a single batch when several TPPs are involved.</p>
+ */
+@Component
+@Slf4j
+public class TppWhitelistCache {
+
+    public static final String KEY_PREFIX = "emd:tpp:whitelist:";
+    private static final int REBUILD_BATCH_SIZE = 1000;
+
+    private final RedissonReactiveClient redissonClient;
+
+    public TppWhitelistCache(RedissonReactiveClient redissonClient) {
+        this.redissonClient = redissonClient;
+    }
+
+    /**
+     * Replaces the whitelist of a TPP atomically ({@code DEL} + {@code SADD} in a single transaction).
+     *
+     * @param tppId        the TPP identifier
+     * @param recipientIds the whitelisted recipients, {@code null} or empty to drop the whitelist
+     * @return a Mono&lt;Void&gt; that completes when the set has been written
+     */
+    public Mono<Void> replace(String tppId, Collection<String> recipientIds) {
+        RBatchReactive batch = redissonClient.createBatch(
+                BatchOptions.defaults().executionMode(BatchOptions.ExecutionMode.IN_MEMORY_ATOMIC));
+        addReplace(batch, tppId, recipientIds);
+        return batch.execute().then();
+    }
+
+    /**
+     * Rebuilds the whitelist sets from the persisted entries, written in pipelined batches of
+     * {@value #REBUILD_BATCH_SIZE} entries. The set of each TPP is dropped the first time one of its entries
+     * is seen, so the entries of a TPP do not need to be contiguous.
+     *
+     * @param entries the persisted whitelist entries
+     * @return a Mono&lt;Void&gt; that completes when every set has been rebuilt
+     */
+    public Mono<Void> rebuild(Flux<TppWhitelistEntry> entries) {
+        Set<String> cleared = new HashSet<>();
+        return entries
+                .buffer(REBUILD_BATCH_SIZE)
+                .concatMap(chunk -> {
+                    RBatchReactive batch = redissonClient.createBatch(BatchOptions.defaults());
+                    for (TppWhitelistEntry entry : chunk) {
+                        RSetReactive<String> set = batch.getSet(key(entry.getTppId()), StringCodec.INSTANCE);
+                        if (cleared.add(entry.getTppId())) {
+                            set.delete();
+                        }
+                        set.add(entry.getRecipientId());
+                    }
+                    return batch.execute();
+                })
+                .then(Mono.fromRunnable(() -> {
+                    if (!cleared.isEmpty()) {
+                        log.info("[TPP-WHITELIST][REBUILD] Rebuilt whitelist of {} TPPs", cleared.size());
+                    }
+                }));
+    }
+
+    /**
+     * Adds a recipient to the whitelist of a TPP ({@code SADD}).
+     *
+     * @param tppId       the TPP identifier
+     * @param recipientId the recipient to add
+     * @return a Mono&lt;Void&gt; that completes when the recipient has been added
+     */
+    public Mono<Void> add(String tppId, String recipientId) {
+        return set(tppId).add(recipientId).then();
+    }
+
+    /**
+     * Removes a recipient from the whitelist of a TPP ({@code SREM}).
+     *
+     * @param tppId       the TPP identifier
+     * @param recipientId the recipient to remove
+     * @return a Mono&lt;Void&gt; that completes when the recipient has been removed
+     */
+    public Mono<Void> remove(String tppId, String recipientId) {
+        return set(tppId).remove(recipientId).then();
+    }
+
+    /**
+     * Deletes the whitelists of the given TPPs.
+     *
+     * @param tppIds the TPP identifiers
+     * @return a Mono&lt;Void&gt; that completes when the sets have been deleted
+     */
+    public Mono<Void> deleteAll(Collection<String> tppIds) {
+        if (tppIds.isEmpty()) {
+            return Mono.empty();
+        }
+        return redissonClient.getKeys()
+                .delete(tppIds.stream().map(TppWhitelistCache::key).toArray(String[]::new))
+                .then();
+    }
+
+    /**
+     * Reads the whole whitelist of a TPP ({@code SMEMBERS}).
+     *
+     * @param tppId the TPP identifier
+     * @return a Mono containing the whitelisted recipients, empty list if the TPP has none
+     */
+    public Mono<List<String>> members(String tppId) {
+        return set(tppId).readAll()
+                .<List<String>>map(ArrayList::new)
+                .defaultIfEmpty(List.of());
+    }
+
+    /**
+     * Returns the TPPs, among the given ones, whose whitelist contains the recipient. A single TPP costs one
+     * {@code SISMEMBER}; several TPPs are checked in one pipelined batch.
+     *
+     * @param tppIds      the TPP identifiers to check
+     * @param recipientId the recipient to look for
+     * @return a Mono containing the identifiers of the TPPs that whitelist the recipient
+     */
+    public Mono<Set<String>> whitelisting(Collection<String> tppIds, String recipientId) {
+        if (tppIds.isEmpty() || recipientId == null) {
+            return Mono.just(Set.of());
+        }
+        if (tppIds.size() == 1) {
+            String tppId = tppIds.iterator().next();
+            return set(tppId).contains(recipientId)
+                    .map(found -> Boolean.TRUE.equals(found) ? Set.of(tppId) : Set.<String>of());
+        }
+        List<String> ids = new ArrayList<>(tppIds);
+        RBatchReactive batch = redissonClient.createBatch(BatchOptions.defaults());
+        for (String tppId : ids) {
+            batch.<String>getSet(key(tppId), StringCodec.INSTANCE).contains(recipientId);
+        }
+        return batch.execute().map(result -> {
+            List<?> responses = result.getResponses();
+            Set<String> whitelisting = new HashSet<>();
+            for (int i = 0; i < ids.size(); i++) {
+                if (Boolean.TRUE.equals(responses.get(i))) {
+                    whitelisting.add(ids.get(i));
+                }
+            }
+            return whitelisting;
+        });
+    }
+
+    /**
+     * Returns the TPPs, among the given ones, that have no whitelist set. A TPP with an empty whitelist has
+     * none either, so callers can only tell a lost set apart by checking the persisted entries. A single TPP
+     * costs one {@code EXISTS}; several TPPs are checked in one pipelined batch.
+     *
+     * @param tppIds the TPP identifiers to check
+     * @return a Mono containing the identifiers of the TPPs without a whitelist set
+     */
+    public Mono<Set<String>> missing(Collection<String> tppIds) {
+        if (tppIds.isEmpty()) {
+            return Mono.just(Set.of());
+        }
+        if (tppIds.size() == 1) {
+            String tppId = tppIds.iterator().next();
+            return set(tppId).isExists()
+                    .map(exists -> Boolean.TRUE.equals(exists) ? Set.<String>of() : Set.of(tppId));
+        }
+        List<String> ids = new ArrayList<>(tppIds);
+        RBatchReactive batch = redissonClient.createBatch(BatchOptions.defaults());
+        for (String tppId : ids) {
+            batch.<String>getSet(key(tppId), StringCodec.INSTANCE).isExists();
+        }
+        return batch.execute().map(result -> {
+            List<?> responses = result.getResponses();
+            Set<String> missing = new HashSet<>();
+            for (int i = 0; i < ids.size(); i++) {
+                if (!Boolean.TRUE.equals(responses.get(i))) {
+                    missing.add(ids.get(i));
+                }
+            }
+            return missing;
+        });
+    }
+
+    static String key(String tppId) {
+        return KEY_PREFIX + tppId;
+    }
+
+    private RSetReactive<String> set(String tppId) {
+        return redissonClient.getSet(key(tppId), StringCodec.INSTANCE);
+    }
+
+    private static void addReplace(RBatchReactive batch, String tppId, Collection<String> recipientIds) {
+        RSetReactive<String> set = batch.getSet(key(tppId), StringCodec.INSTANCE);
+        set.delete();
+        if (recipientIds != null && !recipientIds.isEmpty()) {
+            set.addAll(recipientIds);
+        }
+    }
+}
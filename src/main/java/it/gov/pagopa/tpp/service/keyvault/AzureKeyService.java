@@ -1,5 +1,8 @@
 package it.gov.pagopa.tpp.service.keyvault;
 
+import com.azure.core.exception.HttpResponseException;
+import com.azure.core.http.HttpHeaderName;
+import com.azure.core.http.HttpResponse;
 import com.azure.identity.DefaultAzureCredential;
 import com.azure.identity.DefaultAzureCredentialBuilder;
 import com.azure.security.keyvault.keys.KeyAsyncClient;
@@ -7,45 +10,114 @@ import com.azure.security.keyvault.keys.KeyClientBuilder;
 import com.azure.security.keyvault.keys.cryptography.CryptographyAsyncClient;
 import com.azure.security.keyvault.keys.cryptography.CryptographyClientBuilder;
 import com.azure.security.keyvault.keys.cryptography.models.EncryptionAlgorithm;
+import com.azure.security.keyvault.keys.cryptography.models.KeyWrapAlgorithm;
+import com.azure.security.keyvault.keys.cryptography.models.UnwrapResult;
 import com.azure.security.keyvault.keys.models.CreateRsaKeyOptions;
 import com.azure.security.keyvault.keys.models.KeyVaultKey;
+import it.gov.pagopa.common.utils.LocalCache;
+import it.gov.pagopa.common.web.exception.EmdEncryptionException;
+import it.gov.pagopa.common.web.exception.EmdThrottledException;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Service;
 import reactor.core.publisher.Mono;
 
+import java.security.GeneralSecurityException;
+import java.security.PublicKey;
+import java.time.Duration;
 import java.util.Base64;
 
 /**
  * Service class for managing cryptographic operations using Azure Key Vault.
+ * It is the default {@link KeyProvider}, active unless {@code crypto.provider} selects another one.
+ * <p>
+ * Key metadata (by tppId) and cryptography clients (by key identifier) are kept in bounded,
+ * TTL-based caches, so that repeated decrypts for the same TPP neither fetch the key again
+ * nor build a new client. A newly created key replaces the cached one. A key rotated outside this
+ * service is noticed when a data key wrapped by another version is unwrapped, which drops the cached
+ * key, and otherwise at the latest when the cached key expires ({@code crypto.azure.key-cache.ttl}):
+ * until then new data keys are still wrapped with the previous version, which stays unwrappable.
+ * Rotated keys can also be dropped explicitly with {@link #invalidateKey(String)}.
+ * <p>
+ * Wrapping only needs the public half of the TPP's RSA key, so it is done in-process with
+ * {@link #wrapKeyLocally(byte[], KeyVaultKey)}; only unwrapping goes to Key Vault. Unwrapping uses the
+ * exact key version that wrapped the data key, so data keys wrapped before a rotation stay readable.
+ * <p>
+ * Requests throttled by Key Vault ({@code 429}), once the SDK has exhausted its own retries, fail with an
+ * {@link EmdThrottledException} carrying the {@code Retry-After} back-off.
  */
 @Service
-public class AzureKeyService {
+@ConditionalOnProperty(name = "crypto.provider", havingValue = "azure", matchIfMissing = true)
+public class AzureKeyService implements KeyProvider {
 
     private static final DefaultAzureCredential DEFAULT_AZURE_CREDENTIAL = new DefaultAzureCredentialBuilder().build();
+    private static final int TOO_MANY_REQUESTS = 429;
+    private static final Duration DEFAULT_RETRY_AFTER = Duration.ofSeconds(1);
 
     private KeyAsyncClient keyClient;
+    private final String keyVaultUrl;
+    private final LocalCache<String, KeyVaultKey> keyCache;
+    private final LocalCache<String, CryptographyAsyncClient> cryptographyClientCache;
+    private final LocalCache<String, PublicKey> publicKeyCache;
 
     /**
      * Initializes the KeyAsyncClient using the provided Key Vault URL and
      * DefaultAzureCredential for authentication.
      *
      * @param keyVaultUrl the URL of the Azure Key Vault instance
+     * @param cacheMaxSize the maximum number of keys, and of cryptography clients, kept in memory
+     * @param cacheTtl how long a cached key or cryptography client is reused
      */
-    public AzureKeyService(@Value("${crypto.azure.key-vault.url}") String keyVaultUrl){
+    public AzureKeyService(@Value("${crypto.azure.key-vault.url}") String keyVaultUrl,
+                           @Value("${crypto.azure.key-cache.max-size:1000}") int cacheMaxSize,
+                           @Value("${crypto.azure.key-cache.ttl:PT1H}") Duration cacheTtl){
         this.keyClient= new KeyClientBuilder()
                 .vaultUrl(keyVaultUrl)
                 .credential(DEFAULT_AZURE_CREDENTIAL)
                 .buildAsyncClient();
+        this.keyVaultUrl = keyVaultUrl.endsWith("/") ? keyVaultUrl.substring(0, keyVaultUrl.length() - 1) : keyVaultUrl;
+        this.keyCache = new LocalCache<>(cacheMaxSize, cacheTtl);
+        this.cryptographyClientCache = new LocalCache<>(cacheMaxSize, cacheTtl);
+        this.publicKeyCache = new LocalCache<>(cacheMaxSize, cacheTtl);
     }
 
     /**
-     * Retrieves a key from Azure Key Vault by its identifier.
+     * Retrieves a key from Azure Key Vault by its identifier, serving it from the key cache when possible.
      *
      * @param tppId the identifier of the key to retrieve
      * @return a {@link Mono} containing the KeyVaultKey if found
      */
     public Mono<KeyVaultKey> getKey(String tppId){
-        return keyClient.getKey(tppId);
+        return Mono.defer(() -> {
+            KeyVaultKey cachedKey = keyCache.get(tppId);
+            if (cachedKey != null) {
+                return Mono.just(cachedKey);
+            }
+            return keyClient.getKey(tppId)
+                    .doOnNext(key -> keyCache.put(tppId, key))
+                    .onErrorMap(AzureKeyService::mapThrottling);
+        });
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isCurrentKeyCached(String tppId) {
+        return keyCache.get(tppId) != null;
+    }
+
+    /**
+     * Drops the cached key of a TPP and the cryptography clients built for any of its versions.
+     * To be called when the key is rotated outside this service.
+     *
+     * @param tppId the identifier of the key to drop
+     */
+    public void invalidateKey(String tppId) {
+        String keyPath = "/keys/" + tppId + "/";
+        keyCache.invalidate(tppId);
+        cryptographyClientCache.invalidateIf(keyId -> keyId.contains(keyPath));
+        publicKeyCache.invalidateIf(keyId -> keyId.contains(keyPath));
     }
 
     /**
@@ -58,7 +130,70 @@ public class AzureKeyService {
         return keyClient
                 .createRsaKey(new CreateRsaKeyOptions(tppId)
                                   .setKeySize(2048)
-        );
+                )
+                .doOnNext(key -> {
+                    invalidateKey(tppId);
+                    keyCache.put(tppId, key);
+                })
+                .onErrorMap(AzureKeyService::mapThrottling);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Mono<Void> createKey(String tppId) {
+        return createRsaKey(tppId).then();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The key is served from the key cache, so right after {@link #createKey(String)} no
+     * Key Vault call is made: the data key is wrapped locally with the public key.
+     */
+    @Override
+    public Mono<WrappedKey> wrapKey(String tppId, byte[] dataKey) {
+        return getKey(tppId).flatMap(key -> wrapKeyLocally(dataKey, key)
+                .map(wrappedKey -> new WrappedKey(versionOf(key.getId()), wrappedKey)));
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * With a key version the cryptography client is built for that version directly, without reading the key.
+     * A version other than the cached one drops the cached key, which may predate a rotation.
+     */
+    @Override
+    public Mono<byte[]> unwrapKey(String tppId, String keyVersion, String wrappedKey) {
+        if (keyVersion == null) {
+            return getKey(tppId).flatMap(key -> unwrapKey(wrappedKey, buildCryptographyClient(key)));
+        }
+        KeyVaultKey cachedKey = keyCache.get(tppId);
+        if (cachedKey != null && !keyVersion.equals(versionOf(cachedKey.getId()))) {
+            // the key may have been rotated since it was cached: the next wrap reads the current version
+            keyCache.invalidate(tppId);
+        }
+        return Mono.defer(() -> unwrapKey(wrappedKey, buildCryptographyClient(keyId(tppId, keyVersion))));
+    }
+
+    /**
+     * Builds the identifier of a given version of a TPP's key.
+     *
+     * @param tppId the TPP identifier, used as key name
+     * @param keyVersion the key version
+     * @return the key identifier, {@code <vault url>/keys/<tppId>/<keyVersion>}
+     */
+    public String keyId(String tppId, String keyVersion) {
+        return keyVaultUrl + "/keys/" + tppId + "/" + keyVersion;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Mono<String> decrypt(String tppId, String encryptedValue) {
+        return getKey(tppId).flatMap(key -> decrypt(encryptedValue, EncryptionAlgorithm.RSA_OAEP_256, buildCryptographyClient(key)));
     }
 
     /**
@@ -84,7 +219,52 @@ public class AzureKeyService {
      */
     public Mono<String> decrypt(String encryptedValue, EncryptionAlgorithm encryptionAlgorithm, CryptographyAsyncClient cryptoClient) {
         return cryptoClient.decrypt(encryptionAlgorithm, Base64.getDecoder().decode(encryptedValue))
-                .map(decryptedData -> new String(decryptedData.getPlainText()));
+                .map(decryptedData -> new String(decryptedData.getPlainText()))
+                .onErrorMap(AzureKeyService::mapThrottling);
+    }
+
+    /**
+     * Wraps a data key with the Key Vault key behind the cryptography client, using RSA-OAEP-256.
+     *
+     * @param dataKey the raw data key to wrap
+     * @param cryptoClient the cryptography client for performing the operation
+     * @return a {@link Mono} containing the Base64-encoded wrapped key
+     */
+    public Mono<String> wrapKey(byte[] dataKey, CryptographyAsyncClient cryptoClient) {
+        return cryptoClient.wrapKey(KeyWrapAlgorithm.RSA_OAEP_256, dataKey)
+                .map(wrapResult -> Base64.getEncoder().encodeToString(wrapResult.getEncryptedKey()));
+    }
+
+    /**
+     * Wraps a data key in-process with the public half of the given RSA key, using RSA-OAEP-256.
+     * The result can be unwrapped by Key Vault exactly like one produced by
+     * {@link #wrapKey(byte[], CryptographyAsyncClient)}, without a remote call on the write path.
+     *
+     * @param dataKey the raw data key to wrap
+     * @param key the KeyVaultKey whose public key is used (converted once per key version)
+     * @return a {@link Mono} containing the Base64-encoded wrapped key
+     */
+    public Mono<String> wrapKeyLocally(byte[] dataKey, KeyVaultKey key) {
+        return Mono.fromCallable(() -> {
+            try {
+                return Base64.getEncoder().encodeToString(RsaOaep.encrypt(getPublicKey(key), dataKey));
+            } catch (GeneralSecurityException | IllegalStateException e) {
+                throw new EmdEncryptionException("Error wrapping data key with the public key", true, e);
+            }
+        });
+    }
+
+    /**
+     * Unwraps a data key previously wrapped by {@link #wrapKey(byte[], CryptographyAsyncClient)}.
+     *
+     * @param wrappedKey the Base64-encoded wrapped key
+     * @param cryptoClient the cryptography client for performing the operation
+     * @return a {@link Mono} containing the raw data key
+     */
+    public Mono<byte[]> unwrapKey(String wrappedKey, CryptographyAsyncClient cryptoClient) {
+        return cryptoClient.unwrapKey(KeyWrapAlgorithm.RSA_OAEP_256, Base64.getDecoder().decode(wrappedKey))
+                .map(UnwrapResult::getKey)
+                .onErrorMap(AzureKeyService::mapThrottling);
     }
 
     /**
@@ -98,25 +278,80 @@ public class AzureKeyService {
     }
 
     /**
-     * Creates a CryptographyAsyncClient for the specified key identifier.
+     * Returns the CryptographyAsyncClient for the specified key identifier, creating it
+     * on the first use and reusing it afterwards.
      *
      * @param keyId the identifier of the key to create a cryptography client for
      * @return a CryptographyAsyncClient configured for the specified key identifier
      */
     public CryptographyAsyncClient buildCryptographyClient(String keyId) {
-        return new CryptographyClientBuilder()
-                .credential(DEFAULT_AZURE_CREDENTIAL)
-                .keyIdentifier(keyId)
-                .buildAsyncClient();
+        CryptographyAsyncClient cryptographyClient = cryptographyClientCache.get(keyId);
+        if (cryptographyClient == null) {
+            cryptographyClient = new CryptographyClientBuilder()
+                    .credential(DEFAULT_AZURE_CREDENTIAL)
+                    .keyIdentifier(keyId)
+                    .buildAsyncClient();
+            cryptographyClientCache.put(keyId, cryptographyClient);
+        }
+        return cryptographyClient;
     }
 
     /**
-     * Sets the KeyAsyncClient for this service.
+     * Sets the KeyAsyncClient for this service, dropping every cached key and cryptography client.
      *
      * @param keyClient the KeyAsyncClient to set
      */
     public void setKeyClient(KeyAsyncClient keyClient) {
        this.keyClient = keyClient;
+       keyCache.invalidateAll();
+       cryptographyClientCache.invalidateAll();
+       publicKeyCache.invalidateAll();
+    }
+
+    /**
+     * Turns a Key Vault {@code 429} into an {@link EmdThrottledException}, leaving any other error unchanged.
+     */
+    private static Throwable mapThrottling(Throwable e) {
+        if (e instanceof HttpResponseException httpException
+                && httpException.getResponse() != null
+                && httpException.getResponse().getStatusCode() == TOO_MANY_REQUESTS) {
+            return new EmdThrottledException("Key Vault throttled the request", retryAfter(httpException.getResponse()), e);
+        }
+        return e;
+    }
+
+    /**
+     * Reads the {@code Retry-After} header, in seconds, falling back to one second when absent or not numeric.
+     */
+    private static Duration retryAfter(HttpResponse response) {
+        String retryAfter = response.getHeaderValue(HttpHeaderName.RETRY_AFTER);
+        if (retryAfter != null) {
+            try {
+                return Duration.ofSeconds(Long.parseLong(retryAfter.trim()));
+            } catch (NumberFormatException e) {
+                // an HTTP date: fall back to the default back-off
+            }
+        }
+        return DEFAULT_RETRY_AFTER;
+    }
+
+    /**
+     * Extracts the version, the last path segment, from a key identifier.
+     */
+    private static String versionOf(String keyId) {
+        return keyId.substring(keyId.lastIndexOf('/') + 1);
+    }
+
+    /**
+     * Returns the RSA public key of the given KeyVaultKey, converting its JWK on the first use.
+     */
+    private PublicKey getPublicKey(KeyVaultKey key) {
+        PublicKey publicKey = publicKeyCache.get(key.getId());
+        if (publicKey == null) {
+            publicKey = key.getKey().toRsa(false).getPublic();
+            publicKeyCache.put(key.getId(), publicKey);
+        }
+        return publicKey;
     }
 
 }
@@ -0,0 +1,69 @@
+package it.gov.pagopa.tpp.service.keyvault;
+
+import reactor.core.publisher.Mono;
+
+/**
+ * Abstraction over the store holding the per-TPP RSA keys used to protect TokenSections.
+ * <p>
+ * The active implementation is selected with the {@code crypto.provider} property:
+ * {@code azure} (default) for {@link AzureKeyService}, backed by Azure Key Vault, or
+ * {@code local} for {@link LocalKeyProvider}, backed by key files and doing all RSA
+ * operations in-process (local runs, tests and load tests).
+ */
+public interface KeyProvider {
+
+    /**
+     * A data key wrapped by a TPP's RSA key.
+     *
+     * @param keyVersion the version of the key that wrapped it, needed to unwrap it after a rotation
+     * @param value the Base64-encoded wrapped key
+     */
+    record WrappedKey(String keyVersion, String value) {}
+
+    /**
+     * Creates a new RSA key for the TPP, replacing any previous one.
+     *
+     * @param tppId the TPP identifier, used as key name
+     * @return a {@link Mono} completing when the key is available
+     */
+    Mono<Void> createKey(String tppId);
+
+    /**
+     * Wraps a data key with the current version of the TPP's RSA key, using RSA-OAEP-256.
+     *
+     * @param tppId the TPP identifier
+     * @param dataKey the raw data key to wrap
+     * @return a {@link Mono} containing the wrapped key and the version of the key that wrapped it
+     */
+    Mono<WrappedKey> wrapKey(String tppId, byte[] dataKey);
+
+    /**
+     * Unwraps a data key previously wrapped by {@link #wrapKey(String, byte[])}.
+     *
+     * @param tppId the TPP identifier
+     * @param keyVersion the version of the key that wrapped it, {@code null} to use the current one
+     * @param wrappedKey the Base64-encoded wrapped key
+     * @return a {@link Mono} containing the raw data key
+     */
+    Mono<byte[]> unwrapKey(String tppId, String keyVersion, String wrappedKey);
+
+    /**
+     * Tells whether the current key of the TPP is at hand, so that the operations using it ({@link #wrapKey},
+     * {@link #decrypt} and {@link #unwrapKey} without a version) do not have to fetch it first.
+     *
+     * @param tppId the TPP identifier
+     * @return {@code false} if using the current key costs an additional remote call
+     */
+    default boolean isCurrentKeyCached(String tppId) {
+        return true;
+    }
+
+    /**
+     * Decrypts a single Base64-encoded RSA-OAEP-256 ciphertext, as found in legacy TokenSections.
+     *
+     * @param tppId the TPP identifier
+     * @param encryptedValue the Base64-encoded ciphertext
+     * @return a {@link Mono} containing the decrypted plain text string
+     */
+    Mono<String> decrypt(String tppId, String encryptedValue);
+}
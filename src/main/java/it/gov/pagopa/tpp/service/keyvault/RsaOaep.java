@@ -0,0 +1,34 @@
+package it.gov.pagopa.tpp.service.keyvault;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.OAEPParameterSpec;
+import javax.crypto.spec.PSource;
+import java.security.GeneralSecurityException;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.spec.MGF1ParameterSpec;
+
+/**
+ * In-process RSA-OAEP-256 (SHA-256 digest, MGF1 with SHA-256), interoperable with the
+ * {@code RSA-OAEP-256} algorithm of Azure Key Vault.
+ */
+final class RsaOaep {
+
+    private static final String TRANSFORMATION = "RSA/ECB/OAEPWithSHA-256AndMGF1Padding";
+    private static final OAEPParameterSpec PARAMETERS =
+            new OAEPParameterSpec("SHA-256", "MGF1", MGF1ParameterSpec.SHA256, PSource.PSpecified.DEFAULT);
+
+    private RsaOaep() {}
+
+    static byte[] encrypt(PublicKey publicKey, byte[] plainText) throws GeneralSecurityException {
+        Cipher cipher = Cipher.getInstance(TRANSFORMATION);
+        cipher.init(Cipher.ENCRYPT_MODE, publicKey, PARAMETERS);
+        return cipher.doFinal(plainText);
+    }
+
+    static byte[] decrypt(PrivateKey privateKey, byte[] cipherText) throws GeneralSecurityException {
+        Cipher cipher = Cipher.getInstance(TRANSFORMATION);
+        cipher.init(Cipher.DECRYPT_MODE, privateKey, PARAMETERS);
+        return cipher.doFinal(cipherText);
+    }
+}
@@ -0,0 +1,71 @@
+package it.gov.pagopa.common.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class LocalCacheTest {
+
+    private final AtomicLong clock = new AtomicLong();
+
+    @Test
+    void get_returnsValueUntilTtlExpires() {
+        LocalCache<String, String> cache = new LocalCache<>(10, Duration.ofNanos(100), clock::get);
+        cache.put("key", "value");
+
+        clock.set(99);
+        assertEquals("value", cache.get("key"));
+
+        clock.set(100);
+        assertNull(cache.get("key"));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    void put_whenFull_evictsExpiredEntriesFirst() {
+        LocalCache<String, String> cache = new LocalCache<>(2, Duration.ofNanos(100), clock::get);
+        cache.put("old", "1");
+        clock.set(50);
+        cache.put("young", "2");
+
+        clock.set(120);
+        cache.put("new", "3");
+
+        assertNull(cache.get("old"));
+        assertEquals("2", cache.get("young"));
+        assertEquals("3", cache.get("new"));
+    }
+
+    @Test
+    void put_whenFullOfLiveEntries_staysBounded() {
+        LocalCache<String, String> cache = new LocalCache<>(2, Duration.ofHours(1), clock::get);
+        cache.put("a", "1");
+        cache.put("b", "2");
+        cache.put("c", "3");
+
+        assertEquals(2, cache.size());
+        assertEquals("3", cache.get("c"));
+    }
+
+    @Test
+    void invalidate_removesMatchingEntries() {
+        LocalCache<String, String> cache = new LocalCache<>(10, Duration.ofHours(1), clock::get);
+        cache.put("tpp1|r1", "1");
+        cache.put("tpp1|r2", "2");
+        cache.put("tpp2|r1", "3");
+
+        cache.invalidateIf(key -> key.startsWith("tpp1|"));
+        assertEquals(1, cache.size());
+
+        cache.invalidate("tpp2|r1");
+        assertNull(cache.get("tpp2|r1"));
+
+        cache.put("tpp3|r1", "4");
+        cache.invalidateAll();
+        assertEquals(0, cache.size());
+    }
+}
@@ -0,0 +1,79 @@
+package it.gov.pagopa.common.utils;
+
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class SingleFlightTest {
+
+    private final SingleFlight<String, String> singleFlight = new SingleFlight<>(Duration.ofSeconds(1));
+    private final AtomicInteger loaderCalls = new AtomicInteger();
+
+    @Test
+    void execute_concurrentCallsShareOneLoad() {
+        Sinks.One<String> load = Sinks.one();
+
+        Mono<String> first = singleFlight.execute("key", () -> countedLoad(load.asMono()));
+        Mono<String> second = singleFlight.execute("key", () -> countedLoad(Mono.just("other")));
+
+        StepVerifier.create(Mono.zip(first, second))
+                .then(() -> load.tryEmitValue("value"))
+                .expectNextMatches(results -> results.getT1().equals("value") && results.getT2().equals("value"))
+                .verifyComplete();
+
+        assertEquals(1, loaderCalls.get());
+        assertEquals(1, singleFlight.loadCount());
+        assertEquals(1, singleFlight.coalescedCount());
+        assertEquals(0, singleFlight.inFlightCount());
+    }
+
+    @Test
+    void execute_keyReleasedOnceLoadTerminates() {
+        singleFlight.execute("key", () -> countedLoad(Mono.just("first"))).block();
+
+        StepVerifier.create(singleFlight.execute("key", () -> countedLoad(Mono.just("second"))))
+                .expectNext("second")
+                .verifyComplete();
+
+        assertEquals(2, loaderCalls.get());
+        assertEquals(0, singleFlight.coalescedCount());
+    }
+
+    @Test
+    void execute_emptyAndErrorSharedWithWaiters() {
+        StepVerifier.create(singleFlight.execute("empty", () -> countedLoad(Mono.empty())))
+                .verifyComplete();
+
+        Sinks.One<String> load = Sinks.one();
+        Mono<String> first = singleFlight.execute("error", () -> countedLoad(load.asMono()));
+        Mono<String> second = singleFlight.execute("error", () -> countedLoad(Mono.just("other")));
+
+        StepVerifier.create(Mono.zip(first, second))
+                .then(() -> load.tryEmitError(new IllegalStateException("load failed")))
+                .expectError(IllegalStateException.class)
+                .verify();
+
+        assertEquals(2, loaderCalls.get());
+    }
+
+    @Test
+    void execute_waitersBoundedByTimeout() {
+        SingleFlight<String, String> shortFlight = new SingleFlight<>(Duration.ofMillis(50));
+
+        StepVerifier.create(shortFlight.execute("key", Mono::never))
+                .expectError(TimeoutException.class)
+                .verify(Duration.ofSeconds(1));
+    }
+
+    private Mono<String> countedLoad(Mono<String> load) {
+        loaderCalls.incrementAndGet();
+        return load;
+    }
+}
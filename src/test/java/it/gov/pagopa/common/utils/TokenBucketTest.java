@@ -0,0 +1,61 @@
+package it.gov.pagopa.common.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TokenBucketTest {
+
+    private static final long MILLIS = Duration.ofMillis(1).toNanos();
+
+    private final AtomicLong now = new AtomicLong();
+
+    @Test
+    void reserve_burstGrantedAtOnceThenPaced() {
+        TokenBucket bucket = new TokenBucket(10, 2, now::get);
+
+        assertTrue(bucket.reserve(1) <= 0);
+        assertTrue(bucket.reserve(1) <= 0);
+        assertEquals(100 * MILLIS, bucket.reserve(1));
+        assertEquals(200 * MILLIS, bucket.reserve(1));
+    }
+
+    @Test
+    void reserve_idleBucketRefillsUpToBurst() {
+        TokenBucket bucket = new TokenBucket(10, 1, now::get);
+        bucket.reserve(1);
+
+        now.addAndGet(Duration.ofSeconds(10).toNanos());
+
+        assertTrue(bucket.reserve(1) <= 0);
+        assertEquals(100 * MILLIS, bucket.reserve(1));
+    }
+
+    @Test
+    void reserve_severalPermitsCostProportionally() {
+        TokenBucket bucket = new TokenBucket(10, 1, now::get);
+
+        assertTrue(bucket.reserve(5) <= 0);
+        assertEquals(500 * MILLIS, bucket.reserve(1));
+    }
+
+    @Test
+    void pause_delaysEveryCaller() {
+        TokenBucket bucket = new TokenBucket(10, 5, now::get);
+
+        bucket.pause(Duration.ofSeconds(2));
+
+        assertEquals(Duration.ofSeconds(2).toNanos(), bucket.reserve(1));
+        assertEquals(Duration.ofSeconds(2).toNanos() + 100 * MILLIS, bucket.reserve(1));
+    }
+
+    @Test
+    void constructor_invalidRate_rejected() {
+        assertThrows(IllegalArgumentException.class, () -> new TokenBucket(0, 1));
+    }
+}
@@ -1,5 +1,7 @@
 package it.gov.pagopa.tpp.controller;
 
+import it.gov.pagopa.tpp.dto.MessageDTO;
+import it.gov.pagopa.tpp.dto.MessageList;
 import it.gov.pagopa.tpp.dto.NetworkResponseDTO;
 import it.gov.pagopa.tpp.dto.RecipientIdOnWhitelistDTO;
 import it.gov.pagopa.tpp.dto.TokenSectionDTO;
@@ -9,6 +11,7 @@ import it.gov.pagopa.tpp.dto.TppDTOWithoutTokenSection;
 import it.gov.pagopa.tpp.dto.TppIdList;
 import it.gov.pagopa.tpp.dto.TppUpdateIsPaymentEnabled;
 import it.gov.pagopa.tpp.service.TppServiceImpl;
+import it.gov.pagopa.tpp.service.cache.TppResponseCache;
 import java.util.Map;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
@@ -17,11 +20,15 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.webflux.test.autoconfigure.WebFluxTest;
 import org.springframework.test.context.bean.override.mockito.MockitoBean;
 import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.CacheControl;
 import org.springframework.http.MediaType;
+import org.springframework.http.codec.ServerCodecConfigurer;
 import org.springframework.test.web.reactive.server.WebTestClient;
 import reactor.core.publisher.Mono;
 
+import java.time.Duration;
 import java.util.List;
+import java.util.stream.IntStream;
 
 import static it.gov.pagopa.tpp.utils.TestUtils.*;
 import static org.mockito.ArgumentMatchers.*;
@@ -35,6 +42,14 @@ class TppControllerTest {
     @Autowired
     private WebTestClient webClient;
 
+    @Autowired
+    private ServerCodecConfigurer codecConfigurer;
+
+    private TppResponseCache.Json toJson(Object dto) {
+        return new TppResponseCache(codecConfigurer, 1, Duration.ofMinutes(1))
+            .encode(TppResponseCache.View.TPP, "tppId", null, () -> dto);
+    }
+
     @Test
     void updateTppDetails_Ok() {
         TppDTOWithoutTokenSection tppDto = getMockTppDtoWithoutTokenSection();
@@ -203,8 +218,8 @@ class TppControllerTest {
     void getTppDetails_Ok()  {
         TppDTOWithoutTokenSection tppDtoNoToken = getMockTppDtoWithoutTokenSection();
 
-        Mockito.when(tppService.getTppDetails(tppDtoNoToken.getTppId()))
-            .thenReturn(Mono.just(tppDtoNoToken));
+        Mockito.when(tppService.getTppDetailsJson(tppDtoNoToken.getTppId()))
+            .thenReturn(Mono.just(toJson(tppDtoNoToken)));
 
         webClient.get()
             .uri("/emd/tpp/{tppId}", tppDtoNoToken.getTppId())
@@ -218,12 +233,34 @@ class TppControllerTest {
             });
     }
 
+    @Test
+    void getTppDetails_NotModified()  {
+        TppDTOWithoutTokenSection tppDtoNoToken = getMockTppDtoWithoutTokenSection();
+        TppResponseCache.Json json = toJson(tppDtoNoToken);
+
+        Mockito.when(tppService.getTppDetailsJson(tppDtoNoToken.getTppId()))
+            .thenReturn(Mono.just(json));
+
+        webClient.get()
+            .uri("/emd/tpp/{tppId}", tppDtoNoToken.getTppId())
+            .exchange()
+            .expectStatus().isOk()
+            .expectHeader().valueEquals("ETag", json.etag());
+
+        webClient.get()
+            .uri("/emd/tpp/{tppId}", tppDtoNoToken.getTppId())
+            .ifNoneMatch(json.etag())
+            .exchange()
+            .expectStatus().isNotModified()
+            .expectBody().isEmpty();
+    }
+
     @Test
     void getTppByEntityId_Ok()  {
         TppDTOWithoutTokenSection tppDtoNoToken = getMockTppDtoWithoutTokenSection();
 
-        Mockito.when(tppService.getTppByEntityId(tppDtoNoToken.getEntityId()))
-            .thenReturn(Mono.just(tppDtoNoToken));
+        Mockito.when(tppService.getTppByEntityIdJson(tppDtoNoToken.getEntityId()))
+            .thenReturn(Mono.just(toJson(tppDtoNoToken)));
 
         webClient.get()
             .uri("/emd/tpp/entityId/{entityId}", tppDtoNoToken.getEntityId())
@@ -241,8 +278,8 @@ class TppControllerTest {
     void getTokenSection_Ok()  {
         TokenSectionDTO tokenSectionDTO = getMockTokenSectionDto();
 
-        Mockito.when(tppService.getTokenSection("tppId"))
-            .thenReturn(Mono.just(tokenSectionDTO));
+        Mockito.when(tppService.getTokenSectionJson("tppId"))
+            .thenReturn(Mono.just(toJson(tokenSectionDTO)));
 
         webClient.get()
             .uri("/emd/tpp/{tppId}/token", "tppId")
@@ -261,7 +298,8 @@ class TppControllerTest {
         TppIdList idList = getMockTppIdList();
         List<TppDTO> dtoList = getMockTppDtoList();
 
-        Mockito.when(tppService.filterEnabledList(idList.getIds(), idList.getRecipientId())).thenReturn(Mono.just(dtoList));
+        Mockito.when(tppService.filterEnabledListJson(idList.getIds(), idList.getRecipientId(), false))
+            .thenReturn(Mono.just(TppResponseCache.asArray(dtoList.stream().map(dto -> toJson(dto).body()).toList())));
 
         webClient.post()
             .uri("/emd/tpp/list")
@@ -278,6 +316,96 @@ class TppControllerTest {
             });
     }
 
+    @Test
+    void filterEnabled_TemplateRef() {
+        TppIdList idList = getMockTppIdList();
+
+        Mockito.when(tppService.filterEnabledListJson(idList.getIds(), idList.getRecipientId(), true))
+            .thenReturn(Mono.just(TppResponseCache.asArray(List.of())));
+
+        webClient.post()
+            .uri("/emd/tpp/list?templateRef=true")
+            .contentType(MediaType.APPLICATION_JSON)
+            .bodyValue(idList)
+            .exchange()
+            .expectStatus().isOk()
+            .expectBody(String.class).isEqualTo("[]");
+    }
+
+    @Test
+    void getMessageTemplate_Ok() {
+        Mockito.when(tppService.getMessageTemplate("default", "hash"))
+            .thenReturn(Mono.just("template"));
+
+        webClient.get()
+            .uri("/emd/tpp/message-templates/{templateId}/{hash}", "default", "hash")
+            .exchange()
+            .expectStatus().isOk()
+            .expectHeader().contentTypeCompatibleWith(MediaType.TEXT_PLAIN)
+            .expectHeader().cacheControl(CacheControl.maxAge(Duration.ofDays(365)).cachePublic().immutable())
+            .expectHeader().valueEquals("ETag", "\"hash\"")
+            .expectBody(String.class).isEqualTo("template");
+    }
+
+    @Test
+    void renderMessage_Ok() {
+        MessageDTO message = MessageDTO.builder().messageId("messageId").build();
+        Mockito.when(tppService.renderMessage("tppId", message))
+            .thenReturn(Mono.just("rendered"));
+
+        webClient.post()
+            .uri("/emd/tpp/{tppId}/messages/render", "tppId")
+            .contentType(MediaType.APPLICATION_JSON)
+            .bodyValue(message)
+            .exchange()
+            .expectStatus().isOk()
+            .expectHeader().contentTypeCompatibleWith(MediaType.TEXT_PLAIN)
+            .expectBody(String.class).isEqualTo("rendered");
+    }
+
+    @Test
+    void renderMessages_Ok() {
+        List<MessageDTO> messages = List.of(MessageDTO.builder().messageId("message1").build(),
+            MessageDTO.builder().messageId("message2").build());
+        Mockito.when(tppService.renderMessages("tppId", messages))
+            .thenReturn(Mono.just(List.of("rendered1", "rendered2")));
+
+        webClient.post()
+            .uri("/emd/tpp/{tppId}/messages/render-batch", "tppId")
+            .contentType(MediaType.APPLICATION_JSON)
+            .bodyValue(new MessageList(messages))
+            .exchange()
+            .expectStatus().isOk()
+            .expectBody(new ParameterizedTypeReference<List<String>>() {})
+            .isEqualTo(List.of("rendered1", "rendered2"));
+    }
+
+    @Test
+    void renderMessages_BatchTooLarge() {
+        List<MessageDTO> messages = IntStream.rangeClosed(0, MessageList.MAX_MESSAGES)
+            .mapToObj(i -> MessageDTO.builder().messageId("message" + i).build())
+            .toList();
+
+        webClient.post()
+            .uri("/emd/tpp/{tppId}/messages/render-batch", "tppId")
+            .contentType(MediaType.APPLICATION_JSON)
+            .bodyValue(new MessageList(messages))
+            .exchange()
+            .expectStatus().isBadRequest();
+
+        Mockito.verifyNoInteractions(tppService);
+    }
+
+    @Test
+    void renderMessages_EmptyBatch() {
+        webClient.post()
+            .uri("/emd/tpp/{tppId}/messages/render-batch", "tppId")
+            .contentType(MediaType.APPLICATION_JSON)
+            .bodyValue(new MessageList(List.of()))
+            .exchange()
+            .expectStatus().isBadRequest();
+    }
+
     @Test
     void testConnection() {
         NetworkResponseDTO networkResponseDTO = new NetworkResponseDTO();
@@ -1,5 +1,6 @@
 package it.gov.pagopa.tpp.dto.mapper;
 
+import it.gov.pagopa.common.utils.Utils;
 import it.gov.pagopa.tpp.model.Tpp;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
@@ -21,11 +22,14 @@ class TppObjectToDTOMapperTest {
 
         Assertions.assertNotNull(dto.getMessageTemplate());
         Assertions.assertTrue(dto.getMessageTemplate().contains("messageId"), "Il template di default dovrebbe contenere 'messageId'");
+        Assertions.assertNull(dto.getMessageTemplateId());
+        Assertions.assertNull(dto.getMessageTemplateHash());
     }
 
     @Test
     void whenTemplateIsNotNull_thenReturnTemplate() {
         Tpp tpp = new Tpp();
+        tpp.setTppId("tppId");
         tpp.setMessageTemplate("""
             {"newTestKey": "${msgDescription}"}
         """);
@@ -34,5 +38,59 @@ class TppObjectToDTOMapperTest {
 
         Assertions.assertNotNull(dto.getMessageTemplate());
         Assertions.assertTrue(dto.getMessageTemplate().contains("newTestKey"), "Il template di default dovrebbe contenere 'newTestKey'");
+        Assertions.assertNull(dto.getMessageTemplateId());
+        Assertions.assertNull(dto.getMessageTemplateHash());
+    }
+
+    @Test
+    void withTemplateRef_defaultTemplate() {
+        Tpp tpp = new Tpp();
+        tpp.setTppId("tppId");
+
+        var dto = mapper.withTemplateRef(mapper.map(tpp));
+
+        Assertions.assertNull(dto.getMessageTemplate());
+        Assertions.assertEquals(TppObjectToDTOMapper.DEFAULT_TEMPLATE_ID, dto.getMessageTemplateId());
+        Assertions.assertEquals(Utils.createSHA256(mapper.getDefaultTemplate()), dto.getMessageTemplateHash());
+    }
+
+    @Test
+    void withTemplateRef_customTemplate() {
+        Tpp tpp = new Tpp();
+        tpp.setTppId("tppId");
+        tpp.setMessageTemplate("custom-template");
+
+        var dto = mapper.withTemplateRef(mapper.map(tpp));
+
+        Assertions.assertNull(dto.getMessageTemplate());
+        Assertions.assertEquals("tppId", dto.getMessageTemplateId());
+        Assertions.assertEquals(Utils.createSHA256("custom-template"), dto.getMessageTemplateHash());
+    }
+
+    @Test
+    void templateRefOf_sameTemplate_reusesReference() {
+        Tpp tpp = new Tpp();
+        tpp.setTppId("tppId-reused");
+        tpp.setMessageTemplate("custom-template");
+
+        var first = mapper.templateRefOf(tpp);
+        tpp.setMessageTemplate(new String("custom-template"));
+
+        Assertions.assertSame(first, mapper.templateRefOf(tpp));
+    }
+
+    @Test
+    void templateRefOf_changedTemplate_hashedAgain() {
+        Tpp tpp = new Tpp();
+        tpp.setTppId("tppId-changed");
+        tpp.setMessageTemplate("custom-template");
+
+        var first = mapper.templateRefOf(tpp);
+        tpp.setMessageTemplate("updated-template");
+        var second = mapper.templateRefOf(tpp);
+
+        Assertions.assertEquals(Utils.createSHA256("custom-template"), first.hash());
+        Assertions.assertEquals(Utils.createSHA256("updated-template"), second.hash());
+        Assertions.assertEquals("updated-template", second.template());
     }
 }
\ No newline at end of file
@@ -2,16 +2,22 @@ package it.gov.pagopa.tpp.integration;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
 import org.springframework.test.context.TestPropertySource;
 
 import it.gov.pagopa.tpp.enums.AuthenticationType;
 import it.gov.pagopa.tpp.model.Contact;
 import it.gov.pagopa.tpp.model.TokenSection;
 import it.gov.pagopa.tpp.model.Tpp;
+import it.gov.pagopa.tpp.model.TppWhitelistEntry;
 import it.gov.pagopa.tpp.repository.TppRepository;
+import it.gov.pagopa.tpp.repository.TppWhitelistRepository;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 import reactor.test.StepVerifier;
 
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -52,6 +58,9 @@ public class TppRepositoryQueryVerificationIT extends BaseIT{
     @Autowired
     TppRepository repository;
 
+    @Autowired
+    TppWhitelistRepository whitelistRepository;
+
     @BeforeEach
     void setup() {
         // Clean up previous test data by dropping the entire collection
@@ -59,6 +68,10 @@ public class TppRepositoryQueryVerificationIT extends BaseIT{
             mongoTemplate.dropCollection(COLLECTION_NAME)
                 .onErrorResume(e -> Mono.empty())
         ).verifyComplete();
+        // Whitelist entries are removed without dropping the collection, so its indexes are kept
+        StepVerifier.create(
+            mongoTemplate.remove(new Query(), TppWhitelistEntry.class)
+        ).expectNextCount(1).verifyComplete();
 
         // Create first TPP entity with state=TRUE for testing active TPPs
         Tpp testTpp = Tpp.builder()
@@ -278,24 +291,23 @@ public class TppRepositoryQueryVerificationIT extends BaseIT{
     /**
      * Test Case: Retrieve inactive TPP via whitelist
      *
-     * Scenario: Query for a TPP with state=false, but whose recipientId is present in the whitelistRecipient field
+     * Scenario: Query for a TPP with state=false, but which whitelists the recipient
      * Expected: Should find and return the TPP entity despite being globally inactive
-     * MongoDB Query: db.tpp.find({"tppId": {$in: ["tppId_3"]}, $or: [{"state": true}, {"whitelistRecipient": "recipientId"}]})
+     * MongoDB Query: db.tpp.find({"tppId": {$in: ["tppId_3"]}, $or: [{"state": true}, {"tppId": {$in: ["tppId_3"]}}]})
      *
      * Business Logic: A globally disabled TPP must still be allowed to operate if a specific 
      * authorization (whitelist) exists for the requested recipient.
      */
     @Test
-    void testFindEnabledForRecipient_WhitelistedTpp() {
-        log.info("=== EXECUTING findEnabledForRecipient (Inactive TPP with recipient) ===");
+    void testFindEnabledOrWhitelisted_WhitelistedTpp() {
+        log.info("=== EXECUTING findEnabledOrWhitelisted (Inactive TPP with recipient) ===");
         
         List<String> ids = List.of(TPP_ID_3);
         
-        StepVerifier.create(repository.findEnabledForRecipient(ids, RECIPIENT_ID))
+        StepVerifier.create(repository.findEnabledOrWhitelisted(ids, List.of(TPP_ID_3)))
              .assertNext(tpp -> {
                 assert tpp.getTppId().equals(TPP_ID_3);
                 assert tpp.getState().equals(false);
-                assert tpp.getWhitelistRecipient().contains(RECIPIENT_ID);
             })
             .verifyComplete();
     }
@@ -311,12 +323,12 @@ public class TppRepositoryQueryVerificationIT extends BaseIT{
      * access must be denied.
      */
     @Test
-    void testFindEnabledForRecipient_InactiveAndWrongRecipient() {
-        log.info("=== EXECUTING findEnabledForRecipient (Inactive & Wrong Recipient) ===");
+    void testFindEnabledOrWhitelisted_InactiveAndWrongRecipient() {
+        log.info("=== EXECUTING findEnabledOrWhitelisted (Inactive & Wrong Recipient) ===");
         
         List<String> ids = List.of(TPP_ID_4);
         
-        StepVerifier.create(repository.findEnabledForRecipient(ids, RECIPIENT_ID))
+        StepVerifier.create(repository.findEnabledOrWhitelisted(ids, List.of()))
             .verifyComplete(); // No result expected since TPP is inactive and recipient is not whitelisted
     }
 
@@ -331,12 +343,12 @@ public class TppRepositoryQueryVerificationIT extends BaseIT{
      * (global state or specific partner authorization).
      */
     @Test
-    void testFindEnabledForRecipient_MixedResults() {
-        log.info("=== EXECUTING findEnabledForRecipient (Mixed Results) ===");
+    void testFindEnabledOrWhitelisted_MixedResults() {
+        log.info("=== EXECUTING findEnabledOrWhitelisted (Mixed Results) ===");
         
         List<String> ids = List.of(TPP_ID, TPP_ID_3);
         
-        StepVerifier.create(repository.findEnabledForRecipient(ids, RECIPIENT_ID))
+        StepVerifier.create(repository.findEnabledOrWhitelisted(ids, List.of(TPP_ID_3)))
             .recordWith(ArrayList::new)
             .expectNextCount(2)
             .consumeRecordedWith(results -> {
@@ -357,12 +369,12 @@ public class TppRepositoryQueryVerificationIT extends BaseIT{
      * identifier is not included in the explicit request list.
      */
     @Test
-    void testFindEnabledForRecipient_IdNotInList() {
-        log.info("=== EXECUTING findEnabledForRecipient (ID not in list) ===");
+    void testFindEnabledOrWhitelisted_IdNotInList() {
+        log.info("=== EXECUTING findEnabledOrWhitelisted (ID not in list) ===");
         
         List<String> ids = List.of("Wrong_ID");
         
-        StepVerifier.create(repository.findEnabledForRecipient(ids, RECIPIENT_ID))
+        StepVerifier.create(repository.findEnabledOrWhitelisted(ids, List.of(TPP_ID_3)))
             .verifyComplete();
         log.info("=== TEST COMPLETED ===");
     }
@@ -425,4 +437,133 @@ public class TppRepositoryQueryVerificationIT extends BaseIT{
 
         log.info("=== TEST COMPLETED ===");
     }
-}
\ No newline at end of file
+
+    /**
+     * Test Case: Whitelist entries are stored once per (tppId, recipientId) pair
+     *
+     * Scenario: Insert the same pair twice, then look up the recipient among several TPPs
+     * Expected: The second insert reports the pair as already present; the point lookup returns
+     *           only the TPP whitelisting the recipient
+     */
+    @Test
+    void testWhitelistEntries_InsertIfAbsentAndPointLookup() {
+        log.info("=== EXECUTING tpp_whitelist insertIfAbsent / findByRecipientIdAndTppIdIn ===");
+
+        StepVerifier.create(whitelistRepository.insertIfAbsent(TPP_ID_3, RECIPIENT_ID))
+            .expectNext(true)
+            .verifyComplete();
+        StepVerifier.create(whitelistRepository.insertIfAbsent(TPP_ID_3, RECIPIENT_ID))
+            .expectNext(false)
+            .verifyComplete();
+        StepVerifier.create(whitelistRepository.insertAll(TPP_ID_4, List.of(RECIPIENT_ID_2, RECIPIENT_ID_2)))
+            .verifyComplete();
+
+        StepVerifier.create(whitelistRepository.findByRecipientIdAndTppIdIn(RECIPIENT_ID, List.of(TPP_ID_3, TPP_ID_4)))
+            .assertNext(entry -> {
+                assert entry.getTppId().equals(TPP_ID_3);
+                assert entry.getCreationDate() != null;
+            })
+            .verifyComplete();
+        StepVerifier.create(whitelistRepository.findByTppId(TPP_ID_4))
+            .expectNextCount(1)
+            .verifyComplete();
+
+        log.info("=== TEST COMPLETED ===");
+    }
+
+    /**
+     * Test Case: Single-document whitelist removal
+     *
+     * Scenario: Remove a whitelisted recipient twice
+     * Expected: The first delete removes one entry, the second none
+     */
+    @Test
+    void testWhitelistEntries_DeleteByTppIdAndRecipientId() {
+        log.info("=== EXECUTING tpp_whitelist deleteByTppIdAndRecipientId ===");
+
+        StepVerifier.create(whitelistRepository.insertIfAbsent(TPP_ID_3, RECIPIENT_ID))
+            .expectNext(true)
+            .verifyComplete();
+
+        StepVerifier.create(whitelistRepository.deleteByTppIdAndRecipientId(TPP_ID_3, RECIPIENT_ID))
+            .expectNext(1L)
+            .verifyComplete();
+        StepVerifier.create(whitelistRepository.deleteByTppIdAndRecipientId(TPP_ID_3, RECIPIENT_ID))
+            .expectNext(0L)
+            .verifyComplete();
+
+        log.info("=== TEST COMPLETED ===");
+    }
+
+    /**
+     * Test Case: Concurrent inserts of the same whitelist pair
+     *
+     * Scenario: Several inserts of the same (tppId, recipientId) pair race each other
+     * Expected: Exactly one of them reports the insertion and a single entry is stored
+     */
+    @Test
+    void testWhitelistEntries_ConcurrentInsertsOfSamePair() {
+        log.info("=== EXECUTING tpp_whitelist concurrent insertIfAbsent ===");
+
+        StepVerifier.create(
+                Flux.range(0, 8)
+                    .flatMap(i -> whitelistRepository.insertIfAbsent(TPP_ID, RECIPIENT_ID))
+                    .filter(Boolean.TRUE::equals)
+                    .count())
+            .expectNext(1L)
+            .verifyComplete();
+        StepVerifier.create(whitelistRepository.findByTppId(TPP_ID))
+            .expectNextCount(1)
+            .verifyComplete();
+
+        log.info("=== TEST COMPLETED ===");
+    }
+
+    /**
+     * Test Case: Last update date set without reading the TPP
+     *
+     * Scenario: Update the lastUpdateDate of an existing and of a missing TPP
+     * Expected: The post-image is returned for the existing TPP, nothing for the missing one
+     */
+    @Test
+    void testUpdateLastUpdateDate() {
+        log.info("=== EXECUTING updateLastUpdateDate ===");
+        LocalDateTime now = LocalDateTime.now().truncatedTo(ChronoUnit.MILLIS);
+
+        StepVerifier.create(repository.updateLastUpdateDate(TPP_ID, now))
+            .assertNext(tpp -> {
+                assert tpp.getTppId().equals(TPP_ID);
+                assert tpp.getLastUpdateDate().equals(now);
+            })
+            .verifyComplete();
+        StepVerifier.create(repository.updateLastUpdateDate("Wrong_ID", now))
+            .verifyComplete();
+        StepVerifier.create(repository.existsByTppId("Wrong_ID"))
+            .expectNext(false)
+            .verifyComplete();
+
+        log.info("=== TEST COMPLETED ===");
+    }
+
+    /**
+     * Test Case: States of the cached TPPs read for the reconciliation sweep
+     *
+     * Scenario: Query the states of existing and missing TPPs
+     * Expected: Only the existing TPPs are returned, with their tppId and state
+     * MongoDB Query: db.tpp.find({"tppId": {$in: [...]}}, {"tppId": 1, "state": 1})
+     */
+    @Test
+    void testFindStatesByTppIdIn() {
+        log.info("=== EXECUTING findStatesByTppIdIn ===");
+
+        StepVerifier.create(repository.findStatesByTppIdIn(List.of(TPP_ID, TPP_ID_2, "Wrong_ID")).collectMap(Tpp::getTppId, Tpp::getState))
+            .assertNext(states -> {
+                assert states.size() == 2;
+                assert states.get(TPP_ID).equals(Boolean.TRUE);
+                assert states.get(TPP_ID_2).equals(Boolean.FALSE);
+            })
+            .verifyComplete();
+
+        log.info("=== TEST COMPLETED ===");
+    }
+}
@@ -1,19 +1,28 @@
 package it.gov.pagopa.tpp.service;
 
+import com.azure.core.exception.HttpResponseException;
+import com.azure.core.http.HttpHeaderName;
+import com.azure.core.http.HttpResponse;
 import com.azure.security.keyvault.keys.KeyAsyncClient;
 import com.azure.security.keyvault.keys.cryptography.CryptographyAsyncClient;
 import com.azure.security.keyvault.keys.cryptography.models.DecryptResult;
 import com.azure.security.keyvault.keys.cryptography.models.EncryptResult;
 import com.azure.security.keyvault.keys.cryptography.models.EncryptionAlgorithm;
+import com.azure.security.keyvault.keys.cryptography.models.KeyWrapAlgorithm;
+import com.azure.security.keyvault.keys.cryptography.models.UnwrapResult;
+import com.azure.security.keyvault.keys.cryptography.models.WrapResult;
 import com.azure.security.keyvault.keys.models.CreateRsaKeyOptions;
+import com.azure.security.keyvault.keys.models.JsonWebKey;
 import com.azure.security.keyvault.keys.models.KeyVaultKey;
-import it.gov.pagopa.tpp.model.Tpp;
+import it.gov.pagopa.common.web.exception.EmdThrottledException;
 import it.gov.pagopa.tpp.repository.TppRepository;
+import it.gov.pagopa.tpp.service.cache.TppNearCache;
+import it.gov.pagopa.tpp.service.cache.TppShardedMap;
 import it.gov.pagopa.tpp.service.keyvault.AzureKeyService;
+import it.gov.pagopa.tpp.service.keyvault.KeyProvider;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.redisson.api.RLockReactive;
-import org.redisson.api.RMapReactive;
 import org.redisson.api.RedissonReactiveClient;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
@@ -21,6 +30,13 @@ import org.springframework.test.context.bean.override.mockito.MockitoBean;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import javax.crypto.Cipher;
+import javax.crypto.spec.OAEPParameterSpec;
+import javax.crypto.spec.PSource;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.spec.MGF1ParameterSpec;
+import java.time.Duration;
 import java.util.Base64;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -41,11 +57,14 @@ class AzureKeyServiceTest {
     private TokenSectionCryptService tokenSectionCryptService;
 
     @MockitoBean
-    private RMapReactive<String, Tpp> tppMap;
+    private TppShardedMap tppMap;
 
     @MockitoBean
     private RedissonReactiveClient redissonReactiveClient;
 
+    @MockitoBean
+    private TppNearCache tppNearCache;
+
     @MockitoBean
     private KeyAsyncClient keyClient;
 
@@ -92,6 +111,89 @@ class AzureKeyServiceTest {
         );
     }
 
+    @Test
+    void testGetKey_servedFromCacheAfterFirstFetch() {
+
+        when(keyClient.getKey("tppId"))
+                .thenReturn(Mono.just(keyVaultKey));
+
+        azureKeyService.getKey("tppId").block();
+
+        assertSame(keyVaultKey, azureKeyService.getKey("tppId").block());
+        verify(keyClient, times(1)).getKey("tppId");
+    }
+
+    @Test
+    void testGetKey_throttled_mappedWithRetryAfter() {
+
+        HttpResponse response = mock(HttpResponse.class);
+        when(response.getStatusCode()).thenReturn(429);
+        when(response.getHeaderValue(HttpHeaderName.RETRY_AFTER)).thenReturn("3");
+        when(keyClient.getKey("tppId"))
+                .thenReturn(Mono.error(new HttpResponseException("Too many requests", response)));
+
+        Mono<KeyVaultKey> key = azureKeyService.getKey("tppId");
+        EmdThrottledException exception = assertThrows(EmdThrottledException.class, key::block);
+        assertEquals(Duration.ofSeconds(3), exception.getRetryAfter());
+        assertFalse(azureKeyService.isCurrentKeyCached("tppId"));
+    }
+
+    @Test
+    void testCreateRsaKey_throttled_mapped() {
+
+        HttpResponse response = mock(HttpResponse.class);
+        when(response.getStatusCode()).thenReturn(429);
+        when(keyClient.createRsaKey(any(CreateRsaKeyOptions.class)))
+                .thenReturn(Mono.error(new HttpResponseException("Too many requests", response)));
+
+        Mono<KeyVaultKey> key = azureKeyService.createRsaKey("tppId");
+        EmdThrottledException exception = assertThrows(EmdThrottledException.class, key::block);
+        assertEquals(Duration.ofSeconds(1), exception.getRetryAfter());
+    }
+
+    @Test
+    void testIsCurrentKeyCached_afterFirstFetch() {
+
+        when(keyClient.getKey("tppId"))
+                .thenReturn(Mono.just(keyVaultKey));
+
+        assertFalse(azureKeyService.isCurrentKeyCached("tppId"));
+        azureKeyService.getKey("tppId").block();
+
+        assertTrue(azureKeyService.isCurrentKeyCached("tppId"));
+    }
+
+    @Test
+    void testCreateRsaKey_replacesCachedKey() {
+
+        KeyVaultKey oldKey = mock(KeyVaultKey.class);
+        when(keyClient.getKey("tppId"))
+                .thenReturn(Mono.just(oldKey));
+        when(keyClient.createRsaKey(any(CreateRsaKeyOptions.class)))
+                .thenReturn(Mono.just(keyVaultKey));
+
+        azureKeyService.getKey("tppId").block();
+        azureKeyService.createRsaKey("tppId").block();
+
+        assertSame(keyVaultKey, azureKeyService.getKey("tppId").block());
+        verify(keyClient, times(1)).getKey("tppId");
+    }
+
+    @Test
+    void testInvalidateKey_dropsKeyAndClients() {
+
+        when(keyClient.getKey("tppId"))
+                .thenReturn(Mono.just(keyVaultKey));
+        CryptographyAsyncClient first = azureKeyService.buildCryptographyClient("https://vault/keys/tppId/v1");
+        azureKeyService.getKey("tppId").block();
+
+        azureKeyService.invalidateKey("tppId");
+        azureKeyService.getKey("tppId").block();
+
+        assertNotSame(first, azureKeyService.buildCryptographyClient("https://vault/keys/tppId/v1"));
+        verify(keyClient, times(2)).getKey("tppId");
+    }
+
     @Test
     void testCreateRsaKey() {
 
@@ -154,6 +256,110 @@ class AzureKeyServiceTest {
                         cryptographyClient).block());
     }
 
+    @Test
+    void testWrapKey() {
+
+        byte[] dataKey = "data-key".getBytes();
+        byte[] wrapped = "wrapped".getBytes();
+
+        when(cryptographyClient.wrapKey(KeyWrapAlgorithm.RSA_OAEP_256, dataKey))
+                .thenReturn(Mono.just(new WrapResult(wrapped, KeyWrapAlgorithm.RSA_OAEP_256, "kid")));
+
+        assertEquals(
+                Base64.getEncoder().encodeToString(wrapped),
+                azureKeyService.wrapKey(dataKey, cryptographyClient).block());
+    }
+
+    @Test
+    void testWrapKeyLocally_unwrappableWithPrivateKey() throws Exception {
+
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(2048);
+        KeyPair keyPair = generator.generateKeyPair();
+        when(keyVaultKey.getId()).thenReturn("https://vault/keys/tppId/v1");
+        when(keyVaultKey.getKey()).thenReturn(JsonWebKey.fromRsa(keyPair));
+        byte[] dataKey = "0123456789abcdef0123456789abcdef".getBytes();
+
+        String wrapped = azureKeyService.wrapKeyLocally(dataKey, keyVaultKey).block();
+
+        Cipher cipher = Cipher.getInstance("RSA/ECB/OAEPWithSHA-256AndMGF1Padding");
+        cipher.init(Cipher.DECRYPT_MODE, keyPair.getPrivate(),
+                new OAEPParameterSpec("SHA-256", "MGF1", MGF1ParameterSpec.SHA256, PSource.PSpecified.DEFAULT));
+        assertArrayEquals(dataKey, cipher.doFinal(Base64.getDecoder().decode(wrapped)));
+        verifyNoInteractions(cryptographyClient);
+    }
+
+    @Test
+    void testCreateKeyThenWrapKey_singleKeyVaultCall() throws Exception {
+
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(2048);
+        when(keyVaultKey.getId()).thenReturn("https://vault/keys/tppId/v2");
+        when(keyVaultKey.getKey()).thenReturn(JsonWebKey.fromRsa(generator.generateKeyPair()));
+        when(keyClient.createRsaKey(any(CreateRsaKeyOptions.class)))
+                .thenReturn(Mono.just(keyVaultKey));
+
+        azureKeyService.createKey("tppId").block();
+
+        KeyProvider.WrappedKey wrapped = azureKeyService.wrapKey("tppId", new byte[32]).block();
+        assertNotNull(wrapped);
+        assertEquals("v2", wrapped.keyVersion());
+        verify(keyClient, never()).getKey(anyString());
+    }
+
+    @Test
+    void testUnwrapKey_otherVersion_dropsCachedKey() {
+
+        when(keyVaultKey.getId()).thenReturn("https://mock-vault/keys/tppId/v1");
+        when(keyClient.getKey("tppId"))
+                .thenReturn(Mono.just(keyVaultKey));
+        azureKeyService.getKey("tppId").block();
+
+        azureKeyService.unwrapKey("tppId", "v1", "AAAA");
+        azureKeyService.getKey("tppId").block();
+        verify(keyClient, times(1)).getKey("tppId");
+
+        azureKeyService.unwrapKey("tppId", "v2", "AAAA");
+        azureKeyService.getKey("tppId").block();
+        verify(keyClient, times(2)).getKey("tppId");
+    }
+
+    @Test
+    void testKeyId_addressesTheGivenVersion() {
+
+        assertEquals("https://mock-vault/keys/tppId/v1", azureKeyService.keyId("tppId", "v1"));
+    }
+
+    @Test
+    void testUnwrapKey() {
+
+        byte[] dataKey = "data-key".getBytes();
+        String wrapped = Base64.getEncoder().encodeToString("wrapped".getBytes());
+
+        when(cryptographyClient.unwrapKey(KeyWrapAlgorithm.RSA_OAEP_256, Base64.getDecoder().decode(wrapped)))
+                .thenReturn(Mono.just(new UnwrapResult(dataKey, KeyWrapAlgorithm.RSA_OAEP_256, "kid")));
+
+        assertArrayEquals(
+                dataKey,
+                azureKeyService.unwrapKey(wrapped, cryptographyClient).block());
+    }
+
+    @Test
+    void testUnwrapKey_throttled_mappedWithRetryAfter() {
+
+        String wrapped = Base64.getEncoder().encodeToString("wrapped".getBytes());
+        HttpResponse response = mock(HttpResponse.class);
+        when(response.getStatusCode()).thenReturn(429);
+        when(response.getHeaderValue(HttpHeaderName.RETRY_AFTER)).thenReturn("7");
+
+        when(cryptographyClient.unwrapKey(KeyWrapAlgorithm.RSA_OAEP_256, Base64.getDecoder().decode(wrapped)))
+                .thenReturn(Mono.error(new HttpResponseException("Too many requests", response)));
+
+        Mono<byte[]> unwrap = azureKeyService.unwrapKey(wrapped, cryptographyClient);
+        EmdThrottledException exception = assertThrows(EmdThrottledException.class, unwrap::block);
+        assertEquals(Duration.ofSeconds(7), exception.getRetryAfter());
+    }
+
     @Test
     void testBuildCryptographyClientFromString() {
 
@@ -162,6 +368,14 @@ class AzureKeyServiceTest {
                         "https://vault/keys/test/version"));
     }
 
+    @Test
+    void testBuildCryptographyClient_reusedForSameKeyId() {
+
+        CryptographyAsyncClient first = azureKeyService.buildCryptographyClient("https://vault/keys/test/version");
+
+        assertSame(first, azureKeyService.buildCryptographyClient("https://vault/keys/test/version"));
+    }
+
     @Test
     void testBuildCryptographyClientFromKey() {
 
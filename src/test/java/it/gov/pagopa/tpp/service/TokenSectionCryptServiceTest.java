@@ -1,10 +1,8 @@
 package it.gov.pagopa.tpp.service;
 
-import com.azure.security.keyvault.keys.cryptography.CryptographyAsyncClient;
-import com.azure.security.keyvault.keys.cryptography.models.EncryptionAlgorithm;
-import com.azure.security.keyvault.keys.models.KeyVaultKey;
+import it.gov.pagopa.common.web.exception.EmdEncryptionException;
 import it.gov.pagopa.tpp.model.TokenSection;
-import it.gov.pagopa.tpp.service.keyvault.AzureKeyService;
+import it.gov.pagopa.tpp.service.keyvault.KeyProvider;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -12,27 +10,23 @@ import org.springframework.test.context.bean.override.mockito.MockitoBean;
 import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
 import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.util.concurrent.atomic.AtomicReference;
 
 import static it.gov.pagopa.tpp.utils.TestUtils.*;
-import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.*;
-import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.*;
 
 @ExtendWith(SpringExtension.class)
 @ContextConfiguration(classes = {
-    AzureKeyService.class,
     TokenSectionCryptService.class
 })
 class TokenSectionCryptServiceTest {
 
     @MockitoBean
-    private AzureKeyService azureKeyService;
-
-    @MockitoBean
-    private KeyVaultKey mockKeyVaultKey;
-
-    @MockitoBean
-    private CryptographyAsyncClient mockCryptographyClient;
+    private KeyProvider keyProvider;
 
     @Autowired
     private TokenSectionCryptService tppTokenSectionCryptService;
@@ -41,26 +35,150 @@ class TokenSectionCryptServiceTest {
     void testKeyEncrypt(){
         TokenSection tokenSection = getMockTokenSection();
 
-        when(azureKeyService.buildCryptographyClient(mockKeyVaultKey)).thenReturn(mockCryptographyClient);
-        when(azureKeyService.encrypt(any(byte[].class), eq(EncryptionAlgorithm.RSA_OAEP_256), eq(mockCryptographyClient)))
-            .thenReturn(Mono.just("test"));
+        AtomicReference<byte[]> dataKey = new AtomicReference<>();
+        when(keyProvider.wrapKey(eq("tppId"), any(byte[].class))).thenAnswer(invocation -> {
+            dataKey.set(invocation.getArgument(1));
+            return Mono.just(new KeyProvider.WrappedKey("v1", "wrapped"));
+        });
+
+        Boolean result = tppTokenSectionCryptService.keyEncrypt(tokenSection, "tppId").block();
+
+        assertTrue(result);
+        assertEquals(TokenSectionCryptService.ENVELOPE_VERSION + "v1:wrapped", tokenSection.getWrappedDataKey());
+        assertArrayEquals(new byte[32], dataKey.get());
+        assertNotEquals("test", tokenSection.getPathAdditionalProperties().get("pathKey1"));
+        assertNotEquals("test", tokenSection.getBodyAdditionalProperties().get("bodyKey1"));
+    }
+
+    @Test
+    void testKeyEncryptThenDecrypt_singleUnwrap(){
+        TokenSection tokenSection = getMockTokenSection();
+        AtomicReference<byte[]> dataKey = new AtomicReference<>();
+
+        AtomicReference<byte[]> unwrapped = new AtomicReference<>();
+
+        when(keyProvider.wrapKey(eq("tppId"), any(byte[].class))).thenAnswer(invocation -> {
+            dataKey.set(((byte[]) invocation.getArgument(1)).clone());
+            return Mono.just(new KeyProvider.WrappedKey("v1", "wrapped"));
+        });
+        when(keyProvider.unwrapKey("tppId", "v1", "wrapped")).thenAnswer(invocation -> {
+            unwrapped.set(dataKey.get().clone());
+            return Mono.just(unwrapped.get());
+        });
 
-        Boolean result = tppTokenSectionCryptService.keyEncrypt(tokenSection, mockKeyVaultKey).block();
+        tppTokenSectionCryptService.keyEncrypt(tokenSection, "tppId").block();
+        Boolean result = tppTokenSectionCryptService.keyDecrypt(tokenSection, "tppId").block();
 
         assertTrue(result);
+        assertEquals("test", tokenSection.getPathAdditionalProperties().get("pathKey1"));
+        assertEquals("test", tokenSection.getBodyAdditionalProperties().get("bodyKey1"));
+        assertNull(tokenSection.getWrappedDataKey());
+        assertArrayEquals(new byte[32], unwrapped.get());
+        verify(keyProvider, times(1)).unwrapKey(anyString(), anyString(), anyString());
+        verify(keyProvider, never()).decrypt(anyString(), anyString());
+    }
+
+    @Test
+    void testKeyDecrypt_envelopeWithoutKeyVersion_usesCurrentKey(){
+        TokenSection tokenSection = getMockTokenSection();
+        AtomicReference<byte[]> dataKey = new AtomicReference<>();
+
+        when(keyProvider.wrapKey(eq("tppId"), any(byte[].class))).thenAnswer(invocation -> {
+            dataKey.set(((byte[]) invocation.getArgument(1)).clone());
+            return Mono.just(new KeyProvider.WrappedKey("v1", "wrapped"));
+        });
+        when(keyProvider.unwrapKey("tppId", null, "wrapped"))
+            .thenAnswer(invocation -> Mono.just(dataKey.get().clone()));
+
+        tppTokenSectionCryptService.keyEncrypt(tokenSection, "tppId").block();
+        tokenSection.setWrappedDataKey(TokenSectionCryptService.ENVELOPE_VERSION + "wrapped");
+
+        assertTrue(tppTokenSectionCryptService.keyDecrypt(tokenSection, "tppId").block());
+        assertEquals("test", tokenSection.getPathAdditionalProperties().get("pathKey1"));
+    }
+
+    @Test
+    void testKeyDecrypt_unwrapFails_error(){
+        TokenSection tokenSection = getMockTokenSection();
+        tokenSection.setWrappedDataKey(TokenSectionCryptService.ENVELOPE_VERSION + "v1:wrapped");
+
+        when(keyProvider.unwrapKey("tppId", "v1", "wrapped"))
+            .thenReturn(Mono.error(new EmdEncryptionException("unwrap failed", true, null)));
+
+        StepVerifier.create(tppTokenSectionCryptService.keyDecrypt(tokenSection, "tppId"))
+            .expectError(EmdEncryptionException.class)
+            .verify();
+        assertNotNull(tokenSection.getWrappedDataKey());
     }
 
     @Test
-    void testKeyDecrypt(){
+    void testKeyDecrypt_legacyFormat(){
         TokenSection tokenSection = getMockTokenSection();
 
-        when(azureKeyService.getKey("tppId")).thenReturn(Mono.just(mockKeyVaultKey));
-        when(azureKeyService.buildCryptographyClient(mockKeyVaultKey)).thenReturn(mockCryptographyClient);
-        when(azureKeyService.decrypt(anyString(), eq(EncryptionAlgorithm.RSA_OAEP_256), eq(mockCryptographyClient)))
-            .thenReturn(Mono.just("test"));
+        when(keyProvider.decrypt(eq("tppId"), anyString()))
+            .thenReturn(Mono.just("decrypted"));
 
         Boolean result = tppTokenSectionCryptService.keyDecrypt(tokenSection, "tppId").block();
 
         assertTrue(result);
+        assertEquals("decrypted", tokenSection.getPathAdditionalProperties().get("pathKey1"));
+        assertEquals("decrypted", tokenSection.getBodyAdditionalProperties().get("bodyKey1"));
+        verify(keyProvider, never()).unwrapKey(any(), any(), any());
+    }
+
+    @Test
+    void testKeyDecrypt_unsupportedVersion(){
+        TokenSection tokenSection = getMockTokenSection();
+        tokenSection.setWrappedDataKey("v9:wrapped");
+
+        StepVerifier.create(tppTokenSectionCryptService.keyDecrypt(tokenSection, "tppId"))
+            .expectError(EmdEncryptionException.class)
+            .verify();
+    }
+
+    @Test
+    void testKeyProviderCallsFor_versionedEnvelope_singleUnwrap(){
+        TokenSection tokenSection = getMockTokenSection();
+        tokenSection.setWrappedDataKey(TokenSectionCryptService.ENVELOPE_VERSION + "v1:wrapped");
+        when(keyProvider.isCurrentKeyCached("tppId")).thenReturn(false);
+
+        assertEquals(1, tppTokenSectionCryptService.keyProviderCallsFor(tokenSection, "tppId"));
+    }
+
+    @Test
+    void testKeyProviderCallsFor_unversionedEnvelope_chargesKeyReadWhenNotCached(){
+        TokenSection tokenSection = getMockTokenSection();
+        tokenSection.setWrappedDataKey(TokenSectionCryptService.ENVELOPE_VERSION + "wrapped");
+
+        when(keyProvider.isCurrentKeyCached("tppId")).thenReturn(false);
+        assertEquals(2, tppTokenSectionCryptService.keyProviderCallsFor(tokenSection, "tppId"));
+
+        when(keyProvider.isCurrentKeyCached("tppId")).thenReturn(true);
+        assertEquals(1, tppTokenSectionCryptService.keyProviderCallsFor(tokenSection, "tppId"));
+    }
+
+    @Test
+    void testKeyProviderCallsFor_legacyFormat_onePerPropertyPlusKeyRead(){
+        TokenSection tokenSection = getMockTokenSection();
+        int properties = tokenSection.getPathAdditionalProperties().size() + tokenSection.getBodyAdditionalProperties().size();
+        when(keyProvider.isCurrentKeyCached("tppId")).thenReturn(false);
+
+        assertEquals(properties + 1, tppTokenSectionCryptService.keyProviderCallsFor(tokenSection, "tppId"));
+    }
+
+    @Test
+    void testFingerprintOf_changesWithEnvelope(){
+        TokenSection tokenSection = getMockTokenSection();
+        tokenSection.setWrappedDataKey(TokenSectionCryptService.ENVELOPE_VERSION + "v1:wrapped");
+        TokenSection sameEnvelope = getMockTokenSection();
+        sameEnvelope.setWrappedDataKey(TokenSectionCryptService.ENVELOPE_VERSION + "v1:wrapped");
+        TokenSection reencrypted = getMockTokenSection();
+        reencrypted.setWrappedDataKey(TokenSectionCryptService.ENVELOPE_VERSION + "v1:rewrapped");
+
+        String fingerprint = TokenSectionCryptService.fingerprintOf(tokenSection);
+
+        assertEquals(fingerprint, TokenSectionCryptService.fingerprintOf(sameEnvelope));
+        assertNotEquals(fingerprint, TokenSectionCryptService.fingerprintOf(reencrypted));
+        assertNull(TokenSectionCryptService.fingerprintOf(null));
     }
-}
\ No newline at end of file
+}
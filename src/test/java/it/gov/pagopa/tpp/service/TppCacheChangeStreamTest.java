@@ -0,0 +1,201 @@
+package it.gov.pagopa.tpp.service;
+
+import com.mongodb.client.model.changestream.OperationType;
+import it.gov.pagopa.tpp.model.Tpp;
+import org.bson.BsonDocument;
+import org.bson.BsonString;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.redisson.api.RBucketReactive;
+import org.redisson.api.RScript;
+import org.redisson.api.RScriptReactive;
+import org.redisson.api.RedissonReactiveClient;
+import org.redisson.client.codec.StringCodec;
+import org.springframework.data.mongodb.core.ChangeStreamEvent;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static it.gov.pagopa.tpp.utils.TestUtils.getMockTpp;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.RETURNS_DEEP_STUBS;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+@SuppressWarnings("unchecked")
+class TppCacheChangeStreamTest {
+
+    private static final BsonDocument RESUME_TOKEN = new BsonDocument("_data", new BsonString("token"));
+
+    private ReactiveMongoTemplate mongoTemplate;
+    private RedissonReactiveClient redissonClient;
+    private RBucketReactive<String> lease;
+    private RBucketReactive<String> resumeToken;
+    private RScriptReactive script;
+    private final AtomicLong clock = new AtomicLong();
+    private TppMapService tppMapService;
+    private TppCacheChangeStream changeStream;
+
+    @BeforeEach
+    void setUp() {
+        mongoTemplate = mock(ReactiveMongoTemplate.class, RETURNS_DEEP_STUBS);
+        redissonClient = mock(RedissonReactiveClient.class);
+        lease = mock(RBucketReactive.class);
+        resumeToken = mock(RBucketReactive.class);
+        script = mock(RScriptReactive.class);
+        tppMapService = mock(TppMapService.class);
+        when(redissonClient.<String>getBucket(TppCacheChangeStream.LEADER_KEY, StringCodec.INSTANCE)).thenReturn(lease);
+        when(redissonClient.<String>getBucket(TppCacheChangeStream.RESUME_TOKEN_KEY, StringCodec.INSTANCE)).thenReturn(resumeToken);
+        when(redissonClient.getScript(StringCodec.INSTANCE)).thenReturn(script);
+        when(lease.setIfAbsent(anyString(), any(Duration.class))).thenReturn(Mono.just(true));
+        when(resumeToken.get()).thenReturn(Mono.empty());
+        when(resumeToken.set(anyString())).thenReturn(Mono.empty());
+        when(tppMapService.reconcileInMap(any())).thenReturn(Mono.just(true));
+        when(tppMapService.sweepRemoved()).thenReturn(Mono.empty());
+        changeStream = new TppCacheChangeStream(mongoTemplate, redissonClient, tppMapService, true, Duration.ofSeconds(30), clock::get);
+    }
+
+    @Test
+    void heartbeat_disabled_doesNothing() {
+        changeStream = new TppCacheChangeStream(mongoTemplate, redissonClient, tppMapService, false, Duration.ofSeconds(30));
+
+        changeStream.heartbeat();
+
+        verifyNoInteractions(redissonClient, tppMapService);
+    }
+
+    /**
+     * The leader applies updates through the reconciliation and stores the resume token of each event.
+     */
+    @Test
+    void heartbeat_leader_appliesUpdateAndStoresResumeToken() {
+        Tpp tpp = getMockTpp();
+        stubEvents(Flux.just(event(OperationType.UPDATE, tpp)));
+
+        changeStream.heartbeat();
+
+        verify(tppMapService).reconcileInMap(tpp);
+        verify(resumeToken).set(RESUME_TOKEN.toJson());
+    }
+
+    /**
+     * Delete events carry no tppId, so they trigger the sweep of the cached entries.
+     */
+    @Test
+    void heartbeat_leader_deleteTriggersSweep() {
+        stubEvents(Flux.just(event(OperationType.DELETE, null)));
+
+        changeStream.heartbeat();
+
+        verify(tppMapService).sweepRemoved();
+        verify(tppMapService, never()).reconcileInMap(any());
+    }
+
+    @Test
+    void heartbeat_leaseHeldByAnotherPod_doesNotFollow() {
+        when(lease.setIfAbsent(anyString(), any(Duration.class))).thenReturn(Mono.just(false));
+        stubRenewal(false);
+        stubEvents(Flux.never());
+
+        changeStream.heartbeat();
+
+        assertFalse(changeStream.isFollowing());
+        verifyNoInteractions(tppMapService);
+    }
+
+    /**
+     * A pod that loses the lease stops following the stream.
+     */
+    @Test
+    void heartbeat_leaseLost_stopsFollowing() {
+        stubEvents(Flux.never());
+        changeStream.heartbeat();
+        assertTrue(changeStream.isFollowing());
+
+        when(lease.setIfAbsent(anyString(), any(Duration.class))).thenReturn(Mono.just(false));
+        stubRenewal(false);
+        changeStream.heartbeat();
+
+        assertFalse(changeStream.isFollowing());
+    }
+
+    /**
+     * The leader renews its lease with the compare-and-expire script and keeps following the stream.
+     */
+    @Test
+    void heartbeat_leaseRenewed_keepsFollowing() {
+        stubEvents(Flux.never());
+        changeStream.heartbeat();
+
+        when(lease.setIfAbsent(anyString(), any(Duration.class))).thenReturn(Mono.just(false));
+        stubRenewal(true);
+        changeStream.heartbeat();
+
+        assertTrue(changeStream.isFollowing());
+        verify(script).eval(eq(RScript.Mode.READ_WRITE), anyString(), eq(RScript.ReturnType.BOOLEAN),
+                eq(List.of(TppCacheChangeStream.LEADER_KEY)), anyString(), eq("30000"));
+        verify(lease, never()).expire(any(Duration.class));
+    }
+
+    /**
+     * Events arriving after the lease could have expired without being renewed are not applied.
+     */
+    @Test
+    void heartbeat_leaseNotRenewedInTime_stopsConsuming() {
+        Sinks.Many<ChangeStreamEvent<Tpp>> events = Sinks.many().unicast().onBackpressureBuffer();
+        stubEvents(events.asFlux());
+        changeStream.heartbeat();
+
+        clock.set(Duration.ofSeconds(30).toNanos());
+        events.tryEmitNext(event(OperationType.UPDATE, getMockTpp()));
+
+        verify(tppMapService, never()).reconcileInMap(any());
+        verify(resumeToken, never()).set(anyString());
+        assertFalse(changeStream.isFollowing());
+    }
+
+    /**
+     * A failed stream drops its resume token, so that the next leader starts from the current time.
+     */
+    @Test
+    void heartbeat_streamFails_resumeTokenDropped() {
+        when(resumeToken.delete()).thenReturn(Mono.just(true));
+        stubEvents(Flux.error(new IllegalStateException("resume token not in oplog")));
+
+        changeStream.heartbeat();
+
+        verify(resumeToken).delete();
+        assertFalse(changeStream.isFollowing());
+    }
+
+    private void stubRenewal(boolean renewed) {
+        when(script.<Boolean>eval(any(RScript.Mode.class), anyString(), any(RScript.ReturnType.class), anyList(),
+                anyString(), anyString())).thenReturn(Mono.just(renewed));
+    }
+
+    private void stubEvents(Flux<ChangeStreamEvent<Tpp>> events) {
+        when(mongoTemplate.changeStream(Tpp.class).watchCollection(anyString()).withOptions(any()).listen())
+                .thenReturn(events);
+    }
+
+    private static ChangeStreamEvent<Tpp> event(OperationType operation, Tpp body) {
+        ChangeStreamEvent<Tpp> event = mock(ChangeStreamEvent.class);
+        when(event.getOperationType()).thenReturn(operation);
+        when(event.getBody()).thenReturn(body);
+        when(event.getResumeToken()).thenReturn(RESUME_TOKEN);
+        return event;
+    }
+}
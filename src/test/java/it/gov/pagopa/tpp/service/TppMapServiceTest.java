@@ -1,31 +1,66 @@
 package it.gov.pagopa.tpp.service;
 
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import it.gov.pagopa.common.configuration.RedisConfig;
+import it.gov.pagopa.tpp.dto.mapper.TppObjectToDTOMapper;
 import it.gov.pagopa.tpp.model.TokenSection;
 import it.gov.pagopa.tpp.model.Tpp;
 import it.gov.pagopa.tpp.repository.TppRepository;
+import it.gov.pagopa.tpp.repository.TppWhitelistRepository;
+import it.gov.pagopa.tpp.service.cache.TppBinaryCodec;
+import it.gov.pagopa.tpp.service.cache.TppCacheHealthIndicator;
+import it.gov.pagopa.tpp.service.cache.TppNearCache;
+import it.gov.pagopa.tpp.service.cache.TppNegativeCache;
+import it.gov.pagopa.tpp.service.cache.TppRegistry;
+import it.gov.pagopa.tpp.service.cache.TppResponseCache;
+import it.gov.pagopa.tpp.service.cache.TppShardedMap;
+import it.gov.pagopa.tpp.service.cache.TppTemplateCache;
+import it.gov.pagopa.tpp.service.cache.TppWhitelistCache;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.mockito.junit.jupiter.MockitoSettings;
 import org.mockito.quality.Strictness;
+import org.redisson.api.RBucketReactive;
 import org.redisson.api.RLockReactive;
 import org.redisson.api.RMapReactive;
+import org.redisson.api.RTopicReactive;
 import org.redisson.api.RedissonReactiveClient;
+import org.redisson.api.listener.MessageListener;
+import org.redisson.client.codec.Codec;
+import org.redisson.client.codec.StringCodec;
+import org.redisson.codec.JsonJacksonCodec;
+import org.springframework.boot.health.contributor.Status;
 import org.springframework.test.context.bean.override.mockito.MockitoBean;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
 import reactor.test.StepVerifier;
 
 import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.TimeUnit;
 
 import static it.gov.pagopa.tpp.utils.TestUtils.*;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.*;
 import static org.mockito.Mockito.*;
 
@@ -39,49 +74,115 @@ class TppMapServiceTest {
 
     private RMapReactive<String, Tpp> tppMap;
 
+    private RMapReactive<String, Tpp> staging;
+
     @Mock
     private RLockReactive lock;
 
+    @Mock
+    private RTopicReactive topic;
+
+    @Mock
+    private RBucketReactive<String> watermark;
+
     @MockitoBean
     private RedissonReactiveClient redissonClient;
 
     @MockitoBean
     private TppRepository tppRepository;
 
+    @MockitoBean
+    private TppWhitelistRepository whitelistRepository;
+
     @MockitoBean
     private TokenSectionCryptService tokenSectionCryptService;
 
+    private TppWhitelistCache whitelistCache;
+
     private TppMapService tppMapService;
 
+    private SimpleMeterRegistry meterRegistry;
+
+    private TppCacheHealthIndicator healthIndicator;
+
     private Tpp tpp;
 
+    private Tpp cachedTpp;
+
     @BeforeEach
     void setUp() {
         tpp = getMockTpp();
+        tpp.setWhitelistRecipient(List.of(MOCK_RECIPIENT));
+        tpp.setTokenSectionFingerprint(TokenSectionCryptService.fingerprintOf(tpp.getTokenSection()));
+        cachedTpp = tpp.toBuilder().whitelistRecipient(null).build();
         tppMap = mock(RMapReactive.class);
+        staging = mock(RMapReactive.class);
         MockitoAnnotations.openMocks(this);
 
         // Lock setup (same pattern as BloomFilterInitializerTest in emd-citizen)
         when(redissonClient.getLock(LOCK_KEY)).thenReturn(lock);
         when(lock.tryLock(0, -1, TimeUnit.SECONDS)).thenReturn(Mono.just(true));
         when(lock.forceUnlock()).thenReturn(Mono.just(true));
+        when(lock.isLocked()).thenReturn(Mono.just(true));
 
         // Map setup — isExists() defaults to false (fresh cache) for populateMap tests
         when(tppMap.isExists()).thenReturn(Mono.just(false));
         when(tppMap.put(anyString(), any(Tpp.class))).thenReturn(Mono.empty());
         when(tppMap.get(anyString())).thenReturn(Mono.empty());
+        when(tppMap.getAll(anySet())).thenReturn(Mono.just(Map.of()));
         when(tppMap.remove(anyString())).thenReturn(Mono.empty());
         when(tppMap.delete()).thenReturn(Mono.just(true));
         when(tppMap.putAll(any())).thenReturn(Mono.empty());
         when(tppMap.readAllKeySet()).thenReturn(Mono.just(new HashSet<>()));
         when(tppMap.fastRemove(any())).thenReturn(Mono.just(0L));
 
+        // Staging generation, renamed over the live hash on population and reset
+        when(tppMap.getName()).thenReturn(RedisConfig.TPP_CACHE_MAP_KEY);
+        when(staging.delete()).thenReturn(Mono.just(true));
+        when(staging.putAll(any())).thenReturn(Mono.empty());
+        when(staging.rename(anyString())).thenReturn(Mono.empty());
+
+        // Reconciliation watermark, absent until the first population
+        when(redissonClient.<String>getBucket(TppMapService.WATERMARK_KEY, StringCodec.INSTANCE)).thenReturn(watermark);
+        when(watermark.get()).thenReturn(Mono.empty());
+        when(watermark.set(anyString())).thenReturn(Mono.empty());
+
+        // Near-cache invalidation topic
+        when(redissonClient.getTopic(anyString(), any(Codec.class))).thenReturn(topic);
+        when(topic.publish(any())).thenReturn(Mono.just(1L));
+        when(topic.getMessages(String.class)).thenReturn(Flux.never());
+        when(topic.addListener(eq(String.class), any(MessageListener.class))).thenReturn(Mono.just(1));
+        when(topic.removeListener(anyInt())).thenReturn(Mono.empty());
+
+        // Whitelist sets
+        whitelistCache = mock(TppWhitelistCache.class);
+        when(whitelistCache.replace(anyString(), any())).thenReturn(Mono.empty());
+        when(whitelistCache.rebuild(any())).thenReturn(Mono.empty());
+        when(whitelistCache.deleteAll(any())).thenReturn(Mono.empty());
+        when(whitelistCache.members(anyString())).thenReturn(Mono.just(List.of(MOCK_RECIPIENT)));
+        when(whitelistCache.whitelisting(any(), anyString())).thenReturn(Mono.just(Set.of()));
+        when(whitelistCache.missing(any())).thenReturn(Mono.just(Set.of()));
+
         // Repository and crypto
         when(tppRepository.findAll()).thenReturn(Flux.just(tpp));
+        when(tppRepository.findAllWhitelistOfTPPs()).thenReturn(Flux.empty());
+        when(tppRepository.findByLastUpdateDateGreaterThanEqual(any())).thenReturn(Flux.empty());
+        when(tppRepository.findStatesByTppIdIn(any())).thenReturn(Flux.empty());
+        when(tppRepository.unsetWhitelistRecipient(anyString())).thenReturn(Mono.empty());
+        when(whitelistRepository.findAll()).thenReturn(Flux.empty());
+        when(whitelistRepository.findByTppIdIn(any())).thenReturn(Flux.empty());
+        when(whitelistRepository.insertAll(anyString(), any())).thenReturn(Mono.empty());
         when(tokenSectionCryptService.keyDecrypt(any(TokenSection.class), anyString()))
                 .thenReturn(Mono.just(true));
 
-        tppMapService = new TppMapService(tppRepository, tokenSectionCryptService, redissonClient, tppMap, Duration.ofMillis(100));
+        TppRegistry registry = new TppRegistry(mock(TppObjectToDTOMapper.class), 1000, Duration.ofMinutes(1));
+        TppNearCache nearCache = new TppNearCache(redissonClient, registry, new TppNegativeCache(100, Duration.ofMinutes(1)), mock(TppResponseCache.class), mock(TppTemplateCache.class), new SimpleMeterRegistry(), 100, Duration.ofMinutes(1));
+        meterRegistry = new SimpleMeterRegistry();
+        healthIndicator = new TppCacheHealthIndicator();
+        tppMapService = new TppMapService(tppRepository, whitelistRepository, tokenSectionCryptService, redissonClient,
+                new TppShardedMap(List.of(tppMap), List.of(staging)), nearCache, whitelistCache,
+                healthIndicator, new TppSnapshotDecryptor(tokenSectionCryptService, meterRegistry, 4, 1000, 3), meterRegistry,
+                Duration.ofSeconds(1), Duration.ofSeconds(1));
         tppMapService.resetCache();
     }
 
@@ -96,10 +197,43 @@ class TppMapServiceTest {
         tppMapService.addToMap(tpp).block();
 
         StepVerifier.create(tppMapService.getFromMap(tpp.getTppId()))
-                .expectNext(tpp)
+                .expectNext(cachedTpp)
                 .verifyComplete();
     }
 
+    /**
+     * The whitelist must be written to its own set before the entry, and the cached entry
+     * must not carry it, while the caller's instance is left untouched.
+     */
+    @Test
+    void addToMap_whitelistStoredInSetAndStrippedFromEntry() {
+        clearInvocations(tppMap, whitelistCache);
+
+        StepVerifier.create(tppMapService.addToMap(tpp))
+                .expectNext(true)
+                .verifyComplete();
+
+        InOrder inOrder = inOrder(whitelistCache, tppMap);
+        inOrder.verify(whitelistCache).replace(tpp.getTppId(), List.of(MOCK_RECIPIENT));
+        inOrder.verify(tppMap).put(eq(tpp.getTppId()), argThat(cached -> cached.getWhitelistRecipient() == null));
+        assertEquals(List.of(MOCK_RECIPIENT), tpp.getWhitelistRecipient());
+    }
+
+    /**
+     * A TPP read without its whitelist must leave the whitelist set untouched.
+     */
+    @Test
+    void addToMap_noWhitelist_setUntouched() {
+        clearInvocations(whitelistCache);
+
+        StepVerifier.create(tppMapService.addToMap(cachedTpp))
+                .expectNext(true)
+                .verifyComplete();
+
+        verify(whitelistCache, never()).replace(anyString(), any());
+        verify(tppMap).put(tpp.getTppId(), cachedTpp);
+    }
+
     /**
      * When Azure Key Vault decrypt throws, addToMap must swallow the error and return false.
      */
@@ -131,7 +265,7 @@ class TppMapServiceTest {
                 .expectNext(true)
                 .verifyComplete();
 
-        verify(tppMap).put(tpp.getTppId(), tpp);
+        verify(tppMap).put(tpp.getTppId(), cachedTpp);
         // keyDecrypt must NOT be called — tpp is already decrypted
         verify(tokenSectionCryptService, never()).keyDecrypt(any(), any());
     }
@@ -149,26 +283,555 @@ class TppMapServiceTest {
                 .verifyComplete();
     }
 
+    // -------------------------------------------------------------------------
+    // refreshInMap
+    // -------------------------------------------------------------------------
+
+    /**
+     * When the TPP is cached, refreshInMap must reuse the cached (decrypted) token section
+     * instead of calling keyDecrypt on the one read back from the DB.
+     */
+    @Test
+    void refreshInMap_cached_reusesTokenSectionWithoutDecrypt() {
+        TokenSection plain = new TokenSection("application/json", Map.of("pathKey1", "plain"), Map.of());
+        when(tppMap.get(tpp.getTppId())).thenReturn(Mono.just(cachedTpp.toBuilder().tokenSection(plain).build()));
+        Tpp updated = tpp.toBuilder().businessName("updatedBusinessName").build();
+        clearInvocations(tppMap, tokenSectionCryptService);
+
+        StepVerifier.create(tppMapService.refreshInMap(updated))
+                .expectNext(true)
+                .verifyComplete();
+
+        assertEquals(plain, updated.getTokenSection());
+        verify(tppMap).put(eq(tpp.getTppId()), argThat(entry ->
+                entry.getTokenSection() == plain && "updatedBusinessName".equals(entry.getBusinessName())));
+        verify(tokenSectionCryptService, never()).keyDecrypt(any(), any());
+    }
+
+    /**
+     * A cached entry decrypted from an older token section than the one just written, e.g. by a pod that has
+     * not caught up yet, must not be carried over: the new token section is decrypted instead.
+     */
+    @Test
+    void refreshInMap_cachedFromOlderTokenSection_decrypts() {
+        TokenSection stalePlain = new TokenSection("application/json", Map.of("pathKey1", "old"), Map.of());
+        when(tppMap.get(tpp.getTppId())).thenReturn(Mono.just(cachedTpp.toBuilder().tokenSection(stalePlain).build()));
+        TokenSection newer = new TokenSection("application/json", new HashMap<>(Map.of("pathKey1", "newCiphertext")), new HashMap<>(), "v2:1:newWrappedKey");
+        Tpp updated = tpp.toBuilder().tokenSection(newer).lastUpdateDate(LocalDateTime.now()).build();
+        String newerFingerprint = TokenSectionCryptService.fingerprintOf(newer);
+        clearInvocations(tppMap, tokenSectionCryptService);
+
+        StepVerifier.create(tppMapService.refreshInMap(updated))
+                .expectNext(true)
+                .verifyComplete();
+
+        verify(tokenSectionCryptService).keyDecrypt(newer, tpp.getTppId());
+        verify(tppMap).put(eq(tpp.getTppId()), argThat(entry ->
+                entry.getTokenSection() == newer && newerFingerprint.equals(entry.getTokenSectionFingerprint())));
+    }
+
+    /**
+     * When the TPP is not cached, refreshInMap must fall back to decrypting its token section.
+     */
+    @Test
+    void refreshInMap_notCached_decrypts() {
+        clearInvocations(tppMap, tokenSectionCryptService);
+
+        StepVerifier.create(tppMapService.refreshInMap(tpp))
+                .expectNext(true)
+                .verifyComplete();
+
+        verify(tokenSectionCryptService).keyDecrypt(tpp.getTokenSection(), tpp.getTppId());
+        verify(tppMap).put(tpp.getTppId(), cachedTpp);
+    }
+
+    /**
+     * A cached entry written in an unknown format version is read as a miss and evicted, so the TPP is
+     * decrypted again from the database copy and cached afresh.
+     */
+    @Test
+    void refreshInMap_unknownVersionEntry_fallsBackToDb() {
+        when(tppMap.get(tpp.getTppId())).thenReturn(Mono.error(unknownVersionFailure()));
+        clearInvocations(tppMap, tokenSectionCryptService);
+
+        StepVerifier.create(tppMapService.refreshInMap(tpp))
+                .expectNext(true)
+                .verifyComplete();
+
+        verify(tppMap).fastRemove(tpp.getTppId());
+        verify(tokenSectionCryptService).keyDecrypt(tpp.getTokenSection(), tpp.getTppId());
+        verify(tppMap).put(tpp.getTppId(), cachedTpp);
+    }
+
+    /**
+     * A multi-entry read failing on an unknown format version reports the unreadable entry as missing.
+     */
+    @Test
+    void getAllFromMap_unknownVersionEntry_reportedMissing() {
+        when(tppMap.getAll(anySet())).thenReturn(Mono.error(unknownVersionFailure()));
+        when(tppMap.get("tppOk")).thenReturn(Mono.just(cachedTpp.toBuilder().tppId("tppOk").build()));
+        when(tppMap.get("tppBad")).thenReturn(Mono.error(unknownVersionFailure()));
+
+        StepVerifier.create(tppMapService.getAllFromMap(List.of("tppOk", "tppBad")))
+                .assertNext(lookup -> {
+                    assertEquals(Set.of("tppOk"), lookup.hits().keySet());
+                    assertEquals(Set.of("tppBad"), lookup.missing());
+                })
+                .verifyComplete();
+
+        verify(tppMap).fastRemove("tppBad");
+    }
+
+    /**
+     * The error raised by the codec on a binary entry of an unknown format version.
+     */
+    private static Throwable unknownVersionFailure() {
+        TppBinaryCodec codec = new TppBinaryCodec(new JsonJacksonCodec(), true);
+        ByteBuf payload = Unpooled.wrappedBuffer(new byte[]{0, 99});
+        try {
+            codec.getValueDecoder().decode(payload, null);
+        } catch (Exception e) {
+            return e;
+        }
+        throw new AssertionError("An unknown version must not be decoded");
+    }
+
     // -------------------------------------------------------------------------
     // resetCache — stale key eviction
     // -------------------------------------------------------------------------
 
     /**
-     * When Redis contains a key that is no longer active in MongoDB,
-     * performReset must call fastRemove to evict it.
+     * The reset must write the new generation to the staging hash and rename it over the live one,
+     * never writing into the live hash nor evicting its keys one by one.
      */
     @Test
-    void resetCache_staleKeyInRedis_isEvicted() {
-        // Redis currently has "staleKey", but DB only returns the active tpp (no "staleKey")
-        when(tppMap.readAllKeySet()).thenReturn(Mono.just(new HashSet<>(Set.of("staleKey"))));
-        clearInvocations(tppMap);
+    void resetCache_writesStagingThenRenamesOverLiveKey() {
+        clearInvocations(tppMap, staging);
+
+        tppMapService.resetCache();
+
+        InOrder inOrder = inOrder(staging);
+        inOrder.verify(staging).delete();
+        inOrder.verify(staging).putAll(argThat(map -> map.containsKey(tpp.getTppId())));
+        inOrder.verify(staging).rename(RedisConfig.TPP_CACHE_MAP_KEY);
+        verify(tppMap, never()).putAll(any());
+        verify(tppMap, never()).fastRemove(any());
+    }
+
+    /**
+     * Large snapshots must be written in chunks rather than with a single command.
+     */
+    @Test
+    void resetCache_largeSnapshot_writtenInChunks() {
+        List<Tpp> tpps = new ArrayList<>();
+        for (int i = 0; i <= TppMapService.WRITE_CHUNK_SIZE; i++) {
+            tpps.add(getMockTpp("tpp" + i, true));
+        }
+        when(tppRepository.findAll()).thenReturn(Flux.fromIterable(tpps));
+        clearInvocations(staging);
+
+        tppMapService.resetCache();
+
+        verify(staging).putAll(argThat(map -> map.size() == TppMapService.WRITE_CHUNK_SIZE));
+        verify(staging).putAll(argThat(map -> map.size() == 1));
+        verify(staging, times(1)).rename(RedisConfig.TPP_CACHE_MAP_KEY);
+    }
+
+    /**
+     * TPPs updated while the snapshot was being built must be cached again after the swap.
+     */
+    @Test
+    void resetCache_tppUpdatedDuringRebuild_cachedAgainAfterSwap() {
+        Tpp updatedTpp = getMockTpp("updatedTpp", true);
+        when(tppRepository.findByLastUpdateDateGreaterThanEqual(any())).thenReturn(Flux.just(updatedTpp));
+        clearInvocations(tppMap, staging);
+
+        tppMapService.resetCache();
+
+        InOrder inOrder = inOrder(staging, tppMap);
+        inOrder.verify(staging).rename(RedisConfig.TPP_CACHE_MAP_KEY);
+        inOrder.verify(tppMap).put(eq("updatedTpp"), any(Tpp.class));
+    }
+
+    // -------------------------------------------------------------------------
+    // reconcile
+    // -------------------------------------------------------------------------
+
+    @Test
+    void resetCache_recordsWatermark() {
+        clearInvocations(watermark);
+
+        tppMapService.resetCache();
+
+        verify(watermark).set(anyString());
+    }
+
+    /**
+     * Without a watermark the reconciliation only records one, without reading the database.
+     */
+    @Test
+    void reconcile_noWatermark_recordsBaselineOnly() {
+        clearInvocations(tppRepository, watermark);
+
+        tppMapService.reconcile();
+
+        verify(watermark).set(anyString());
+        verify(tppRepository, never()).findByLastUpdateDateGreaterThanEqual(any());
+    }
+
+    /**
+     * A TPP updated since the watermark is cached again, and the watermark moves to its update date.
+     */
+    @Test
+    void reconcile_updatedTpp_cachedAgainAndWatermarkAdvanced() {
+        LocalDateTime since = LocalDateTime.of(2026, 1, 1, 0, 0);
+        LocalDateTime updatedAt = since.plusMinutes(5);
+        when(watermark.get()).thenReturn(Mono.just(since.toString()));
+        when(tppRepository.findByLastUpdateDateGreaterThanEqual(any()))
+                .thenReturn(Flux.just(tpp.toBuilder().lastUpdateDate(updatedAt).build()));
+        clearInvocations(tppMap, tokenSectionCryptService, tppRepository);
+
+        tppMapService.reconcile();
+
+        verify(tppRepository).findByLastUpdateDateGreaterThanEqual(since.minusMinutes(1));
+        verify(tokenSectionCryptService).keyDecrypt(any(TokenSection.class), eq(tpp.getTppId()));
+        verify(tppMap).put(eq(tpp.getTppId()), any(Tpp.class));
+        verify(watermark).set(updatedAt.toString());
+    }
+
+    /**
+     * A TPP whose cached entry already carries its update date is neither decrypted nor written again.
+     */
+    @Test
+    void reconcile_alreadyCachedVersion_skipsDecrypt() {
+        LocalDateTime since = LocalDateTime.of(2026, 1, 1, 0, 0);
+        Tpp updated = tpp.toBuilder().lastUpdateDate(since).build();
+        when(watermark.get()).thenReturn(Mono.just(since.toString()));
+        when(tppRepository.findByLastUpdateDateGreaterThanEqual(any())).thenReturn(Flux.just(updated));
+        when(tppMap.getAll(anySet())).thenReturn(Mono.just(Map.of(tpp.getTppId(), cachedTpp.toBuilder().lastUpdateDate(since).build())));
+        clearInvocations(tppMap, tokenSectionCryptService);
+
+        tppMapService.reconcile();
+
+        verify(tokenSectionCryptService, never()).keyDecrypt(any(), any());
+        verify(tppMap, never()).put(anyString(), any(Tpp.class));
+    }
+
+    /**
+     * An entry cached right after a write keeps the clock's precision, while the database returns
+     * milliseconds: it is still recognised as the same version.
+     */
+    @Test
+    void reconcile_cachedVersionWithFinerPrecision_skipsDecrypt() {
+        LocalDateTime since = LocalDateTime.of(2026, 1, 1, 0, 0);
+        LocalDateTime written = since.plusNanos(123_456_789);
+        Tpp stored = tpp.toBuilder().lastUpdateDate(written.truncatedTo(ChronoUnit.MILLIS)).build();
+        when(watermark.get()).thenReturn(Mono.just(since.toString()));
+        when(tppRepository.findByLastUpdateDateGreaterThanEqual(any())).thenReturn(Flux.just(stored));
+        when(tppMap.getAll(anySet())).thenReturn(Mono.just(Map.of(tpp.getTppId(), cachedTpp.toBuilder().lastUpdateDate(written).build())));
+        clearInvocations(tppMap, tokenSectionCryptService);
+
+        tppMapService.reconcile();
+
+        verify(tokenSectionCryptService, never()).keyDecrypt(any(), any());
+        verify(tppMap, never()).put(anyString(), any(Tpp.class));
+    }
+
+    /**
+     * A cached TPP that has been disabled is evicted from the hash, keeping its whitelist set.
+     */
+    @Test
+    void reconcile_disabledTpp_evicted() {
+        LocalDateTime since = LocalDateTime.of(2026, 1, 1, 0, 0);
+        when(watermark.get()).thenReturn(Mono.just(since.toString()));
+        when(tppRepository.findByLastUpdateDateGreaterThanEqual(any()))
+                .thenReturn(Flux.just(tpp.toBuilder().state(false).lastUpdateDate(since).build()));
+        when(tppMap.getAll(anySet())).thenReturn(Mono.just(Map.of(tpp.getTppId(), cachedTpp)));
+        clearInvocations(tppMap, tokenSectionCryptService, whitelistCache);
+
+        tppMapService.reconcile();
+
+        verify(tppMap).fastRemove(tpp.getTppId());
+        verify(tppMap, never()).put(anyString(), any(Tpp.class));
+        verify(whitelistCache, never()).deleteAll(any());
+    }
+
+    /**
+     * An updated TPP whose whitelist set has been lost gets it back from the whitelist collection.
+     */
+    @Test
+    void reconcile_updatedTppWithoutWhitelistSet_rebuilt() {
+        LocalDateTime since = LocalDateTime.of(2026, 1, 1, 0, 0);
+        when(watermark.get()).thenReturn(Mono.just(since.toString()));
+        when(tppRepository.findByLastUpdateDateGreaterThanEqual(any()))
+                .thenReturn(Flux.just(tpp.toBuilder().lastUpdateDate(since).build()));
+        when(whitelistCache.missing(List.of(tpp.getTppId()))).thenReturn(Mono.just(Set.of(tpp.getTppId())));
+        clearInvocations(whitelistCache, whitelistRepository);
+
+        tppMapService.reconcile();
+
+        verify(whitelistRepository).findByTppIdIn(Set.of(tpp.getTppId()));
+        verify(whitelistCache).rebuild(any());
+    }
+
+    /**
+     * The reconciliation only reads the updated TPPs, never every cached tppId.
+     */
+    @Test
+    void reconcile_doesNotSweep() {
+        when(watermark.get()).thenReturn(Mono.just(LocalDateTime.of(2026, 1, 1, 0, 0).toString()));
+        clearInvocations(tppMap, tppRepository);
+
+        tppMapService.reconcile();
+
+        verify(tppMap, never()).readAllKeySet();
+        verify(tppRepository, never()).findStatesByTppIdIn(any());
+    }
+
+    /**
+     * A cached TPP no longer in the database is evicted together with its whitelist set.
+     */
+    @Test
+    void sweep_deletedTpp_evictedWithWhitelist() {
+        when(tppMap.readAllKeySet()).thenReturn(Mono.just(Set.of(tpp.getTppId(), "deletedTpp")));
+        when(tppRepository.findStatesByTppIdIn(any())).thenReturn(Flux.just(tpp));
+        clearInvocations(tppMap, whitelistCache);
+
+        tppMapService.sweep();
+
+        verify(tppMap).fastRemove("deletedTpp");
+        verify(whitelistCache).deleteAll(List.of("deletedTpp"));
+    }
+
+    /**
+     * An active cached TPP whose whitelist set has been lost gets it back from the whitelist collection,
+     * while the sets of the other active TPPs are not read again.
+     */
+    @Test
+    void sweep_activeTppWithoutWhitelistSet_rebuilt() {
+        when(tppMap.readAllKeySet()).thenReturn(Mono.just(Set.of(tpp.getTppId())));
+        when(tppRepository.findStatesByTppIdIn(any())).thenReturn(Flux.just(tpp));
+        when(whitelistCache.missing(List.of(tpp.getTppId()))).thenReturn(Mono.just(Set.of(tpp.getTppId())));
+        clearInvocations(tppMap, whitelistCache, whitelistRepository);
+
+        tppMapService.sweep();
+
+        verify(whitelistRepository).findByTppIdIn(Set.of(tpp.getTppId()));
+        verify(whitelistCache).rebuild(any());
+        verify(tppMap, never()).fastRemove(any(String[].class));
+    }
+
+    /**
+     * The cached tppIds are checked against the database in chunks.
+     */
+    @Test
+    void sweep_manyCachedTpps_checkedInChunks() {
+        Set<String> keys = new HashSet<>();
+        for (int i = 0; i <= TppMapService.WRITE_CHUNK_SIZE; i++) {
+            keys.add("tpp" + i);
+        }
+        when(tppMap.readAllKeySet()).thenReturn(Mono.just(keys));
+        when(tppRepository.findStatesByTppIdIn(any())).thenAnswer(invocation -> Flux.fromIterable(
+                invocation.<Collection<String>>getArgument(0)).map(tppId -> Tpp.builder().tppId(tppId).state(true).build()));
+        clearInvocations(tppMap, tppRepository);
+
+        tppMapService.sweep();
+
+        verify(tppRepository, times(2)).findStatesByTppIdIn(any());
+        verify(tppMap, never()).fastRemove(any(String[].class));
+    }
+
+    /**
+     * The reconciliation is skipped when another pod holds the lock.
+     */
+    @Test
+    void reconcile_lockNotAcquired_skips() {
+        when(lock.tryLock(0, -1, TimeUnit.SECONDS)).thenReturn(Mono.just(false));
+        clearInvocations(tppRepository, watermark);
+
+        tppMapService.reconcile();
+
+        verify(watermark, never()).get();
+        verifyNoInteractions(tppRepository);
+    }
+
+    /**
+     * Whitelists still embedded in a TPP document are moved into the whitelist collection
+     * and removed from the document before the sets are rebuilt from the collection.
+     */
+    @Test
+    void resetCache_legacyWhitelist_migratedThenSetsRebuilt() {
+        when(tppRepository.findAllWhitelistOfTPPs()).thenReturn(Flux.just(tpp));
+        clearInvocations(whitelistCache);
 
         tppMapService.resetCache();
 
-        // The stale key must have been evicted via fastRemove
-        verify(tppMap).fastRemove(any());
-        // The active tpp must still be upserted
-        verify(tppMap).putAll(argThat(map -> map.containsKey(tpp.getTppId())));
+        InOrder inOrder = inOrder(whitelistRepository, tppRepository, whitelistCache);
+        inOrder.verify(whitelistRepository).insertAll(tpp.getTppId(), List.of(MOCK_RECIPIENT));
+        inOrder.verify(tppRepository).unsetWhitelistRecipient(tpp.getTppId());
+        inOrder.verify(whitelistCache).rebuild(any());
+    }
+
+    // -------------------------------------------------------------------------
+    // getAllFromMap
+    // -------------------------------------------------------------------------
+
+    /**
+     * getAllFromMap must resolve all ids with a single getAll call and report the ids
+     * that were not found as the missing set.
+     */
+    @Test
+    void getAllFromMap_mixedHitsAndMisses_singleRoundTrip() {
+        when(tppMap.getAll(anySet())).thenReturn(Mono.just(Map.of(tpp.getTppId(), tpp)));
+
+        StepVerifier.create(tppMapService.getAllFromMap(List.of(tpp.getTppId(), "missing1", "missing2", "missing1")))
+                .assertNext(lookup -> {
+                    assertEquals(Map.of(tpp.getTppId(), tpp), lookup.hits());
+                    assertEquals(List.of("missing1", "missing2"), List.copyOf(lookup.missing()));
+                })
+                .verifyComplete();
+
+        verify(tppMap, times(1)).getAll(Set.of(tpp.getTppId(), "missing1", "missing2"));
+        verify(tppMap, never()).get(anyString());
+    }
+
+    /**
+     * Entries already held by the near-cache must not be requested from Redis again.
+     */
+    @Test
+    void getAllFromMap_nearCacheHit_onlyMissesReachRedis() {
+        tppMapService.addDecryptedToMap(tpp).block();
+        clearInvocations(tppMap);
+
+        StepVerifier.create(tppMapService.getAllFromMap(List.of(tpp.getTppId(), "missing1")))
+                .assertNext(lookup -> {
+                    assertEquals(Map.of(tpp.getTppId(), cachedTpp), lookup.hits());
+                    assertEquals(Set.of("missing1"), lookup.missing());
+                })
+                .verifyComplete();
+
+        verify(tppMap, times(1)).getAll(Set.of("missing1"));
+    }
+
+    // -------------------------------------------------------------------------
+    // loadIntoMap / decryptIntoMap — single-flight
+    // -------------------------------------------------------------------------
+
+    /**
+     * Concurrent misses for the same TPP must share one DB read and one decryption.
+     */
+    @Test
+    void loadIntoMap_concurrentMisses_shareOneLoad() {
+        Sinks.One<Tpp> dbRead = Sinks.one();
+        when(tppRepository.findByTppId(tpp.getTppId())).thenReturn(dbRead.asMono());
+        clearInvocations(tokenSectionCryptService);
+
+        StepVerifier.create(Mono.zip(tppMapService.loadIntoMap(tpp.getTppId()), tppMapService.loadIntoMap(tpp.getTppId())))
+                .then(() -> dbRead.tryEmitValue(tpp))
+                .expectNextMatches(loaded -> loaded.getT1() == tpp && loaded.getT2() == tpp)
+                .verifyComplete();
+
+        verify(tppRepository, times(1)).findByTppId(tpp.getTppId());
+        verify(tokenSectionCryptService, times(1)).keyDecrypt(any(TokenSection.class), eq(tpp.getTppId()));
+        assertEquals(1.0, meterRegistry.get("tpp.cache.load.coalesced").functionCounter().count());
+    }
+
+    /**
+     * A TPP loaded from the database whose whitelist set has been lost, e.g. after a Redis flush, gets it
+     * back from the whitelist collection before its entry is cached.
+     */
+    @Test
+    void loadIntoMap_missingWhitelistSet_rebuiltFromCollection() {
+        when(tppRepository.findByTppId(tpp.getTppId())).thenReturn(Mono.just(tpp));
+        when(whitelistCache.missing(List.of(tpp.getTppId()))).thenReturn(Mono.just(Set.of(tpp.getTppId())));
+        clearInvocations(tppMap, whitelistCache, whitelistRepository);
+
+        StepVerifier.create(tppMapService.loadIntoMap(tpp.getTppId()))
+                .expectNext(tpp)
+                .verifyComplete();
+
+        InOrder inOrder = inOrder(whitelistCache, tppMap);
+        inOrder.verify(whitelistCache).rebuild(any());
+        inOrder.verify(tppMap).put(eq(tpp.getTppId()), any(Tpp.class));
+        verify(whitelistRepository).findByTppIdIn(Set.of(tpp.getTppId()));
+    }
+
+    /**
+     * A whitelist set that still exists is left alone, without reading the whitelist collection.
+     */
+    @Test
+    void loadIntoMap_existingWhitelistSet_notRead() {
+        when(tppRepository.findByTppId(tpp.getTppId())).thenReturn(Mono.just(tpp));
+        clearInvocations(whitelistCache, whitelistRepository);
+
+        StepVerifier.create(tppMapService.loadIntoMap(tpp.getTppId()))
+                .expectNext(tpp)
+                .verifyComplete();
+
+        verify(whitelistCache).missing(List.of(tpp.getTppId()));
+        verify(whitelistRepository, never()).findByTppIdIn(any());
+        verify(whitelistCache, never()).rebuild(any());
+    }
+
+    /**
+     * A TPP that does not exist completes empty for every caller.
+     */
+    @Test
+    void loadIntoMap_notInDb_empty() {
+        when(tppRepository.findByTppId("missing")).thenReturn(Mono.empty());
+
+        StepVerifier.create(tppMapService.loadIntoMap("missing"))
+                .verifyComplete();
+    }
+
+    /**
+     * decryptIntoMap joins a load already in flight for the same TPP instead of decrypting again.
+     */
+    @Test
+    void decryptIntoMap_joinsLoadInFlight() {
+        Sinks.One<Tpp> dbRead = Sinks.one();
+        when(tppRepository.findByTppId(tpp.getTppId())).thenReturn(dbRead.asMono());
+        clearInvocations(tokenSectionCryptService);
+
+        StepVerifier.create(Mono.zip(tppMapService.loadIntoMap(tpp.getTppId()), tppMapService.decryptIntoMap(getMockTpp())))
+                .then(() -> dbRead.tryEmitValue(tpp))
+                .expectNextMatches(loaded -> loaded.getT1() == tpp && loaded.getT2() == tpp)
+                .verifyComplete();
+
+        verify(tokenSectionCryptService, times(1)).keyDecrypt(any(TokenSection.class), anyString());
+    }
+
+    /**
+     * A value read from Redis is kept locally, so a second read does not reach Redis.
+     */
+    @Test
+    void getFromMap_secondReadServedByNearCache() {
+        when(tppMap.get(tpp.getTppId())).thenReturn(Mono.just(tpp));
+        clearInvocations(tppMap);
+
+        tppMapService.getFromMap(tpp.getTppId()).block();
+        StepVerifier.create(tppMapService.getFromMap(tpp.getTppId()))
+                .expectNext(tpp)
+                .verifyComplete();
+
+        verify(tppMap, times(1)).get(tpp.getTppId());
+    }
+
+    /**
+     * An empty id list must not reach Redis at all.
+     */
+    @Test
+    void getAllFromMap_emptyList_skipsRedis() {
+        clearInvocations(tppMap);
+
+        StepVerifier.create(tppMapService.getAllFromMap(List.of()))
+                .assertNext(lookup -> {
+                    assertTrue(lookup.hits().isEmpty());
+                    assertTrue(lookup.missing().isEmpty());
+                })
+                .verifyComplete();
+
+        verify(tppMap, never()).getAll(anySet());
     }
 
     // -------------------------------------------------------------------------
@@ -186,6 +849,14 @@ class TppMapServiceTest {
         StepVerifier.create(tppMapService.getFromMap(tpp.getTppId()))
                 .expectNextCount(0)
                 .verifyComplete();
+        verify(whitelistCache).deleteAll(List.of(tpp.getTppId()));
+    }
+
+    @Test
+    void getWhitelistFromMap_readsWhitelistSet() {
+        StepVerifier.create(tppMapService.getWhitelistFromMap(tpp.getTppId()))
+                .expectNext(List.of(MOCK_RECIPIENT))
+                .verifyComplete();
     }
 
     // -------------------------------------------------------------------------
@@ -199,13 +870,13 @@ class TppMapServiceTest {
     @Test
     void resetCache_lockNotAcquired_skips() {
         when(lock.tryLock(0, -1, TimeUnit.SECONDS)).thenReturn(Mono.just(false));
-        clearInvocations(tppRepository, tppMap);
+        clearInvocations(tppRepository, tppMap, staging);
 
         tppMapService.resetCache();
 
         verify(tppRepository, never()).findAll();
         verify(tppMap, never()).delete();
-        verify(tppMap, never()).putAll(any());
+        verify(staging, never()).putAll(any());
     }
 
     // -------------------------------------------------------------------------
@@ -213,19 +884,20 @@ class TppMapServiceTest {
     // -------------------------------------------------------------------------
 
     /**
-     * When MongoDB returns no active TPPs (all filtered out), putAll must NOT be called
-     * (nothing to write). The cache is not deleted — stale entries are removed individually.
+     * When MongoDB returns no active TPPs (all filtered out), nothing is written: the new
+     * generation is empty, so the live hash is dropped.
      */
     @Test
     void resetCache_noActiveTpps_doesNotPutAll() {
         // Only inactive TPP in DB
         when(tppRepository.findAll()).thenReturn(Flux.just(getMockTppDisabled()));
-        clearInvocations(tppMap);
+        clearInvocations(tppMap, staging);
 
         tppMapService.resetCache();
 
-        verify(tppMap, never()).delete();
-        verify(tppMap, never()).putAll(any());
+        verify(tppMap).delete();
+        verify(staging, never()).putAll(any());
+        verify(staging, never()).rename(anyString());
     }
 
     /**
@@ -234,12 +906,12 @@ class TppMapServiceTest {
     @Test
     void resetCache_emptyDb_doesNotPutAll() {
         when(tppRepository.findAll()).thenReturn(Flux.empty());
-        clearInvocations(tppMap);
+        clearInvocations(tppMap, staging);
 
         tppMapService.resetCache();
 
-        verify(tppMap, never()).delete();
-        verify(tppMap, never()).putAll(any());
+        verify(tppMap).delete();
+        verify(staging, never()).putAll(any());
     }
 
     /**
@@ -256,12 +928,12 @@ class TppMapServiceTest {
                 .thenReturn(Mono.just(true));
         when(tokenSectionCryptService.keyDecrypt(any(), eq("tppErr")))
                 .thenReturn(Mono.error(new RuntimeException("decrypt error")));
-        clearInvocations(tppMap);
+        clearInvocations(staging);
 
         tppMapService.resetCache();
 
         // putAll must be called with exactly 1 entry (only tppOk)
-        verify(tppMap).putAll(argThat(map -> map.size() == 1 && map.containsKey("tppOk")));
+        verify(staging).putAll(argThat(map -> map.size() == 1 && map.containsKey("tppOk")));
     }
 
     // -------------------------------------------------------------------------
@@ -270,20 +942,138 @@ class TppMapServiceTest {
 
     /**
      * When the distributed lock is already held by another pod during startup,
-     * populateMap must wait for the cache to become ready (polling isExists) without
-     * reading from MongoDB or writing to the cache itself.
+     * populateMap must wait for the cache to become ready without reading from MongoDB
+     * or writing to the cache itself.
      */
     @Test
     void populateMap_lockNotAcquired_waitsForCacheReady() {
         when(lock.tryLock(0, -1, TimeUnit.SECONDS)).thenReturn(Mono.just(false));
-        // Cache becomes ready on first poll
         when(tppMap.isExists()).thenReturn(Mono.just(true));
-        clearInvocations(tppMap, tppRepository);
+        clearInvocations(tppMap, tppRepository, staging);
 
-        tppMapService.populateMap();
+        tppMapService.populateMap().block();
 
         verify(tppRepository, never()).findAll();
-        verify(tppMap, never()).putAll(any());
+        verify(staging, never()).putAll(any());
+    }
+
+    /**
+     * A waiting pod must be woken by the ready announcement rather than by polling the cache key.
+     */
+    @Test
+    void populateMap_lockNotAcquired_wokenByReadyAnnouncement() {
+        when(lock.tryLock(0, -1, TimeUnit.SECONDS)).thenReturn(Mono.just(false));
+        clearInvocations(tppMap);
+
+        StepVerifier.create(tppMapService.populateMap())
+                .then(() -> {
+                    when(tppMap.isExists()).thenReturn(Mono.just(true));
+                    ArgumentCaptor<MessageListener<String>> listener = ArgumentCaptor.forClass(MessageListener.class);
+                    verify(topic).addListener(eq(String.class), listener.capture());
+                    listener.getValue().onMessage(TppMapService.READY_TOPIC, "ready");
+                })
+                .verifyComplete();
+
+        verify(tppMap, times(2)).isExists();
+        verify(topic).removeListener(1);
+    }
+
+    /**
+     * When the lock is held by a reconciliation, which releases it without populating the cache, the waiting
+     * pod populates the cache itself once woken.
+     */
+    @Test
+    void populateMap_lockHeldByReconcile_populatesAfterRelease() {
+        when(lock.tryLock(0, -1, TimeUnit.SECONDS)).thenReturn(Mono.just(false), Mono.just(true));
+        clearInvocations(tppRepository, staging);
+
+        StepVerifier.create(tppMapService.populateMap())
+                .then(() -> {
+                    verify(tppRepository, never()).findAll();
+                    ArgumentCaptor<MessageListener<String>> listener = ArgumentCaptor.forClass(MessageListener.class);
+                    verify(topic).addListener(eq(String.class), listener.capture());
+                    listener.getValue().onMessage(TppMapService.READY_TOPIC, "ready");
+                })
+                .verifyComplete();
+
+        verify(tppRepository).findAll();
+        verify(staging).putAll(any());
+    }
+
+    /**
+     * A waiting pod that subscribes after the lock has been released does not wait for an announcement.
+     */
+    @Test
+    void populateMap_lockReleasedBeforeListening_populatesWithoutWaiting() {
+        when(lock.tryLock(0, -1, TimeUnit.SECONDS)).thenReturn(Mono.just(false), Mono.just(true));
+        when(lock.isLocked()).thenReturn(Mono.just(false));
+        clearInvocations(staging);
+
+        tppMapService.populateMap().block(Duration.ofSeconds(5));
+
+        verify(staging).putAll(any());
+    }
+
+    /**
+     * The pod populating the cache announces it once the lock is released.
+     */
+    @Test
+    void populateMap_lockAcquired_announcesReadyAfterUnlock() {
+        clearInvocations(lock, topic);
+
+        tppMapService.populateMap().block();
+
+        InOrder inOrder = inOrder(lock, topic);
+        inOrder.verify(lock).forceUnlock();
+        inOrder.verify(topic).publish("ready");
+    }
+
+    /**
+     * Reconciliation, which shares the lock, announces its release too.
+     */
+    @Test
+    void reconcile_announcesReleaseAfterUnlock() {
+        clearInvocations(lock, topic);
+
+        tppMapService.reconcile();
+
+        InOrder inOrder = inOrder(lock, topic);
+        inOrder.verify(lock).forceUnlock();
+        inOrder.verify(topic).publish("ready");
+    }
+
+    // -------------------------------------------------------------------------
+    // warmUp — readiness
+    // -------------------------------------------------------------------------
+
+    @Test
+    void warmUp_outOfServiceUntilPopulated() {
+        when(lock.tryLock(0, -1, TimeUnit.SECONDS)).thenReturn(Mono.just(false));
+        assertEquals(Status.OUT_OF_SERVICE, healthIndicator.health().block().getStatus());
+
+        tppMapService.warmUp();
+        assertEquals(Status.OUT_OF_SERVICE, healthIndicator.health().block().getStatus());
+
+        when(tppMap.isExists()).thenReturn(Mono.just(true));
+        ArgumentCaptor<MessageListener<String>> listener = ArgumentCaptor.forClass(MessageListener.class);
+        verify(topic).addListener(eq(String.class), listener.capture());
+        listener.getValue().onMessage(TppMapService.READY_TOPIC, "ready");
+
+        assertEquals(Status.UP, healthIndicator.health().block().getStatus());
+        assertEquals("warm", healthIndicator.health().block().getDetails().get("tppCache"));
+    }
+
+    /**
+     * A warm-up that fails must not keep the pod out of service: misses fall back to the database.
+     */
+    @Test
+    void warmUp_failure_endsWarmUpCold() {
+        when(lock.tryLock(0, -1, TimeUnit.SECONDS)).thenReturn(Mono.error(new IllegalStateException("Redis down")));
+
+        tppMapService.warmUp();
+
+        assertEquals(Status.UP, healthIndicator.health().block().getStatus());
+        assertEquals("cold", healthIndicator.health().block().getDetails().get("tppCache"));
     }
 
     // -------------------------------------------------------------------------
@@ -297,12 +1087,12 @@ class TppMapServiceTest {
     @Test
     void populateMap_cacheAlreadyExists_skips() {
         when(tppMap.isExists()).thenReturn(Mono.just(true));
-        clearInvocations(tppRepository, tppMap);
+        clearInvocations(tppRepository, tppMap, staging);
 
-        tppMapService.populateMap();
+        tppMapService.populateMap().block();
 
         verify(tppRepository, never()).findAll();
-        verify(tppMap, never()).putAll(any());
+        verify(staging, never()).putAll(any());
     }
 
     /**
@@ -312,11 +1102,13 @@ class TppMapServiceTest {
     @Test
     void populateMap_cacheEmpty_populatesFromDb() {
         // isExists() → false (set in setUp), one active TPP in DB (set in setUp)
-        clearInvocations(tppMap);
+        clearInvocations(staging, whitelistCache);
 
-        tppMapService.populateMap();
+        tppMapService.populateMap().block();
 
-        verify(tppMap).putAll(argThat(map -> map.size() == 1 && map.containsKey(tpp.getTppId())));
+        verify(whitelistCache).rebuild(any());
+        verify(staging).putAll(argThat(map -> map.size() == 1 && map.get(tpp.getTppId()).getWhitelistRecipient() == null));
+        verify(staging).rename(RedisConfig.TPP_CACHE_MAP_KEY);
     }
 
     /**
@@ -326,11 +1118,11 @@ class TppMapServiceTest {
     @Test
     void populateMap_noActiveTpps_doesNotWriteToCache() {
         when(tppRepository.findAll()).thenReturn(Flux.just(getMockTppDisabled()));
-        clearInvocations(tppMap);
+        clearInvocations(staging);
 
-        tppMapService.populateMap();
+        tppMapService.populateMap().block();
 
-        verify(tppMap, never()).putAll(any());
+        verify(staging, never()).putAll(any());
     }
 
     /**
@@ -342,10 +1134,10 @@ class TppMapServiceTest {
         Tpp nullStateTpp = getMockTpp("nullStateTpp", true);
         nullStateTpp.setState(null);
         when(tppRepository.findAll()).thenReturn(Flux.just(nullStateTpp));
-        clearInvocations(tppMap);
+        clearInvocations(staging);
 
-        tppMapService.populateMap();
+        tppMapService.populateMap().block();
 
-        verify(tppMap, never()).putAll(any());
+        verify(staging, never()).putAll(any());
     }
 }
\ No newline at end of file
@@ -1,32 +1,51 @@
 package it.gov.pagopa.tpp.service;
 
-import com.azure.security.keyvault.keys.models.KeyVaultKey;
+import it.gov.pagopa.common.utils.Utils;
 import it.gov.pagopa.common.web.exception.ClientExceptionWithBody;
 import it.gov.pagopa.tpp.configuration.ExceptionMap;
 import it.gov.pagopa.tpp.dto.NetworkResponseDTO;
 import it.gov.pagopa.tpp.dto.TokenSectionDTO;
+import it.gov.pagopa.tpp.dto.MessageDTO;
 import it.gov.pagopa.tpp.dto.TppDTO;
 import it.gov.pagopa.tpp.dto.TppDTOPatch;
 import it.gov.pagopa.tpp.dto.TppDTOWithoutTokenSection;
 import it.gov.pagopa.tpp.dto.mapper.TokenSectionObjectToDTOMapper;
 import it.gov.pagopa.tpp.dto.mapper.TppObjectToDTOMapper;
 import it.gov.pagopa.tpp.dto.mapper.TppWithoutTokenSectionObjectToDTOMapper;
+import it.gov.pagopa.tpp.model.TokenSection;
 import it.gov.pagopa.tpp.model.Tpp;
+import it.gov.pagopa.tpp.model.TppWhitelistEntry;
 import it.gov.pagopa.tpp.model.mapper.TokenSectionDTOToObjectMapper;
 import it.gov.pagopa.tpp.model.mapper.TppDTOToObjectMapper;
 import it.gov.pagopa.tpp.repository.TppRepository;
-import it.gov.pagopa.tpp.service.keyvault.AzureKeyService;
+import it.gov.pagopa.tpp.repository.TppWhitelistRepository;
+import it.gov.pagopa.tpp.service.cache.TppNegativeCache;
+import it.gov.pagopa.tpp.service.cache.TppRegistry;
+import it.gov.pagopa.tpp.service.cache.TppResponseCache;
+import it.gov.pagopa.tpp.service.cache.TppTemplateCache;
+import it.gov.pagopa.tpp.service.keyvault.KeyProvider;
 import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
 import org.mockito.Mockito;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.codec.ServerCodecConfigurer;
 import org.springframework.test.context.bean.override.mockito.MockitoBean;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 import reactor.test.StepVerifier;
 
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
 import java.util.List;
 
 import static it.gov.pagopa.tpp.utils.TestUtils.*;
@@ -38,12 +57,24 @@ import static org.mockito.ArgumentMatchers.argThat;
     TppDTOToObjectMapper.class,
     TokenSectionObjectToDTOMapper.class,
     TokenSectionDTOToObjectMapper.class,
-    AzureKeyService.class,
     TppMapService.class,
+    TppRegistry.class,
+    TppNegativeCache.class,
+    TppResponseCache.class,
+    TppTemplateCache.class,
+    TppServiceTest.CodecConfig.class,
     ExceptionMap.class
 })
 class TppServiceTest {
 
+    @Configuration
+    static class CodecConfig {
+        @Bean
+        ServerCodecConfigurer serverCodecConfigurer() {
+            return ServerCodecConfigurer.create();
+        }
+    }
+
     @Autowired
     private TppServiceImpl tppService;
 
@@ -51,7 +82,10 @@ class TppServiceTest {
     private TppRepository tppRepository;
 
     @MockitoBean
-    private AzureKeyService azureKeyService;
+    private TppWhitelistRepository whitelistRepository;
+
+    @MockitoBean
+    private KeyProvider keyProvider;
 
     @MockitoBean
     private TokenSectionCryptService tokenSectionCryptService;
@@ -74,11 +108,26 @@ class TppServiceTest {
     @Autowired
     private TokenSectionDTOToObjectMapper tokenSectionDTOToObjectMapper;
 
-    @MockitoBean
-    private KeyVaultKey keyVault;
+    @Autowired
+    private TppRegistry tppRegistry;
+
+    @Autowired
+    private TppNegativeCache negativeCache;
+
+    @Autowired
+    private TppResponseCache responseCache;
 
     @BeforeEach
     void setUp() {
+        tppRegistry.clear();
+        negativeCache.invalidateAll();
+        responseCache.invalidateAll();
+
+        Mockito.when(whitelistRepository.deleteByTppId(any())).thenReturn(Mono.just(0L));
+        Mockito.when(whitelistRepository.deleteByTppIdAndRecipientIdNotIn(any(), any())).thenReturn(Mono.just(0L));
+        Mockito.when(whitelistRepository.insertAll(any(), any())).thenReturn(Mono.empty());
+        Mockito.when(whitelistRepository.findByTppId(any())).thenReturn(Flux.empty());
+
         Mockito.when(mapperToDTO.map(any(Tpp.class))).thenAnswer(invocation -> {
             Tpp tpp = invocation.getArgument(0);
             TppDTO dto = new TppDTO();
@@ -120,6 +169,7 @@ class TppServiceTest {
             dto.setAgentLinks(tpp.getAgentLinks());
             dto.setMessageTemplate(tpp.getMessageTemplate());
             dto.setIsPaymentEnabled(tpp.getIsPaymentEnabled());
+            dto.setLastUpdateDate(tpp.getLastUpdateDate());
             dto.setWhitelistRecipient(tpp.getWhitelistRecipient());
             return dto;
         });
@@ -128,21 +178,62 @@ class TppServiceTest {
 
     @Test
     void getEnabled_Ok() {
-        Mockito.when(tppRepository.findEnabledForRecipient(getMockTppIdStringList(), MOCK_RECIPIENT))
+        Mockito.when(whitelistRepository.findByRecipientIdAndTppIdIn(MOCK_RECIPIENT, getMockTppIdStringList()))
+            .thenReturn(Flux.empty());
+        Mockito.when(tppRepository.findEnabledOrWhitelisted(getMockTppIdStringList(), List.of()))
             .thenReturn(Flux.fromIterable(getMockTppList()));
-        Mockito.when(tokenSectionCryptService.keyDecrypt(any(), any())).thenReturn(Mono.just(true));
-        Mockito.when(tppMapService.addToMap(any())).thenReturn(Mono.just(true));
-        Mockito.when(tppMapService.addDecryptedToMap(any())).thenReturn(Mono.just(true));
-        Mockito.when(tppMapService.getFromMap(any())).thenReturn(Mono.empty());
+        Mockito.when(tppMapService.decryptIntoMap(any())).thenAnswer(invocation -> Mono.just(invocation.getArgument(0)));
+        Mockito.when(tppMapService.getAllFromMap(any()))
+            .thenReturn(Mono.just(new TppMapService.CacheLookup(Map.of(), new LinkedHashSet<>(getMockTppIdStringList()))));
+
+        TppDTO expected = getMockTppDto();
+        expected.setWhitelistRecipient(null);
 
         StepVerifier.create(tppService.filterEnabledList(getMockTppIdStringList(), MOCK_RECIPIENT))
-            .expectNextMatches(response -> response.equals(getMockTppDtoList()))
+            .expectNextMatches(response -> response.equals(List.of(expected)))
             .verifyComplete();
     }
 
+    @Test
+    void getEnabled_NotEnabledTppIds_NotQueriedAgain() {
+        List<String> unknownTppIds = List.of("unknownTpp1", "unknownTpp2");
+        Mockito.when(tppMapService.getAllFromMap(any()))
+            .thenReturn(Mono.just(new TppMapService.CacheLookup(Map.of(), new LinkedHashSet<>(unknownTppIds))));
+        Mockito.when(whitelistRepository.findByRecipientIdAndTppIdIn(MOCK_RECIPIENT, unknownTppIds))
+            .thenReturn(Flux.empty());
+        Mockito.when(tppRepository.findEnabledOrWhitelisted(unknownTppIds, List.of()))
+            .thenReturn(Flux.empty());
+
+        StepVerifier.create(tppService.filterEnabledList(unknownTppIds, MOCK_RECIPIENT))
+            .expectNextMatches(List::isEmpty)
+            .verifyComplete();
+        StepVerifier.create(tppService.filterEnabledList(unknownTppIds, MOCK_RECIPIENT))
+            .expectNextMatches(List::isEmpty)
+            .verifyComplete();
+
+        Mockito.verify(tppRepository, Mockito.times(1)).findEnabledOrWhitelisted(any(), any());
+
+        // once the TPP is written (e.g. onboarded or enabled) it is looked up again
+        negativeCache.invalidate("unknownTpp1");
+        Mockito.when(whitelistRepository.findByRecipientIdAndTppIdIn(MOCK_RECIPIENT, List.of("unknownTpp1")))
+            .thenReturn(Flux.empty());
+        Mockito.when(tppRepository.findEnabledOrWhitelisted(List.of("unknownTpp1"), List.of()))
+            .thenReturn(Flux.empty());
+
+        StepVerifier.create(tppService.filterEnabledList(unknownTppIds, MOCK_RECIPIENT))
+            .expectNextMatches(List::isEmpty)
+            .verifyComplete();
+
+        Mockito.verify(tppRepository).findEnabledOrWhitelisted(List.of("unknownTpp1"), List.of());
+    }
+
     @Test
     void getEnabled_FiltersDisabledTppFromCache() {
-        Mockito.when(tppMapService.getFromMap(any())).thenReturn(Mono.just(getMockTppDisabled()));
+        Tpp disabledTpp = getMockTppDisabled();
+        Mockito.when(tppMapService.getAllFromMap(any()))
+            .thenReturn(Mono.just(new TppMapService.CacheLookup(Map.of(disabledTpp.getTppId(), disabledTpp), Set.of())));
+        Mockito.when(tppMapService.getWhitelistingFromMap(List.of(disabledTpp.getTppId()), MOCK_RECIPIENT))
+            .thenReturn(Mono.just(Set.of()));
 
         StepVerifier.create(tppService.filterEnabledList(getMockTppIdStringList(), MOCK_RECIPIENT))
             .expectNextMatches(response -> response.isEmpty())
@@ -175,22 +266,19 @@ class TppServiceTest {
         
         // - tpp6: not in cache, not in DB -> should not be returned
 
-        // Mock cache: tpp1 and tpp2 are in cache
-        Mockito.when(tppMapService.getFromMap("tpp1")).thenReturn(Mono.just(tpp1InCache));
-        Mockito.when(tppMapService.getFromMap("tpp2")).thenReturn(Mono.just(tpp2InCacheDisabled));
-        Mockito.when(tppMapService.getFromMap("tpp3")).thenReturn(Mono.empty());
-        Mockito.when(tppMapService.getFromMap("tpp4")).thenReturn(Mono.just(tpp4InCacheDisabledWrongRecipient));
-        Mockito.when(tppMapService.getFromMap("tpp5")).thenReturn(Mono.empty());
-        Mockito.when(tppMapService.getFromMap("tpp6")).thenReturn(Mono.empty());
+        // Mock cache: tpp1, tpp2 and tpp4 are in cache, tpp3 and tpp5 are missing
+        Mockito.when(tppMapService.getAllFromMap(requestedTppIds)).thenReturn(Mono.just(new TppMapService.CacheLookup(
+            Map.of("tpp1", tpp1InCache, "tpp2", tpp2InCacheDisabled, "tpp4", tpp4InCacheDisabledWrongRecipient),
+            new LinkedHashSet<>(List.of("tpp3", "tpp5")))));
 
 
-        // Mock repository: only tpp3 found (tpp4 not found), query only for enabled TPPs
-        Mockito.when(tppRepository.findEnabledForRecipient(any(), any()))
+        // Mock repository: only the missing ids are queried, tpp5 whitelists the recipient
+        Mockito.when(whitelistRepository.findByRecipientIdAndTppIdIn(MOCK_RECIPIENT, List.of("tpp3", "tpp5")))
+            .thenReturn(Flux.just(new TppWhitelistEntry(null, "tpp5", MOCK_RECIPIENT, null)));
+        Mockito.when(tppRepository.findEnabledOrWhitelisted(List.of("tpp3", "tpp5"), List.of("tpp5")))
             .thenReturn(Flux.just(tpp3FromDb, tpp5FromDbDisabledWithRecipient));
 
-        Mockito.when(tokenSectionCryptService.keyDecrypt(any(), any())).thenReturn(Mono.just(true));
-        Mockito.when(tppMapService.addToMap(any())).thenReturn(Mono.just(true));
-        Mockito.when(tppMapService.addDecryptedToMap(any())).thenReturn(Mono.just(true));
+        Mockito.when(tppMapService.decryptIntoMap(any())).thenAnswer(invocation -> Mono.just(invocation.getArgument(0)));
 
         StepVerifier.create(tppService.filterEnabledList(requestedTppIds, MOCK_RECIPIENT))
             .expectNextMatches(response ->
@@ -205,6 +293,81 @@ class TppServiceTest {
             .verifyComplete();
     }
 
+    @Test
+    void getEnabled_ResolvedFromRegistry_SkipsCacheAndRepository() {
+        Tpp enabledTpp = getMockTpp("tpp1", true);
+        Tpp whitelistedTpp = getMockTpp("tpp2", false);
+        whitelistedTpp.setWhitelistRecipient(List.of(MOCK_RECIPIENT));
+        Tpp otherRecipientTpp = getMockTpp("tpp3", false);
+        otherRecipientTpp.setWhitelistRecipient(List.of("OtherRecipient"));
+        tppRegistry.putAll(List.of(enabledTpp, whitelistedTpp, otherRecipientTpp));
+        Mockito.clearInvocations(tppMapService, tppRepository);
+
+        StepVerifier.create(tppService.filterEnabledList(List.of("tpp1", "tpp2", "tpp3", "tpp1"), MOCK_RECIPIENT))
+            .expectNextMatches(response ->
+                response.size() == 2 &&
+                response.get(0).getTppId().equals("tpp1") &&
+                response.get(1).getTppId().equals("tpp2"))
+            .verifyComplete();
+
+        Mockito.verifyNoInteractions(tppMapService, tppRepository);
+    }
+
+    @Test
+    void getEnabled_DisabledTpps_CheckedAgainstWhitelistSets() {
+        Tpp registryDisabled = getMockTpp("tpp1", false);
+        registryDisabled.setWhitelistRecipient(null);
+        tppRegistry.put(registryDisabled);
+        Tpp cacheDisabled = getMockTpp("tpp2", false);
+        cacheDisabled.setWhitelistRecipient(null);
+        Tpp cacheDisabledOther = getMockTpp("tpp3", false);
+        cacheDisabledOther.setWhitelistRecipient(null);
+        Mockito.when(tppMapService.getAllFromMap(List.of("tpp2", "tpp3")))
+            .thenReturn(Mono.just(new TppMapService.CacheLookup(Map.of("tpp2", cacheDisabled, "tpp3", cacheDisabledOther), Set.of())));
+        Mockito.when(tppMapService.getWhitelistingFromMap(argThat(ids -> ids.size() == 3), Mockito.eq(MOCK_RECIPIENT)))
+            .thenReturn(Mono.just(Set.of("tpp1", "tpp2")));
+
+        StepVerifier.create(tppService.filterEnabledList(List.of("tpp1", "tpp2", "tpp3"), MOCK_RECIPIENT))
+            .expectNextMatches(response ->
+                response.size() == 2 &&
+                response.stream().anyMatch(tpp -> tpp.getTppId().equals("tpp1")) &&
+                response.stream().anyMatch(tpp -> tpp.getTppId().equals("tpp2")))
+            .verifyComplete();
+
+        Mockito.verify(tppMapService, Mockito.times(1)).getWhitelistingFromMap(any(), any());
+        Mockito.verifyNoInteractions(tppRepository);
+    }
+
+    @Test
+    void getEnabled_OnlyDisabledInRegistry_SkipsCacheLookup() {
+        Tpp registryDisabled = getMockTpp("tpp1", false);
+        registryDisabled.setWhitelistRecipient(null);
+        tppRegistry.put(registryDisabled);
+        Mockito.when(tppMapService.getWhitelistingFromMap(List.of("tpp1"), MOCK_RECIPIENT))
+            .thenReturn(Mono.just(Set.of()));
+
+        StepVerifier.create(tppService.filterEnabledList(List.of("tpp1"), MOCK_RECIPIENT))
+            .expectNextMatches(List::isEmpty)
+            .verifyComplete();
+
+        Mockito.verify(tppMapService, Mockito.never()).getAllFromMap(any());
+    }
+
+    @Test
+    void getEnabled_PartiallyInRegistry_OnlyMissingIdsReachCache() {
+        tppRegistry.put(getMockTpp("tpp1", true));
+        Tpp tpp2InCache = getMockTpp("tpp2", true);
+        Mockito.when(tppMapService.getAllFromMap(List.of("tpp2")))
+            .thenReturn(Mono.just(new TppMapService.CacheLookup(Map.of("tpp2", tpp2InCache), Set.of())));
+
+        StepVerifier.create(tppService.filterEnabledList(List.of("tpp1", "tpp2"), MOCK_RECIPIENT))
+            .expectNextMatches(response ->
+                response.size() == 2 &&
+                response.get(0).getTppId().equals("tpp1") &&
+                response.get(1).getTppId().equals("tpp2"))
+            .verifyComplete();
+    }
+
     @Test
     void createTpp_AlreadyExist() {
         Mockito.when(tppRepository.findByEntityId(any()))
@@ -226,10 +389,9 @@ class TppServiceTest {
             .thenReturn(Mono.empty());
         Mockito.when(tppRepository.save(any()))
             .thenReturn(Mono.just(mockTppEntity));
-        Mockito.when(azureKeyService.createRsaKey(any())).thenReturn(Mono.just(keyVault));
-        Mockito.when(azureKeyService.getKey(any())).thenReturn(Mono.just(keyVault));
+        Mockito.when(keyProvider.createKey(any())).thenReturn(Mono.empty());
         Mockito.when(tokenSectionCryptService.keyEncrypt(any(), any())).thenReturn(Mono.just(true));
-        Mockito.when(tppMapService.addToMap(any()))
+        Mockito.when(tppMapService.addDecryptedToMap(any()))
             .thenReturn(Mono.just(Boolean.TRUE));
 
         StepVerifier.create(tppService.createNewTpp(inputDto, inputDto.getTppId()))
@@ -263,7 +425,7 @@ class TppServiceTest {
         Mockito.when(tppRepository.save(Mockito.any()))
             .thenReturn(Mono.just(mockTpp));
 
-        Mockito.when(tppMapService.addToMap(any()))
+        Mockito.when(tppMapService.refreshInMap(any()))
             .thenReturn(Mono.just(Boolean.TRUE));
 
         StepVerifier.create(tppService.updateTppDetails(inputDto))
@@ -298,45 +460,43 @@ class TppServiceTest {
         TppDTOPatch patch = getMockTppDtoPatch();
         Tpp mockTpp = getMockTpp();
 
-        Mockito.when(tppRepository.findByTppId("tppId"))
+        Mockito.when(tppRepository.updateFields(Mockito.eq("tppId"), any(), any()))
             .thenReturn(Mono.just(mockTpp));
-        Mockito.when(tppRepository.save(any()))
-            .thenReturn(Mono.just(mockTpp));
-        Mockito.when(tppMapService.addToMap(any()))
+        Mockito.when(tppMapService.refreshInMap(any()))
             .thenReturn(Mono.just(Boolean.TRUE));
 
         StepVerifier.create(tppService.patchTppDetails("tppId", patch))
             .expectNextMatches(response -> response.getTppId().equals(mockTpp.getTppId()))
             .verifyComplete();
+
+        Mockito.verify(tppRepository, Mockito.never()).findByTppId(any());
+        Mockito.verify(tppRepository, Mockito.never()).save(any());
     }
 
     @Test
     void patchTppDetails_OnlyNonNullFieldsUpdated() {
         TppDTOPatch partialPatch = getMockTppDtoPatchPartial(); // solo businessName valorizzato
         Tpp mockTpp = getMockTpp();
-        String originalMessageUrl = mockTpp.getMessageUrl();
 
-        Mockito.when(tppRepository.findByTppId("tppId"))
-            .thenReturn(Mono.just(mockTpp));
-        Mockito.when(tppRepository.save(any()))
+        Mockito.when(tppRepository.updateFields(Mockito.eq("tppId"), any(), any()))
             .thenReturn(Mono.just(mockTpp));
-        Mockito.when(tppMapService.addToMap(any()))
+        Mockito.when(tppMapService.refreshInMap(any()))
             .thenReturn(Mono.just(Boolean.TRUE));
 
         StepVerifier.create(tppService.patchTppDetails("tppId", partialPatch))
             .expectNextMatches(response -> response.getTppId().equals(mockTpp.getTppId()))
             .verifyComplete();
 
-        // verifica che solo businessName sia stato aggiornato, gli altri campi rimangono invariati
-        Mockito.verify(tppRepository).save(argThat(tpp ->
-            "onlyBusinessNameUpdated".equals(tpp.getBusinessName()) &&
-            originalMessageUrl.equals(tpp.getMessageUrl())
-        ));
+        // verifica che solo businessName sia aggiornato, gli altri campi non vengono scritti
+        Mockito.verify(tppRepository).updateFields(Mockito.eq("tppId"), argThat(fields ->
+            fields.size() == 1 &&
+            "onlyBusinessNameUpdated".equals(fields.get("businessName"))
+        ), any());
     }
 
     @Test
     void patchTppDetails_TppNotFound() {
-        Mockito.when(tppRepository.findByTppId(any()))
+        Mockito.when(tppRepository.updateFields(any(), any(), any()))
             .thenReturn(Mono.empty());
 
         StepVerifier.create(tppService.patchTppDetails("unknownTppId", getMockTppDtoPatch()))
@@ -350,37 +510,31 @@ class TppServiceTest {
     void patchTppDetails_ClientIdUpdated_WhenProvided() {
         TppDTOPatch clientIdPatch = getMockTppDtoPatchClientIdOnly();
         Tpp mockTpp = getMockTpp();
-        String originalBusinessName = mockTpp.getBusinessName();
 
-        Mockito.when(tppRepository.findByTppId("tppId"))
-            .thenReturn(Mono.just(mockTpp));
-        Mockito.when(tppRepository.save(any()))
+        Mockito.when(tppRepository.updateFields(Mockito.eq("tppId"), any(), any()))
             .thenReturn(Mono.just(mockTpp));
-        Mockito.when(tppMapService.addToMap(any()))
+        Mockito.when(tppMapService.refreshInMap(any()))
             .thenReturn(Mono.just(Boolean.TRUE));
 
         StepVerifier.create(tppService.patchTppDetails("tppId", clientIdPatch))
             .expectNextMatches(response -> response.getTppId().equals(mockTpp.getTppId()))
             .verifyComplete();
 
-        // verifica che clientId sia stato aggiornato e gli altri campi rimangano invariati
-        Mockito.verify(tppRepository).save(argThat(tpp ->
-            "newLegacyClientId".equals(tpp.getClientId()) &&
-            originalBusinessName.equals(tpp.getBusinessName())
-        ));
+        // verifica che clientId sia aggiornato e gli altri campi non vengano scritti
+        Mockito.verify(tppRepository).updateFields(Mockito.eq("tppId"), argThat(fields ->
+            "newLegacyClientId".equals(fields.get("clientId")) &&
+            !fields.containsKey("businessName")
+        ), any());
     }
 
     @Test
     void patchTppDetails_ClientIdNotOverwritten_WhenNotProvided() {
         TppDTOPatch partialPatch = getMockTppDtoPatchPartial(); // clientId è null
         Tpp mockTpp = getMockTpp(); // ha clientId="legacyClientId"
-        String originalClientId = mockTpp.getClientId();
 
-        Mockito.when(tppRepository.findByTppId("tppId"))
+        Mockito.when(tppRepository.updateFields(Mockito.eq("tppId"), any(), any()))
             .thenReturn(Mono.just(mockTpp));
-        Mockito.when(tppRepository.save(any()))
-            .thenReturn(Mono.just(mockTpp));
-        Mockito.when(tppMapService.addToMap(any()))
+        Mockito.when(tppMapService.refreshInMap(any()))
             .thenReturn(Mono.just(Boolean.TRUE));
 
         StepVerifier.create(tppService.patchTppDetails("tppId", partialPatch))
@@ -388,9 +542,30 @@ class TppServiceTest {
             .verifyComplete();
 
         // verifica che clientId NON sia stato sovrascritto
-        Mockito.verify(tppRepository).save(argThat(tpp ->
-            originalClientId.equals(tpp.getClientId())
-        ));
+        Mockito.verify(tppRepository).updateFields(Mockito.eq("tppId"), argThat(fields ->
+            !fields.containsKey("clientId")
+        ), any());
+    }
+
+    @Test
+    void patchTppDetails_WhitelistStoredInCollection() {
+        TppDTOPatch patch = getMockTppDtoPatchPartial();
+        patch.setWhitelistRecipient(List.of(MOCK_RECIPIENT));
+        Tpp mockTpp = getMockTpp();
+
+        Mockito.when(tppRepository.updateFields(Mockito.eq("tppId"), any(), any()))
+            .thenReturn(Mono.just(mockTpp));
+        Mockito.when(tppMapService.refreshInMap(any()))
+            .thenReturn(Mono.just(Boolean.TRUE));
+
+        StepVerifier.create(tppService.patchTppDetails("tppId", patch))
+            .expectNextMatches(response -> response.getWhitelistRecipient().equals(List.of(MOCK_RECIPIENT)))
+            .verifyComplete();
+
+        Mockito.verify(tppRepository).updateFields(Mockito.eq("tppId"), argThat(fields ->
+            !fields.containsKey("whitelistRecipient")
+        ), any());
+        Mockito.verify(whitelistRepository).insertAll("tppId", List.of(MOCK_RECIPIENT));
     }
 
     @Test
@@ -403,7 +578,7 @@ class TppServiceTest {
             .thenReturn(Mono.just(mockTpp));
         Mockito.when(tppRepository.save(any()))
             .thenReturn(Mono.just(mockTpp));
-        Mockito.when(tppMapService.addToMap(any()))
+        Mockito.when(tppMapService.refreshInMap(any()))
             .thenReturn(Mono.just(Boolean.TRUE));
 
         StepVerifier.create(tppService.updateTppDetails(dto))
@@ -425,13 +600,13 @@ class TppServiceTest {
 
         Mockito.when(tppRepository.findByEntityId(tppDTO.getEntityId()))
             .thenReturn(Mono.empty());
-        Mockito.when(azureKeyService.createRsaKey(any()))
-            .thenReturn(Mono.just(keyVault));
+        Mockito.when(keyProvider.createKey(any()))
+            .thenReturn(Mono.empty());
         Mockito.when(tokenSectionCryptService.keyEncrypt(any(), any()))
             .thenReturn(Mono.just(true));
         Mockito.when(tppRepository.save(any()))
             .thenReturn(Mono.just(savedTpp));
-        Mockito.when(tppMapService.addToMap(any()))
+        Mockito.when(tppMapService.addDecryptedToMap(any()))
             .thenReturn(Mono.just(Boolean.TRUE));
 
         StepVerifier.create(tppService.createNewTpp(tppDTO, generatedTppId))
@@ -443,6 +618,27 @@ class TppServiceTest {
         ));
     }
 
+    @Test
+    void updateTokenSection_LastUpdateDateAtMillisecondPrecision() {
+        TppDTO tppDto = getMockTppDto();
+        Tpp mockTpp = getMockTpp();
+
+        Mockito.when(tppRepository.findByTppId(tppDto.getTppId()))
+            .thenReturn(Mono.just(mockTpp));
+        Mockito.when(tppRepository.save(Mockito.any()))
+            .thenAnswer(invocation -> Mono.just(invocation.getArgument(0)));
+        Mockito.when(tppMapService.addDecryptedToMap(any()))
+            .thenReturn(Mono.just(Boolean.TRUE));
+        Mockito.when(tokenSectionCryptService.keyEncrypt(any(), any())).thenReturn(Mono.just(true));
+
+        StepVerifier.create(tppService.updateTokenSection(tppDto.getTppId(), getMockTokenSectionDto()))
+            .expectNextCount(1)
+            .verifyComplete();
+
+        Mockito.verify(tppRepository).save(argThat(tpp ->
+            tpp.getLastUpdateDate().equals(tpp.getLastUpdateDate().truncatedTo(ChronoUnit.MILLIS))));
+    }
+
     @Test
     void updateTokenSection_Ok() {
         TppDTO tppDto = getMockTppDto();
@@ -453,10 +649,9 @@ class TppServiceTest {
             .thenReturn(Mono.just(mockTpp));
         Mockito.when(tppRepository.save(Mockito.any()))
             .thenReturn(Mono.just(mockTpp));
-        Mockito.when(tppMapService.addToMap(any()))
+        Mockito.when(tppMapService.addDecryptedToMap(any()))
             .thenReturn(Mono.just(Boolean.TRUE));
 
-        Mockito.when(azureKeyService.getKey(any())).thenReturn(Mono.just(keyVault));
         Mockito.when(tokenSectionCryptService.keyEncrypt(any(), any())).thenReturn(Mono.just(true));
 
         StepVerifier.create(tppService.updateTokenSection(tppDto.getTppId(), tokenSectionDTO))
@@ -464,6 +659,37 @@ class TppServiceTest {
             .verifyComplete();
     }
 
+    @Test
+    void updateTokenSection_CachesPlaintextWithoutDecrypting() {
+        TppDTO tppDto = getMockTppDto();
+        Tpp mockTpp = getMockTpp();
+
+        Mockito.when(tppRepository.findByTppId(tppDto.getTppId()))
+            .thenReturn(Mono.just(mockTpp));
+        Mockito.when(tppRepository.save(Mockito.any()))
+            .thenReturn(Mono.just(mockTpp));
+        Mockito.when(tppMapService.addDecryptedToMap(any()))
+            .thenReturn(Mono.just(Boolean.TRUE));
+        Mockito.when(tokenSectionCryptService.keyEncrypt(any(), any())).thenAnswer(invocation -> {
+            TokenSection tokenSection = invocation.getArgument(0);
+            tokenSection.getPathAdditionalProperties().replaceAll((k, v) -> "encrypted");
+            tokenSection.getBodyAdditionalProperties().replaceAll((k, v) -> "encrypted");
+            return Mono.just(true);
+        });
+
+        StepVerifier.create(tppService.updateTokenSection(tppDto.getTppId(), getMockTokenSectionDto()))
+            .expectNextMatches(result -> result.equals(getMockTokenSectionDto()))
+            .verifyComplete();
+
+        Mockito.verify(tppRepository).save(argThat(tpp ->
+            "encrypted".equals(tpp.getTokenSection().getPathAdditionalProperties().get("pathKey1"))));
+        Mockito.verify(tppMapService).addDecryptedToMap(argThat(tpp ->
+            "test".equals(tpp.getTokenSection().getPathAdditionalProperties().get("pathKey1")) &&
+            "test".equals(tpp.getTokenSection().getBodyAdditionalProperties().get("bodyKey1"))));
+        Mockito.verify(tppMapService, Mockito.never()).addToMap(any());
+        Mockito.verify(tokenSectionCryptService, Mockito.never()).keyDecrypt(any(), any());
+    }
+
     @Test
     void updateTokenSection_NoTppId() {
         StepVerifier.create(tppService.updateTokenSection(null, getMockTokenSectionDto()))
@@ -491,23 +717,44 @@ class TppServiceTest {
         TppDTO tppDto = getMockTppDto();
         Tpp mockTpp = getMockTpp();
 
-        Mockito.when(tppRepository.findByTppId(tppDto.getTppId()))
-            .thenReturn(Mono.just(mockTpp));
-        Mockito.when(tppRepository.save(any()))
+        Mockito.when(tppRepository.updateFields(Mockito.eq(tppDto.getTppId()), any(), any()))
             .thenReturn(Mono.just(mockTpp));
-        Mockito.when(tppMapService.addToMap(any()))
+        Mockito.when(tppMapService.refreshInMap(any()))
             .thenReturn(Mono.just(Boolean.TRUE));
 
         StepVerifier.create(tppService.updateState(tppDto.getTppId(), tppDto.getState()))
             .expectNextMatches(result -> result.getTppId().equals(tppDto.getTppId()))
             .verifyComplete();
+
+        Mockito.verify(tppRepository).updateFields(Mockito.eq(tppDto.getTppId()), argThat(fields ->
+            fields.size() == 1 && tppDto.getState().equals(fields.get("state"))
+        ), any());
+        Mockito.verify(tppRepository, Mockito.never()).save(any());
+    }
+
+    @Test
+    void updateState_WhitelistReadFromCollection() {
+        Tpp mockTpp = getMockTpp();
+
+        Mockito.when(tppRepository.updateFields(Mockito.eq(mockTpp.getTppId()), any(), any()))
+            .thenReturn(Mono.just(mockTpp));
+        Mockito.when(tppMapService.refreshInMap(any()))
+            .thenReturn(Mono.just(Boolean.TRUE));
+        Mockito.when(whitelistRepository.findByTppId(mockTpp.getTppId()))
+            .thenReturn(Flux.just(new TppWhitelistEntry(null, mockTpp.getTppId(), MOCK_RECIPIENT, null)));
+
+        StepVerifier.create(tppService.updateState(mockTpp.getTppId(), true))
+            .expectNextMatches(result -> result.getWhitelistRecipient().equals(List.of(MOCK_RECIPIENT)))
+            .verifyComplete();
+
+        Mockito.verify(tppMapService).refreshInMap(argThat(tpp -> tpp.getWhitelistRecipient() == null));
     }
 
     @Test
     void updateState_TppNotOnboarded() {
         TppDTO tppDto = getMockTppDto();
 
-        Mockito.when(tppRepository.findByTppId(tppDto.getTppId()))
+        Mockito.when(tppRepository.updateFields(Mockito.eq(tppDto.getTppId()), any(), any()))
             .thenReturn(Mono.empty());
 
         StepVerifier.create(tppService.updateState(tppDto.getTppId(), tppDto.getState()))
@@ -522,13 +769,12 @@ class TppServiceTest {
         TppDTO tppDto = getMockTppDto();
         Tpp mockTpp = getMockTpp();
         var isPaymentEnabled = getMockIsPaymentEnabled();
+        mockTpp.setIsPaymentEnabled(isPaymentEnabled.getIsPaymentEnabled());
 
-        Mockito.when(tppRepository.findByTppId(tppDto.getTppId()))
-            .thenReturn(Mono.just(mockTpp));
-        Mockito.when(tppRepository.save(any()))
+        Mockito.when(tppRepository.updateFields(Mockito.eq(tppDto.getTppId()), any(), any()))
             .thenReturn(Mono.just(mockTpp));
 
-        Mockito.when(tppMapService.addToMap(any()))
+        Mockito.when(tppMapService.refreshInMap(any()))
             .thenReturn(Mono.just(Boolean.TRUE));
 
         StepVerifier.create(tppService.updateIsPaymentEnabled(tppDto.getTppId(), isPaymentEnabled.getIsPaymentEnabled()))
@@ -537,6 +783,10 @@ class TppServiceTest {
                     result.getIsPaymentEnabled().equals(isPaymentEnabled.getIsPaymentEnabled());
             })
             .verifyComplete();
+
+        Mockito.verify(tppRepository).updateFields(Mockito.eq(tppDto.getTppId()), argThat(fields ->
+            isPaymentEnabled.getIsPaymentEnabled().equals(fields.get("isPaymentEnabled"))
+        ), any());
     }
 
     @Test
@@ -544,10 +794,10 @@ class TppServiceTest {
         TppDTO tppDto = getMockTppDto();
         var isPaymentEnabled = getMockIsPaymentEnabled();
 
-        Mockito.when(tppRepository.findByTppId(tppDto.getTppId()))
+        Mockito.when(tppRepository.updateFields(Mockito.eq(tppDto.getTppId()), any(), any()))
             .thenReturn(Mono.empty());
 
-        Mockito.when(tppMapService.addToMap(any()))
+        Mockito.when(tppMapService.refreshInMap(any()))
             .thenReturn(Mono.just(Boolean.TRUE));
 
         StepVerifier.create(tppService.updateIsPaymentEnabled(tppDto.getTppId(), isPaymentEnabled.getIsPaymentEnabled()))
@@ -564,35 +814,65 @@ class TppServiceTest {
 
         Mockito.when(tppMapService.getFromMap(any()))
             .thenReturn(Mono.just(getMockTpp()));
+        Mockito.when(tppMapService.getWhitelistFromMap(any()))
+            .thenReturn(Mono.just(List.of()));
 
         StepVerifier.create(tppService.getTppDetails(tppDtoNoToken.getTppId()))
             .expectNextMatches(result -> result.getTppId().equals(tppDto.getTppId()))
             .verifyComplete();
     }
 
+    @Test
+    void getTppDetailsFromCache_WhitelistReadFromSet() {
+        Tpp cachedTpp = getMockTpp();
+        cachedTpp.setWhitelistRecipient(null);
+
+        Mockito.when(tppMapService.getFromMap(cachedTpp.getTppId()))
+            .thenReturn(Mono.just(cachedTpp));
+        Mockito.when(tppMapService.getWhitelistFromMap(cachedTpp.getTppId()))
+            .thenReturn(Mono.just(List.of(MOCK_RECIPIENT)));
+
+        StepVerifier.create(tppService.getTppDetails(cachedTpp.getTppId()))
+            .expectNextMatches(result -> result.getWhitelistRecipient().equals(List.of(MOCK_RECIPIENT)))
+            .verifyComplete();
+    }
+
     @Test
     void getTppDetailsFromDB_Ok() {
         TppDTOWithoutTokenSection tppDtoNoToken = getMockTppDtoWithoutTokenSection();
         TppDTO tppDto = getMockTppDto();
 
-        Mockito.when(tppRepository.findByTppId(tppDtoNoToken.getTppId()))
-            .thenReturn(Mono.just(getMockTpp()));
-
         Mockito.when(tppMapService.getFromMap(any()))
             .thenReturn(Mono.empty());
-        Mockito.when(tppMapService.addToMap(any()))
-            .thenReturn(Mono.just(Boolean.TRUE));
+        Mockito.when(tppMapService.loadIntoMap(tppDtoNoToken.getTppId()))
+            .thenReturn(Mono.just(getMockTpp()));
 
         StepVerifier.create(tppService.getTppDetails(tppDtoNoToken.getTppId()))
             .expectNextMatches(result -> result.getTppId().equals(tppDto.getTppId()))
             .verifyComplete();
     }
 
+    @Test
+    void getTppDetailsFromDB_WhitelistReadFromCollection() {
+        Tpp dbTpp = getMockTpp();
+
+        Mockito.when(tppMapService.getFromMap(dbTpp.getTppId()))
+            .thenReturn(Mono.empty());
+        Mockito.when(tppMapService.loadIntoMap(dbTpp.getTppId()))
+            .thenReturn(Mono.just(dbTpp));
+        Mockito.when(whitelistRepository.findByTppId(dbTpp.getTppId()))
+            .thenReturn(Flux.just(new TppWhitelistEntry(null, dbTpp.getTppId(), MOCK_RECIPIENT, null)));
+
+        StepVerifier.create(tppService.getTppDetails(dbTpp.getTppId()))
+            .expectNextMatches(result -> result.getWhitelistRecipient().equals(List.of(MOCK_RECIPIENT)))
+            .verifyComplete();
+    }
+
     @Test
     void getTppDetails_TppNotOnboarded() {
         TppDTOWithoutTokenSection tppDtoNoToken = getMockTppDtoWithoutTokenSection();
 
-        Mockito.when(tppRepository.findByTppId(tppDtoNoToken.getTppId()))
+        Mockito.when(tppMapService.loadIntoMap(tppDtoNoToken.getTppId()))
             .thenReturn(Mono.empty());
         Mockito.when(tppMapService.getFromMap(any()))
             .thenReturn(Mono.empty());
@@ -616,6 +896,56 @@ class TppServiceTest {
             .verifyComplete();
     }
 
+    @Test
+    void getTppByEntityIdJson_Ok() {
+        Tpp dbTpp = getMockTpp();
+        dbTpp.setLastUpdateDate(LocalDateTime.of(2025, 1, 1, 0, 0));
+        Mockito.when(tppRepository.findByEntityId(dbTpp.getEntityId()))
+            .thenReturn(Mono.just(dbTpp));
+
+        TppResponseCache.Json first = tppService.getTppByEntityIdJson(dbTpp.getEntityId()).block();
+        TppResponseCache.Json second = tppService.getTppByEntityIdJson(dbTpp.getEntityId()).block();
+
+        Assertions.assertNotNull(first);
+        Assertions.assertSame(first, second);
+        Assertions.assertTrue(first.etag().startsWith("\"") && first.etag().endsWith("\""));
+    }
+
+    @Test
+    void getTppByEntityId_WhitelistReadFromCollection() {
+        Tpp dbTpp = getMockTpp();
+
+        Mockito.when(tppRepository.findByEntityId(dbTpp.getEntityId()))
+            .thenReturn(Mono.just(dbTpp));
+        Mockito.when(whitelistRepository.findByTppId(dbTpp.getTppId()))
+            .thenReturn(Flux.just(new TppWhitelistEntry(null, dbTpp.getTppId(), MOCK_RECIPIENT, null)));
+
+        StepVerifier.create(tppService.getTppByEntityId(dbTpp.getEntityId()))
+            .expectNextMatches(result -> result.getWhitelistRecipient().equals(List.of(MOCK_RECIPIENT)))
+            .verifyComplete();
+    }
+
+    /**
+     * The cached JSON is versioned by the whitelist too: a whitelist change is served even though the TPP
+     * document, and its lastUpdateDate, are the same.
+     */
+    @Test
+    void getTppByEntityIdJson_WhitelistChanged_Reencoded() {
+        Tpp dbTpp = getMockTpp();
+        dbTpp.setLastUpdateDate(LocalDateTime.of(2025, 1, 1, 0, 0));
+        Mockito.when(tppRepository.findByEntityId(dbTpp.getEntityId()))
+            .thenReturn(Mono.just(dbTpp));
+
+        TppResponseCache.Json first = tppService.getTppByEntityIdJson(dbTpp.getEntityId()).block();
+        Mockito.when(whitelistRepository.findByTppId(dbTpp.getTppId()))
+            .thenReturn(Flux.just(new TppWhitelistEntry(null, dbTpp.getTppId(), MOCK_RECIPIENT, null)));
+        TppResponseCache.Json second = tppService.getTppByEntityIdJson(dbTpp.getEntityId()).block();
+
+        Assertions.assertNotNull(first);
+        Assertions.assertNotNull(second);
+        Assertions.assertNotEquals(first.etag(), second.etag());
+    }
+
     @Test
     void getTppByEntityId_TppNotOnboarded() {
         TppDTOWithoutTokenSection tppDtoNoToken = getMockTppDtoWithoutTokenSection();
@@ -634,13 +964,10 @@ class TppServiceTest {
     void getTokenSectionFromDB_Ok() {
         TppDTO tppDto = getMockTppDto();
 
-        Mockito.when(tppRepository.findByTppId(tppDto.getTppId()))
+        Mockito.when(tppMapService.loadIntoMap(tppDto.getTppId()))
             .thenReturn(Mono.just(getMockTpp()));
-        Mockito.when(tokenSectionCryptService.keyDecrypt(any(), any())).thenReturn(Mono.just(true));
         Mockito.when(tppMapService.getFromMap(any()))
             .thenReturn(Mono.empty());
-        Mockito.when(tppMapService.addToMap(any()))
-            .thenReturn(Mono.just(Boolean.TRUE));
 
         StepVerifier.create(tppService.getTokenSection(tppDto.getTppId()))
             .expectNextMatches(result -> result.equals(getMockTokenSectionDto()))
@@ -660,11 +987,265 @@ class TppServiceTest {
             .verifyComplete();
     }
 
+    @Test
+    void getTokenSectionJson_EncodedOncePerVersion() {
+        Tpp cachedTpp = getMockTpp();
+        cachedTpp.setLastUpdateDate(LocalDateTime.of(2025, 1, 1, 0, 0));
+        Mockito.when(tppMapService.getFromMap(cachedTpp.getTppId()))
+            .thenReturn(Mono.just(cachedTpp));
+
+        TppResponseCache.Json first = tppService.getTokenSectionJson(cachedTpp.getTppId()).block();
+        TppResponseCache.Json second = tppService.getTokenSectionJson(cachedTpp.getTppId()).block();
+
+        Assertions.assertNotNull(first);
+        Assertions.assertSame(first, second);
+        Assertions.assertTrue(new String(first.body(), StandardCharsets.UTF_8).contains(getMockTokenSectionDto().getContentType()));
+
+        cachedTpp.setLastUpdateDate(cachedTpp.getLastUpdateDate().plusSeconds(1));
+        TppResponseCache.Json updated = tppService.getTokenSectionJson(cachedTpp.getTppId()).block();
+        Assertions.assertNotNull(updated);
+        Assertions.assertNotSame(first, updated);
+        Assertions.assertArrayEquals(first.body(), updated.body());
+        Assertions.assertEquals(first.etag(), updated.etag());
+    }
+
+    @Test
+    void getTppDetailsJson_ReencodedWhenWhitelistChanges() {
+        Tpp cachedTpp = getMockTpp();
+        cachedTpp.setWhitelistRecipient(null);
+        cachedTpp.setLastUpdateDate(LocalDateTime.of(2025, 1, 1, 0, 0));
+        Mockito.when(tppMapService.getFromMap(cachedTpp.getTppId()))
+            .thenReturn(Mono.just(cachedTpp));
+        Mockito.when(tppMapService.getWhitelistFromMap(cachedTpp.getTppId()))
+            .thenReturn(Mono.just(List.of()), Mono.just(List.of()), Mono.just(List.of(MOCK_RECIPIENT)));
+
+        TppResponseCache.Json first = tppService.getTppDetailsJson(cachedTpp.getTppId()).block();
+        TppResponseCache.Json second = tppService.getTppDetailsJson(cachedTpp.getTppId()).block();
+        TppResponseCache.Json whitelisted = tppService.getTppDetailsJson(cachedTpp.getTppId()).block();
+
+        Assertions.assertNotNull(first);
+        Assertions.assertSame(first, second);
+        Mockito.verify(tppWithoutTokenSectionMapperToDTO, Mockito.times(2)).map(cachedTpp);
+        Assertions.assertNotNull(whitelisted);
+        Assertions.assertNotEquals(first.etag(), whitelisted.etag());
+        Assertions.assertTrue(new String(whitelisted.body(), StandardCharsets.UTF_8).contains(MOCK_RECIPIENT));
+    }
+
+    @Test
+    void getTppDetailsJson_SameEtagFromCacheAndDatabase() {
+        Tpp tpp = getMockTpp();
+        tpp.setWhitelistRecipient(null);
+        tpp.setLastUpdateDate(LocalDateTime.of(2025, 1, 1, 0, 0));
+        Mockito.when(tppMapService.getFromMap(tpp.getTppId()))
+            .thenReturn(Mono.just(tpp), Mono.empty());
+        Mockito.when(tppMapService.getWhitelistFromMap(tpp.getTppId()))
+            .thenReturn(Mono.just(List.of("recipientB", "recipientA")));
+        Mockito.when(tppMapService.loadIntoMap(tpp.getTppId()))
+            .thenReturn(Mono.just(tpp));
+        Mockito.when(whitelistRepository.findByTppId(tpp.getTppId()))
+            .thenReturn(Flux.just(new TppWhitelistEntry(null, tpp.getTppId(), "recipientA", null),
+                new TppWhitelistEntry(null, tpp.getTppId(), "recipientB", null)));
+
+        TppResponseCache.Json fromCache = tppService.getTppDetailsJson(tpp.getTppId()).block();
+        responseCache.invalidateAll();
+        TppResponseCache.Json fromDatabase = tppService.getTppDetailsJson(tpp.getTppId()).block();
+
+        Assertions.assertNotNull(fromCache);
+        Assertions.assertNotNull(fromDatabase);
+        Assertions.assertEquals(fromCache.etag(), fromDatabase.etag());
+        Assertions.assertArrayEquals(fromCache.body(), fromDatabase.body());
+        Mockito.verify(tppMapService).loadIntoMap(tpp.getTppId());
+    }
+
+    @Test
+    void filterEnabledListJson_JoinsFragments() {
+        tppRegistry.putAll(List.of(getMockTpp("tpp1", true), getMockTpp("tpp2", true)));
+
+        StepVerifier.create(tppService.filterEnabledListJson(List.of("tpp1", "tpp2"), MOCK_RECIPIENT, false))
+            .assertNext(json -> {
+                String body = new String(json, StandardCharsets.UTF_8);
+                Assertions.assertTrue(body.startsWith("[{") && body.endsWith("}]"));
+                Assertions.assertTrue(body.indexOf("\"tpp1\"") < body.indexOf("\"tpp2\""));
+            })
+            .verifyComplete();
+    }
+
+    @Test
+    void filterEnabledListJson_EmptyArray() {
+        StepVerifier.create(tppService.filterEnabledListJson(List.of(), MOCK_RECIPIENT, false))
+            .assertNext(json -> Assertions.assertEquals("[]", new String(json, StandardCharsets.UTF_8)))
+            .verifyComplete();
+    }
+
+    @Test
+    void filterEnabledListJson_TemplateByReference() {
+        Tpp tpp = getMockTpp("tpp1", true);
+        tpp.setMessageTemplate("custom-template");
+        tppRegistry.putAll(List.of(tpp));
+        Mockito.when(mapperToDTO.withTemplateRef(any(TppDTO.class))).thenAnswer(invocation -> ((TppDTO) invocation.getArgument(0)).toBuilder()
+            .messageTemplate(null).messageTemplateId("tpp1").messageTemplateHash("hash").build());
+
+        StepVerifier.create(tppService.filterEnabledListJson(List.of("tpp1"), MOCK_RECIPIENT, true))
+            .assertNext(json -> {
+                String body = new String(json, StandardCharsets.UTF_8);
+                Assertions.assertFalse(body.contains("custom-template"));
+                Assertions.assertTrue(body.contains("\"messageTemplateHash\":\"hash\""));
+            })
+            .verifyComplete();
+        StepVerifier.create(tppService.filterEnabledListJson(List.of("tpp1"), MOCK_RECIPIENT, false))
+            .assertNext(json -> {
+                String body = new String(json, StandardCharsets.UTF_8);
+                Assertions.assertTrue(body.contains("custom-template"));
+                Assertions.assertFalse(body.contains("messageTemplateId"));
+                Assertions.assertFalse(body.contains("messageTemplateHash"));
+            })
+            .verifyComplete();
+    }
+
+    @Test
+    void getMessageTemplate_Default() {
+        Mockito.when(mapperToDTO.getDefaultTemplateRef()).thenReturn(new TppObjectToDTOMapper.TemplateRef(
+            TppObjectToDTOMapper.DEFAULT_TEMPLATE_ID, Utils.createSHA256("default-template"), "default-template"));
+
+        StepVerifier.create(tppService.getMessageTemplate(TppObjectToDTOMapper.DEFAULT_TEMPLATE_ID, Utils.createSHA256("default-template")))
+            .expectNext("default-template")
+            .verifyComplete();
+    }
+
+    @Test
+    void getMessageTemplate_Custom() {
+        Tpp tpp = getMockTpp();
+        Mockito.when(tppMapService.getFromMap(tpp.getTppId())).thenReturn(Mono.just(tpp));
+        Mockito.when(mapperToDTO.templateRefOf(tpp)).thenReturn(new TppObjectToDTOMapper.TemplateRef(
+            tpp.getTppId(), Utils.createSHA256("custom-template"), "custom-template"));
+
+        StepVerifier.create(tppService.getMessageTemplate(tpp.getTppId(), Utils.createSHA256("custom-template")))
+            .expectNext("custom-template")
+            .verifyComplete();
+    }
+
+    @Test
+    void getMessageTemplate_HashMismatch() {
+        Mockito.when(mapperToDTO.getDefaultTemplateRef()).thenReturn(new TppObjectToDTOMapper.TemplateRef(
+            TppObjectToDTOMapper.DEFAULT_TEMPLATE_ID, Utils.createSHA256("default-template"), "default-template"));
+
+        StepVerifier.create(tppService.getMessageTemplate(TppObjectToDTOMapper.DEFAULT_TEMPLATE_ID, Utils.createSHA256("old-template")))
+            .expectErrorMatches(error -> error instanceof ClientExceptionWithBody
+                && "MESSAGE_TEMPLATE_NOT_FOUND".equals(((ClientExceptionWithBody) error).getCode()))
+            .verify();
+    }
+
+    @Test
+    void getMessageTemplate_TppNotFound() {
+        Mockito.when(tppMapService.getFromMap("unknown")).thenReturn(Mono.empty());
+        Mockito.when(tppMapService.loadIntoMap("unknown")).thenReturn(Mono.empty());
+
+        StepVerifier.create(tppService.getMessageTemplate("unknown", Utils.createSHA256("custom-template")))
+            .expectError(ClientExceptionWithBody.class)
+            .verify();
+    }
+
+    @Test
+    void renderMessage_Ok() {
+        Tpp tpp = getMockTpp();
+        Mockito.when(tppMapService.getFromMap(tpp.getTppId())).thenReturn(Mono.just(tpp));
+        Mockito.when(mapperToDTO.templateRefOf(tpp)).thenReturn(new TppObjectToDTOMapper.TemplateRef(
+            tpp.getTppId(), "hash-render-ok", "{\"messageId\": \"${messageId?json_string}\"}"));
+
+        StepVerifier.create(tppService.renderMessage(tpp.getTppId(), MessageDTO.builder().messageId("message\"1").build()))
+            .expectNext("{\"messageId\": \"message\\\"1\"}")
+            .verifyComplete();
+    }
+
+    @Test
+    void renderMessages_RenderedInOrder() {
+        Tpp tpp = getMockTpp();
+        Mockito.when(tppMapService.getFromMap(tpp.getTppId())).thenReturn(Mono.just(tpp));
+        Mockito.when(mapperToDTO.templateRefOf(tpp)).thenReturn(new TppObjectToDTOMapper.TemplateRef(
+            tpp.getTppId(), "hash-render-batch", "${messageId}"));
+
+        StepVerifier.create(tppService.renderMessages(tpp.getTppId(), List.of(
+                MessageDTO.builder().messageId("message1").build(),
+                MessageDTO.builder().messageId("message2").build())))
+            .expectNext(List.of("message1", "message2"))
+            .verifyComplete();
+    }
+
+    @Test
+    void renderMessages_TemplateUpdated_RenderedWithNewTemplate() {
+        Tpp tpp = getMockTpp();
+        MessageDTO message = MessageDTO.builder().messageId("message1").build();
+        Mockito.when(tppMapService.getFromMap(tpp.getTppId())).thenReturn(Mono.just(tpp));
+        Mockito.when(mapperToDTO.templateRefOf(tpp))
+            .thenReturn(new TppObjectToDTOMapper.TemplateRef(tpp.getTppId(), "hash-old", "old ${messageId}"))
+            .thenReturn(new TppObjectToDTOMapper.TemplateRef(tpp.getTppId(), "hash-new", "new ${messageId}"));
+
+        StepVerifier.create(tppService.renderMessage(tpp.getTppId(), message))
+            .expectNext("old message1")
+            .verifyComplete();
+        StepVerifier.create(tppService.renderMessage(tpp.getTppId(), message))
+            .expectNext("new message1")
+            .verifyComplete();
+    }
+
+    @Test
+    void renderMessage_MissingVariable() {
+        Tpp tpp = getMockTpp();
+        Mockito.when(tppMapService.getFromMap(tpp.getTppId())).thenReturn(Mono.just(tpp));
+        Mockito.when(mapperToDTO.templateRefOf(tpp)).thenReturn(new TppObjectToDTOMapper.TemplateRef(
+            tpp.getTppId(), "hash-render-missing", "${title?json_string}"));
+
+        StepVerifier.create(tppService.renderMessage(tpp.getTppId(), new MessageDTO()))
+            .expectErrorMatches(error -> error instanceof ClientExceptionWithBody
+                && "MESSAGE_RENDERING_FAILED".equals(((ClientExceptionWithBody) error).getCode()))
+            .verify();
+    }
+
+    @Test
+    void renderMessage_InvalidTemplate() {
+        Tpp tpp = getMockTpp();
+        Mockito.when(tppMapService.getFromMap(tpp.getTppId())).thenReturn(Mono.just(tpp));
+        Mockito.when(mapperToDTO.templateRefOf(tpp)).thenReturn(new TppObjectToDTOMapper.TemplateRef(
+            tpp.getTppId(), "hash-render-invalid", "${messageId"));
+
+        StepVerifier.create(tppService.renderMessage(tpp.getTppId(), new MessageDTO()))
+            .expectErrorMatches(error -> error instanceof ClientExceptionWithBody
+                && "MESSAGE_RENDERING_FAILED".equals(((ClientExceptionWithBody) error).getCode()))
+            .verify();
+    }
+
+    @Test
+    void renderMessage_NotCached_ReadFromDatabaseWithoutDecrypting() {
+        Tpp tpp = getMockTpp();
+        Mockito.when(tppMapService.getFromMap(tpp.getTppId())).thenReturn(Mono.empty());
+        Mockito.when(tppRepository.findByTppId(tpp.getTppId())).thenReturn(Mono.just(tpp));
+        Mockito.when(mapperToDTO.templateRefOf(tpp)).thenReturn(new TppObjectToDTOMapper.TemplateRef(
+            tpp.getTppId(), "hash-render-db", "${messageId}"));
+
+        StepVerifier.create(tppService.renderMessage(tpp.getTppId(), MessageDTO.builder().messageId("message1").build()))
+            .expectNext("message1")
+            .verifyComplete();
+
+        Mockito.verify(tppMapService, Mockito.never()).loadIntoMap(any());
+        Mockito.verifyNoInteractions(tokenSectionCryptService, keyProvider);
+    }
+
+    @Test
+    void renderMessage_TppNotFound() {
+        Mockito.when(tppMapService.getFromMap("unknown")).thenReturn(Mono.empty());
+        Mockito.when(tppRepository.findByTppId("unknown")).thenReturn(Mono.empty());
+
+        StepVerifier.create(tppService.renderMessage("unknown", new MessageDTO()))
+            .expectErrorMatches(error -> error instanceof ClientExceptionWithBody
+                && "TPP_NOT_ONBOARDED".equals(((ClientExceptionWithBody) error).getCode()))
+            .verify();
+    }
+
     @Test
     void getTokenSection_TppNotFound() {
         TppDTO tppDto = getMockTppDto();
 
-        Mockito.when(tppRepository.findByTppId(tppDto.getTppId()))
+        Mockito.when(tppMapService.loadIntoMap(tppDto.getTppId()))
             .thenReturn(Mono.empty());
 
         Mockito.when(tppMapService.getFromMap(any()))
@@ -703,28 +1284,53 @@ class TppServiceTest {
         StepVerifier.create(tppService.deleteTpp(tppDto.getTppId()))
             .expectNextCount(1)
             .verifyComplete();
+
+        Mockito.verify(whitelistRepository).deleteByTppId(tppDto.getTppId());
+    }
+
+    @Test
+    void createTpp_WhitelistStoredInCollection() {
+        TppDTO inputDto = getMockTppDto();
+        inputDto.setWhitelistRecipient(List.of(MOCK_RECIPIENT, MOCK_RECIPIENT));
+
+        Mockito.when(tppRepository.findByEntityId(any()))
+            .thenReturn(Mono.empty());
+        Mockito.when(tppRepository.save(any()))
+            .thenAnswer(invocation -> Mono.just(invocation.getArgument(0)));
+        Mockito.when(keyProvider.createKey(any())).thenReturn(Mono.empty());
+        Mockito.when(tokenSectionCryptService.keyEncrypt(any(), any())).thenReturn(Mono.just(true));
+        Mockito.when(tppMapService.addDecryptedToMap(any()))
+            .thenReturn(Mono.just(Boolean.TRUE));
+
+        StepVerifier.create(tppService.createNewTpp(inputDto, inputDto.getTppId()))
+            .expectNextMatches(response -> response.getWhitelistRecipient().equals(List.of(MOCK_RECIPIENT)))
+            .verifyComplete();
+
+        Mockito.verify(whitelistRepository).insertAll(inputDto.getTppId(), List.of(MOCK_RECIPIENT));
     }
 
     // ==================== WHITELIST TESTS ====================
 
     @Test
     void getAllWhitelistRecipientId_Ok() {
-        Tpp mockTpp = getMockTpp();
-
-        Mockito.when(tppRepository.findAllWhitelistOfTPPs())
-            .thenReturn(Flux.just(mockTpp));
+        Mockito.when(whitelistRepository.findAll())
+            .thenReturn(Flux.just(
+                new TppWhitelistEntry(null, "tpp1", "recipient1", null),
+                new TppWhitelistEntry(null, "tpp1", "recipient2", null),
+                new TppWhitelistEntry(null, "tpp2", "recipient1", null)));
 
         StepVerifier.create(tppService.getAllWhitelistRecipientId())
             .expectNextMatches(result ->
-                result.containsKey(mockTpp.getTppId()) &&
-                    result.get(mockTpp.getTppId()).equals(mockTpp.getWhitelistRecipient())
+                result.size() == 2 &&
+                    result.get("tpp1").equals(List.of("recipient1", "recipient2")) &&
+                    result.get("tpp2").equals(List.of("recipient1"))
             )
             .verifyComplete();
     }
 
     @Test
     void getAllWhitelistRecipientId_EmptyRepository() {
-        Mockito.when(tppRepository.findAllWhitelistOfTPPs())
+        Mockito.when(whitelistRepository.findAll())
             .thenReturn(Flux.empty());
 
         StepVerifier.create(tppService.getAllWhitelistRecipientId())
@@ -732,38 +1338,23 @@ class TppServiceTest {
             .verifyComplete();
     }
 
-    @Test
-    void getAllWhitelistRecipientId_NullWhitelist() {
-        Tpp mockTpp = getMockTpp();
-        mockTpp.setWhitelistRecipient(null);
-
-        Mockito.when(tppRepository.findAllWhitelistOfTPPs())
-            .thenReturn(Flux.just(mockTpp));
-
-        StepVerifier.create(tppService.getAllWhitelistRecipientId())
-            .expectNextMatches(result ->
-                result.containsKey(mockTpp.getTppId()) &&
-                    result.get(mockTpp.getTppId()).isEmpty()
-            )
-            .verifyComplete();
-    }
-
     @Test
     void getTppWhitelistRecipientId_Ok() {
         Tpp mockTpp = getMockTpp();
 
         Mockito.when(tppRepository.findByTppId(mockTpp.getTppId()))
             .thenReturn(Mono.just(mockTpp));
+        Mockito.when(whitelistRepository.findByTppId(mockTpp.getTppId()))
+            .thenReturn(Flux.just(new TppWhitelistEntry(null, mockTpp.getTppId(), MOCK_RECIPIENT, null)));
 
         StepVerifier.create(tppService.getTppWhitelistRecipientId(mockTpp.getTppId()))
-            .expectNextMatches(result -> result.equals(mockTpp.getWhitelistRecipient()))
+            .expectNextMatches(result -> result.equals(List.of(MOCK_RECIPIENT)))
             .verifyComplete();
     }
 
     @Test
-    void getTppWhitelistRecipientId_NullWhitelist() {
+    void getTppWhitelistRecipientId_EmptyWhitelist() {
         Tpp mockTpp = getMockTpp();
-        mockTpp.setWhitelistRecipient(null);
 
         Mockito.when(tppRepository.findByTppId(mockTpp.getTppId()))
             .thenReturn(Mono.just(mockTpp));
@@ -790,68 +1381,89 @@ class TppServiceTest {
         Tpp mockTpp = getMockTpp();
         String newRecipientId = "newRecipient123";
 
-        Mockito.when(tppRepository.findByTppId(mockTpp.getTppId()))
-            .thenReturn(Mono.just(mockTpp));
-        Mockito.when(tppRepository.save(any()))
+        Mockito.when(whitelistRepository.insertIfAbsent(mockTpp.getTppId(), newRecipientId))
+            .thenReturn(Mono.just(true));
+        Mockito.when(tppRepository.updateLastUpdateDate(Mockito.eq(mockTpp.getTppId()), any()))
             .thenReturn(Mono.just(mockTpp));
-        Mockito.when(tppMapService.addToMap(any()))
+        Mockito.when(tppMapService.addToWhitelistMap(mockTpp.getTppId(), newRecipientId))
+            .thenReturn(Mono.empty());
+        Mockito.when(tppMapService.refreshInMap(any()))
             .thenReturn(Mono.just(Boolean.TRUE));
 
         StepVerifier.create(tppService.insertRecipientIdOnWhitelist(mockTpp.getTppId(), newRecipientId))
             .expectNextMatches(result -> result.getTppId().equals(mockTpp.getTppId()))
             .verifyComplete();
+
+        Mockito.verify(tppRepository, Mockito.never()).findByTppId(any());
+        Mockito.verify(tppRepository, Mockito.never()).save(any());
     }
 
     @Test
     void insertRecipientIdOnWhitelist_TppNotFound() {
-        Mockito.when(tppRepository.findByTppId(any()))
+        Mockito.when(whitelistRepository.insertIfAbsent("unknownTppId", "recipientId"))
+            .thenReturn(Mono.just(true));
+        Mockito.when(tppRepository.updateLastUpdateDate(Mockito.eq("unknownTppId"), any()))
             .thenReturn(Mono.empty());
+        Mockito.when(whitelistRepository.deleteByTppIdAndRecipientId("unknownTppId", "recipientId"))
+            .thenReturn(Mono.just(1L));
 
         StepVerifier.create(tppService.insertRecipientIdOnWhitelist("unknownTppId", "recipientId"))
             .expectErrorMatches(throwable ->
                 throwable instanceof ClientExceptionWithBody &&
                     ((ClientExceptionWithBody) throwable).getCode().equals("TPP_NOT_ONBOARDED"))
             .verify();
+
+        // the entry inserted for the missing TPP is rolled back
+        Mockito.verify(whitelistRepository).deleteByTppIdAndRecipientId("unknownTppId", "recipientId");
+        Mockito.verify(tppMapService, Mockito.never()).addToWhitelistMap(any(), any());
     }
 
     @Test
     void insertRecipientIdOnWhitelist_RecipientAlreadyPresent() {
         Tpp mockTpp = getMockTpp();
         String existingRecipient = "existingRecipient";
-        mockTpp.setWhitelistRecipient(new ArrayList<>(List.of(existingRecipient)));
 
-        Mockito.when(tppRepository.findByTppId(mockTpp.getTppId()))
-            .thenReturn(Mono.just(mockTpp));
+        Mockito.when(whitelistRepository.insertIfAbsent(mockTpp.getTppId(), existingRecipient))
+            .thenReturn(Mono.just(false));
 
         StepVerifier.create(tppService.insertRecipientIdOnWhitelist(mockTpp.getTppId(), existingRecipient))
             .expectErrorMatches(throwable ->
                 throwable instanceof ClientExceptionWithBody &&
                     ((ClientExceptionWithBody) throwable).getCode().equals("RECIPIENT_ALREADY_PRESENT"))
             .verify();
+
+        Mockito.verify(tppMapService, Mockito.never()).addToWhitelistMap(any(), any());
+        Mockito.verify(tppRepository, Mockito.never()).updateLastUpdateDate(any(), any());
     }
 
     @Test
     void removeRecipientIdOnWhitelist_Ok() {
         Tpp mockTpp = getMockTpp();
         String existingRecipient = "existingRecipient";
-        mockTpp.setWhitelistRecipient(new ArrayList<>(List.of(existingRecipient)));
 
-        Mockito.when(tppRepository.findByTppId(mockTpp.getTppId()))
-            .thenReturn(Mono.just(mockTpp));
-        Mockito.when(tppRepository.save(any()))
+        Mockito.when(whitelistRepository.deleteByTppIdAndRecipientId(mockTpp.getTppId(), existingRecipient))
+            .thenReturn(Mono.just(1L));
+        Mockito.when(tppRepository.updateLastUpdateDate(Mockito.eq(mockTpp.getTppId()), any()))
             .thenReturn(Mono.just(mockTpp));
-        Mockito.when(tppMapService.addToMap(any()))
+        Mockito.when(tppMapService.removeFromWhitelistMap(mockTpp.getTppId(), existingRecipient))
+            .thenReturn(Mono.empty());
+        Mockito.when(tppMapService.refreshInMap(any()))
             .thenReturn(Mono.just(Boolean.TRUE));
 
         StepVerifier.create(tppService.removeRecipientIdOnWhitelist(mockTpp.getTppId(), existingRecipient))
             .expectNextMatches(result -> result.getTppId().equals(mockTpp.getTppId()))
             .verifyComplete();
+
+        Mockito.verify(tppRepository, Mockito.never()).findByTppId(any());
+        Mockito.verify(tppRepository, Mockito.never()).save(any());
     }
 
     @Test
     void removeRecipientIdOnWhitelist_TppNotFound() {
-        Mockito.when(tppRepository.findByTppId(any()))
-            .thenReturn(Mono.empty());
+        Mockito.when(whitelistRepository.deleteByTppIdAndRecipientId("unknownTppId", "recipientId"))
+            .thenReturn(Mono.just(0L));
+        Mockito.when(tppRepository.existsByTppId("unknownTppId"))
+            .thenReturn(Mono.just(false));
 
         StepVerifier.create(tppService.removeRecipientIdOnWhitelist("unknownTppId", "recipientId"))
             .expectErrorMatches(throwable ->
@@ -863,16 +1475,19 @@ class TppServiceTest {
     @Test
     void removeRecipientIdOnWhitelist_RecipientNotFound() {
         Tpp mockTpp = getMockTpp();
-        mockTpp.setWhitelistRecipient(new ArrayList<>());
 
-        Mockito.when(tppRepository.findByTppId(mockTpp.getTppId()))
-            .thenReturn(Mono.just(mockTpp));
+        Mockito.when(whitelistRepository.deleteByTppIdAndRecipientId(mockTpp.getTppId(), "nonExistentRecipient"))
+            .thenReturn(Mono.just(0L));
+        Mockito.when(tppRepository.existsByTppId(mockTpp.getTppId()))
+            .thenReturn(Mono.just(true));
 
         StepVerifier.create(tppService.removeRecipientIdOnWhitelist(mockTpp.getTppId(), "nonExistentRecipient"))
             .expectErrorMatches(throwable ->
                 throwable instanceof ClientExceptionWithBody &&
                     ((ClientExceptionWithBody) throwable).getCode().equals("RECIPIENT_NOT_FOUND"))
             .verify();
+
+        Mockito.verify(tppRepository, Mockito.never()).updateLastUpdateDate(any(), any());
     }
 
     @Test
@@ -880,16 +1495,22 @@ class TppServiceTest {
         Tpp mockTpp = getMockTpp();
         List<String> newWhitelist = List.of("recipient1", "recipient2");
 
-        Mockito.when(tppRepository.findByTppId(mockTpp.getTppId()))
+        Mockito.when(tppRepository.updateLastUpdateDate(Mockito.eq(mockTpp.getTppId()), any()))
             .thenReturn(Mono.just(mockTpp));
-        Mockito.when(tppRepository.save(any()))
-            .thenReturn(Mono.just(mockTpp));
-        Mockito.when(tppMapService.addToMap(any()))
+        Mockito.when(tppMapService.refreshInMap(any()))
             .thenReturn(Mono.just(Boolean.TRUE));
 
         StepVerifier.create(tppService.updateRecipientIdOnWhitelist(mockTpp.getTppId(), newWhitelist))
             .expectNextMatches(result -> result.getTppId().equals(mockTpp.getTppId()))
             .verifyComplete();
+
+        InOrder inOrder = Mockito.inOrder(whitelistRepository);
+        inOrder.verify(whitelistRepository).insertAll(Mockito.eq(mockTpp.getTppId()),
+            Mockito.argThat(ids -> ids.containsAll(newWhitelist) && ids.size() == 2));
+        inOrder.verify(whitelistRepository).deleteByTppIdAndRecipientIdNotIn(Mockito.eq(mockTpp.getTppId()),
+            Mockito.argThat(ids -> ids.containsAll(newWhitelist) && ids.size() == 2));
+        Mockito.verify(whitelistRepository, Mockito.never()).deleteByTppId(any());
+        Mockito.verify(tppRepository, Mockito.never()).findByTppId(any());
     }
 
     @Test
@@ -897,28 +1518,24 @@ class TppServiceTest {
             Tpp mockTpp = getMockTpp();
             List<String> newWhitelist = List.of("recipient1", "recipient2", "recipient1");
 
-            Mockito.when(tppRepository.findByTppId(mockTpp.getTppId()))
-                .thenReturn(Mono.just(mockTpp));
-            Mockito.when(tppRepository.save(any()))
+            Mockito.when(tppRepository.updateLastUpdateDate(Mockito.eq(mockTpp.getTppId()), any()))
                 .thenReturn(Mono.just(mockTpp));
-            Mockito.when(tppMapService.addToMap(any()))
+            Mockito.when(tppMapService.refreshInMap(any()))
                 .thenReturn(Mono.just(Boolean.TRUE));
 
             StepVerifier.create(tppService.updateRecipientIdOnWhitelist(mockTpp.getTppId(), newWhitelist))
                 .expectNextMatches(result -> result.getTppId().equals(mockTpp.getTppId()))
                 .verifyComplete();
 
-            // Verify that the saved whitelist does not contain duplicates
-            Mockito.verify(tppRepository).save(argThat(tpp -> {
-                List<String> savedWhitelist = tpp.getWhitelistRecipient();
-                return savedWhitelist.size() == 2 &&
-                    savedWhitelist.containsAll(List.of("recipient1", "recipient2"));
-            }));
+            // Verify that the stored whitelist does not contain duplicates
+            Mockito.verify(whitelistRepository).insertAll(Mockito.eq(mockTpp.getTppId()), argThat(savedWhitelist ->
+                savedWhitelist.size() == 2 &&
+                    savedWhitelist.containsAll(List.of("recipient1", "recipient2"))));
     }
 
     @Test
     void updateRecipientIdOnWhitelist_TppNotFound() {
-        Mockito.when(tppRepository.findByTppId(any()))
+        Mockito.when(tppRepository.updateLastUpdateDate(Mockito.eq("unknownTppId"), any()))
             .thenReturn(Mono.empty());
 
         StepVerifier.create(tppService.updateRecipientIdOnWhitelist("unknownTppId", List.of("recipient1")))
@@ -926,21 +1543,23 @@ class TppServiceTest {
                 throwable instanceof ClientExceptionWithBody &&
                     ((ClientExceptionWithBody) throwable).getCode().equals("TPP_NOT_ONBOARDED"))
             .verify();
+
+        Mockito.verify(whitelistRepository, Mockito.never()).deleteByTppIdAndRecipientIdNotIn(any(), any());
     }
 
     @Test
     void updateRecipientIdOnWhitelist_NullList() {
         Tpp mockTpp = getMockTpp();
 
-        Mockito.when(tppRepository.findByTppId(mockTpp.getTppId()))
-            .thenReturn(Mono.just(mockTpp));
-        Mockito.when(tppRepository.save(any()))
+        Mockito.when(tppRepository.updateLastUpdateDate(Mockito.eq(mockTpp.getTppId()), any()))
             .thenReturn(Mono.just(mockTpp));
-        Mockito.when(tppMapService.addToMap(any()))
+        Mockito.when(tppMapService.refreshInMap(any()))
             .thenReturn(Mono.just(Boolean.TRUE));
 
         StepVerifier.create(tppService.updateRecipientIdOnWhitelist(mockTpp.getTppId(), null))
             .expectNextMatches(result -> result.getTppId().equals(mockTpp.getTppId()))
             .verifyComplete();
+
+        Mockito.verify(whitelistRepository).deleteByTppIdAndRecipientIdNotIn(mockTpp.getTppId(), List.of());
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,122 @@
+package it.gov.pagopa.tpp.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import it.gov.pagopa.common.web.exception.EmdEncryptionException;
+import it.gov.pagopa.common.web.exception.EmdThrottledException;
+import it.gov.pagopa.tpp.model.TokenSection;
+import it.gov.pagopa.tpp.model.Tpp;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static it.gov.pagopa.tpp.utils.TestUtils.getMockTpp;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class TppSnapshotDecryptorTest {
+
+    private TokenSectionCryptService tokenSectionCryptService;
+    private SimpleMeterRegistry meterRegistry;
+    private TppSnapshotDecryptor decryptor;
+
+    @BeforeEach
+    void setUp() {
+        tokenSectionCryptService = mock(TokenSectionCryptService.class);
+        meterRegistry = new SimpleMeterRegistry();
+        decryptor = new TppSnapshotDecryptor(tokenSectionCryptService, meterRegistry, 2, 1000, 2);
+    }
+
+    @Test
+    void decryptAll_decryptsAndCounts() {
+        when(tokenSectionCryptService.keyDecrypt(any(TokenSection.class), anyString())).thenReturn(Mono.just(true));
+
+        StepVerifier.create(decryptor.decryptAll(Flux.just(getMockTpp("tpp1", true), getMockTpp("tpp2", true))))
+                .expectNextCount(2)
+                .verifyComplete();
+
+        assertEquals(2, meterRegistry.get("tpp.cache.snapshot.processed").counter().count());
+        assertEquals(2, meterRegistry.get("tpp.cache.snapshot.decrypted").counter().count());
+        assertEquals(1, meterRegistry.get("tpp.cache.snapshot.duration").timer().count());
+    }
+
+    /**
+     * A throttled decryption is retried after the back-off, on a fresh copy of the token section.
+     */
+    @Test
+    void decryptAll_throttled_retriedOnFreshCopy() {
+        Tpp tpp = getMockTpp("tpp1", true);
+        tpp.setTokenSection(new TokenSection("application/json", new HashMap<>(Map.of("key", "encrypted")), null));
+        AtomicInteger attempts = new AtomicInteger();
+        when(tokenSectionCryptService.keyDecrypt(any(TokenSection.class), eq("tpp1"))).thenAnswer(invocation -> {
+            TokenSection section = invocation.getArgument(0);
+            assertEquals("encrypted", section.getPathAdditionalProperties().get("key"));
+            section.getPathAdditionalProperties().put("key", "plain");
+            return attempts.incrementAndGet() == 1
+                    ? Mono.error(new EmdThrottledException("throttled", Duration.ofMillis(10), null))
+                    : Mono.just(true);
+        });
+
+        StepVerifier.create(decryptor.decryptAll(Flux.just(tpp)))
+                .expectNextMatches(decrypted -> "plain".equals(decrypted.getTokenSection().getPathAdditionalProperties().get("key")))
+                .verifyComplete();
+
+        assertEquals(2, attempts.get());
+        assertEquals(1, meterRegistry.get("tpp.cache.snapshot.throttled").counter().count());
+    }
+
+    /**
+     * The Key Vault calls are charged for each attempt, including the read of a key not cached yet.
+     */
+    @Test
+    void decryptAll_chargesKeyProviderCalls() {
+        Tpp tpp = getMockTpp("tpp1", true);
+        TokenSection encrypted = tpp.getTokenSection();
+        when(tokenSectionCryptService.keyProviderCallsFor(encrypted, "tpp1")).thenReturn(2);
+        when(tokenSectionCryptService.keyDecrypt(any(TokenSection.class), anyString())).thenReturn(Mono.just(true));
+
+        StepVerifier.create(decryptor.decryptAll(Flux.just(tpp)))
+                .expectNextCount(1)
+                .verifyComplete();
+
+        verify(tokenSectionCryptService).keyProviderCallsFor(encrypted, "tpp1");
+    }
+
+    @Test
+    void decryptAll_throttledBeyondMaxRetries_countedAsFailed() {
+        when(tokenSectionCryptService.keyDecrypt(any(TokenSection.class), anyString()))
+                .thenReturn(Mono.error(new EmdThrottledException("throttled", Duration.ofMillis(1), null)));
+
+        StepVerifier.create(decryptor.decryptAll(Flux.just(getMockTpp("tpp1", true))))
+                .verifyComplete();
+
+        verify(tokenSectionCryptService, times(3)).keyDecrypt(any(TokenSection.class), eq("tpp1"));
+        assertEquals(1, meterRegistry.get("tpp.cache.snapshot.failed").counter().count());
+    }
+
+    @Test
+    void decryptAll_otherError_notRetried() {
+        when(tokenSectionCryptService.keyDecrypt(any(TokenSection.class), eq("tppErr")))
+                .thenReturn(Mono.error(new EmdEncryptionException("broken", false, null)));
+        when(tokenSectionCryptService.keyDecrypt(any(TokenSection.class), eq("tppOk"))).thenReturn(Mono.just(true));
+
+        StepVerifier.create(decryptor.decryptAll(Flux.just(getMockTpp("tppErr", true), getMockTpp("tppOk", true))))
+                .expectNextMatches(tpp -> tpp.getTppId().equals("tppOk"))
+                .verifyComplete();
+
+        verify(tokenSectionCryptService, times(1)).keyDecrypt(any(TokenSection.class), eq("tppErr"));
+        assertEquals(1, meterRegistry.get("tpp.cache.snapshot.failed").counter().count());
+    }
+}
@@ -0,0 +1,71 @@
+package it.gov.pagopa.tpp.service.cache;
+
+import io.netty.buffer.ByteBuf;
+import it.gov.pagopa.tpp.model.Tpp;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.redisson.client.codec.Codec;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.List;
+
+import static it.gov.pagopa.tpp.utils.TestUtils.getMockTpp;
+
+/**
+ * Compares payload size and encode/decode time of the JSON and binary cache formats on a typical TPP
+ * and on one with many agent links and a large whitelist.
+ *
+ * <p>Not part of the regular build: run with {@code mvn test -Dtest=TppBinaryCodecBenchmark -Dbenchmark=true}.</p>
+ */
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+class TppBinaryCodecBenchmark {
+
+    private static final Logger log = LoggerFactory.getLogger(TppBinaryCodecBenchmark.class);
+
+    private static final int WARM_UP_ITERATIONS = 20_000;
+    private static final int MEASURED_ITERATIONS = 100_000;
+
+    @Test
+    void compareFormats() throws IOException {
+        Tpp typical = getMockTpp();
+        typical.setWhitelistRecipient(null);
+        Tpp large = TppBinaryCodecTest.fullTpp();
+
+        for (Tpp tpp : List.of(typical, large)) {
+            measure("json", TppBinaryCodecTest.JSON, tpp);
+            measure("binary", new TppBinaryCodec(TppBinaryCodecTest.JSON, true), tpp);
+        }
+    }
+
+    private static void measure(String format, Codec codec, Tpp tpp) throws IOException {
+        for (int i = 0; i < WARM_UP_ITERATIONS; i++) {
+            roundTrip(codec, tpp);
+        }
+        long encodeNanos = 0;
+        long decodeNanos = 0;
+        int size = 0;
+        for (int i = 0; i < MEASURED_ITERATIONS; i++) {
+            long start = System.nanoTime();
+            ByteBuf encoded = codec.getValueEncoder().encode(tpp);
+            long encodedAt = System.nanoTime();
+            size = encoded.readableBytes();
+            codec.getValueDecoder().decode(encoded, null);
+            decodeNanos += System.nanoTime() - encodedAt;
+            encodeNanos += encodedAt - start;
+            encoded.release();
+        }
+        log.info("[TPP-CODEC-BENCHMARK] {} whitelist={} agentLinks={}: {} bytes, encode {} ns/op, decode {} ns/op",
+                format,
+                tpp.getWhitelistRecipient() == null ? 0 : tpp.getWhitelistRecipient().size(),
+                tpp.getAgentLinks().size(),
+                size, encodeNanos / MEASURED_ITERATIONS, decodeNanos / MEASURED_ITERATIONS);
+    }
+
+    private static void roundTrip(Codec codec, Tpp tpp) throws IOException {
+        ByteBuf encoded = codec.getValueEncoder().encode(tpp);
+        codec.getValueDecoder().decode(encoded, null);
+        encoded.release();
+    }
+}
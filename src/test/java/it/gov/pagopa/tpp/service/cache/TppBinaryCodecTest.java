@@ -0,0 +1,175 @@
+package it.gov.pagopa.tpp.service.cache;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import it.gov.pagopa.tpp.model.AgentLink;
+import it.gov.pagopa.tpp.model.Contact;
+import it.gov.pagopa.tpp.model.TokenSection;
+import it.gov.pagopa.tpp.model.Tpp;
+import it.gov.pagopa.tpp.model.VersionDetails;
+import org.junit.jupiter.api.Test;
+import org.redisson.codec.JsonJacksonCodec;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.lang.reflect.Modifier;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+import static it.gov.pagopa.tpp.utils.TestUtils.getMockTpp;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TppBinaryCodecTest {
+
+    static final JsonJacksonCodec JSON = new JsonJacksonCodec(new ObjectMapper()
+            .registerModule(new JavaTimeModule())
+            .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false));
+
+    private final TppBinaryCodec binary = new TppBinaryCodec(JSON, true);
+    private final TppBinaryCodec json = new TppBinaryCodec(JSON, false);
+
+    @Test
+    void binary_roundTrip() throws IOException {
+        Tpp tpp = fullTpp();
+
+        ByteBuf encoded = binary.getValueEncoder().encode(tpp);
+
+        assertEquals(TppBinaryCodec.MAGIC, encoded.getByte(0));
+        assertEquals(tpp, binary.getValueDecoder().decode(encoded, null));
+    }
+
+    @Test
+    void binary_roundTripWithNulls() throws IOException {
+        Tpp tpp = Tpp.builder().tppId("tppId").build();
+
+        assertEquals(tpp, binary.getValueDecoder().decode(binary.getValueEncoder().encode(tpp), null));
+    }
+
+    /**
+     * Entries written in JSON before the switch must stay readable, and the JSON writer must read
+     * entries already written in binary, so that the codec can be switched both ways during a rollout.
+     */
+    @Test
+    void formatsReadableByBothWriters() throws IOException {
+        Tpp tpp = fullTpp();
+
+        assertEquals(tpp, binary.getValueDecoder().decode(JSON.getValueEncoder().encode(tpp), null));
+        assertEquals(tpp, json.getValueDecoder().decode(binary.getValueEncoder().encode(tpp), null));
+        assertEquals('{', json.getValueEncoder().encode(tpp).getByte(0));
+    }
+
+    @Test
+    void mapKeys_encodedByDelegate() throws IOException {
+        ByteBuf expected = JSON.getMapKeyEncoder().encode("tppId");
+
+        assertEquals(expected, binary.getMapKeyEncoder().encode("tppId"));
+    }
+
+    @Test
+    void binary_smallerThanJson() throws IOException {
+        Tpp tpp = fullTpp();
+
+        int binarySize = binary.getValueEncoder().encode(tpp).readableBytes();
+        int jsonSize = JSON.getValueEncoder().encode(tpp).readableBytes();
+
+        assertTrue(binarySize * 2 < jsonSize, "binary " + binarySize + " bytes, json " + jsonSize + " bytes");
+    }
+
+    @Test
+    void unknownVersion_rejected() {
+        ByteBuf encoded = Unpooled.wrappedBuffer(new byte[]{TppBinaryCodec.MAGIC, (byte) (TppBinaryCodec.VERSION + 1)});
+
+        assertThrows(TppBinaryCodec.UnreadableEntryException.class, () -> binary.getValueDecoder().decode(encoded, null));
+    }
+
+    /**
+     * Entries written before the fingerprint was cached stay readable, without it.
+     */
+    @Test
+    void previousVersion_readable() throws IOException {
+        Tpp tpp = fullTpp();
+        tpp.setTokenSectionFingerprint(null);
+        ByteBuf encoded = binary.getValueEncoder().encode(tpp);
+        encoded.setByte(1, TppBinaryCodec.VERSION_WITHOUT_FINGERPRINT);
+        ByteBuf previous = encoded.slice(0, encoded.readableBytes() - 1);
+
+        assertEquals(tpp, binary.getValueDecoder().decode(previous, null));
+    }
+
+    @Test
+    void truncatedEntry_rejected() throws IOException {
+        ByteBuf encoded = binary.getValueEncoder().encode(fullTpp());
+        ByteBuf truncated = encoded.slice(0, encoded.readableBytes() / 2);
+
+        assertThrows(TppBinaryCodec.UnreadableEntryException.class, () -> binary.getValueDecoder().decode(truncated, null));
+    }
+
+    @Test
+    void malformedJson_rejected() {
+        ByteBuf encoded = Unpooled.wrappedBuffer("{\"tppId\":".getBytes(StandardCharsets.UTF_8));
+
+        assertThrows(TppBinaryCodec.UnreadableEntryException.class, () -> binary.getValueDecoder().decode(encoded, null));
+    }
+
+    @Test
+    void wrappedDataKey_notStored() throws IOException {
+        Tpp tpp = getMockTpp();
+        tpp.getTokenSection().setWrappedDataKey("v1:wrapped");
+
+        Tpp decoded = (Tpp) binary.getValueDecoder().decode(binary.getValueEncoder().encode(tpp), null);
+
+        assertNull(decoded.getTokenSection().getWrappedDataKey());
+    }
+
+    /**
+     * Guards the fixed field order: a field added to the cached model must be added to the codec,
+     * with a new format version.
+     */
+    @Test
+    void modelFields_coveredByCodec() {
+        assertEquals(21, instanceFields(Tpp.class));
+        assertEquals(3, instanceFields(Contact.class));
+        assertEquals(4, instanceFields(TokenSection.class));
+        assertEquals(2, instanceFields(AgentLink.class));
+        assertEquals(1, instanceFields(VersionDetails.class));
+    }
+
+    /**
+     * A TPP with every field set, several agent links and a large whitelist.
+     */
+    static Tpp fullTpp() {
+        Tpp tpp = getMockTpp();
+        tpp.setCreationDate(LocalDateTime.of(2024, 5, 1, 10, 15, 30, 123_000_000));
+        tpp.setLastUpdateDate(LocalDateTime.of(2026, 1, 2, 3, 4, 5, 6_000));
+        tpp.setTokenSection(new TokenSection("application/json",
+                new HashMap<>(Map.of("client_id", "client", "scope", "messages")),
+                new HashMap<>(Map.of("client_secret", "a-rather-long-decrypted-client-secret-value"))));
+        HashMap<String, AgentLink> agentLinks = new HashMap<>();
+        for (int i = 0; i < 10; i++) {
+            HashMap<String, VersionDetails> versions = new HashMap<>();
+            for (int v = 0; v < 5; v++) {
+                versions.put("v" + v, new VersionDetails("https://agent" + i + ".example.it/deeplink/v" + v));
+            }
+            agentLinks.put("agent" + i, new AgentLink("https://agent" + i + ".example.it/fallback", versions));
+        }
+        tpp.setAgentLinks(agentLinks);
+        tpp.setWhitelistRecipient(IntStream.range(0, 200).mapToObj(i -> String.format("RCPNTX%02dA01H%03dX", i % 100, i)).toList());
+        tpp.setTokenSectionFingerprint("3f1c9a4e0b7d2c6a8e5f1b3d7c9a2e4f6b8d0c1a3e5f7b9d2c4a6e8f0b1d3c5a");
+        return tpp;
+    }
+
+    private static long instanceFields(Class<?> type) {
+        return Arrays.stream(type.getDeclaredFields()).filter(field -> !Modifier.isStatic(field.getModifiers())).count();
+    }
+}
@@ -0,0 +1,143 @@
+package it.gov.pagopa.tpp.service.cache;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import it.gov.pagopa.tpp.dto.mapper.TppObjectToDTOMapper;
+import it.gov.pagopa.tpp.model.Tpp;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.redisson.api.RTopicReactive;
+import org.redisson.api.RedissonReactiveClient;
+import org.redisson.client.codec.Codec;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.util.List;
+
+import static it.gov.pagopa.tpp.utils.TestUtils.getMockTpp;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class TppNearCacheTest {
+
+    private final Sinks.Many<String> messages = Sinks.many().multicast().directBestEffort();
+    private RTopicReactive topic;
+    private SimpleMeterRegistry meterRegistry;
+    private TppRegistry registry;
+    private TppNegativeCache negativeCache;
+    private TppTemplateCache templateCache;
+    private TppNearCache nearCache;
+    private Tpp tpp;
+
+    @BeforeEach
+    void setUp() {
+        RedissonReactiveClient redissonClient = mock(RedissonReactiveClient.class);
+        topic = mock(RTopicReactive.class);
+        when(redissonClient.getTopic(anyString(), any(Codec.class))).thenReturn(topic);
+        when(topic.publish(any())).thenReturn(Mono.just(1L));
+        when(topic.getMessages(String.class)).thenReturn(messages.asFlux());
+
+        meterRegistry = new SimpleMeterRegistry();
+        registry = new TppRegistry(mock(TppObjectToDTOMapper.class), 1000, Duration.ofMinutes(1));
+        negativeCache = new TppNegativeCache(100, Duration.ofMinutes(1));
+        templateCache = mock(TppTemplateCache.class);
+        nearCache = new TppNearCache(redissonClient, registry, negativeCache, mock(TppResponseCache.class), templateCache, meterRegistry, 100, Duration.ofMinutes(1));
+        nearCache.subscribe();
+        tpp = getMockTpp();
+    }
+
+    @Test
+    void update_storesLocallyAndPublishesInvalidation() {
+        nearCache.update(tpp.getTppId(), tpp).block();
+
+        assertSame(tpp, nearCache.get(tpp.getTppId()));
+        assertEquals(1, registry.size());
+        ArgumentCaptor<Object> message = ArgumentCaptor.forClass(Object.class);
+        verify(topic).publish(message.capture());
+        assertTrue(message.getValue().toString().endsWith("|" + tpp.getTppId()));
+        assertEquals(1.0, meterRegistry.get("tpp.cache.near.hits").counter().count());
+    }
+
+    @Test
+    void remoteInvalidation_dropsEntry() {
+        nearCache.update(tpp.getTppId(), tpp).block();
+
+        messages.tryEmitNext("other-pod|" + tpp.getTppId());
+
+        assertNull(nearCache.get(tpp.getTppId()));
+        assertEquals(0, registry.size());
+        assertEquals(1.0, meterRegistry.get("tpp.cache.near.invalidations").counter().count());
+    }
+
+    @Test
+    void updateAndRemoteInvalidation_dropNegativeEntries() {
+        negativeCache.putAllIfNotInvalidated(List.of(tpp.getTppId(), "tpp2"), "recipient", negativeCache.stamp());
+
+        nearCache.update(tpp.getTppId(), tpp).block();
+        messages.tryEmitNext("other-pod|tpp2");
+
+        assertEquals(List.of(tpp.getTppId(), "tpp2"), negativeCache.filterUnknown(List.of(tpp.getTppId(), "tpp2"), "recipient"));
+    }
+
+    @Test
+    void updateAndRemoteInvalidation_dropTemplates() {
+        nearCache.update(tpp.getTppId(), tpp).block();
+        messages.tryEmitNext("other-pod|tpp2");
+        messages.tryEmitNext("other-pod|" + TppNearCache.ALL_KEYS);
+
+        verify(templateCache).invalidate(tpp.getTppId());
+        verify(templateCache).invalidate("tpp2");
+        verify(templateCache).invalidateAll();
+    }
+
+    @Test
+    void remoteInvalidateAll_clearsCache() {
+        nearCache.update(tpp.getTppId(), tpp).block();
+        nearCache.update("tpp2", tpp).block();
+
+        messages.tryEmitNext("other-pod|" + TppNearCache.ALL_KEYS);
+
+        assertNull(nearCache.get(tpp.getTppId()));
+        assertNull(nearCache.get("tpp2"));
+    }
+
+    @Test
+    void ownInvalidation_isIgnored() {
+        nearCache.update(tpp.getTppId(), tpp).block();
+        ArgumentCaptor<Object> message = ArgumentCaptor.forClass(Object.class);
+        verify(topic).publish(message.capture());
+
+        messages.tryEmitNext(message.getValue().toString());
+
+        assertSame(tpp, nearCache.get(tpp.getTppId()));
+    }
+
+    @Test
+    void putIfNotInvalidated_discardsValueReadBeforeInvalidation() {
+        long stamp = nearCache.stamp();
+        messages.tryEmitNext("other-pod|" + tpp.getTppId());
+
+        nearCache.putIfNotInvalidated(tpp.getTppId(), tpp, stamp);
+
+        assertNull(nearCache.get(tpp.getTppId()));
+        assertEquals(0, registry.size());
+        assertEquals(1.0, meterRegistry.get("tpp.cache.near.misses").counter().count());
+    }
+
+    @Test
+    void publishFailure_isSwallowed() {
+        when(topic.publish(any())).thenReturn(Mono.error(new RuntimeException("Redis unavailable")));
+
+        nearCache.evict(tpp.getTppId()).block();
+
+        assertNull(nearCache.get(tpp.getTppId()));
+    }
+}
@@ -0,0 +1,57 @@
+package it.gov.pagopa.tpp.service.cache;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class TppNegativeCacheTest {
+
+    private TppNegativeCache negativeCache;
+
+    @BeforeEach
+    void setUp() {
+        negativeCache = new TppNegativeCache(100, Duration.ofMinutes(1));
+    }
+
+    @Test
+    void filterUnknown_skipsRecordedTppsForSameRecipientOnly() {
+        negativeCache.putAllIfNotInvalidated(List.of("tpp1"), "recipient1", negativeCache.stamp());
+
+        assertEquals(List.of("tpp2"), negativeCache.filterUnknown(List.of("tpp1", "tpp2"), "recipient1"));
+        assertEquals(List.of("tpp1", "tpp2"), negativeCache.filterUnknown(List.of("tpp1", "tpp2"), "recipient2"));
+    }
+
+    @Test
+    void putAllIfNotInvalidated_discardsResultsReadBeforeInvalidation() {
+        long stamp = negativeCache.stamp();
+        negativeCache.invalidate("tpp1");
+
+        negativeCache.putAllIfNotInvalidated(List.of("tpp1", "tpp2"), "recipient1", stamp);
+
+        assertEquals(List.of("tpp1", "tpp2"), negativeCache.filterUnknown(List.of("tpp1", "tpp2"), "recipient1"));
+    }
+
+    @Test
+    void invalidate_dropsEveryRecipientOfTheTpp() {
+        negativeCache.putAllIfNotInvalidated(List.of("tpp1", "tpp2"), "recipient1", negativeCache.stamp());
+        negativeCache.putAllIfNotInvalidated(List.of("tpp1"), "recipient2", negativeCache.stamp());
+
+        negativeCache.invalidate("tpp1");
+
+        assertEquals(List.of("tpp1"), negativeCache.filterUnknown(List.of("tpp1", "tpp2"), "recipient1"));
+        assertEquals(List.of("tpp1"), negativeCache.filterUnknown(List.of("tpp1"), "recipient2"));
+    }
+
+    @Test
+    void invalidateAll_dropsEverything() {
+        negativeCache.putAllIfNotInvalidated(List.of("tpp1", "tpp2"), "recipient1", negativeCache.stamp());
+
+        negativeCache.invalidateAll();
+
+        assertEquals(List.of("tpp1", "tpp2"), negativeCache.filterUnknown(List.of("tpp1", "tpp2"), "recipient1"));
+    }
+}
@@ -0,0 +1,110 @@
+package it.gov.pagopa.tpp.service.cache;
+
+import it.gov.pagopa.tpp.dto.TppDTO;
+import it.gov.pagopa.tpp.dto.mapper.TppObjectToDTOMapper;
+import it.gov.pagopa.tpp.model.Tpp;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static it.gov.pagopa.tpp.utils.TestUtils.getMockTpp;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class TppRegistryTest {
+
+    private final AtomicLong clock = new AtomicLong();
+    private TppObjectToDTOMapper mapperToDTO;
+    private TppRegistry registry;
+
+    @BeforeEach
+    void setUp() {
+        mapperToDTO = mock(TppObjectToDTOMapper.class);
+        when(mapperToDTO.map(any(Tpp.class))).thenAnswer(invocation -> {
+            Tpp tpp = invocation.getArgument(0);
+            return TppDTO.builder().tppId(tpp.getTppId()).state(tpp.getState()).build();
+        });
+        registry = new TppRegistry(mapperToDTO, 2, Duration.ofNanos(100), clock::get);
+    }
+
+    @Test
+    void filterEnabled_splitsByState() {
+        registry.putAll(List.of(getMockTpp("tpp1", true), getMockTpp("tpp2", false), getMockTpp("tpp3", false)));
+
+        TppRegistry.Lookup lookup = registry.filterEnabled(List.of("tpp1", "tpp2", "tpp3", "tpp2", "tpp4"));
+
+        assertEquals(List.of("tpp1"), lookup.enabled().stream().map(TppDTO::getTppId).toList());
+        assertEquals(List.of("tpp2", "tpp3"), lookup.disabled().stream().map(TppDTO::getTppId).toList());
+        assertEquals(List.of("tpp4"), lookup.missing());
+    }
+
+    @Test
+    void filterEnabled_reusesPrecomputedDto() {
+        registry.put(getMockTpp("tpp1", true));
+
+        TppDTO first = registry.filterEnabled(List.of("tpp1")).enabled().get(0);
+        first.setWhitelistRecipient(null);
+        first.setState(false);
+        TppDTO second = registry.filterEnabled(List.of("tpp1", "tpp1")).enabled().get(0);
+
+        assertNotSame(first, second);
+        assertTrue(second.getState());
+        assertEquals(1, registry.filterEnabled(List.of("tpp1", "tpp1")).enabled().size());
+        verify(mapperToDTO, times(1)).map(any(Tpp.class));
+    }
+
+    @Test
+    void put_beyondMaxSize_dropsOldestEntry() {
+        registry.put(getMockTpp("tpp1", true));
+        clock.set(10);
+        registry.put(getMockTpp("tpp2", true));
+        clock.set(20);
+        registry.put(getMockTpp("tpp3", true));
+
+        assertEquals(2, registry.size());
+        assertEquals(List.of("tpp1"), registry.filterEnabled(List.of("tpp1", "tpp2", "tpp3")).missing());
+    }
+
+    @Test
+    void put_beyondMaxSize_dropsExpiredEntriesFirst() {
+        registry.put(getMockTpp("tpp1", true));
+        clock.set(10);
+        registry.put(getMockTpp("tpp2", true));
+        clock.set(120);
+        registry.put(getMockTpp("tpp3", true));
+
+        assertEquals(1, registry.size());
+        assertEquals(List.of("tpp1", "tpp2"), registry.filterEnabled(List.of("tpp1", "tpp2", "tpp3")).missing());
+    }
+
+    @Test
+    void filterEnabled_expiredEntryIsMissing() {
+        registry.put(getMockTpp("tpp1", true));
+
+        clock.set(100);
+        TppRegistry.Lookup lookup = registry.filterEnabled(List.of("tpp1"));
+
+        assertTrue(lookup.enabled().isEmpty());
+        assertEquals(List.of("tpp1"), lookup.missing());
+    }
+
+    @Test
+    void removeAndClear_dropEntries() {
+        registry.putAll(List.of(getMockTpp("tpp1", true), getMockTpp("tpp2", true)));
+
+        registry.remove("tpp1");
+        assertEquals(List.of("tpp1"), registry.filterEnabled(List.of("tpp1", "tpp2")).missing());
+
+        registry.clear();
+        assertEquals(0, registry.size());
+    }
+}
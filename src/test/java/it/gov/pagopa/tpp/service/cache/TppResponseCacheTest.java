@@ -0,0 +1,110 @@
+package it.gov.pagopa.tpp.service.cache;
+
+import it.gov.pagopa.tpp.dto.TokenSectionDTO;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.codec.ServerCodecConfigurer;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static it.gov.pagopa.tpp.utils.TestUtils.getMockTokenSectionDto;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TppResponseCacheTest {
+
+    private static final LocalDateTime VERSION = LocalDateTime.of(2025, 1, 1, 0, 0);
+
+    private TppResponseCache responseCache;
+    private AtomicInteger builds;
+
+    @BeforeEach
+    void setUp() {
+        responseCache = new TppResponseCache(ServerCodecConfigurer.create(), 100, Duration.ofMinutes(1));
+        builds = new AtomicInteger();
+    }
+
+    @Test
+    void encode_reusesTheFragmentOfTheSameVersion() {
+        TppResponseCache.Json first = responseCache.encode(TppResponseCache.View.TOKEN_SECTION, "tpp1", VERSION, this::build);
+        TppResponseCache.Json second = responseCache.encode(TppResponseCache.View.TOKEN_SECTION, "tpp1", VERSION, this::build);
+
+        assertSame(first, second);
+        assertEquals(1, builds.get());
+        assertTrue(new String(first.body(), StandardCharsets.UTF_8).contains("\"contentType\""));
+    }
+
+    @Test
+    void encode_reencodesForANewVersionOrAnotherView() {
+        TppResponseCache.Json first = responseCache.encode(TppResponseCache.View.TOKEN_SECTION, "tpp1", VERSION, this::build);
+
+        assertNotSame(first, responseCache.encode(TppResponseCache.View.TOKEN_SECTION, "tpp1", VERSION.plusSeconds(1), this::build));
+        assertNotSame(first, responseCache.encode(TppResponseCache.View.TPP, "tpp1", VERSION, this::build));
+        assertEquals(3, builds.get());
+    }
+
+    @Test
+    void encode_neverCachesWithoutVersion() {
+        responseCache.encode(TppResponseCache.View.TOKEN_SECTION, "tpp1", null, this::build);
+        responseCache.encode(TppResponseCache.View.TOKEN_SECTION, "tpp1", null, this::build);
+
+        assertEquals(2, builds.get());
+    }
+
+    @Test
+    void invalidate_dropsEveryViewOfTheTpp() {
+        responseCache.encode(TppResponseCache.View.TOKEN_SECTION, "tpp1", VERSION, this::build);
+        responseCache.encode(TppResponseCache.View.TPP, "tpp1", VERSION, this::build);
+        responseCache.encode(TppResponseCache.View.TPP, "tpp2", VERSION, this::build);
+
+        responseCache.invalidate("tpp1");
+        responseCache.encode(TppResponseCache.View.TOKEN_SECTION, "tpp1", VERSION, this::build);
+        responseCache.encode(TppResponseCache.View.TPP, "tpp1", VERSION, this::build);
+        responseCache.encode(TppResponseCache.View.TPP, "tpp2", VERSION, this::build);
+
+        assertEquals(5, builds.get());
+    }
+
+    @Test
+    void encode_etagDependsOnContentOnly() {
+        TppResponseCache.Json json = responseCache.encode(TppResponseCache.View.TOKEN_SECTION, "tpp1", VERSION, this::build);
+        TppResponseCache.Json sameContent = responseCache.encode(TppResponseCache.View.TOKEN_SECTION, "tpp2", null, this::build);
+        TokenSectionDTO changed = getMockTokenSectionDto();
+        changed.setContentType("application/x-www-form-urlencoded");
+        TppResponseCache.Json otherContent = responseCache.encode(TppResponseCache.View.TOKEN_SECTION, "tpp1", null, () -> changed);
+
+        assertEquals(json.etag(), sameContent.etag());
+        assertNotEquals(json.etag(), otherContent.etag());
+        assertTrue(json.etag().startsWith("\"") && json.etag().endsWith("\""));
+    }
+
+    @Test
+    void asArray_joinsFragments() {
+        byte[] json = TppResponseCache.asArray(List.of(
+                "{\"a\":1}".getBytes(StandardCharsets.UTF_8),
+                "{\"b\":2}".getBytes(StandardCharsets.UTF_8)));
+
+        assertEquals("[{\"a\":1},{\"b\":2}]", new String(json, StandardCharsets.UTF_8));
+        assertEquals("[]", new String(TppResponseCache.asArray(List.of()), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void versionOf_unknownWithoutLastUpdateDate() {
+        assertNull(TppResponseCache.versionOf(null, List.of("recipient")));
+        assertEquals(VERSION, TppResponseCache.versionOf(VERSION));
+        assertEquals(TppResponseCache.versionOf(VERSION, List.of("recipient")), TppResponseCache.versionOf(VERSION, List.of("recipient")));
+    }
+
+    private TokenSectionDTO build() {
+        builds.incrementAndGet();
+        return getMockTokenSectionDto();
+    }
+}
@@ -0,0 +1,218 @@
+package it.gov.pagopa.tpp.service.cache;
+
+import it.gov.pagopa.common.configuration.RedisConfig;
+import it.gov.pagopa.tpp.model.Tpp;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.redisson.api.RMapReactive;
+import org.redisson.api.RedissonReactiveClient;
+import org.redisson.client.codec.Codec;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.ArgumentMatchers.anySet;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@SuppressWarnings({"unchecked", "rawtypes"})
+class TppShardedMapTest {
+
+    private static final int SHARDS = 4;
+
+    private List<RMapReactive<String, Tpp>> shards;
+    private List<RMapReactive<String, Tpp>> stagings;
+    private TppShardedMap shardedMap;
+
+    @BeforeEach
+    void setUp() {
+        shards = new ArrayList<>();
+        stagings = new ArrayList<>();
+        for (int i = 0; i < SHARDS; i++) {
+            RMapReactive<String, Tpp> shard = mock(RMapReactive.class);
+            RMapReactive<String, Tpp> staging = mock(RMapReactive.class);
+            when(shard.getName()).thenReturn("shard-" + i);
+            when(shard.getAll(anySet())).thenAnswer(invocation -> {
+                Map<String, Tpp> found = new HashMap<>();
+                ((Set<String>) invocation.getArgument(0)).forEach(id -> found.put(id, Tpp.builder().tppId(id).build()));
+                return Mono.just(found);
+            });
+            when(shard.delete()).thenReturn(Mono.just(true));
+            when(shard.isExists()).thenReturn(Mono.just(false));
+            when(shard.fastRemove(any())).thenReturn(Mono.just(1L));
+            when(staging.delete()).thenReturn(Mono.just(true));
+            when(staging.putAll(anyMap())).thenReturn(Mono.empty());
+            when(staging.rename(anyString())).thenReturn(Mono.empty());
+            shards.add(shard);
+            stagings.add(staging);
+        }
+        shardedMap = new TppShardedMap(shards, stagings);
+    }
+
+    @Test
+    void create_singleShardKeepsLegacyKeys() {
+        RedissonReactiveClient client = mock(RedissonReactiveClient.class);
+        Codec codec = mock(Codec.class);
+        when(client.getMap(anyString(), any(Codec.class))).thenReturn(mock(RMapReactive.class));
+
+        TppShardedMap single = TppShardedMap.create(client, codec, 1);
+
+        assertEquals(1, single.shardCount());
+        verify(client).getMap(RedisConfig.TPP_CACHE_MAP_KEY, codec);
+        verify(client).getMap(RedisConfig.TPP_CACHE_MAP_KEY + ":staging", codec);
+    }
+
+    @Test
+    void create_hashTagsKeepEachStagingInItsShardSlot() {
+        RedissonReactiveClient client = mock(RedissonReactiveClient.class);
+        Codec codec = mock(Codec.class);
+        when(client.getMap(anyString(), any(Codec.class))).thenReturn(mock(RMapReactive.class));
+
+        TppShardedMap sharded = TppShardedMap.create(client, codec, 2);
+
+        assertEquals(2, sharded.shardCount());
+        verify(client).getMap(RedisConfig.TPP_CACHE_MAP_KEY + ":{0}", codec);
+        verify(client).getMap(RedisConfig.TPP_CACHE_MAP_KEY + ":{0}:staging", codec);
+        verify(client).getMap(RedisConfig.TPP_CACHE_MAP_KEY + ":{1}", codec);
+        verify(client).getMap(RedisConfig.TPP_CACHE_MAP_KEY + ":{1}:staging", codec);
+        verify(client, never()).getMap(RedisConfig.TPP_CACHE_MAP_KEY, codec);
+    }
+
+    @Test
+    void get_routesToTheSameShardEveryTime() {
+        String tppId = "tpp-42";
+        RMapReactive<String, Tpp> owner = shards.get(Math.floorMod(tppId.hashCode(), SHARDS));
+        when(owner.get(tppId)).thenReturn(Mono.just(Tpp.builder().tppId(tppId).build()));
+
+        StepVerifier.create(shardedMap.get(tppId))
+                .expectNextMatches(tpp -> tppId.equals(tpp.getTppId()))
+                .verifyComplete();
+        StepVerifier.create(shardedMap.get(tppId))
+                .expectNextCount(1)
+                .verifyComplete();
+
+        verify(owner, times(2)).get(tppId);
+    }
+
+    @Test
+    void getAll_queriesEachShardOnceAndMergesTheResults() {
+        Set<String> tppIds = new HashSet<>();
+        for (int i = 0; i < 20; i++) {
+            tppIds.add("tpp-" + i);
+        }
+
+        StepVerifier.create(shardedMap.getAll(tppIds))
+                .assertNext(found -> assertEquals(tppIds, found.keySet()))
+                .verifyComplete();
+
+        for (int i = 0; i < SHARDS; i++) {
+            int shard = i;
+            Set<String> expected = new HashSet<>();
+            tppIds.stream().filter(id -> Math.floorMod(id.hashCode(), SHARDS) == shard).forEach(expected::add);
+            if (!expected.isEmpty()) {
+                verify(shards.get(i)).getAll(expected);
+            }
+        }
+    }
+
+    @Test
+    void get_unreadableEntry_missAndEvicted() {
+        String tppId = "tpp-42";
+        RMapReactive<String, Tpp> owner = shards.get(Math.floorMod(tppId.hashCode(), SHARDS));
+        when(owner.get(tppId)).thenReturn(Mono.error(unreadable()));
+
+        StepVerifier.create(shardedMap.get(tppId))
+                .verifyComplete();
+
+        verify(owner).fastRemove(tppId);
+    }
+
+    @Test
+    void getAll_unreadableEntry_shardReadEntryByEntry() {
+        String good = "tpp-1";
+        String bad = "tpp-5";
+        int index = Math.floorMod(good.hashCode(), SHARDS);
+        assertEquals(index, Math.floorMod(bad.hashCode(), SHARDS));
+        RMapReactive<String, Tpp> owner = shards.get(index);
+        when(owner.getAll(anySet())).thenReturn(Mono.error(unreadable()));
+        when(owner.get(good)).thenReturn(Mono.just(Tpp.builder().tppId(good).build()));
+        when(owner.get(bad)).thenReturn(Mono.error(unreadable()));
+
+        StepVerifier.create(shardedMap.getAll(Set.of(good, bad)))
+                .assertNext(found -> assertEquals(Set.of(good), found.keySet()))
+                .verifyComplete();
+
+        verify(owner).fastRemove(bad);
+        verify(owner, never()).fastRemove(good);
+    }
+
+    @Test
+    void get_otherError_propagated() {
+        String tppId = "tpp-42";
+        RMapReactive<String, Tpp> owner = shards.get(Math.floorMod(tppId.hashCode(), SHARDS));
+        when(owner.get(tppId)).thenReturn(Mono.error(new IllegalStateException("Redis down")));
+
+        StepVerifier.create(shardedMap.get(tppId))
+                .verifyError(IllegalStateException.class);
+
+        verify(owner, never()).fastRemove(any());
+    }
+
+    private static Exception unreadable() {
+        return new RuntimeException(new TppBinaryCodec.UnreadableEntryException("Unsupported TPP cache entry version: 9", null));
+    }
+
+    @Test
+    void replaceAll_swapsEveryShardAndDropsTheEmptyOnes() {
+        String tppId = "tpp-1";
+        int owner = Math.floorMod(tppId.hashCode(), SHARDS);
+
+        shardedMap.replaceAll(Map.of(tppId, Tpp.builder().tppId(tppId).build()), 500).block();
+
+        for (int i = 0; i < SHARDS; i++) {
+            if (i == owner) {
+                verify(stagings.get(i)).delete();
+                verify(stagings.get(i)).putAll(Map.of(tppId, Tpp.builder().tppId(tppId).build()));
+                verify(stagings.get(i)).rename("shard-" + i);
+                verify(shards.get(i), never()).delete();
+            } else {
+                verify(shards.get(i)).delete();
+                verify(stagings.get(i), never()).rename(anyString());
+            }
+        }
+    }
+
+    @Test
+    void isExists_trueWhenAnyShardExists() {
+        when(shards.get(2).isExists()).thenReturn(Mono.just(true));
+
+        StepVerifier.create(shardedMap.isExists())
+                .expectNext(true)
+                .verifyComplete();
+    }
+
+    @Test
+    void readAllKeySet_unitesTheShards() {
+        when(shards.get(0).readAllKeySet()).thenReturn(Mono.just(Set.of("a")));
+        when(shards.get(1).readAllKeySet()).thenReturn(Mono.just(Set.of("b")));
+        when(shards.get(2).readAllKeySet()).thenReturn(Mono.just(Set.of()));
+        when(shards.get(3).readAllKeySet()).thenReturn(Mono.just(Set.of("c")));
+
+        StepVerifier.create(shardedMap.readAllKeySet())
+                .expectNext(Set.of("a", "b", "c"))
+                .verifyComplete();
+    }
+}
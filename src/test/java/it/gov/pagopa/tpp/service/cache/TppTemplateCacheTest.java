@@ -0,0 +1,104 @@
+package it.gov.pagopa.tpp.service.cache;
+
+import freemarker.template.Configuration;
+import freemarker.template.Template;
+import freemarker.template.TemplateException;
+import it.gov.pagopa.tpp.dto.mapper.TppObjectToDTOMapper.TemplateRef;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class TppTemplateCacheTest {
+
+    private static final TemplateRef TEMPLATE = new TemplateRef("tppId", "hash1", "Hello ${name}");
+    private static final TemplateRef UPDATED_TEMPLATE = new TemplateRef("tppId", "hash2", "Hi ${name}");
+    private static final TemplateRef OTHER_TEMPLATE = new TemplateRef("tpp2", "hash3", "Bye ${name}");
+
+    private final Configuration configuration = new Configuration(Configuration.VERSION_2_3_32);
+    private final AtomicInteger parses = new AtomicInteger();
+    private TppTemplateCache templateCache;
+
+    @BeforeEach
+    void setUp() {
+        templateCache = new TppTemplateCache(100, Duration.ofMinutes(1), templateRef -> {
+            parses.incrementAndGet();
+            return new Template(templateRef.id(), templateRef.template(), configuration);
+        });
+    }
+
+    @Test
+    void get_sameTemplate_parsedOnce() throws IOException {
+        Template first = templateCache.get(TEMPLATE);
+
+        assertSame(first, templateCache.get(TEMPLATE));
+        assertEquals(1, parses.get());
+    }
+
+    @Test
+    void get_updatedTemplate_parsedAgain() throws IOException, TemplateException {
+        Template first = templateCache.get(TEMPLATE);
+        Template updated = templateCache.get(UPDATED_TEMPLATE);
+
+        assertNotSame(first, updated);
+        assertEquals(2, parses.get());
+        assertEquals("Hi Mario", render(updated));
+    }
+
+    @Test
+    void invalidate_dropsOnlyTheTemplatesOfTheTpp() throws IOException {
+        templateCache.get(TEMPLATE);
+        templateCache.get(OTHER_TEMPLATE);
+
+        templateCache.invalidate(TEMPLATE.id());
+        templateCache.get(TEMPLATE);
+        templateCache.get(OTHER_TEMPLATE);
+
+        assertEquals(3, parses.get());
+    }
+
+    @Test
+    void invalidateAll_dropsEveryTemplate() throws IOException {
+        templateCache.get(TEMPLATE);
+        templateCache.get(OTHER_TEMPLATE);
+
+        templateCache.invalidateAll();
+        templateCache.get(TEMPLATE);
+        templateCache.get(OTHER_TEMPLATE);
+
+        assertEquals(4, parses.get());
+    }
+
+    @Test
+    void get_invalidTemplate_throwsAndIsNotCached() {
+        TppTemplateCache cache = new TppTemplateCache(100, Duration.ofMinutes(1));
+        TemplateRef invalid = new TemplateRef("tppId", "hash", "Hello ${name");
+
+        assertThrows(IOException.class, () -> cache.get(invalid));
+        assertThrows(IOException.class, () -> cache.get(invalid));
+    }
+
+    @Test
+    void get_newBuiltIn_notAllowed() throws IOException {
+        TppTemplateCache cache = new TppTemplateCache(100, Duration.ofMinutes(1));
+        Template template = cache.get(new TemplateRef("tppId", "hash",
+            "<#assign ex = \"freemarker.template.utility.Execute\"?new()>${ex(\"id\")}"));
+
+        assertThrows(TemplateException.class, () -> render(template));
+    }
+
+    private static String render(Template template) throws IOException, TemplateException {
+        StringWriter writer = new StringWriter();
+        template.process(Map.of("name", "Mario"), writer);
+        return writer.toString();
+    }
+}
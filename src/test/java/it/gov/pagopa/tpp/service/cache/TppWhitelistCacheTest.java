@@ -0,0 +1,158 @@
+package it.gov.pagopa.tpp.service.cache;
+
+import it.gov.pagopa.tpp.model.TppWhitelistEntry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.redisson.api.BatchOptions;
+import org.redisson.api.BatchResult;
+import org.redisson.api.RBatchReactive;
+import org.redisson.api.RKeysReactive;
+import org.redisson.api.RSetReactive;
+import org.redisson.api.RedissonReactiveClient;
+import org.redisson.client.codec.Codec;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.util.List;
+import java.util.Set;
+
+import static it.gov.pagopa.tpp.utils.TestUtils.MOCK_RECIPIENT;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+@SuppressWarnings({"unchecked", "rawtypes"})
+class TppWhitelistCacheTest {
+
+    private RedissonReactiveClient redissonClient;
+    private RBatchReactive batch;
+    private RSetReactive<Object> batchSet;
+    private RSetReactive<Object> set;
+    private TppWhitelistCache whitelistCache;
+
+    @BeforeEach
+    void setUp() {
+        redissonClient = mock(RedissonReactiveClient.class);
+        batch = mock(RBatchReactive.class);
+        batchSet = mock(RSetReactive.class);
+        set = mock(RSetReactive.class);
+        when(redissonClient.createBatch(any(BatchOptions.class))).thenReturn(batch);
+        when(batch.getSet(anyString(), any(Codec.class))).thenReturn(batchSet);
+        when(redissonClient.getSet(anyString(), any(Codec.class))).thenReturn(set);
+        whitelistCache = new TppWhitelistCache(redissonClient);
+    }
+
+    @Test
+    void replace_deletesThenAddsInOneBatch() {
+        when(batch.execute()).thenReturn(Mono.just(mock(BatchResult.class)));
+
+        whitelistCache.replace("tpp1", List.of(MOCK_RECIPIENT)).block();
+
+        verify(batch).getSet(eq(TppWhitelistCache.KEY_PREFIX + "tpp1"), any(Codec.class));
+        verify(batchSet).delete();
+        verify(batchSet).addAll(List.of(MOCK_RECIPIENT));
+        verify(batch, times(1)).execute();
+    }
+
+    @Test
+    void rebuild_dropsEachSetOnceThenAdds() {
+        when(batch.execute()).thenReturn(Mono.just(mock(BatchResult.class)));
+
+        whitelistCache.rebuild(Flux.just(
+                new TppWhitelistEntry(null, "tpp1", "recipient1", null),
+                new TppWhitelistEntry(null, "tpp1", "recipient2", null))).block();
+
+        verify(batchSet, times(1)).delete();
+        verify(batchSet).add("recipient1");
+        verify(batchSet).add("recipient2");
+        verify(batch, times(1)).execute();
+    }
+
+    @Test
+    void add_singleSadd() {
+        when(set.add(MOCK_RECIPIENT)).thenReturn(Mono.just(true));
+
+        whitelistCache.add("tpp1", MOCK_RECIPIENT).block();
+
+        verify(redissonClient).getSet(eq(TppWhitelistCache.KEY_PREFIX + "tpp1"), any(Codec.class));
+        verify(set).add(MOCK_RECIPIENT);
+        verify(redissonClient, never()).createBatch(any(BatchOptions.class));
+    }
+
+    @Test
+    void whitelisting_singleTpp_singleSismember() {
+        when(set.contains(MOCK_RECIPIENT)).thenReturn(Mono.just(true));
+
+        StepVerifier.create(whitelistCache.whitelisting(List.of("tpp1"), MOCK_RECIPIENT))
+                .expectNext(Set.of("tpp1"))
+                .verifyComplete();
+
+        verify(redissonClient, never()).createBatch(any(BatchOptions.class));
+    }
+
+    @Test
+    void whitelisting_severalTpps_pipelinedInOneBatch() {
+        BatchResult result = mock(BatchResult.class);
+        when(result.getResponses()).thenReturn(List.of(true, false, true));
+        when(batch.execute()).thenReturn(Mono.just(result));
+
+        StepVerifier.create(whitelistCache.whitelisting(List.of("tpp1", "tpp2", "tpp3"), MOCK_RECIPIENT))
+                .expectNext(Set.of("tpp1", "tpp3"))
+                .verifyComplete();
+
+        verify(batchSet, times(3)).contains(MOCK_RECIPIENT);
+        verify(batch, times(1)).execute();
+    }
+
+    @Test
+    void whitelisting_noTpps_skipsRedis() {
+        StepVerifier.create(whitelistCache.whitelisting(List.of(), MOCK_RECIPIENT))
+                .expectNext(Set.of())
+                .verifyComplete();
+
+        verifyNoInteractions(redissonClient);
+    }
+
+    @Test
+    void missing_singleTpp_singleExists() {
+        when(set.isExists()).thenReturn(Mono.just(false));
+
+        StepVerifier.create(whitelistCache.missing(List.of("tpp1")))
+                .expectNext(Set.of("tpp1"))
+                .verifyComplete();
+
+        verify(redissonClient, never()).createBatch(any(BatchOptions.class));
+    }
+
+    @Test
+    void missing_severalTpps_pipelinedInOneBatch() {
+        BatchResult result = mock(BatchResult.class);
+        when(result.getResponses()).thenReturn(List.of(true, false, true));
+        when(batch.execute()).thenReturn(Mono.just(result));
+
+        StepVerifier.create(whitelistCache.missing(List.of("tpp1", "tpp2", "tpp3")))
+                .expectNext(Set.of("tpp2"))
+                .verifyComplete();
+
+        verify(batchSet, times(3)).isExists();
+        verify(batch, times(1)).execute();
+    }
+
+    @Test
+    void deleteAll_deletesKeys() {
+        RKeysReactive keys = mock(RKeysReactive.class);
+        when(redissonClient.getKeys()).thenReturn(keys);
+        when(keys.delete(any(String[].class))).thenReturn(Mono.just(1L));
+
+        whitelistCache.deleteAll(List.of("tpp1")).block();
+
+        verify(keys).delete(new String[]{TppWhitelistCache.KEY_PREFIX + "tpp1"});
+    }
+}
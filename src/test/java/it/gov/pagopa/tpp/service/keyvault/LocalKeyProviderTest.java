@@ -0,0 +1,76 @@
+package it.gov.pagopa.tpp.service.keyvault;
+
+import it.gov.pagopa.common.web.exception.EmdEncryptionException;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import reactor.test.StepVerifier;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LocalKeyProviderTest {
+
+    @TempDir
+    Path keyDir;
+
+    @Test
+    void createKey_thenWrapAndUnwrap() {
+        LocalKeyProvider keyProvider = new LocalKeyProvider(keyDir.toString());
+        byte[] dataKey = "0123456789abcdef0123456789abcdef".getBytes(StandardCharsets.UTF_8);
+
+        keyProvider.createKey("tppId").block();
+        KeyProvider.WrappedKey wrapped = keyProvider.wrapKey("tppId", dataKey).block();
+
+        assertTrue(Files.exists(keyDir.resolve("tppId.pem")));
+        assertNotNull(wrapped);
+        assertArrayEquals(dataKey, keyProvider.unwrapKey("tppId", wrapped.keyVersion(), wrapped.value()).block());
+    }
+
+    @Test
+    void unwrapWithReplacedKeyVersion_error() {
+        LocalKeyProvider keyProvider = new LocalKeyProvider(keyDir.toString());
+        keyProvider.createKey("tppId").block();
+        KeyProvider.WrappedKey wrapped = keyProvider.wrapKey("tppId", new byte[32]).block();
+        assertNotNull(wrapped);
+
+        keyProvider.createKey("tppId").block();
+
+        StepVerifier.create(keyProvider.unwrapKey("tppId", wrapped.keyVersion(), wrapped.value()))
+                .expectError(EmdEncryptionException.class)
+                .verify();
+    }
+
+    @Test
+    void keysAreReloadedFromDisk() {
+        new LocalKeyProvider(keyDir.toString()).createKey("tppId").block();
+        KeyProvider.WrappedKey wrapped = new LocalKeyProvider(keyDir.toString())
+                .wrapKey("tppId", "secret".getBytes(StandardCharsets.UTF_8)).block();
+
+        assertNotNull(wrapped);
+        assertEquals("secret", new LocalKeyProvider(keyDir.toString()).decrypt("tppId", wrapped.value()).block());
+    }
+
+    @Test
+    void missingKey_error() {
+        LocalKeyProvider keyProvider = new LocalKeyProvider(keyDir.toString());
+
+        StepVerifier.create(keyProvider.wrapKey("unknown", new byte[32]))
+                .expectError(EmdEncryptionException.class)
+                .verify();
+    }
+
+    @Test
+    void pathTraversal_rejected() {
+        LocalKeyProvider keyProvider = new LocalKeyProvider(keyDir.toString());
+
+        StepVerifier.create(keyProvider.unwrapKey("../outside", null, "AAAA"))
+                .expectError(EmdEncryptionException.class)
+                .verify();
+    }
+}